@@ -0,0 +1,100 @@
+#!/usr/bin/env python
+
+"""
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+"""
+
+import copy
+import logging
+
+logger = logging.getLogger(__name__)
+
+class CommandSnapshotMissing(Exception):
+  pass
+
+class CommandSnapshots():
+  """
+  Caches the configuration types, configuration attribute types and cluster
+  host info received with execution commands, keyed by section and type. The
+  server leaves a part out of a command when the agent acknowledged receiving
+  the same content before; the command then only carries the hash of the part
+  in 'snapshotHashes' and the part is filled in from this cache.
+  """
+
+  SNAPSHOT_HASHES = 'snapshotHashes'
+  CLUSTER_HOST_INFO = 'clusterHostInfo'
+
+  # the sections of a command holding one part per type
+  SECTIONS = {'configurations/': 'configurations',
+              'configuration_attributes/': 'configuration_attributes'}
+
+  def __init__(self):
+    # keys are section and type, values are (hash, content) tuples
+    self.__snapshots = {}
+
+  def clear(self):
+    """
+    Forgets all parts; the server does the same when the agent registers.
+    """
+    self.__snapshots = {}
+
+  def resolve(self, commands):
+    """
+    Fills in the parts left out of execution commands and caches the parts
+    sent in full. Commands are resolved in the order they were received.
+    :param commands: the execution commands of a heartbeat response
+    :raises CommandSnapshotMissing: if a part is neither in the command nor
+    in the cache
+    """
+    for command in commands:
+      hashes = command.get(self.SNAPSHOT_HASHES)
+      if not hashes:
+        continue
+
+      for key, part_hash in hashes.iteritems():
+        if key == self.CLUSTER_HOST_INFO:
+          self.__resolve_part(command, self.CLUSTER_HOST_INFO, None, key, part_hash)
+          continue
+
+        for prefix, section in self.SECTIONS.iteritems():
+          if key.startswith(prefix):
+            self.__resolve_part(command, section, key[len(prefix):], key, part_hash)
+            break
+
+      del command[self.SNAPSHOT_HASHES]
+
+  def __resolve_part(self, command, section, type, key, part_hash):
+    if type is None:
+      part = command.get(section)
+    else:
+      if command.get(section) is None:
+        command[section] = {}
+      part = command[section].get(type)
+
+    if part is not None:
+      self.__snapshots[key] = (part_hash, copy.deepcopy(part))
+      return
+
+    snapshot = self.__snapshots.get(key)
+    if snapshot is None or snapshot[0] != part_hash:
+      raise CommandSnapshotMissing("Execution command {0} refers to {1} {2} which was not received".format(
+        command.get('commandId'), key, part_hash))
+
+    if type is None:
+      command[section] = copy.deepcopy(snapshot[1])
+    else:
+      command[section][type] = copy.deepcopy(snapshot[1])
@@ -45,6 +45,7 @@ from ambari_agent.NetUtil import NetUtil
 from ambari_agent.LiveStatus import LiveStatus
 from ambari_agent.AlertSchedulerHandler import AlertSchedulerHandler
 from ambari_agent.ClusterConfiguration import  ClusterConfiguration
+from ambari_agent.CommandSnapshots import CommandSnapshots, CommandSnapshotMissing
 from ambari_agent.RecoveryManager import  RecoveryManager
 from ambari_agent.HeartbeatHandlers import HeartbeatStopHandlers, bind_signal_handlers
 from ambari_agent.ExitHelper import ExitHelper
@@ -121,6 +122,9 @@ class Controller(threading.Thread):
 
     self.cluster_configuration = ClusterConfiguration(cluster_config_cache_dir)
 
+    # parts of execution commands which the server may leave out of later commands
+    self.command_snapshots = CommandSnapshots()
+
     self.move_data_dir_mount_file()
 
     self.alert_scheduler_handler = AlertSchedulerHandler(alerts_cache_dir,
@@ -189,6 +193,9 @@ class Controller(threading.Thread):
 
         self.isRegistered = True
 
+        # the server forgets which command parts were sent to the agent on registration
+        self.command_snapshots.clear()
+
         # always update cached cluster configurations on registration
         # must be prior to any other operation
         self.cluster_configuration.update_configurations_from_heartbeat(ret)
@@ -353,6 +360,16 @@ class Controller(threading.Thread):
           if send_state:
             last_state_timestamp = time.time()
 
+        # fill in the parts of execution commands which were sent before
+        if 'executionCommands' in response.keys():
+          try:
+            self.command_snapshots.resolve(response['executionCommands'])
+          except CommandSnapshotMissing, ex:
+            logger.error("Unable to resolve execution commands - repeat agent registration: %s", str(ex))
+            self.isRegistered = False
+            self.repeatRegistration = True
+            return
+
         # if the response contains configurations, update the in-memory and
         # disk-based configuration cache (execution and alert commands have this)
         self.cluster_configuration.update_configurations_from_heartbeat(response)
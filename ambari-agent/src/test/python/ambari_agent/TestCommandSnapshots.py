@@ -0,0 +1,71 @@
+#!/usr/bin/env python
+
+'''
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+'''
+
+from unittest import TestCase
+
+from ambari_agent.CommandSnapshots import CommandSnapshots, CommandSnapshotMissing
+
+class TestCommandSnapshots(TestCase):
+
+  def test_full_command(self):
+    command = {'commandId': '1-1', 'configurations': {'foo-site': {'foo': 'bar'}}}
+    CommandSnapshots().resolve([command])
+    self.assertEquals({'commandId': '1-1', 'configurations': {'foo-site': {'foo': 'bar'}}}, command)
+
+  def test_resolve_delta(self):
+    snapshots = CommandSnapshots()
+    full = {'commandId': '1-1',
+            'configurations': {'foo-site': {'foo': 'bar'}, 'bar-site': {'bar': 'baz'}},
+            'configuration_attributes': {'foo-site': {'final': {'foo': 'true'}}},
+            'clusterHostInfo': {'all_hosts': ['c6401']},
+            'snapshotHashes': {'configurations/foo-site': 'h1', 'configurations/bar-site': 'h2',
+                               'configuration_attributes/foo-site': 'h3', 'clusterHostInfo': 'h4'}}
+    delta = {'commandId': '1-2',
+             'configurations': {'bar-site': {'bar': 'changed'}},
+             'configuration_attributes': {},
+             'snapshotHashes': {'configurations/foo-site': 'h1', 'configurations/bar-site': 'h5',
+                                'configuration_attributes/foo-site': 'h3', 'clusterHostInfo': 'h4'}}
+    snapshots.resolve([full, delta])
+
+    self.assertFalse('snapshotHashes' in full)
+    self.assertFalse('snapshotHashes' in delta)
+    self.assertEquals({'foo-site': {'foo': 'bar'}, 'bar-site': {'bar': 'changed'}}, delta['configurations'])
+    self.assertEquals({'foo-site': {'final': {'foo': 'true'}}}, delta['configuration_attributes'])
+    self.assertEquals({'all_hosts': ['c6401']}, delta['clusterHostInfo'])
+
+    # changing a resolved command does not change the cache
+    delta['configurations']['foo-site']['foo'] = 'changed'
+    later = {'commandId': '1-3', 'configurations': {},
+             'snapshotHashes': {'configurations/foo-site': 'h1'}}
+    snapshots.resolve([later])
+    self.assertEquals({'foo-site': {'foo': 'bar'}}, later['configurations'])
+
+  def test_missing_snapshot(self):
+    snapshots = CommandSnapshots()
+    snapshots.resolve([{'commandId': '1-1', 'clusterHostInfo': {'all_hosts': ['c6401']},
+                        'snapshotHashes': {'clusterHostInfo': 'h1'}}])
+
+    # a different hash is not taken from the cache
+    self.assertRaises(CommandSnapshotMissing, snapshots.resolve,
+                      [{'commandId': '1-2', 'snapshotHashes': {'clusterHostInfo': 'h2'}}])
+
+    snapshots.clear()
+    self.assertRaises(CommandSnapshotMissing, snapshots.resolve,
+                      [{'commandId': '1-3', 'snapshotHashes': {'clusterHostInfo': 'h1'}}])
@@ -80,6 +80,11 @@ public abstract class AbstractTimelineMetricsSink {
   public static final String COLLECTOR_LIVE_NODES_PATH = "/ws/v1/timeline/metrics/livenodes";
 
   protected static final AtomicInteger failedCollectorConnectionsCounter = new AtomicInteger(0);
+
+  /**
+   * Status returned by the collector when it applies backpressure.
+   */
+  protected static final int TOO_MANY_REQUESTS = 429;
   public static int NUMBER_OF_SKIPPED_COLLECTOR_EXCEPTIONS = 100;
   public int ZK_CONNECT_TRY_COUNT = 10;
   public int ZK_SLEEP_BETWEEN_RETRY_TIME = 2000;
@@ -165,6 +170,15 @@ public abstract class AbstractTimelineMetricsSink {
 
       int statusCode = connection.getResponseCode();
 
+      if (statusCode == TOO_MANY_REQUESTS) {
+        // the collector is alive but its write buffer is full, this is not a
+        // connection failure and must not trigger a collector failover
+        LOG.info("Metrics collector " + connectUrl + " is busy, metrics were not accepted");
+        cleanupInputStream(connection.getErrorStream());
+        failedCollectorConnectionsCounter.set(0);
+        return false;
+      }
+
       if (statusCode != 200) {
         LOG.info("Unable to POST metrics to collector, " + connectUrl + ", " +
             "statusCode = " + statusCode);
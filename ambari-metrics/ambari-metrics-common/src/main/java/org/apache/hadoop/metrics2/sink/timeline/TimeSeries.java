@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationContext;
+import org.codehaus.jackson.map.JsonDeserializer;
+import org.codehaus.jackson.map.JsonSerializer;
+import org.codehaus.jackson.map.SerializerProvider;
+import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sorted timestamp to value series backed by primitive arrays. Costs 16
+ * bytes per datapoint, compared to the boxed keys, values and tree nodes of
+ * a {@code TreeMap<Long, Double>}.
+ *
+ * Inserts in ascending timestamp order are appends; out of order inserts
+ * fall back to a binary search and an array shift. Null values have no
+ * primitive representation and are skipped when converting from a map.
+ *
+ * Serializes to the same JSON object as {@code TreeMap<Long, Double>}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+@JsonSerialize(using = TimeSeries.Serializer.class)
+@JsonDeserialize(using = TimeSeries.Deserializer.class)
+public class TimeSeries {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private long[] timestamps;
+  private double[] values;
+  private final int offset;
+  private int size;
+  private final boolean readOnly;
+
+  public TimeSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public TimeSeries(int initialCapacity) {
+    this.timestamps = new long[Math.max(initialCapacity, 1)];
+    this.values = new double[Math.max(initialCapacity, 1)];
+    this.offset = 0;
+    this.size = 0;
+    this.readOnly = false;
+  }
+
+  // Sub range view, shares the backing arrays
+  private TimeSeries(long[] timestamps, double[] values, int offset, int size) {
+    this.timestamps = timestamps;
+    this.values = values;
+    this.offset = offset;
+    this.size = size;
+    this.readOnly = true;
+  }
+
+  public static TimeSeries fromMap(Map<Long, Double> metricValues) {
+    TimeSeries series = new TimeSeries(metricValues.size());
+    series.putAll(metricValues);
+    return series;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public long getTimestamp(int index) {
+    checkIndex(index);
+    return timestamps[offset + index];
+  }
+
+  public double getValue(int index) {
+    checkIndex(index);
+    return values[offset + index];
+  }
+
+  public long firstTimestamp() {
+    return getTimestamp(0);
+  }
+
+  public long lastTimestamp() {
+    return getTimestamp(size - 1);
+  }
+
+  /**
+   * Add or replace the value at timestamp.
+   */
+  public void put(long timestamp, double value) {
+    checkWritable();
+    if (size == 0 || timestamp > timestamps[size - 1]) {
+      ensureCapacity(size + 1);
+      timestamps[size] = timestamp;
+      values[size] = value;
+      size++;
+      return;
+    }
+    int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+    int insertAt = -(index + 1);
+    ensureCapacity(size + 1);
+    System.arraycopy(timestamps, insertAt, timestamps, insertAt + 1, size - insertAt);
+    System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+    timestamps[insertAt] = timestamp;
+    values[insertAt] = value;
+    size++;
+  }
+
+  public void putAll(TimeSeries other) {
+    checkWritable();
+    ensureCapacity(size + other.size);
+    for (int i = 0; i < other.size; i++) {
+      put(other.timestamps[other.offset + i], other.values[other.offset + i]);
+    }
+  }
+
+  public void putAll(Map<Long, Double> metricValues) {
+    checkWritable();
+    ensureCapacity(size + metricValues.size());
+    for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+      if (entry.getKey() != null && entry.getValue() != null) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Same contract as {@link Arrays#binarySearch(long[], long)}, relative to
+   * this series.
+   */
+  public int indexOf(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, offset, offset + size, timestamp);
+    return index >= 0 ? index - offset : index + offset;
+  }
+
+  /**
+   * Index of the first datapoint at or after timestamp, size() if none.
+   */
+  public int ceilingIndex(long timestamp) {
+    int index = indexOf(timestamp);
+    return index >= 0 ? index : -(index + 1);
+  }
+
+  /**
+   * Index of the last datapoint at or before timestamp, -1 if none.
+   */
+  public int floorIndex(long timestamp) {
+    int index = indexOf(timestamp);
+    return index >= 0 ? index : -(index + 1) - 1;
+  }
+
+  /**
+   * Read-only view of datapoints in [fromTimestamp, toTimestamp) that
+   * shares the backing arrays of this series. The view is invalidated by
+   * any later modification of this series.
+   */
+  public TimeSeries subSeries(long fromTimestamp, long toTimestamp) {
+    int from = ceilingIndex(fromTimestamp);
+    int to = Math.max(ceilingIndex(toTimestamp), from);
+    return new TimeSeries(timestamps, values, offset + from, to - from);
+  }
+
+  public TreeMap<Long, Double> toTreeMap() {
+    TreeMap<Long, Double> metricValues = new TreeMap<Long, Double>();
+    for (int i = offset; i < offset + size; i++) {
+      metricValues.put(timestamps[i], values[i]);
+    }
+    return metricValues;
+  }
+
+  public TimeSeries copy() {
+    TimeSeries copy = new TimeSeries(size);
+    System.arraycopy(timestamps, offset, copy.timestamps, 0, size);
+    System.arraycopy(values, offset, copy.values, 0, size);
+    copy.size = size;
+    return copy;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > timestamps.length) {
+      int newCapacity = Math.max(timestamps.length + (timestamps.length >> 1), capacity);
+      timestamps = Arrays.copyOf(timestamps, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Sub series views are read-only");
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    TimeSeries other = (TimeSeries) o;
+    if (size != other.size) return false;
+    for (int i = 0; i < size; i++) {
+      if (timestamps[offset + i] != other.timestamps[other.offset + i]) return false;
+      if (Double.doubleToLongBits(values[offset + i]) !=
+          Double.doubleToLongBits(other.values[other.offset + i])) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    for (int i = offset; i < offset + size; i++) {
+      long bits = Double.doubleToLongBits(values[i]);
+      result = 31 * result + (int) (timestamps[i] ^ (timestamps[i] >>> 32));
+      result = 31 * result + (int) (bits ^ (bits >>> 32));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = offset; i < offset + size; i++) {
+      if (i > offset) {
+        sb.append(", ");
+      }
+      sb.append(timestamps[i]).append('=').append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Writes {"timestamp": value, ...} like a serialized TreeMap.
+   */
+  public static class Serializer extends JsonSerializer<TimeSeries> {
+    @Override
+    public void serialize(TimeSeries series, JsonGenerator jgen,
+                          SerializerProvider provider) throws IOException {
+      jgen.writeStartObject();
+      for (int i = series.offset; i < series.offset + series.size; i++) {
+        jgen.writeFieldName(Long.toString(series.timestamps[i]));
+        jgen.writeNumber(series.values[i]);
+      }
+      jgen.writeEndObject();
+    }
+  }
+
+  public static class Deserializer extends JsonDeserializer<TimeSeries> {
+    @Override
+    public TimeSeries deserialize(JsonParser jp, DeserializationContext ctxt)
+        throws IOException {
+      if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+        throw ctxt.mappingException(TimeSeries.class);
+      }
+      TimeSeries series = new TimeSeries();
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        long timestamp = Long.parseLong(jp.getCurrentName());
+        JsonToken token = jp.nextToken();
+        if (token == JsonToken.VALUE_NULL) {
+          continue;
+        }
+        double value = token == JsonToken.VALUE_STRING ?
+          Double.parseDouble(jp.getText()) : jp.getDoubleValue();
+        series.put(timestamp, value);
+      }
+      return series;
+    }
+  }
+}
@@ -28,6 +28,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonDeserialize;
 
 @XmlRootElement(name = "metric")
@@ -44,7 +45,9 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
   private long startTime;
   private String type;
   private String units;
+  // Exactly one of metricValues and metricSeries holds the datapoints
   private TreeMap<Long, Double> metricValues = new TreeMap<Long, Double>();
+  private TimeSeries metricSeries;
   private Map<String, String> metadata = new HashMap<>();
 
   // default
@@ -62,7 +65,11 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     setInstanceId(metric.getInstanceId());
     setHostName(metric.getHostName());
     setStartTime(metric.getStartTime());
-    setMetricValues(new TreeMap<Long, Double>(metric.getMetricValues()));
+    if (metric.metricSeries != null) {
+      setMetricSeries(metric.metricSeries.copy());
+    } else {
+      setMetricValues(new TreeMap<Long, Double>(metric.getMetricValues()));
+    }
   }
 
   @XmlElement(name = "metricname")
@@ -137,17 +144,65 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     this.units = units;
   }
 
+  /**
+   * Datapoints as a map. If the metric currently holds a primitive series,
+   * it is converted once and the map becomes the backing store.
+   */
   @XmlElement(name = "metrics")
   public TreeMap<Long, Double> getMetricValues() {
+    if (metricValues == null && metricSeries != null) {
+      metricValues = metricSeries.toTreeMap();
+      metricSeries = null;
+    }
     return metricValues;
   }
 
   public void setMetricValues(TreeMap<Long, Double> metricValues) {
     this.metricValues = metricValues;
+    this.metricSeries = null;
+  }
+
+  /**
+   * Datapoints as a primitive series. Returns the backing series if the
+   * metric was populated with one, otherwise a copy of the map values.
+   */
+  @JsonIgnore
+  public TimeSeries getMetricSeries() {
+    if (metricSeries != null) {
+      return metricSeries;
+    }
+    return metricValues != null ? TimeSeries.fromMap(metricValues) : new TimeSeries();
+  }
+
+  @JsonIgnore
+  public void setMetricSeries(TimeSeries metricSeries) {
+    this.metricSeries = metricSeries;
+    this.metricValues = null;
+  }
+
+  public boolean hasMetricValues() {
+    if (metricSeries != null) {
+      return !metricSeries.isEmpty();
+    }
+    return metricValues != null && !metricValues.isEmpty();
   }
 
   public void addMetricValues(Map<Long, Double> metricValues) {
-    this.metricValues.putAll(metricValues);
+    if (metricSeries != null) {
+      metricSeries.putAll(metricValues);
+    } else {
+      this.metricValues.putAll(metricValues);
+    }
+  }
+
+  public void addMetricValues(TimeSeries metricSeries) {
+    if (this.metricSeries != null) {
+      this.metricSeries.putAll(metricSeries);
+    } else {
+      for (int i = 0; i < metricSeries.size(); i++) {
+        this.metricValues.put(metricSeries.getTimestamp(i), metricSeries.getValue(i));
+      }
+    }
   }
 
   @XmlElement(name = "metadata")
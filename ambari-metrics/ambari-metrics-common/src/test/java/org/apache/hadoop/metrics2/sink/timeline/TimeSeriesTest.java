@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import junit.framework.Assert;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.junit.Test;
+
+import java.util.TreeMap;
+
+public class TimeSeriesTest {
+
+  @Test
+  public void testAppendAndOutOfOrderInsert() throws Exception {
+    TimeSeries series = new TimeSeries(2);
+    series.put(10L, 1.0);
+    series.put(30L, 3.0);
+    series.put(40L, 4.0);
+    series.put(20L, 2.0);
+    series.put(5L, 0.5);
+    // Replace existing
+    series.put(30L, 33.0);
+
+    Assert.assertEquals(5, series.size());
+    long[] expectedTimestamps = { 5L, 10L, 20L, 30L, 40L };
+    double[] expectedValues = { 0.5, 1.0, 2.0, 33.0, 4.0 };
+    for (int i = 0; i < series.size(); i++) {
+      Assert.assertEquals(expectedTimestamps[i], series.getTimestamp(i));
+      Assert.assertEquals(expectedValues[i], series.getValue(i));
+    }
+  }
+
+  @Test
+  public void testRangeLookupAndSubSeries() throws Exception {
+    TimeSeries series = new TimeSeries();
+    for (long t = 0; t < 100; t += 10) {
+      series.put(t, (double) t);
+    }
+
+    Assert.assertEquals(2, series.indexOf(20L));
+    Assert.assertTrue(series.indexOf(25L) < 0);
+    Assert.assertEquals(3, series.ceilingIndex(25L));
+    Assert.assertEquals(2, series.floorIndex(25L));
+    Assert.assertEquals(-1, series.floorIndex(-5L));
+    Assert.assertEquals(10, series.ceilingIndex(95L));
+
+    TimeSeries sub = series.subSeries(25L, 60L);
+    Assert.assertEquals(3, sub.size());
+    Assert.assertEquals(30L, sub.firstTimestamp());
+    Assert.assertEquals(50L, sub.lastTimestamp());
+    Assert.assertEquals(1, sub.indexOf(40L));
+    Assert.assertEquals(3, sub.ceilingIndex(55L));
+
+    TimeSeries nested = sub.subSeries(40L, 100L);
+    Assert.assertEquals(2, nested.size());
+    Assert.assertEquals(40L, nested.firstTimestamp());
+
+    Assert.assertTrue(series.subSeries(200L, 300L).isEmpty());
+
+    try {
+      sub.put(35L, 1.0);
+      Assert.fail("Views are read-only");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMapConversion() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(3L, 3.0);
+    values.put(1L, 1.0);
+    values.put(2L, null);
+
+    TimeSeries series = TimeSeries.fromMap(values);
+    Assert.assertEquals(2, series.size());
+
+    values.remove(2L);
+    Assert.assertEquals(values, series.toTreeMap());
+  }
+
+  @Test
+  public void testJsonShapeMatchesTreeMap() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(1459000000000L, 1.5);
+    values.put(1459000010000L, 2.0);
+
+    String json = mapper.writeValueAsString(TimeSeries.fromMap(values));
+    Assert.assertEquals(mapper.writeValueAsString(values), json);
+
+    TimeSeries series = mapper.readValue(json, TimeSeries.class);
+    Assert.assertEquals(TimeSeries.fromMap(values), series);
+
+    TreeMap<Long, Double> parsed = mapper.readValue(json,
+      new TypeReference<TreeMap<Long, Double>>() {});
+    Assert.assertEquals(values, parsed);
+  }
+
+  @Test
+  public void testTimelineMetricRepresentations() throws Exception {
+    TimeSeries series = new TimeSeries();
+    series.put(1L, 1.0);
+    series.put(2L, 2.0);
+
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricSeries(series);
+    Assert.assertSame(series, metric.getMetricSeries());
+    Assert.assertTrue(metric.hasMetricValues());
+
+    TimelineMetric copy = new TimelineMetric(metric);
+    Assert.assertEquals(series, copy.getMetricSeries());
+    Assert.assertNotSame(series, copy.getMetricSeries());
+
+    // Switching to the map representation keeps all datapoints
+    metric.getMetricValues().put(3L, 3.0);
+    Assert.assertEquals(3, metric.getMetricSeries().size());
+    Assert.assertEquals(2, series.size());
+  }
+}
@@ -41,6 +41,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.MemoryTi
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.TimelineStore;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.LeveldbTimelineStore;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.webapp.AHSWebApp;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.webapp.TimelineMetricsParser;
 import org.apache.hadoop.yarn.webapp.WebApp;
 import org.apache.hadoop.yarn.webapp.WebApps;
 
@@ -184,7 +185,9 @@ public class ApplicationHistoryServer extends CompositeService {
             .withHttpPolicy(conf, policy)
             .at(bindAddress)
             .start(new AHSWebApp(timelineStore, timelineMetricStore,
-              ahsClientService));
+              ahsClientService, new TimelineMetricsParser(
+                metricConfiguration.getTimelineMetricsServiceRequestMaxBytes(),
+                metricConfiguration.getTimelineMetricsServiceRequestMaxDatapoints())));
     } catch (Exception e) {
       String msg = "AHSWebApp failed to start.";
       LOG.error(msg, e);
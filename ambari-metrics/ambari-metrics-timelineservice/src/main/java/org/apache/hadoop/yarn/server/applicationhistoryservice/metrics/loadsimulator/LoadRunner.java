@@ -65,17 +65,33 @@ public class LoadRunner {
                     int collectIntervalMillis,
                     int sendIntervalMillis,
                     boolean createMaster) {
+    this(hostName, threadCount, metricsHostName, null, collectIntervalMillis,
+      sendIntervalMillis, createMaster);
+  }
+
+  /**
+   * @param sender the sender shared by all workers, e.g. to push metrics to an
+   *               in-process store; null to send to the metrics host over REST
+   */
+  public LoadRunner(String hostName,
+                    int threadCount,
+                    String metricsHostName,
+                    MetricsSender sender,
+                    int collectIntervalMillis,
+                    int sendIntervalMillis,
+                    boolean createMaster) {
     this.collectIntervalMillis = collectIntervalMillis;
     this.workersPool = Executors.newFixedThreadPool(threadCount);
     this.timer = Executors.newScheduledThreadPool(1);
     this.sendIntervalMillis = sendIntervalMillis;
 
-    workers = prepareWorkers(hostName, threadCount, metricsHostName, createMaster);
+    workers = prepareWorkers(hostName, threadCount, metricsHostName, sender, createMaster);
   }
 
   private Collection<Callable<String>> prepareWorkers(String hostName,
                                                       int threadCount,
                                                       String metricsHost,
+                                                      MetricsSender sender,
                                                       Boolean createMaster) {
     Collection<Callable<String>> senderWorkers =
       new ArrayList<Callable<String>>(threadCount);
@@ -83,13 +99,13 @@ public class LoadRunner {
     int startIndex = 0;
     if (createMaster) {
       String simHost = hostName + "0";
-      addMetricsWorkers(senderWorkers, simHost, metricsHost, MASTER_APPS);
+      addMetricsWorkers(senderWorkers, simHost, metricsHost, sender, MASTER_APPS);
       startIndex++;
     }
 
     for (int i = startIndex; i < threadCount; i++) {
       String simHost = hostName + i;
-      addMetricsWorkers(senderWorkers, simHost, metricsHost, SLAVE_APPS);
+      addMetricsWorkers(senderWorkers, simHost, metricsHost, sender, SLAVE_APPS);
     }
 
     return senderWorkers;
@@ -98,12 +114,14 @@ public class LoadRunner {
   private void addMetricsWorkers(Collection<Callable<String>> senderWorkers,
                                  String specificHostName,
                                  String metricsHostName,
+                                 MetricsSender sender,
                                  AppID[] apps) {
     for (AppID app : apps) {
       HostMetricsGenerator metricsGenerator =
         createApplicationMetrics(specificHostName, app);
-      MetricsSender sender = new RestMetricsSender(metricsHostName);
-      senderWorkers.add(new MetricsSenderWorker(sender, metricsGenerator));
+      MetricsSender workerSender = sender != null ? sender :
+        new RestMetricsSender(metricsHostName);
+      senderWorkers.add(new MetricsSenderWorker(workerSender, metricsGenerator));
     }
   }
 
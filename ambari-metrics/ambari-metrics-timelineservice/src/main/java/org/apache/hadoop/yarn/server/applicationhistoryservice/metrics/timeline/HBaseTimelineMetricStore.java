@@ -23,6 +23,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.sink.timeline.ContainerMetric;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
@@ -41,6 +42,8 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.ConditionBuilder;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitQueryExecutor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.TopNCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.function.SeriesAggregateFunction;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.function.TimelineMetricsSeriesAggregateFunction;
@@ -62,6 +65,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_CACHE_MAX_BYTES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_WHITELIST_FILE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.USE_GROUPBY_AGGREGATOR_QUERIES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DEFAULT_TOPN_HOSTS_LIMIT;
@@ -78,6 +82,8 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
   private TimelineMetricMetadataManager metricMetadataManager;
   private Integer defaultTopNHostsLimit;
   private MetricCollectorHAController haController;
+  // Null if query results are not cached
+  private TimelineMetricsQueryCache queryCache;
 
   /**
    * Construct the service.
@@ -122,6 +128,13 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       }
 
       defaultTopNHostsLimit = Integer.parseInt(metricsConf.get(DEFAULT_TOPN_HOSTS_LIMIT, "20"));
+      long queryCacheMaxBytes = metricsConf.getLong(TIMELINE_METRICS_QUERY_CACHE_MAX_BYTES, 32 * 1024 * 1024);
+      if (queryCacheMaxBytes > 0) {
+        queryCache = new TimelineMetricsQueryCache(queryCacheMaxBytes);
+        DefaultMetricsSystem.instance().register("TimelineMetricsQueryCache",
+          "Timeline metrics query result cache", queryCache);
+      }
+
       if (Boolean.parseBoolean(metricsConf.get(USE_GROUPBY_AGGREGATOR_QUERIES, "true"))) {
         LOG.info("Using group by aggregators for aggregating host and cluster metrics.");
       }
@@ -212,7 +225,7 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       seriesAggrFunctionInstance = TimelineMetricsSeriesAggregateFunctionFactory.newInstance(func);
     }
 
-    Multimap<String, List<Function>> metricFunctions =
+    final Multimap<String, List<Function>> metricFunctions =
       parseMetricNamesToAggregationFunctions(metricNames);
 
     ConditionBuilder conditionBuilder = new ConditionBuilder(new ArrayList<String>(metricFunctions.keySet()))
@@ -245,13 +258,29 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
     }
 
     Condition condition = conditionBuilder.build();
+    // Top N queries rank the hosts or metrics of a pattern in SQL
+    if (!(condition instanceof TopNCondition)) {
+      expandWildcards((DefaultCondition) condition);
+    }
 
-    TimelineMetrics metrics;
+    final boolean aggregate = hostnames == null || hostnames.isEmpty();
+    SplitQueryExecutor.SubQuery reader = new SplitQueryExecutor.SubQuery() {
+      @Override
+      public TimelineMetrics execute(Condition query) throws SQLException, IOException {
+        if (aggregate) {
+          return hBaseAccessor.getAggregateMetricRecords(query, metricFunctions);
+        }
+        return hBaseAccessor.getMetricRecords(query, metricFunctions);
+      }
+    };
 
-    if (hostnames == null || hostnames.isEmpty()) {
-      metrics = hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions);
+    TimelineMetrics metrics;
+    // Grouped time series are cached, top N and limited results depend on the whole window
+    if (queryCache != null && !(condition instanceof TopNCondition) && limit == null &&
+        condition.isGrouped() && !condition.isPointInTime()) {
+      metrics = queryCache.getMetrics(metricNames, (DefaultCondition) condition, reader);
     } else {
-      metrics = hBaseAccessor.getMetricRecords(condition, metricFunctions);
+      metrics = reader.execute(condition);
     }
 
     metrics = postProcessMetrics(metrics);
@@ -263,6 +292,29 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
     return seriesAggregateMetrics(seriesAggrFunctionInstance, metrics);
   }
 
+  /**
+   * Replace wildcard metric names and hostnames by the known names they
+   * match, so that the query reads the rows of each name instead of scanning
+   * for a LIKE pattern.
+   */
+  private void expandWildcards(DefaultCondition condition) {
+    List<String> metricNames = condition.getMetricNames();
+    List<String> expandedMetricNames = metricMetadataManager.expandMetricNames(metricNames, condition.getAppId());
+    if (expandedMetricNames != metricNames) {
+      condition.setExpandedMetricNames(expandedMetricNames);
+    }
+
+    List<String> hostnames = condition.getHostnames();
+    List<String> expandedHostnames = metricMetadataManager.expandHostnames(hostnames, condition.getAppId());
+    if (expandedHostnames != hostnames) {
+      condition.setExpandedHostnames(expandedHostnames);
+    }
+
+    if (LOG.isDebugEnabled() && (expandedMetricNames != metricNames || expandedHostnames != hostnames)) {
+      LOG.debug("Expanded wildcards to " + expandedMetricNames + " on " + expandedHostnames);
+    }
+  }
+
   private TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
     List<TimelineMetric> metricsList = metrics.getMetrics();
 
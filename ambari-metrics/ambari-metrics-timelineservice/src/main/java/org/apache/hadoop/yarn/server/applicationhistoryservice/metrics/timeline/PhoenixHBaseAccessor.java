@@ -33,6 +33,7 @@ import org.apache.hadoop.hbase.util.RetryCounterFactory;
 import org.apache.hadoop.metrics2.sink.timeline.ContainerMetric;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
@@ -44,17 +45,20 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricHostAggregate;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricReadHelper;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec.MetricValuesCodec;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec.MetricValuesEncoding;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidDictionary;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultPhoenixDataSource;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixConnectionProvider;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitByMetricNamesCondition;
-import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitQueryExecutor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitQueryPlanner;
 import org.apache.phoenix.exception.PhoenixIOException;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.type.TypeReference;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -70,20 +74,21 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATE_TABLE_SPLIT_POINTS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_PRECISION_TABLE_DURABILITY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_AGGREGATE_TABLES_DURABILITY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_PRECISION_TABLE_VALUES_ENCODING;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HBASE_BLOCKING_STORE_FILES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATORS_SKIP_BLOCK_CACHE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_DAILY_TABLE_TTL;
@@ -102,10 +107,14 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_SPLIT_POINTS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.PRECISION_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CONTAINER_METRICS_TTL;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_MAX_BYTES;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_SIZE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_COMMIT_INTERVAL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRIC_AGGREGATOR_SINK_CLASS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_PARALLELISM;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_SPLIT_ROWS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_QUERY_TIMEOUT;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CONTAINER_METRICS_TABLE_NAME;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_CONTAINER_METRICS_TABLE_SQL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.CREATE_HOSTED_APPS_METADATA_TABLE_SQL;
@@ -156,8 +165,13 @@ public class PhoenixHBaseAccessor {
   public static int RESULTSET_LIMIT = (int)TimeUnit.HOURS.toMinutes(2) * METRICS_PER_MINUTE * POINTS_PER_MINUTE ;
 
   private static final TimelineMetricReadHelper TIMELINE_METRIC_READ_HELPER = new TimelineMetricReadHelper();
-  private static ObjectMapper mapper = new ObjectMapper();
-  private static TypeReference<TreeMap<Long, Double>> metricValuesTypeRef = new TypeReference<TreeMap<Long, Double>>() {};
+  private static final TimelineMetricUuidDictionary UUID_DICTIONARY = TimelineMetricUuidDictionary.getInstance();
+
+  /**
+   * Estimated size of a metrics POST from a busy sink, used to derive the
+   * byte limit of the insert cache from its legacy request count.
+   */
+  static final long DEFAULT_CACHE_BYTES_PER_REQUEST = 256 * 1024;
 
   private final Configuration hbaseConf;
   private final Configuration metricsConf;
@@ -166,7 +180,8 @@ public class PhoenixHBaseAccessor {
   private final long outOfBandTimeAllowance;
   private final int cacheSize;
   private final boolean cacheEnabled;
-  private final BlockingQueue<TimelineMetrics> insertCache;
+  private final TimelineMetricsMemTable insertCache;
+  private final AtomicBoolean cacheCommitScheduled = new AtomicBoolean();
   private ScheduledExecutorService scheduledExecutorService;
   private MetricsCacheCommitterThread metricsCommiterThread;
   private TimelineMetricsAggregatorSink aggregatorSink;
@@ -174,6 +189,9 @@ public class PhoenixHBaseAccessor {
   private final boolean skipBlockCacheForAggregatorsEnabled;
   private final String timelineMetricsTablesDurability;
   private final String timelineMetricsPrecisionTableDurability;
+  // Null if queries are not split
+  private final SplitQueryPlanner splitQueryPlanner;
+  private final SplitQueryExecutor splitQueryExecutor;
 
   static final String HSTORE_COMPACTION_CLASS_KEY =
     "hbase.hstore.defaultengine.compactionpolicy.class";
@@ -185,6 +203,7 @@ public class PhoenixHBaseAccessor {
     "hbase.hstore.blockingStoreFiles";
 
   private HashMap<String, String> tableTTL = new HashMap<>();
+  private HashMap<String, MetricValuesEncoding> tableValuesEncoding = new HashMap<>();
 
   public PhoenixHBaseAccessor(Configuration hbaseConf,
                               Configuration metricsConf){
@@ -211,11 +230,25 @@ public class PhoenixHBaseAccessor {
     this.cacheEnabled = Boolean.valueOf(metricsConf.get(TIMELINE_METRICS_CACHE_ENABLED, "true"));
     this.cacheSize = Integer.valueOf(metricsConf.get(TIMELINE_METRICS_CACHE_SIZE, "150"));
     this.cacheCommitInterval = Integer.valueOf(metricsConf.get(TIMELINE_METRICS_CACHE_COMMIT_INTERVAL, "3"));
-    this.insertCache = new ArrayBlockingQueue<TimelineMetrics>(cacheSize);
+    // the cache used to be bounded by the number of requests, keep sizing
+    // by that setting unless a byte limit is configured
+    this.insertCache = new TimelineMetricsMemTable(metricsConf.getLong(
+      TIMELINE_METRICS_CACHE_MAX_BYTES, cacheSize * DEFAULT_CACHE_BYTES_PER_REQUEST));
     this.skipBlockCacheForAggregatorsEnabled = metricsConf.getBoolean(AGGREGATORS_SKIP_BLOCK_CACHE, false);
     this.timelineMetricsTablesDurability = metricsConf.get(TIMELINE_METRICS_AGGREGATE_TABLES_DURABILITY, "");
     this.timelineMetricsPrecisionTableDurability = metricsConf.get(TIMELINE_METRICS_PRECISION_TABLE_DURABILITY, "");
 
+    int queryParallelism = metricsConf.getInt(TIMELINE_METRICS_QUERY_PARALLELISM, 8);
+    if (queryParallelism > 1) {
+      this.splitQueryPlanner = new SplitQueryPlanner(queryParallelism,
+        metricsConf.getLong(TIMELINE_METRICS_QUERY_SPLIT_ROWS, 4000));
+      this.splitQueryExecutor = new SplitQueryExecutor(queryParallelism,
+        SECONDS.toMillis(metricsConf.getInt(TIMELINE_METRICS_QUERY_TIMEOUT, 60)));
+    } else {
+      this.splitQueryPlanner = null;
+      this.splitQueryExecutor = null;
+    }
+
     tableTTL.put(METRICS_RECORD_TABLE_NAME, metricsConf.get(PRECISION_TABLE_TTL, String.valueOf(1 * 86400)));  // 1 day
     tableTTL.put(CONTAINER_METRICS_TABLE_NAME, metricsConf.get(CONTAINER_METRICS_TTL, String.valueOf(30 * 86400)));  // 30 days
     tableTTL.put(METRICS_AGGREGATE_MINUTE_TABLE_NAME, metricsConf.get(HOST_MINUTE_TABLE_TTL, String.valueOf(7 * 86400))); //7 days
@@ -226,6 +259,9 @@ public class PhoenixHBaseAccessor {
     tableTTL.put(METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME, metricsConf.get(CLUSTER_HOUR_TABLE_TTL, String.valueOf(365 * 86400))); //1 year
     tableTTL.put(METRICS_CLUSTER_AGGREGATE_DAILY_TABLE_NAME, metricsConf.get(CLUSTER_DAILY_TABLE_TTL, String.valueOf(730 * 86400))); //2 years
 
+    tableValuesEncoding.put(METRICS_RECORD_TABLE_NAME, MetricValuesEncoding.fromString(
+      metricsConf.get(TIMELINE_METRICS_PRECISION_TABLE_VALUES_ENCODING, MetricValuesEncoding.JSON.name())));
+
     if (cacheEnabled) {
       LOG.debug("Initialising and starting metrics cache committer thread...");
       metricsCommiterThread = new MetricsCacheCommitterThread(this);
@@ -249,12 +285,25 @@ public class PhoenixHBaseAccessor {
 
   public void commitMetricsFromCache() {
     LOG.debug("Clearing metrics cache");
-    List<TimelineMetrics> metricsArray = new ArrayList<TimelineMetrics>(insertCache.size());
-    while (!insertCache.isEmpty()) {
-      metricsArray.add(insertCache.poll());
+    cacheCommitScheduled.set(false);
+    TimelineMetricsMemTable.Batch batch = insertCache.drain();
+    try {
+      if (!batch.getMetrics().getMetrics().isEmpty()) {
+        commitMetrics(batch.getMetrics());
+      }
+    } finally {
+      insertCache.release(batch);
     }
-    if (metricsArray.size() > 0) {
-      commitMetrics(metricsArray);
+  }
+
+  /**
+   * Commit the insert cache on the committer thread once it is half full,
+   * rather than waiting for the next commit interval.
+   */
+  private void scheduleCacheCommitIfNeeded() {
+    if (insertCache.getBytes() >= insertCache.getMaxBytes() / 2 &&
+        cacheCommitScheduled.compareAndSet(false, true)) {
+      scheduledExecutorService.execute(metricsCommiterThread);
     }
   }
 
@@ -267,6 +316,7 @@ public class PhoenixHBaseAccessor {
     Connection conn = null;
     PreparedStatement metricRecordStmt = null;
     long currentTime = System.currentTimeMillis();
+    MetricValuesEncoding valuesEncoding = getValuesEncoding(METRICS_RECORD_TABLE_NAME);
 
     try {
       conn = getConnection();
@@ -292,8 +342,8 @@ public class PhoenixHBaseAccessor {
           double[] aggregates = AggregatorUtils.calculateAggregates(
                   metric.getMetricValues());
 
-          metricRecordStmt.setString(1, metric.getMetricName());
-          metricRecordStmt.setString(2, metric.getHostName());
+          metricRecordStmt.setString(1, UUID_DICTIONARY.encodeMetricName(metric.getMetricName(), metric.getAppId()));
+          metricRecordStmt.setString(2, UUID_DICTIONARY.encodeHostname(metric.getHostName()));
           metricRecordStmt.setString(3, metric.getAppId());
           metricRecordStmt.setString(4, metric.getInstanceId());
           metricRecordStmt.setLong(5, currentTime);
@@ -303,8 +353,8 @@ public class PhoenixHBaseAccessor {
           metricRecordStmt.setDouble(9, aggregates[1]);
           metricRecordStmt.setDouble(10, aggregates[2]);
           metricRecordStmt.setLong(11, (long) aggregates[3]);
-          String json = TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
-          metricRecordStmt.setString(12, json);
+          metricRecordStmt.setString(12, MetricValuesCodec.encode(
+            metric.getMetricValues(), valuesEncoding));
 
           try {
             metricRecordStmt.executeUpdate();
@@ -340,13 +390,13 @@ public class PhoenixHBaseAccessor {
   private static TimelineMetric getLastTimelineMetricFromResultSet(ResultSet rs)
       throws SQLException, IOException {
     TimelineMetric metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricCommonsFromResultSet(rs);
-    metric.setMetricValues(readLastMetricValueFromJSON(rs.getString("METRICS")));
+    metric.setMetricValues(readLastMetricValue(rs.getString("METRICS")));
     return metric;
   }
 
-  private static TreeMap<Long, Double> readLastMetricValueFromJSON(String json)
+  private static TreeMap<Long, Double> readLastMetricValue(String storedValues)
       throws IOException {
-    TreeMap<Long, Double> values = readMetricFromJSON(json);
+    TreeMap<Long, Double> values = readMetricValues(storedValues);
     Long lastTimeStamp = values.lastKey();
 
     TreeMap<Long, Double> valueMap = new TreeMap<Long, Double>();
@@ -354,9 +404,27 @@ public class PhoenixHBaseAccessor {
     return valueMap;
   }
 
-  @SuppressWarnings("unchecked")
   public static TreeMap<Long, Double>  readMetricFromJSON(String json) throws IOException {
-    return mapper.readValue(json, metricValuesTypeRef);
+    return readMetricValues(json);
+  }
+
+  /**
+   * Read the METRICS column, accepts both JSON and binary encoded rows.
+   */
+  public static TreeMap<Long, Double> readMetricValues(String storedValues) throws IOException {
+    return MetricValuesCodec.decode(storedValues);
+  }
+
+  /**
+   * Read the METRICS column into a primitive series.
+   */
+  public static TimeSeries readMetricSeries(String storedValues) throws IOException {
+    return MetricValuesCodec.decodeSeries(storedValues);
+  }
+
+  MetricValuesEncoding getValuesEncoding(String tableName) {
+    MetricValuesEncoding encoding = tableValuesEncoding.get(tableName);
+    return encoding != null ? encoding : MetricValuesEncoding.JSON;
   }
 
   private Connection getConnectionRetryingOnException()
@@ -748,13 +816,12 @@ public class PhoenixHBaseAccessor {
 
     if  (!skipCache && cacheEnabled) {
       LOG.debug("Adding metrics to cache");
-      if (insertCache.size() >= cacheSize) {
-        commitMetricsFromCache();
-      }
-      try {
-        insertCache.put(metrics); // blocked while the queue is full
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+      boolean added = insertCache.put(metrics);
+      scheduleCacheCommitIfNeeded();
+      if (!added) {
+        // do not block the handler thread, let the sender retry later
+        throw new MetricsCacheFullException("Metrics cache is full, " +
+          insertCache.getBytes() + " of " + insertCache.getMaxBytes() + " bytes in use");
       }
     } else {
       LOG.debug("Skipping metrics cache");
@@ -770,13 +837,40 @@ public class PhoenixHBaseAccessor {
     insertMetricRecords(metrics, false);
   }
 
-  @SuppressWarnings("unchecked")
   public TimelineMetrics getMetricRecords(
-    final Condition condition, Multimap<String, List<Function>> metricFunctions)
+    final Condition condition, final Multimap<String, List<Function>> metricFunctions)
     throws SQLException, IOException {
 
     validateConditionIsNotEmpty(condition);
 
+    List<Condition> subQueries = splitQueryPlanner == null ?
+      Collections.singletonList(condition) : splitQueryPlanner.plan(condition);
+    if (subQueries.size() == 1) {
+      return readMetricRecords(condition, metricFunctions, 0);
+    }
+
+    LOG.debug("Splitting metrics query into " + subQueries.size() + " sub-queries");
+    final int queryTimeout = (int) TimeUnit.MILLISECONDS.toSeconds(splitQueryExecutor.getTimeoutMillis());
+    TimelineMetrics metrics = splitQueryExecutor.execute(subQueries, condition.isGrouped(),
+      new SplitQueryExecutor.SubQuery() {
+        @Override
+        public TimelineMetrics execute(Condition subQuery) throws SQLException, IOException {
+          return readMetricRecords(subQuery, metricFunctions, queryTimeout);
+        }
+      });
+
+    LOG.debug("Metrics records size: " + metrics.getMetrics().size());
+    return metrics;
+  }
+
+  /**
+   * @param queryTimeout statement timeout in seconds, 0 for none
+   */
+  @SuppressWarnings("unchecked")
+  private TimelineMetrics readMetricRecords(Condition condition, Multimap<String, List<Function>> metricFunctions,
+                                            int queryTimeout) throws SQLException, IOException {
+    addStoredIds(condition);
+
     Connection conn = getConnection();
     PreparedStatement stmt = null;
     ResultSet rs = null;
@@ -789,6 +883,9 @@ public class PhoenixHBaseAccessor {
       } else {
         if (condition.getEndTime() >= condition.getStartTime()) {
           stmt = PhoenixTransactSQL.prepareGetMetricsSqlStmt(conn, condition);
+          if (queryTimeout > 0) {
+            stmt.setQueryTimeout(queryTimeout);
+          }
           rs = stmt.executeQuery();
           while (rs.next()) {
             appendMetricFromResultSet(metrics, condition, metricFunctions, rs);
@@ -873,7 +970,7 @@ public class PhoenixHBaseAccessor {
   private void appendMetricFromResultSet(TimelineMetrics metrics, Condition condition,
                                          Multimap<String, List<Function>> metricFunctions,
                                          ResultSet rs) throws SQLException, IOException {
-    String metricName = rs.getString("METRIC_NAME");
+    String metricName = UUID_DICTIONARY.decodeMetricName(rs.getString("METRIC_NAME"));
     Collection<List<Function>> functionList = findMetricFunctions(metricFunctions, metricName);
 
     for (List<Function> functions : functionList) {
@@ -934,12 +1031,20 @@ public class PhoenixHBaseAccessor {
 
     PreparedStatement stmt = PhoenixTransactSQL.prepareGetLatestMetricSqlStmt(conn, condition);
     ResultSet rs = null;
+    // A series stored by name and by id has a latest row for each
+    Map<String, TimelineMetric> latestMetrics = new LinkedHashMap<>();
     try {
       rs = stmt.executeQuery();
       while (rs.next()) {
         TimelineMetric metric = getLastTimelineMetricFromResultSet(rs);
-        metrics.getMetrics().add(metric);
+        String key = metric.getMetricName() + '\0' + metric.getHostName() + '\0' +
+          metric.getAppId() + '\0' + metric.getInstanceId();
+        TimelineMetric latest = latestMetrics.get(key);
+        if (latest == null || latest.getTimestamp() < metric.getTimestamp()) {
+          latestMetrics.put(key, metric);
+        }
       }
+      metrics.getMetrics().addAll(latestMetrics.values());
     } finally {
       if (rs != null) {
         try {
@@ -965,6 +1070,7 @@ public class PhoenixHBaseAccessor {
       Multimap<String, List<Function>> metricFunctions) throws SQLException {
 
     validateConditionIsNotEmpty(condition);
+    addStoredIds(condition);
 
     Connection conn = getConnection();
     PreparedStatement stmt = null;
@@ -1015,7 +1121,7 @@ public class PhoenixHBaseAccessor {
       Condition condition, Multimap<String, List<Function>> metricFunctions,
       ResultSet rs) throws SQLException {
 
-    String metricName = rs.getString("METRIC_NAME");
+    String metricName = UUID_DICTIONARY.decodeMetricName(rs.getString("METRIC_NAME"));
     Collection<List<Function>> functionList = findMetricFunctions(metricFunctions, metricName);
 
     for (List<Function> functions : functionList) {
@@ -1049,8 +1155,13 @@ public class PhoenixHBaseAccessor {
       new SplitByMetricNamesCondition(condition);
 
     for (String metricName: splitCondition.getOriginalMetricNames()) {
+      if (TimelineMetricUuidDictionary.isUuid(metricName)) {
+        // Selected together with its name
+        continue;
+      }
 
-      splitCondition.setCurrentMetric(metricName);
+      splitCondition.setCurrentMetrics(UUID_DICTIONARY.expandMetricNames(
+        Collections.singletonList(metricName), condition.getAppId()));
       stmt = PhoenixTransactSQL.prepareGetLatestAggregateMetricSqlStmt(conn, splitCondition);
       ResultSet rs = null;
       try {
@@ -1100,7 +1211,7 @@ public class PhoenixHBaseAccessor {
     }
 
     SingleValuedTimelineMetric metric = new SingleValuedTimelineMetric(
-      rs.getString("METRIC_NAME") + f.getSuffix(),
+      UUID_DICTIONARY.decodeMetricName(rs.getString("METRIC_NAME")) + f.getSuffix(),
       rs.getString("APP_ID"),
       rs.getString("INSTANCE_ID"),
       null,
@@ -1133,6 +1244,19 @@ public class PhoenixHBaseAccessor {
     return metric;
   }
 
+  /**
+   * Add the ids of the requested metrics and hosts to the condition, so that
+   * rows stored by name and by id are both selected.
+   */
+  private static void addStoredIds(Condition condition) {
+    if (condition instanceof DefaultCondition) {
+      DefaultCondition defaultCondition = (DefaultCondition) condition;
+      defaultCondition.setMetricNames(UUID_DICTIONARY.expandMetricNames(
+        defaultCondition.getMetricNames(), defaultCondition.getAppId()));
+      defaultCondition.setHostnames(UUID_DICTIONARY.expandHostnames(defaultCondition.getHostnames()));
+    }
+  }
+
   private void validateConditionIsNotEmpty(Condition condition) {
     if (condition.isEmpty()) {
       throw new IllegalArgumentException("No filter criteria specified.");
@@ -1181,8 +1305,8 @@ public class PhoenixHBaseAccessor {
 
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, metric.getMetricName());
-        stmt.setString(2, metric.getHostName());
+        stmt.setString(1, UUID_DICTIONARY.encodeMetricName(metric.getMetricName(), metric.getAppId()));
+        stmt.setString(2, UUID_DICTIONARY.encodeHostname(metric.getHostName()));
         stmt.setString(3, metric.getAppId());
         stmt.setString(4, metric.getInstanceId());
         stmt.setLong(5, metric.getTimestamp());
@@ -1275,7 +1399,7 @@ public class PhoenixHBaseAccessor {
 
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, clusterMetric.getMetricName());
+        stmt.setString(1, UUID_DICTIONARY.encodeMetricName(clusterMetric.getMetricName(), clusterMetric.getAppId()));
         stmt.setString(2, clusterMetric.getAppId());
         stmt.setString(3, clusterMetric.getInstanceId());
         stmt.setLong(4, clusterMetric.getTimestamp());
@@ -1364,7 +1488,7 @@ public class PhoenixHBaseAccessor {
 
         rowCount++;
         stmt.clearParameters();
-        stmt.setString(1, clusterMetric.getMetricName());
+        stmt.setString(1, UUID_DICTIONARY.encodeMetricName(clusterMetric.getMetricName(), clusterMetric.getAppId()));
         stmt.setString(2, clusterMetric.getAppId());
         stmt.setString(3, clusterMetric.getInstanceId());
         stmt.setLong(4, clusterMetric.getTimestamp());
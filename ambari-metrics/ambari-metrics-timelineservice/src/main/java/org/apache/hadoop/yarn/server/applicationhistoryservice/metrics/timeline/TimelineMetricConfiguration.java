@@ -51,6 +51,9 @@ public class TimelineMetricConfiguration {
   public static final String TIMELINE_METRICS_CACHE_SIZE =
     "timeline.metrics.cache.size";
 
+  public static final String TIMELINE_METRICS_CACHE_MAX_BYTES =
+    "timeline.metrics.cache.max.bytes";
+
   public static final String TIMELINE_METRICS_CACHE_COMMIT_INTERVAL =
     "timeline.metrics.cache.commit.interval";
 
@@ -198,6 +201,12 @@ public class TimelineMetricConfiguration {
   public static final String HANDLER_THREAD_COUNT =
     "timeline.metrics.service.handler.thread.count";
 
+  public static final String HANDLER_REQUEST_MAX_BYTES =
+    "timeline.metrics.service.handler.request.max.bytes";
+
+  public static final String HANDLER_REQUEST_MAX_DATAPOINTS =
+    "timeline.metrics.service.handler.request.max.datapoints";
+
   public static final String WATCHER_DISABLED =
     "timeline.metrics.service.watcher.disabled";
 
@@ -243,6 +252,27 @@ public class TimelineMetricConfiguration {
   public static final String TIMELINE_METRICS_AGGREGATE_TABLES_DURABILITY =
       "timeline.metrics.aggregate.tables.durability";
 
+  public static final String TIMELINE_METRICS_PRECISION_TABLE_VALUES_ENCODING =
+    "timeline.metrics.precision.table.values.encoding";
+
+  public static final String TIMELINE_METRICS_UUID_KEYS_ENABLED =
+    "timeline.metrics.uuid.keys.enabled";
+
+  public static final String TIMELINE_METRICS_WILDCARD_EXPANSION_LIMIT =
+    "timeline.metrics.service.wildcard.expansion.limit";
+
+  public static final String TIMELINE_METRICS_QUERY_PARALLELISM =
+    "timeline.metrics.service.query.parallelism";
+
+  public static final String TIMELINE_METRICS_QUERY_SPLIT_ROWS =
+    "timeline.metrics.service.query.split.rows";
+
+  public static final String TIMELINE_METRICS_QUERY_TIMEOUT =
+    "timeline.metrics.service.query.timeout";
+
+  public static final String TIMELINE_METRICS_QUERY_CACHE_MAX_BYTES =
+    "timeline.metrics.service.query.cache.max.bytes";
+
   public static final String TIMELINE_METRICS_WHITELIST_FILE =
     "timeline.metrics.whitelist.file";
 
@@ -369,6 +399,20 @@ public class TimelineMetricConfiguration {
     return 20;
   }
 
+  public long getTimelineMetricsServiceRequestMaxBytes() {
+    if (metricsConf != null) {
+      return Long.parseLong(metricsConf.get(HANDLER_REQUEST_MAX_BYTES, "33554432"));
+    }
+    return 33554432;
+  }
+
+  public long getTimelineMetricsServiceRequestMaxDatapoints() {
+    if (metricsConf != null) {
+      return Long.parseLong(metricsConf.get(HANDLER_REQUEST_MAX_DATAPOINTS, "1000000"));
+    }
+    return 1000000;
+  }
+
   public boolean isTimelineMetricsServiceWatcherDisabled() {
     if (metricsConf != null) {
       return Boolean.parseBoolean(metricsConf.get(WATCHER_DISABLED, "false"));
@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+/**
+ * In-memory write buffer for incoming metrics, keyed by series
+ * (metric name, app id, instance id, host name). Datapoints of a series sent
+ * by several sink flushes are merged in place so that every series is written
+ * with a single upsert when the buffer is drained.
+ *
+ * The buffer is bounded by an estimate of the bytes it holds rather than by
+ * the number of requests. Bytes of a drained batch stay reserved until the
+ * batch is released, so the bound also covers metrics which are still being
+ * committed. When the metrics of a put do not fit, {@link #put(TimelineMetrics)}
+ * rejects them instead of blocking. Their estimated size is reserved before
+ * they are merged, so concurrent puts can not overshoot the bound either; only
+ * a put into an empty buffer is accepted whatever its size, otherwise a
+ * request larger than the buffer could never be stored.
+ */
+public class TimelineMetricsMemTable {
+
+  /**
+   * Estimated heap used by a datapoint: a long and a double in the series
+   * arrays, plus array growth.
+   */
+  static final int BYTES_PER_DATAPOINT = 24;
+
+  /**
+   * Estimated heap used by a series besides its datapoints and key strings.
+   */
+  static final int BYTES_PER_SERIES = 160;
+
+  private final long maxBytes;
+  private final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * Writers hold the read lock while merging, drain takes the write lock to
+   * swap the table.
+   */
+  private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+  private volatile ConcurrentMap<SeriesKey, Series> table = new ConcurrentHashMap<>();
+
+  public TimelineMetricsMemTable(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Merge the given metrics into the buffer.
+   *
+   * @return false if the metrics do not fit in the buffer and were not added
+   */
+  public boolean put(TimelineMetrics metrics) {
+    List<TimelineMetric> metricList = metrics.getMetrics();
+    List<TimeSeries> seriesList = new ArrayList<>(metricList.size());
+    long reserved = 0;
+    for (TimelineMetric metric : metricList) {
+      TimeSeries datapoints = metric.getMetricSeries();
+      seriesList.add(datapoints);
+      reserved += BYTES_PER_SERIES + SeriesKey.size(metric) + (long) datapoints.size() * BYTES_PER_DATAPOINT;
+    }
+    if (!reserve(reserved)) {
+      return false;
+    }
+
+    swapLock.readLock().lock();
+    try {
+      ConcurrentMap<SeriesKey, Series> current = table;
+      long added = 0;
+
+      for (int i = 0; i < metricList.size(); i++) {
+        TimelineMetric metric = metricList.get(i);
+        SeriesKey key = new SeriesKey(metric);
+        Series series = current.get(key);
+        if (series == null) {
+          Series created = new Series(key, metric);
+          series = current.putIfAbsent(key, created);
+          if (series == null) {
+            series = created;
+            added += BYTES_PER_SERIES + key.size();
+          }
+        }
+        added += (long) series.merge(metric, seriesList.get(i)) * BYTES_PER_DATAPOINT;
+      }
+
+      // replace the estimate with the bytes actually added
+      bytes.addAndGet(added - reserved);
+    } finally {
+      swapLock.readLock().unlock();
+    }
+    return true;
+  }
+
+  /**
+   * @return false if the given bytes do not fit in the buffer
+   */
+  private boolean reserve(long reserved) {
+    while (true) {
+      long current = bytes.get();
+      if (current > 0 && current + reserved > maxBytes) {
+        return false;
+      }
+      if (bytes.compareAndSet(current, current + reserved)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return true if no series are buffered
+   */
+  public boolean isEmpty() {
+    return table.isEmpty();
+  }
+
+  /**
+   * @return the estimated bytes held by buffered and unreleased drained series
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Remove all buffered series. The bytes of the returned batch remain
+   * accounted for until it is passed to {@link #release(Batch)}.
+   *
+   * @return the buffered series, one metric per series
+   */
+  public Batch drain() {
+    ConcurrentMap<SeriesKey, Series> drained;
+
+    swapLock.writeLock().lock();
+    try {
+      drained = table;
+      table = new ConcurrentHashMap<>();
+    } finally {
+      swapLock.writeLock().unlock();
+    }
+
+    // no writer can reach the drained table any more
+    TimelineMetrics metrics = new TimelineMetrics();
+    List<TimelineMetric> metricList = new ArrayList<>(drained.size());
+    long drainedBytes = 0;
+    for (Series series : drained.values()) {
+      metricList.add(series.toTimelineMetric());
+      drainedBytes += BYTES_PER_SERIES + series.key.size() +
+        (long) series.datapoints.size() * BYTES_PER_DATAPOINT;
+    }
+    metrics.setMetrics(metricList);
+
+    return new Batch(metrics, drainedBytes);
+  }
+
+  /**
+   * Give back the bytes of a drained batch once it is committed.
+   */
+  public void release(Batch batch) {
+    bytes.addAndGet(-batch.bytes);
+  }
+
+  /**
+   * Series drained from the buffer.
+   */
+  public static class Batch {
+    private final TimelineMetrics metrics;
+    private final long bytes;
+
+    private Batch(TimelineMetrics metrics, long bytes) {
+      this.metrics = metrics;
+      this.bytes = bytes;
+    }
+
+    public TimelineMetrics getMetrics() {
+      return metrics;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+  }
+
+  private static class SeriesKey {
+    private final String metricName;
+    private final String appId;
+    private final String instanceId;
+    private final String hostName;
+    private final int hashCode;
+
+    SeriesKey(TimelineMetric metric) {
+      metricName = metric.getMetricName();
+      appId = metric.getAppId();
+      instanceId = metric.getInstanceId();
+      hostName = metric.getHostName();
+
+      int result = metricName != null ? metricName.hashCode() : 0;
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+      result = 31 * result + (hostName != null ? hostName.hashCode() : 0);
+      hashCode = result;
+    }
+
+    /**
+     * @return estimated bytes of the key strings
+     */
+    int size() {
+      return 2 * (length(metricName) + length(appId) + length(instanceId) + length(hostName));
+    }
+
+    /**
+     * @return estimated bytes of the key strings of a metric
+     */
+    static int size(TimelineMetric metric) {
+      return 2 * (length(metric.getMetricName()) + length(metric.getAppId()) +
+        length(metric.getInstanceId()) + length(metric.getHostName()));
+    }
+
+    private static int length(String s) {
+      return s == null ? 0 : s.length();
+    }
+
+    private static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof SeriesKey)) return false;
+
+      SeriesKey that = (SeriesKey) o;
+      return hashCode == that.hashCode &&
+        equal(metricName, that.metricName) &&
+        equal(hostName, that.hostName) &&
+        equal(appId, that.appId) &&
+        equal(instanceId, that.instanceId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class Series {
+    private final SeriesKey key;
+    private final TimeSeries datapoints = new TimeSeries();
+    private String units;
+    private String type;
+    private long startTime;
+    private long timestamp;
+
+    Series(SeriesKey key, TimelineMetric metric) {
+      this.key = key;
+      startTime = metric.getStartTime();
+      timestamp = metric.getTimestamp();
+    }
+
+    /**
+     * @return the number of datapoints added, not counting replaced ones
+     */
+    synchronized int merge(TimelineMetric metric, TimeSeries metricSeries) {
+      int before = datapoints.size();
+      datapoints.putAll(metricSeries);
+
+      if (metric.getUnits() != null) {
+        units = metric.getUnits();
+      }
+      if (metric.getType() != null) {
+        type = metric.getType();
+      }
+      startTime = Math.min(startTime, metric.getStartTime());
+      timestamp = Math.max(timestamp, metric.getTimestamp());
+
+      return datapoints.size() - before;
+    }
+
+    synchronized TimelineMetric toTimelineMetric() {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName(key.metricName);
+      metric.setAppId(key.appId);
+      metric.setInstanceId(key.instanceId);
+      metric.setHostName(key.hostName);
+      metric.setUnits(units);
+      metric.setType(type);
+      metric.setStartTime(startTime);
+      metric.setTimestamp(timestamp);
+      metric.setMetricSeries(datapoints);
+      return metric;
+    }
+  }
+}
@@ -0,0 +1,427 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitQueryExecutor;
+
+/**
+ * Cache of the results of time series queries, in time buckets aligned on
+ * multiples of a bucket length that depends on the precision. Queries over
+ * overlapping windows share the buckets they both cover, so a dashboard
+ * refreshing a sliding window only reads the part of the window before its
+ * first bucket boundary and the newest buckets. Consecutive buckets missing
+ * from the cache are read with one query and sliced into buckets. A row
+ * holds datapoints after its server time, so a bucket of such a run can
+ * hold the tail of a row of the bucket before it. The buckets of a run are
+ * therefore removed from the cache together.
+ *
+ * A bucket is cached once it ended more than one bucket length ago, until
+ * then it is read on every query so that late metrics and aggregates are
+ * returned. The cache is bounded by an estimate of the bytes of the cached
+ * series, least recently used buckets are evicted first.
+ */
+public class TimelineMetricsQueryCache implements MetricsSource {
+
+  /**
+   * Queries over more buckets are not cached.
+   */
+  static final int MAX_BUCKETS = 48;
+
+  private final Cache<BucketKey, Bucket> buckets;
+
+  public TimelineMetricsQueryCache(long maxBytes) {
+    this.buckets = CacheBuilder.newBuilder()
+      .maximumWeight(maxBytes)
+      .weigher(new Weigher<BucketKey, Bucket>() {
+        @Override
+        public int weigh(BucketKey key, Bucket bucket) {
+          return (int) Math.min(getBytes(key, bucket.metrics), Integer.MAX_VALUE);
+        }
+      })
+      .removalListener(new RemovalListener<BucketKey, Bucket>() {
+        @Override
+        public void onRemoval(RemovalNotification<BucketKey, Bucket> notification) {
+          removeRun(notification.getValue().run);
+        }
+      })
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Read the metrics of a grouped time series query, taking the settled
+   * buckets of its time range from the cache.
+   *
+   * @param metricNames the requested metric names, with their functions
+   * @param reader reads the metrics of the query or a part of its time range
+   */
+  public TimelineMetrics getMetrics(List<String> metricNames, DefaultCondition condition,
+                                    SplitQueryExecutor.SubQuery reader) throws SQLException, IOException {
+    return getMetrics(metricNames, condition, reader, System.currentTimeMillis());
+  }
+
+  TimelineMetrics getMetrics(List<String> metricNames, DefaultCondition condition,
+                             SplitQueryExecutor.SubQuery reader, long now) throws SQLException, IOException {
+    long startTime = condition.getStartTime();
+    long endTime = condition.getEndTime();
+    Precision precision = condition.getPrecision();
+    if (precision == null) {
+      precision = Precision.getPrecision(startTime, endTime);
+    }
+    long bucketLength = getBucketLength(precision);
+    long firstBucket = (startTime + bucketLength - 1) / bucketLength * bucketLength;
+    long settledEnd = Math.min(endTime, now - bucketLength) / bucketLength * bucketLength;
+    if (settledEnd <= firstBucket || (settledEnd - firstBucket) / bucketLength > MAX_BUCKETS) {
+      return reader.execute(condition);
+    }
+
+    // The result size limit applies to the whole query
+    PhoenixTransactSQL.validateRowCountLimit(condition);
+    // Every part reads the table of the precision of the whole query
+    condition.setPrecision(precision);
+    QueryKey queryKey = new QueryKey(metricNames, condition);
+
+    List<TimelineMetrics> parts = new ArrayList<>();
+    if (startTime < firstBucket) {
+      parts.add(toSeries(reader.execute(condition.copyForTimeRange(startTime, firstBucket))));
+    }
+    // Each run of consecutive missing buckets is read with one query
+    long missingStart = -1;
+    for (long bucket = firstBucket; bucket < settledEnd; bucket += bucketLength) {
+      Bucket cached = buckets.getIfPresent(new BucketKey(queryKey, bucket));
+      if (cached == null) {
+        if (missingStart < 0) {
+          missingStart = bucket;
+        }
+        continue;
+      }
+      if (missingStart >= 0) {
+        readBuckets(queryKey, missingStart, bucket, bucketLength, condition, reader, parts);
+        missingStart = -1;
+      }
+      parts.add(cached.metrics);
+    }
+    if (missingStart >= 0) {
+      readBuckets(queryKey, missingStart, settledEnd, bucketLength, condition, reader, parts);
+    }
+    if (settledEnd < endTime) {
+      parts.add(toSeries(reader.execute(condition.copyForTimeRange(settledEnd, endTime))));
+    }
+    return merge(parts);
+  }
+
+  /**
+   * Read consecutive buckets with one query and cache the slice of each
+   * bucket. Concurrent queries missing the same buckets each read them.
+   */
+  private void readBuckets(QueryKey queryKey, long startTime, long endTime, long bucketLength,
+                           DefaultCondition condition, SplitQueryExecutor.SubQuery reader,
+                           List<TimelineMetrics> parts) throws SQLException, IOException {
+    TimelineMetrics metrics = toSeries(reader.execute(condition.copyForTimeRange(startTime, endTime)));
+    List<BucketKey> run = new ArrayList<>();
+    for (long bucket = startTime; bucket < endTime; bucket += bucketLength) {
+      run.add(new BucketKey(queryKey, bucket));
+    }
+    for (BucketKey key : run) {
+      TimelineMetrics part = slice(metrics, key.startTime, key.startTime + bucketLength, startTime, endTime);
+      buckets.put(key, new Bucket(part, run));
+      parts.add(part);
+    }
+  }
+
+  /**
+   * Remove the buckets of a run which are still cached from it. Buckets
+   * cached since by another run are kept.
+   */
+  private void removeRun(List<BucketKey> run) {
+    for (BucketKey key : run) {
+      Bucket bucket = buckets.asMap().get(key);
+      if (bucket != null && bucket.run == run) {
+        buckets.asMap().remove(key, bucket);
+      }
+    }
+  }
+
+  /**
+   * Remove the cached buckets starting at the given time, along with the
+   * rest of their runs.
+   */
+  void invalidateBuckets(long bucketStart) {
+    for (BucketKey key : buckets.asMap().keySet()) {
+      if (key.startTime == bucketStart) {
+        buckets.invalidate(key);
+      }
+    }
+  }
+
+  /**
+   * Copy the datapoints of a bucket out of the metrics read for a run of
+   * buckets. Rows are selected by their server time, so datapoints before
+   * or after the run are kept in its first or last bucket.
+   */
+  static TimelineMetrics slice(TimelineMetrics metrics, long bucketStart, long bucketEnd,
+                               long runStart, long runEnd) {
+    long from = bucketStart == runStart ? Long.MIN_VALUE : bucketStart;
+    long to = bucketEnd >= runEnd ? Long.MAX_VALUE : bucketEnd;
+    TimelineMetrics slice = new TimelineMetrics();
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      TimeSeries series = metric.getMetricSeries().subSeries(from, to);
+      if (series.isEmpty()) {
+        continue;
+      }
+      TimelineMetric part = new TimelineMetric();
+      part.setMetricName(metric.getMetricName());
+      part.setType(metric.getType());
+      part.setUnits(metric.getUnits());
+      part.setAppId(metric.getAppId());
+      part.setInstanceId(metric.getInstanceId());
+      part.setHostName(metric.getHostName());
+      if (from == Long.MIN_VALUE) {
+        part.setTimestamp(metric.getTimestamp());
+        part.setStartTime(metric.getStartTime());
+      } else {
+        part.setTimestamp(series.firstTimestamp());
+        part.setStartTime(series.firstTimestamp());
+      }
+      part.setMetricSeries(series.copy());
+      slice.getMetrics().add(part);
+    }
+    return slice;
+  }
+
+  /**
+   * Hold the values of the metrics in primitive series, which take less
+   * memory in the cache and are merged by appending.
+   */
+  private static TimelineMetrics toSeries(TimelineMetrics metrics) {
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      metric.setMetricSeries(metric.getMetricSeries());
+    }
+    return metrics;
+  }
+
+  /**
+   * Merge the series of the parts into copies, cached parts are not modified.
+   */
+  static TimelineMetrics merge(List<TimelineMetrics> parts) {
+    Map<String, TimelineMetric> series = new LinkedHashMap<>();
+    for (TimelineMetrics part : parts) {
+      for (TimelineMetric metric : part.getMetrics()) {
+        String key = metric.getMetricName() + '\0' + metric.getHostName() + '\0' +
+          metric.getAppId() + '\0' + metric.getInstanceId();
+        TimelineMetric merged = series.get(key);
+        if (merged == null) {
+          series.put(key, new TimelineMetric(metric));
+          continue;
+        }
+        merged.addMetricValues(metric.getMetricSeries());
+        if (merged.getTimestamp() > metric.getTimestamp()) {
+          merged.setTimestamp(metric.getTimestamp());
+        }
+        if (merged.getStartTime() > metric.getStartTime()) {
+          merged.setStartTime(metric.getStartTime());
+        }
+      }
+    }
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().addAll(series.values());
+    return metrics;
+  }
+
+  /**
+   * @return the length of the buckets of a precision, a few dozen rows of a
+   * series at most
+   */
+  static long getBucketLength(Precision precision) {
+    switch (precision) {
+      case DAYS:
+        return TimeUnit.DAYS.toMillis(7);
+      case HOURS:
+        return TimeUnit.DAYS.toMillis(1);
+      case MINUTES:
+        return TimeUnit.HOURS.toMillis(1);
+      default:
+        return TimeUnit.MINUTES.toMillis(5);
+    }
+  }
+
+  /**
+   * @return the estimated bytes held by a cached bucket
+   */
+  private static long getBytes(BucketKey key, TimelineMetrics metrics) {
+    long bytes = key.query.size();
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      bytes += TimelineMetricsMemTable.BYTES_PER_SERIES +
+        2 * (length(metric.getMetricName()) + length(metric.getHostName()) +
+          length(metric.getAppId()) + length(metric.getInstanceId())) +
+        (long) metric.getMetricSeries().size() * TimelineMetricsMemTable.BYTES_PER_DATAPOINT;
+    }
+    return bytes;
+  }
+
+  private static int length(String s) {
+    return s == null ? 0 : s.length();
+  }
+
+  public CacheStats getStats() {
+    return buckets.stats();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    CacheStats stats = buckets.stats();
+    collector.addRecord("TimelineMetricsQueryCache")
+      .setContext("timeline")
+      .addCounter(Interns.info("CacheHits", "Buckets read from the cache"), stats.hitCount())
+      .addCounter(Interns.info("CacheMisses", "Buckets read from the store"), stats.missCount())
+      .addCounter(Interns.info("CacheEvictions", "Buckets evicted from the cache"), stats.evictionCount())
+      .addGauge(Interns.info("CachedBuckets", "Buckets in the cache"), buckets.size());
+  }
+
+  /**
+   * Series selected by a query. The requested metric names carry the
+   * functions of the query, the hostnames are those read. Names are sorted,
+   * the order they were requested in does not change the result.
+   */
+  private static class QueryKey {
+    private final List<String> metricNames;
+    private final List<String> hostnames;
+    private final String appId;
+    private final String instanceId;
+    private final Precision precision;
+    private final int hashCode;
+
+    QueryKey(List<String> metricNames, DefaultCondition condition) {
+      this.metricNames = sorted(metricNames);
+      this.hostnames = condition.getHostnames() == null ? null : sorted(condition.getHostnames());
+      this.appId = condition.getAppId();
+      this.instanceId = condition.getInstanceId();
+      this.precision = condition.getPrecision();
+
+      int result = this.metricNames.hashCode();
+      result = 31 * result + (hostnames != null ? hostnames.hashCode() : 0);
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      result = 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+      result = 31 * result + precision.hashCode();
+      hashCode = result;
+    }
+
+    private static List<String> sorted(List<String> names) {
+      List<String> sorted = new ArrayList<>(names);
+      Collections.sort(sorted);
+      return sorted;
+    }
+
+    /**
+     * @return estimated bytes of the key strings
+     */
+    long size() {
+      long size = 2 * (length(appId) + length(instanceId));
+      for (String metricName : metricNames) {
+        size += 2 * metricName.length();
+      }
+      if (hostnames != null) {
+        for (String hostname : hostnames) {
+          size += 2 * hostname.length();
+        }
+      }
+      return size;
+    }
+
+    private static boolean equal(Object a, Object b) {
+      return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof QueryKey)) return false;
+
+      QueryKey that = (QueryKey) o;
+      return hashCode == that.hashCode && precision == that.precision &&
+        equal(appId, that.appId) && equal(instanceId, that.instanceId) &&
+        metricNames.equals(that.metricNames) && equal(hostnames, that.hostnames);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * Cached slice of the metrics read for a run of buckets.
+   */
+  private static class Bucket {
+    private final TimelineMetrics metrics;
+    private final List<BucketKey> run;
+
+    Bucket(TimelineMetrics metrics, List<BucketKey> run) {
+      this.metrics = metrics;
+      this.run = run;
+    }
+  }
+
+  private static class BucketKey {
+    private final QueryKey query;
+    private final long startTime;
+
+    BucketKey(QueryKey query, long startTime) {
+      this.query = query;
+      this.startTime = startTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof BucketKey)) return false;
+
+      BucketKey that = (BucketKey) o;
+      return startTime == that.startTime && query.equals(that.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * query.hashCode() + (int) (startTime ^ (startTime >>> 32));
+    }
+  }
+}
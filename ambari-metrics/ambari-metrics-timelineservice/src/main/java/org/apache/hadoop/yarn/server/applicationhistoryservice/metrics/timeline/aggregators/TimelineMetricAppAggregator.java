@@ -116,6 +116,24 @@ public class TimelineMetricAppAggregator {
     }
   }
 
+  /**
+   * Check whether metrics of an app from a host are of interest to
+   * {@link #processTimelineClusterMetric}, so that callers can skip creating
+   * cluster metrics for the others.
+   *
+   * @param appId the app id of the metric
+   * @param hostname the host from which the metric originated
+   */
+  public boolean isCandidate(String appId, String hostname) {
+    if (appId == null) {
+      return false;
+    }
+    if (appId.equalsIgnoreCase(HOST_APP_ID)) {
+      return hostedAppsMap.containsKey(hostname);
+    }
+    return appIdsToAggregate.contains(appId);
+  }
+
   /**
    * Build a cluster app metric from a host metric
    */
@@ -113,11 +113,15 @@ public class TimelineMetricClusterAggregator extends AbstractTimelineAggregator
         updateAggregatesFromHost(hostAggregate, currentHostAggregate);
 
       } else {
-        // Switched over to a new metric - save existing
-        hostAggregate = new MetricHostAggregate();
+        // Switched over to a new metric. Rows of a metric stored by name and
+        // by id are not adjacent, so it may have been seen already.
         currentMetric.setTimestamp(endTime);
+        hostAggregate = hostAggregateMap.get(currentMetric);
+        if (hostAggregate == null) {
+          hostAggregate = new MetricHostAggregate();
+          hostAggregateMap.put(currentMetric, hostAggregate);
+        }
         updateAggregatesFromHost(hostAggregate, currentHostAggregate);
-        hostAggregateMap.put(currentMetric, hostAggregate);
         existingMetric = currentMetric;
       }
 
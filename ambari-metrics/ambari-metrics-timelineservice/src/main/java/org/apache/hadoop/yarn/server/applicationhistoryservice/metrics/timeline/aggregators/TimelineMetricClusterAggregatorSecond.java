@@ -18,10 +18,10 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
 
 
-import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.metrics2.sink.timeline.PostProcessingUtil;
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
@@ -29,6 +29,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.MetricCollectorHAController;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidDictionary;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
 
@@ -44,6 +45,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_APP_ID;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
@@ -57,6 +59,8 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
  * the precision table and saves into the aggregate.
  */
 public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggregator {
+  // Aggregates are saved in batches of at least this many records
+  private static final int SAVE_BATCH_SIZE = 10000;
   public Long timeSliceIntervalMillis;
   private TimelineMetricReadHelper timelineMetricReadHelper = new TimelineMetricReadHelper(true);
   // Aggregator to perform app-level aggregates for host metrics
@@ -101,11 +105,9 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     List<Long[]> timeSlices = getTimeSlices(startTime - serverTimeShiftAdjustment, endTime - serverTimeShiftAdjustment);
     // Initialize app aggregates for host metrics
     appAggregator.init();
-    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
-      aggregateMetricsFromResultSet(rs, timeSlices);
+    int saved = aggregateMetricsFromResultSet(rs, timeSlices);
 
-    LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
-    hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
+    LOG.info("Saved " + saved + " metric aggregates.");
     appAggregator.cleanup();
   }
 
@@ -149,46 +151,56 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     return timeSlices;
   }
 
-  private Map<TimelineClusterMetric, MetricClusterAggregate> aggregateMetricsFromResultSet(ResultSet rs, List<Long[]> timeSlices)
+  /**
+   * Aggregate the rows in row key order, i.e. by metric name, host and app.
+   * The rows stored by name of a metric name are consecutive, so its
+   * aggregates are complete once the next metric name starts and are saved
+   * in batches while the rest of the result set is read. Rows stored by id
+   * sort before all rows stored by name and are held until the rows stored by
+   * name of their metric name have been read.
+   *
+   * @return the number of aggregates saved
+   */
+  private int aggregateMetricsFromResultSet(ResultSet rs, List<Long[]> timeSlices)
     throws SQLException, IOException {
-    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
-      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
-    int numLiveHosts = 0;
+    ClusterSliceAggregation aggregation = new ClusterSliceAggregation(new TimeSlices(timeSlices));
 
     TimelineMetric metric = null;
+    boolean storedById = false;
     if (rs.next()) {
-      metric = timelineMetricReadHelper.getTimelineMetricFromResultSet(rs);
+      storedById = isStoredById(rs);
+      metric = timelineMetricReadHelper.getTimelineMetricWithSeriesFromResultSet(rs);
 
       // Call slice after all rows for a host are read
       while (rs.next()) {
-        TimelineMetric nextMetric = timelineMetricReadHelper.getTimelineMetricFromResultSet(rs);
+        boolean nextStoredById = isStoredById(rs);
+        TimelineMetric nextMetric = timelineMetricReadHelper.getTimelineMetricWithSeriesFromResultSet(rs);
         // If rows belong to same host combine them before slicing. This
         // avoids issues across rows that belong to same hosts but get
         // counted as coming from different ones.
         if (metric.equalsExceptTime(nextMetric)) {
-          metric.addMetricValues(nextMetric.getMetricValues());
+          metric.addMetricValues(nextMetric.getMetricSeries());
+          storedById |= nextStoredById;
         } else {
           // Process the current metric
-          int numHosts = processAggregateClusterMetrics(aggregateClusterMetrics, metric, timeSlices);
-          numLiveHosts = Math.max(numHosts, numLiveHosts);
+          aggregation.add(metric, storedById);
           metric = nextMetric;
+          storedById = nextStoredById;
         }
       }
     }
     // Process last metric
     if (metric != null) {
-      int numHosts = processAggregateClusterMetrics(aggregateClusterMetrics, metric, timeSlices);
-      numLiveHosts = Math.max(numHosts, numLiveHosts);
+      aggregation.add(metric, storedById);
     }
 
-    // Add app level aggregates to save
-    aggregateClusterMetrics.putAll(appAggregator.getAggregateClusterMetrics());
-
-    // Add liveHosts metric.
     long timestamp = timeSlices.get(timeSlices.size() - 1)[1];
-    processLiveHostsMetric(aggregateClusterMetrics, numLiveHosts, timestamp);
+    return aggregation.finish(timestamp);
+  }
 
-    return aggregateClusterMetrics;
+  private static boolean isStoredById(ResultSet rs) throws SQLException {
+    return TimelineMetricUuidDictionary.isUuid(rs.getString("METRIC_NAME")) ||
+      TimelineMetricUuidDictionary.isUuid(rs.getString("HOSTNAME"));
   }
 
   /**
@@ -241,183 +253,175 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
   protected Map<TimelineClusterMetric, Double> sliceFromTimelineMetric(
     TimelineMetric timelineMetric, List<Long[]> timeSlices) {
 
-    if (timelineMetric.getMetricValues().isEmpty()) {
+    TimeSlices slices = new TimeSlices(timeSlices);
+    if (!slice(timelineMetric, slices)) {
       return null;
     }
 
     Map<TimelineClusterMetric, Double> timelineClusterMetricMap =
       new HashMap<TimelineClusterMetric, Double>();
 
-    Long timeShift = timelineMetric.getTimestamp() - timelineMetric.getStartTime();
-    if (timeShift < 0) {
-      LOG.debug("Invalid time shift found, possible discrepancy in clocks. " +
-        "timeShift = " + timeShift);
-      timeShift = 0l;
+    for (int i = 0; i < slices.size(); i++) {
+      if (!Double.isNaN(slices.values[i])) {
+        TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
+          timelineMetric.getMetricName(),
+          timelineMetric.getAppId(),
+          timelineMetric.getInstanceId(),
+          slices.ends[i],
+          timelineMetric.getType());
+
+        timelineClusterMetricMap.put(clusterMetric, slices.values[i]);
+      }
+    }
+
+    return timelineClusterMetricMap;
+  }
+
+  /**
+   * Slice metric values into the given time slices and normalize them by
+   * averaging the values within a slice. Empty slices are interpolated if
+   * enabled. The result is left in {@link TimeSlices#values}.
+   *
+   * @return false if the metric has no values
+   */
+  private boolean slice(TimelineMetric timelineMetric, TimeSlices slices) {
+    TimeSeries metricSeries = timelineMetric.getMetricSeries();
+    if (metricSeries.isEmpty()) {
+      return false;
     }
 
-    Long prevTimestamp = -1l;
-    TimelineClusterMetric prevMetric = null;
+    double[] sliceValues = slices.sliceValues;
+    Arrays.fill(sliceValues, Double.NaN);
+
+    int prevSlice = -1;
     int count = 0;
     double sum = 0.0;
 
-    Map<Long,Double> timeSliceValueMap = new HashMap<>();
-    for (Map.Entry<Long, Double> metric : timelineMetric.getMetricValues().entrySet()) {
-      // TODO: investigate null values - pre filter
-      if (metric.getValue() == null) {
-        continue;
-      }
+    for (int i = 0; i < metricSeries.size(); i++) {
+      // Null values are dropped when building the series
+      double value = metricSeries.getValue(i);
 
-      Long timestamp = getSliceTimeForMetric(timeSlices, Long.parseLong(metric.getKey().toString()));
-      if (timestamp != -1) {
+      int slice = slices.indexOf(metricSeries.getTimestamp(i));
+      if (slice >= 0) {
         // Metric is within desired time range
-        TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
-          timelineMetric.getMetricName(),
-          timelineMetric.getAppId(),
-          timelineMetric.getInstanceId(),
-          timestamp,
-          timelineMetric.getType());
-
-        if (prevTimestamp < 0 || timestamp.equals(prevTimestamp)) {
-          Double newValue = metric.getValue();
-          if (newValue > 0.0) {
-            sum += newValue;
+        if (prevSlice < 0 || slice == prevSlice) {
+          if (value > 0.0) {
+            sum += value;
             count++;
           }
         } else {
-          double metricValue = (count > 0) ? (sum / count) : 0.0;
-            timelineClusterMetricMap.put(prevMetric, metricValue);
-          timeSliceValueMap.put(prevMetric.getTimestamp(), metricValue);
-          sum = metric.getValue();
+          sliceValues[prevSlice] = (count > 0) ? (sum / count) : 0.0;
+          sum = value;
           count = sum > 0.0 ? 1 : 0;
         }
 
-        prevTimestamp = timestamp;
-        prevMetric = clusterMetric;
+        prevSlice = slice;
       }
     }
 
-    if (prevTimestamp > 0) {
-      double metricValue = (count > 0) ? (sum / count) : 0.0;
-      timelineClusterMetricMap.put(prevMetric, metricValue);
-      timeSliceValueMap.put(prevTimestamp, metricValue);
+    if (prevSlice >= 0) {
+      sliceValues[prevSlice] = (count > 0) ? (sum / count) : 0.0;
     }
 
+    System.arraycopy(sliceValues, 0, slices.values, 0, sliceValues.length);
+
     if (interpolationEnabled) {
-      interpolateMissingPeriods(timelineClusterMetricMap, timelineMetric, timeSlices, timeSliceValueMap);
+      interpolateMissingPeriods(timelineMetric, metricSeries, slices);
     }
 
-    return timelineClusterMetricMap;
+    return true;
   }
 
-  private void interpolateMissingPeriods(Map<TimelineClusterMetric, Double> timelineClusterMetricMap,
-                                         TimelineMetric timelineMetric,
-                                         List<Long[]> timeSlices,
-                                         Map<Long, Double> timeSliceValueMap) {
+  private void interpolateMissingPeriods(TimelineMetric timelineMetric,
+                                         TimeSeries metricSeries,
+                                         TimeSlices slices) {
 
+    double[] sliceValues = slices.sliceValues;
+    double[] values = slices.values;
 
     if (StringUtils.isNotEmpty(timelineMetric.getType()) && "COUNTER".equalsIgnoreCase(timelineMetric.getType())) {
       //For Counter Based metrics, ok to do interpolation and extrapolation
 
       List<Long> requiredTimestamps = new ArrayList<>();
-      for (Long[] timeSlice : timeSlices) {
-        if (!timeSliceValueMap.containsKey(timeSlice[1])) {
-          requiredTimestamps.add(timeSlice[1]);
+      for (int i = 0; i < slices.size(); i++) {
+        if (Double.isNaN(sliceValues[i])) {
+          requiredTimestamps.add(slices.ends[i]);
         }
       }
-      Map<Long, Double> interpolatedValuesMap = PostProcessingUtil.interpolate(timelineMetric.getMetricValues(), requiredTimestamps);
+      if (requiredTimestamps.isEmpty()) {
+        return;
+      }
+
+      Map<Long, Double> interpolatedValuesMap = PostProcessingUtil.interpolate(metricSeries.toTreeMap(), requiredTimestamps);
 
       if (interpolatedValuesMap != null) {
-        for (Map.Entry<Long, Double> entry : interpolatedValuesMap.entrySet()) {
-          Double interpolatedValue = entry.getValue();
-
-          if (interpolatedValue != null) {
-            TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
-              timelineMetric.getMetricName(),
-              timelineMetric.getAppId(),
-              timelineMetric.getInstanceId(),
-              entry.getKey(),
-              timelineMetric.getType());
-
-            timelineClusterMetricMap.put(clusterMetric, interpolatedValue);
-          } else {
-            LOG.debug("Cannot compute interpolated value, hence skipping.");
+        for (int i = 0; i < slices.size(); i++) {
+          if (Double.isNaN(sliceValues[i])) {
+            Double interpolatedValue = interpolatedValuesMap.get(slices.ends[i]);
+
+            if (interpolatedValue != null) {
+              values[i] = interpolatedValue;
+            } else {
+              LOG.debug("Cannot compute interpolated value, hence skipping.");
+            }
           }
         }
       }
     } else {
       //For other metrics, ok to do only interpolation
 
+      boolean found = false;
+      for (double sliceValue : sliceValues) {
+        found |= !Double.isNaN(sliceValue);
+      }
+
       Double defaultNextSeenValue = null;
-      if (MapUtils.isEmpty(timeSliceValueMap) && MapUtils.isNotEmpty(timelineMetric.getMetricValues())) {
+      if (!found) {
         //If no value was found within the start_time based slices, but the metric has value in the server_time range,
         // use that.
 
         LOG.debug("No value found within range for metric : " + timelineMetric.getMetricName());
-        Map.Entry<Long,Double> firstEntry  = timelineMetric.getMetricValues().firstEntry();
-        defaultNextSeenValue = firstEntry.getValue();
-        LOG.debug("Found a data point outside timeslice range: " + new Date(firstEntry.getKey()) + ": " + defaultNextSeenValue);
+        defaultNextSeenValue = metricSeries.getValue(0);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Found a data point outside timeslice range: " + new Date(metricSeries.firstTimestamp()) + ": " + defaultNextSeenValue);
+        }
       }
 
-      for (int sliceNum = 0; sliceNum < timeSlices.size(); sliceNum++) {
-        Long[] timeSlice = timeSlices.get(sliceNum);
+      for (int sliceNum = 0; sliceNum < slices.size(); sliceNum++) {
+        if (!Double.isNaN(sliceValues[sliceNum])) {
+          continue;
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Found an empty slice : " + new Date(slices.starts[sliceNum]) + ", " + new Date(slices.ends[sliceNum]));
+        }
 
-        if (!timeSliceValueMap.containsKey(timeSlice[1])) {
-          LOG.debug("Found an empty slice : " + new Date(timeSlice[0]) + ", " + new Date(timeSlice[1]));
+        int prev = sliceNum - 1;
+        while (prev >= 0 && Double.isNaN(sliceValues[prev])) {
+          prev--;
+        }
 
-          Double lastSeenValue = null;
-          int index = sliceNum - 1;
-          Long[] prevTimeSlice = null;
-          while (lastSeenValue == null && index >= 0) {
-            prevTimeSlice = timeSlices.get(index--);
-            lastSeenValue = timeSliceValueMap.get(prevTimeSlice[1]);
-          }
+        int next = sliceNum + 1;
+        while (next < slices.size() && Double.isNaN(sliceValues[next])) {
+          next++;
+        }
 
-          Double nextSeenValue = null;
-          index = sliceNum + 1;
-          Long[] nextTimeSlice = null;
-          while (nextSeenValue == null && index < timeSlices.size()) {
-            nextTimeSlice = timeSlices.get(index++);
-            nextSeenValue = timeSliceValueMap.get(nextTimeSlice[1]);
-          }
+        Double lastSeenValue = prev >= 0 ? Double.valueOf(sliceValues[prev]) : null;
+        Double nextSeenValue = next < slices.size() ? Double.valueOf(sliceValues[next]) : defaultNextSeenValue;
 
-          if (nextSeenValue == null) {
-            nextSeenValue = defaultNextSeenValue;
-          }
+        Double interpolatedValue = PostProcessingUtil.interpolate(slices.ends[sliceNum],
+          (prev >= 0 ? Long.valueOf(slices.ends[prev]) : null), lastSeenValue,
+          (next < slices.size() ? Long.valueOf(slices.ends[next]) : null), nextSeenValue);
 
-          Double interpolatedValue = PostProcessingUtil.interpolate(timeSlice[1],
-            (prevTimeSlice != null ? prevTimeSlice[1] : null), lastSeenValue,
-            (nextTimeSlice != null ? nextTimeSlice[1] : null), nextSeenValue);
-
-          if (interpolatedValue != null) {
-            TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
-              timelineMetric.getMetricName(),
-              timelineMetric.getAppId(),
-              timelineMetric.getInstanceId(),
-              timeSlice[1],
-              timelineMetric.getType());
-
-            LOG.debug("Interpolated value : " + interpolatedValue);
-            timelineClusterMetricMap.put(clusterMetric, interpolatedValue);
-          } else {
-            LOG.debug("Cannot compute interpolated value, hence skipping.");
-          }
+        if (interpolatedValue != null) {
+          LOG.debug("Interpolated value : " + interpolatedValue);
+          values[sliceNum] = interpolatedValue;
+        } else {
+          LOG.debug("Cannot compute interpolated value, hence skipping.");
         }
       }
     }
   }
 
-  /**
-   * Return end of the time slice into which the metric fits.
-   */
-  private Long getSliceTimeForMetric(List<Long[]> timeSlices, Long timestamp) {
-    for (Long[] timeSlice : timeSlices) {
-      if (timestamp > timeSlice[0] && timestamp <= timeSlice[1]) {
-        return timeSlice[1];
-      }
-    }
-    return -1l;
-  }
-
   private void processLiveHostsMetric(Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics,
                                      int numLiveHosts, long timestamp) {
 
@@ -430,4 +434,313 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     aggregateClusterMetrics.put(timelineClusterMetric, metricClusterAggregate);
   }
 
+  /**
+   * Time slices of an aggregation run together with the space to slice the
+   * values of one host metric at a time, so that no map or boxed value is
+   * created per datapoint or slice.
+   */
+  private static class TimeSlices {
+    private final long[] starts;
+    private final long[] ends;
+    // Averages of the values within each slice, NaN if a slice has none
+    private final double[] sliceValues;
+    // Averages followed by interpolated values, NaN if neither is available
+    private final double[] values;
+
+    TimeSlices(List<Long[]> timeSlices) {
+      int size = timeSlices.size();
+      starts = new long[size];
+      ends = new long[size];
+      for (int i = 0; i < size; i++) {
+        starts[i] = timeSlices.get(i)[0];
+        ends[i] = timeSlices.get(i)[1];
+      }
+      sliceValues = new double[size];
+      values = new double[size];
+    }
+
+    int size() {
+      return ends.length;
+    }
+
+    /**
+     * Return index of the time slice into which the timestamp fits, -1 if none.
+     */
+    int indexOf(long timestamp) {
+      int index = Arrays.binarySearch(ends, timestamp);
+      if (index < 0) {
+        index = -(index + 1);
+      }
+      return index < ends.length && timestamp > starts[index] ? index : -1;
+    }
+  }
+
+  private static class SliceAggregatesKey {
+    private final String appId;
+    private final String instanceId;
+
+    SliceAggregatesKey(String appId, String instanceId) {
+      this.appId = appId;
+      this.instanceId = instanceId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      SliceAggregatesKey that = (SliceAggregatesKey) o;
+      return (appId != null ? appId.equals(that.appId) : that.appId == null) &&
+        (instanceId != null ? instanceId.equals(that.instanceId) : that.instanceId == null);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = appId != null ? appId.hashCode() : 0;
+      return 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+    }
+  }
+
+  private static class HostSeriesKey {
+    private final String hostName;
+    private final String appId;
+    private final String instanceId;
+
+    HostSeriesKey(TimelineMetric metric) {
+      this.hostName = metric.getHostName();
+      this.appId = metric.getAppId();
+      this.instanceId = metric.getInstanceId();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      HostSeriesKey that = (HostSeriesKey) o;
+      return (hostName != null ? hostName.equals(that.hostName) : that.hostName == null) &&
+        (appId != null ? appId.equals(that.appId) : that.appId == null) &&
+        (instanceId != null ? instanceId.equals(that.instanceId) : that.instanceId == null);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = hostName != null ? hostName.hashCode() : 0;
+      result = 31 * result + (appId != null ? appId.hashCode() : 0);
+      return 31 * result + (instanceId != null ? instanceId.hashCode() : 0);
+    }
+  }
+
+  /**
+   * Per slice accumulators of a metric name and app across hosts.
+   */
+  private static class SliceAggregates {
+    private final String appId;
+    private final String instanceId;
+    private final String type;
+    private final boolean supportsAggregates;
+    private final double[] sum;
+    private final double[] max;
+    private final double[] min;
+    private final int[] hosts;
+
+    SliceAggregates(TimelineMetric metric, boolean supportsAggregates, int size) {
+      appId = metric.getAppId();
+      instanceId = metric.getInstanceId();
+      type = metric.getType();
+      this.supportsAggregates = supportsAggregates;
+      sum = new double[size];
+      max = new double[size];
+      min = new double[size];
+      hosts = new int[size];
+    }
+
+    void add(int slice, double value) {
+      if (hosts[slice] == 0) {
+        sum[slice] = value;
+        max[slice] = value;
+        min[slice] = value;
+      } else {
+        sum[slice] += value;
+        max[slice] = Math.max(max[slice], value);
+        min[slice] = Math.min(min[slice], value);
+      }
+      hosts[slice]++;
+    }
+  }
+
+  /**
+   * Folds the sliced host metrics of one aggregation run into the
+   * accumulators of the current metric name and saves its aggregates once the
+   * next metric name starts. Each metric name is emitted once, so a save in
+   * between cannot be overwritten by a later part of the same metric name.
+   */
+  private class ClusterSliceAggregation {
+    private final TimeSlices slices;
+    private final Map<SliceAggregatesKey, SliceAggregates> metricAggregates = new HashMap<>();
+    // Host series with rows stored by id by decoded metric name, merged per
+    // host and sliced once the rows stored by name of the metric name are read
+    private final TreeMap<String, Map<HostSeriesKey, TimelineMetric>> heldSeries = new TreeMap<>();
+    private String metricName;
+    private Map<TimelineClusterMetric, MetricClusterAggregate> pending = new HashMap<>();
+    private int numLiveHosts = 0;
+    private int saved = 0;
+
+    ClusterSliceAggregation(TimeSlices slices) {
+      this.slices = slices;
+    }
+
+    void add(TimelineMetric metric, boolean storedById) throws SQLException {
+      if (storedById) {
+        hold(metric);
+        return;
+      }
+
+      if (!metric.getMetricName().equals(metricName)) {
+        emit();
+        release(metric.getMetricName());
+        metricName = metric.getMetricName();
+      }
+
+      // Count a host once even if some of its rows are stored by id
+      Map<HostSeriesKey, TimelineMetric> held = heldSeries.get(metricName);
+      if (held != null) {
+        TimelineMetric heldMetric = held.remove(new HostSeriesKey(metric));
+        if (heldMetric != null) {
+          metric.addMetricValues(heldMetric.getMetricSeries());
+        }
+      }
+
+      aggregate(metric);
+    }
+
+    private void hold(TimelineMetric metric) {
+      Map<HostSeriesKey, TimelineMetric> held = heldSeries.get(metric.getMetricName());
+      if (held == null) {
+        held = new HashMap<>();
+        heldSeries.put(metric.getMetricName(), held);
+      }
+
+      HostSeriesKey key = new HostSeriesKey(metric);
+      TimelineMetric heldMetric = held.get(key);
+      if (heldMetric == null) {
+        held.put(key, metric);
+      } else {
+        heldMetric.addMetricValues(metric.getMetricSeries());
+      }
+    }
+
+    /**
+     * Emit the held metric names which sort before the given one, or all of
+     * them if it is null. No rows stored by name of those are left to read.
+     */
+    private void release(String nextMetricName) throws SQLException {
+      while (!heldSeries.isEmpty() &&
+          (nextMetricName == null || heldSeries.firstKey().compareTo(nextMetricName) < 0)) {
+        metricName = heldSeries.firstKey();
+        emit();
+      }
+    }
+
+    private void aggregate(TimelineMetric metric) {
+      SliceAggregatesKey key = new SliceAggregatesKey(metric.getAppId(), metric.getInstanceId());
+      SliceAggregates aggregates = metricAggregates.get(key);
+      if (aggregates == null) {
+        TimelineMetricMetadataKey appKey = new TimelineMetricMetadataKey(metric.getMetricName(), metric.getAppId());
+        TimelineMetricMetadata metricMetadata = metadataManagerInstance.getMetadataCacheValue(appKey);
+        aggregates = new SliceAggregates(metric,
+          metricMetadata == null || metricMetadata.isSupportsAggregates(), slices.size());
+        metricAggregates.put(key, aggregates);
+      }
+
+      if (!aggregates.supportsAggregates) {
+        LOG.debug("Skipping cluster aggregation for " + metric.getMetricName());
+        return;
+      }
+
+      if (!slice(metric, slices)) {
+        return;
+      }
+
+      boolean appAggregateCandidate = appAggregator.isCandidate(metric.getAppId(), metric.getHostName());
+      for (int i = 0; i < slices.size(); i++) {
+        double value = slices.values[i];
+        if (Double.isNaN(value)) {
+          continue;
+        }
+
+        aggregates.add(i, value);
+
+        if (appAggregateCandidate) {
+          // Update app level aggregates
+          TimelineClusterMetric clusterMetric = new TimelineClusterMetric(metric.getMetricName(),
+            metric.getAppId(), metric.getInstanceId(), slices.ends[i], metric.getType());
+          appAggregator.processTimelineClusterMetric(clusterMetric, metric.getHostName(), value);
+        }
+      }
+    }
+
+    /**
+     * Move the aggregates of the current metric name to the pending records,
+     * saving them once there are enough.
+     */
+    private void emit() throws SQLException {
+      if (metricName != null) {
+        Map<HostSeriesKey, TimelineMetric> held = heldSeries.remove(metricName);
+        if (held != null) {
+          for (TimelineMetric metric : held.values()) {
+            aggregate(metric);
+          }
+        }
+      }
+
+      for (SliceAggregates aggregates : metricAggregates.values()) {
+        for (int i = 0; i < slices.size(); i++) {
+          if (aggregates.hosts[i] == 0) {
+            continue;
+          }
+
+          TimelineClusterMetric clusterMetric = new TimelineClusterMetric(metricName,
+            aggregates.appId, aggregates.instanceId, slices.ends[i], aggregates.type);
+          MetricClusterAggregate aggregate = new MetricClusterAggregate(aggregates.sum[i],
+            aggregates.hosts[i], null, aggregates.max[i], aggregates.min[i]);
+
+          pending.put(clusterMetric, aggregate);
+
+          numLiveHosts = Math.max(numLiveHosts, aggregate.getNumberOfHosts());
+        }
+      }
+      metricAggregates.clear();
+
+      if (pending.size() >= SAVE_BATCH_SIZE) {
+        save();
+      }
+    }
+
+    private void save() throws SQLException {
+      hBaseAccessor.saveClusterAggregateRecords(pending);
+      saved += pending.size();
+      pending = new HashMap<>();
+    }
+
+    /**
+     * Save the remaining aggregates along with app level aggregates and live
+     * hosts.
+     *
+     * @return the number of aggregates saved during the run
+     */
+    int finish(long timestamp) throws SQLException {
+      emit();
+      release(null);
+
+      // Add app level aggregates to save
+      pending.putAll(appAggregator.getAggregateClusterMetrics());
+
+      // Add liveHosts metric.
+      processLiveHostsMetric(pending, numLiveHosts, timestamp);
+
+      save();
+      return saved;
+    }
+  }
 }
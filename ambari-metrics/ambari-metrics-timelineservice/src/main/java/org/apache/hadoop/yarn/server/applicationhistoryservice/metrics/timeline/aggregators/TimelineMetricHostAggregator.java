@@ -106,11 +106,15 @@ public class TimelineMetricHostAggregator extends AbstractTimelineAggregator {
         // Recalculate totals with current metric
         hostAggregate.updateAggregates(currentHostAggregate);
       } else {
-        // Switched over to a new metric - save existing - create new aggregate
+        // Switched over to a new metric. Rows of a series stored by name and
+        // by id are not adjacent, so it may have been seen already.
         currentMetric.setTimestamp(endTime);
-        hostAggregate = new MetricHostAggregate();
+        hostAggregate = hostAggregateMap.get(currentMetric);
+        if (hostAggregate == null) {
+          hostAggregate = new MetricHostAggregate();
+          hostAggregateMap.put(currentMetric, hostAggregate);
+        }
         hostAggregate.updateAggregates(currentHostAggregate);
-        hostAggregateMap.put(currentMetric, hostAggregate);
         existingMetric = currentMetric;
       }
     }
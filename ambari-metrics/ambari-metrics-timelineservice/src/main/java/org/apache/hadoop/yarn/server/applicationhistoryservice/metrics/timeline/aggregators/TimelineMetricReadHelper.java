@@ -21,6 +21,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidDictionary;
 
 import java.io.IOException;
 import java.sql.ResultSet;
@@ -31,6 +32,8 @@ import java.util.TreeMap;
 public class TimelineMetricReadHelper {
 
   private boolean ignoreInstance = false;
+  // Metric names and hostnames stored as ids are read back as names
+  private final TimelineMetricUuidDictionary uuidDictionary = TimelineMetricUuidDictionary.getInstance();
 
   public TimelineMetricReadHelper() {}
 
@@ -42,20 +45,31 @@ public class TimelineMetricReadHelper {
       throws SQLException, IOException {
     TimelineMetric metric = getTimelineMetricCommonsFromResultSet(rs);
     TreeMap<Long, Double> sortedByTimeMetrics =
-      PhoenixHBaseAccessor.readMetricFromJSON(rs.getString("METRICS"));
+      PhoenixHBaseAccessor.readMetricValues(rs.getString("METRICS"));
     metric.setMetricValues(sortedByTimeMetrics);
     return metric;
   }
 
+  /**
+   * Same as {@link #getTimelineMetricFromResultSet(ResultSet)} with values
+   * held in a primitive series.
+   */
+  public TimelineMetric getTimelineMetricWithSeriesFromResultSet(ResultSet rs)
+      throws SQLException, IOException {
+    TimelineMetric metric = getTimelineMetricCommonsFromResultSet(rs);
+    metric.setMetricSeries(PhoenixHBaseAccessor.readMetricSeries(rs.getString("METRICS")));
+    return metric;
+  }
+
   public SingleValuedTimelineMetric getAggregatedTimelineMetricFromResultSet(ResultSet rs,
       Function f) throws SQLException, IOException {
 
     Function function = (f != null) ? f : Function.DEFAULT_VALUE_FUNCTION;
     SingleValuedTimelineMetric metric = new SingleValuedTimelineMetric(
-      rs.getString("METRIC_NAME") + function.getSuffix(),
+      uuidDictionary.decodeMetricName(rs.getString("METRIC_NAME")) + function.getSuffix(),
       rs.getString("APP_ID"),
       rs.getString("INSTANCE_ID"),
-      rs.getString("HOSTNAME"),
+      uuidDictionary.decodeHostname(rs.getString("HOSTNAME")),
       rs.getLong("SERVER_TIME"),
       rs.getLong("SERVER_TIME"),
       rs.getString("UNITS")
@@ -91,12 +105,12 @@ public class TimelineMetricReadHelper {
   public TimelineMetric getTimelineMetricCommonsFromResultSet(ResultSet rs)
       throws SQLException {
     TimelineMetric metric = new TimelineMetric();
-    metric.setMetricName(rs.getString("METRIC_NAME"));
+    metric.setMetricName(uuidDictionary.decodeMetricName(rs.getString("METRIC_NAME")));
     metric.setAppId(rs.getString("APP_ID"));
     if (!ignoreInstance) {
       metric.setInstanceId(rs.getString("INSTANCE_ID"));
     }
-    metric.setHostName(rs.getString("HOSTNAME"));
+    metric.setHostName(uuidDictionary.decodeHostname(rs.getString("HOSTNAME")));
     metric.setTimestamp(rs.getLong("SERVER_TIME"));
     metric.setStartTime(rs.getLong("START_TIME"));
     metric.setType(rs.getString("UNITS"));
@@ -132,7 +146,7 @@ public class TimelineMetricReadHelper {
 
   public TimelineClusterMetric fromResultSet(ResultSet rs) throws SQLException {
     return new TimelineClusterMetric(
-      rs.getString("METRIC_NAME"),
+      uuidDictionary.decodeMetricName(rs.getString("METRIC_NAME")),
       rs.getString("APP_ID"),
       ignoreInstance ? null : rs.getString("INSTANCE_ID"),
       rs.getLong("SERVER_TIME"),
@@ -154,10 +168,10 @@ public class TimelineMetricReadHelper {
   public TimelineMetric getTimelineMetricKeyFromResultSet(ResultSet rs)
       throws SQLException, IOException {
     TimelineMetric metric = new TimelineMetric();
-    metric.setMetricName(rs.getString("METRIC_NAME"));
+    metric.setMetricName(uuidDictionary.decodeMetricName(rs.getString("METRIC_NAME")));
     metric.setAppId(rs.getString("APP_ID"));
     metric.setInstanceId(rs.getString("INSTANCE_ID"));
-    metric.setHostName(rs.getString("HOSTNAME"));
+    metric.setHostName(uuidDictionary.decodeHostname(rs.getString("HOSTNAME")));
     metric.setTimestamp(rs.getLong("SERVER_TIME"));
     metric.setType(rs.getString("UNITS"));
     return metric;
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec;
+
+/**
+ * Big-endian bit source, counterpart of {@link BitWriter}.
+ */
+class BitReader {
+  private final byte[] buffer;
+  private int bitPosition = 0;
+
+  BitReader(byte[] buffer, int offsetBytes) {
+    this.buffer = buffer;
+    this.bitPosition = offsetBytes << 3;
+  }
+
+  boolean readBit() {
+    if ((bitPosition >>> 3) >= buffer.length) {
+      throw new IllegalArgumentException("Unexpected end of encoded series");
+    }
+    boolean bit = (buffer[bitPosition >>> 3] & (0x80 >>> (bitPosition & 7))) != 0;
+    bitPosition++;
+    return bit;
+  }
+
+  long readBits(int numBits) {
+    long value = 0;
+    for (int i = 0; i < numBits; i++) {
+      value = (value << 1) | (readBit() ? 1L : 0L);
+    }
+    return value;
+  }
+}
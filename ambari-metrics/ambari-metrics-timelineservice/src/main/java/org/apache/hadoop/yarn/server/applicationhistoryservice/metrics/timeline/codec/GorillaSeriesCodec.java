@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary encoding of a sorted time series following the scheme described in
+ * Facebook's Gorilla paper: timestamps are stored as delta-of-deltas and
+ * values as the XOR against the previous value, both bit packed.
+ *
+ * Layout: 1 byte format version, 32 bit point count, 64 bit first timestamp,
+ * 64 bit first value, followed by the packed (timestamp, value) pairs.
+ */
+public class GorillaSeriesCodec {
+
+  static final byte FORMAT_VERSION = 1;
+
+  private GorillaSeriesCodec() {
+  }
+
+  public static byte[] encode(TreeMap<Long, Double> values) {
+    int size = values.size();
+    long[] timestamps = new long[size];
+    double[] doubles = new double[size];
+    int i = 0;
+    for (Map.Entry<Long, Double> entry : values.entrySet()) {
+      timestamps[i] = entry.getKey();
+      doubles[i] = entry.getValue();
+      i++;
+    }
+    return encode(timestamps, doubles, size);
+  }
+
+  public static byte[] encode(TimeSeries series) {
+    int size = series.size();
+    long[] timestamps = new long[size];
+    double[] doubles = new double[size];
+    for (int i = 0; i < size; i++) {
+      timestamps[i] = series.getTimestamp(i);
+      doubles[i] = series.getValue(i);
+    }
+    return encode(timestamps, doubles, size);
+  }
+
+  /**
+   * Encode the first {@code count} points, timestamps must be ascending.
+   */
+  public static byte[] encode(long[] timestamps, double[] values, int count) {
+    // Typical series compress to ~2 bytes per point
+    BitWriter writer = new BitWriter(21 + count * 2);
+    writer.writeBits(FORMAT_VERSION, 8);
+    writer.writeBits(count, 32);
+    if (count == 0) {
+      return writer.toByteArray();
+    }
+
+    long prevTimestamp = timestamps[0];
+    long prevValueBits = Double.doubleToRawLongBits(values[0]);
+    writer.writeBits(prevTimestamp, 64);
+    writer.writeBits(prevValueBits, 64);
+
+    long prevDelta = 0;
+    int prevLeading = -1;
+    int prevTrailing = 0;
+
+    for (int i = 1; i < count; i++) {
+      long delta = timestamps[i] - prevTimestamp;
+      writeDeltaOfDelta(writer, delta - prevDelta);
+      prevDelta = delta;
+      prevTimestamp = timestamps[i];
+
+      long valueBits = Double.doubleToRawLongBits(values[i]);
+      long xor = valueBits ^ prevValueBits;
+      prevValueBits = valueBits;
+      if (xor == 0) {
+        writer.writeBit(false);
+        continue;
+      }
+      writer.writeBit(true);
+      int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+      int trailing = Long.numberOfTrailingZeros(xor);
+      if (prevLeading != -1 && leading >= prevLeading && trailing >= prevTrailing) {
+        // Meaningful bits fit in the previous window
+        writer.writeBit(false);
+        writer.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+      } else {
+        int meaningful = 64 - leading - trailing;
+        writer.writeBit(true);
+        writer.writeBits(leading, 5);
+        writer.writeBits(meaningful - 1, 6);
+        writer.writeBits(xor >>> trailing, meaningful);
+        prevLeading = leading;
+        prevTrailing = trailing;
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  public static TreeMap<Long, Double> decode(byte[] encoded) {
+    return decodeSeries(encoded).toTreeMap();
+  }
+
+  public static TimeSeries decodeSeries(byte[] encoded) {
+    BitReader reader = new BitReader(encoded, 0);
+    int version = (int) reader.readBits(8);
+    if (version != FORMAT_VERSION) {
+      throw new IllegalArgumentException("Unsupported series format version " + version);
+    }
+    int count = (int) reader.readBits(32);
+    TimeSeries values = new TimeSeries(count);
+    if (count == 0) {
+      return values;
+    }
+
+    long timestamp = reader.readBits(64);
+    long valueBits = reader.readBits(64);
+    values.put(timestamp, Double.longBitsToDouble(valueBits));
+
+    long delta = 0;
+    int leading = 0;
+    int trailing = 0;
+    for (int i = 1; i < count; i++) {
+      delta += readDeltaOfDelta(reader);
+      timestamp += delta;
+
+      if (reader.readBit()) {
+        if (reader.readBit()) {
+          leading = (int) reader.readBits(5);
+          int meaningful = (int) reader.readBits(6) + 1;
+          trailing = 64 - leading - meaningful;
+        }
+        valueBits ^= reader.readBits(64 - leading - trailing) << trailing;
+      }
+      values.put(timestamp, Double.longBitsToDouble(valueBits));
+    }
+    return values;
+  }
+
+  private static void writeDeltaOfDelta(BitWriter writer, long deltaOfDelta) {
+    if (deltaOfDelta == 0) {
+      writer.writeBit(false);
+    } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+      writer.writeBits(0x2, 2);
+      writer.writeBits(deltaOfDelta + 63, 7);
+    } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+      writer.writeBits(0x6, 3);
+      writer.writeBits(deltaOfDelta + 255, 9);
+    } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+      writer.writeBits(0xE, 4);
+      writer.writeBits(deltaOfDelta + 2047, 12);
+    } else {
+      writer.writeBits(0xF, 4);
+      writer.writeBits(deltaOfDelta, 64);
+    }
+  }
+
+  private static long readDeltaOfDelta(BitReader reader) {
+    if (!reader.readBit()) {
+      return 0;
+    }
+    if (!reader.readBit()) {
+      return reader.readBits(7) - 63;
+    }
+    if (!reader.readBit()) {
+      return reader.readBits(9) - 255;
+    }
+    if (!reader.readBit()) {
+      return reader.readBits(12) - 2047;
+    }
+    return reader.readBits(64);
+  }
+}
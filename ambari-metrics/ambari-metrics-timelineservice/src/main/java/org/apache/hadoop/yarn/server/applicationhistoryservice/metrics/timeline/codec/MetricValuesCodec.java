@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the METRICS column value. The column is a VARCHAR, so
+ * binary series are stored Base64 encoded behind a marker character that
+ * can never start a JSON document. This lets rows written in either format
+ * live side by side in the same table and be read transparently.
+ */
+public class MetricValuesCodec {
+
+  static final char BINARY_MARKER = '#';
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final TypeReference<TreeMap<Long, Double>> metricValuesTypeRef =
+    new TypeReference<TreeMap<Long, Double>>() {};
+
+  private MetricValuesCodec() {
+  }
+
+  public static String encode(TreeMap<Long, Double> values,
+                              MetricValuesEncoding encoding) throws IOException {
+    if (encoding == MetricValuesEncoding.BINARY && !values.containsValue(null)) {
+      return BINARY_MARKER +
+        DatatypeConverter.printBase64Binary(GorillaSeriesCodec.encode(values));
+    }
+    return TimelineUtils.dumpTimelineRecordtoJSON(values);
+  }
+
+  public static TreeMap<Long, Double> decode(String stored) throws IOException {
+    if (stored != null && !stored.isEmpty() && stored.charAt(0) == BINARY_MARKER) {
+      try {
+        return GorillaSeriesCodec.decode(
+          DatatypeConverter.parseBase64Binary(stored.substring(1)));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Unable to decode binary metric values", e);
+      }
+    }
+    return mapper.readValue(stored, metricValuesTypeRef);
+  }
+
+  /**
+   * Same as {@link #decode(String)} but without boxing datapoints.
+   */
+  public static TimeSeries decodeSeries(String stored) throws IOException {
+    if (stored != null && !stored.isEmpty() && stored.charAt(0) == BINARY_MARKER) {
+      try {
+        return GorillaSeriesCodec.decodeSeries(
+          DatatypeConverter.parseBase64Binary(stored.substring(1)));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Unable to decode binary metric values", e);
+      }
+    }
+    return mapper.readValue(stored, TimeSeries.class);
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Storage format for the METRICS column of the precision table.
+ */
+public enum MetricValuesEncoding {
+  /**
+   * Jackson serialized TreeMap of timestamp to value, the original format.
+   */
+  JSON,
+  /**
+   * Delta-of-delta timestamps and XOR compressed values, see
+   * {@link GorillaSeriesCodec}.
+   */
+  BINARY;
+
+  /**
+   * @return the encoding named case-insensitively, JSON if the name is empty
+   * or unknown
+   */
+  public static MetricValuesEncoding fromString(String encoding) {
+    if (encoding == null || encoding.trim().isEmpty()) {
+      return JSON;
+    }
+    for (MetricValuesEncoding value : values()) {
+      if (value.name().equalsIgnoreCase(encoding.trim())) {
+        return value;
+      }
+    }
+    LogFactory.getLog(MetricValuesEncoding.class).warn("Unknown metric values encoding " +
+      encoding + ", using " + JSON);
+    return JSON;
+  }
+}
@@ -27,6 +27,7 @@ import org.apache.hadoop.metrics2.sink.timeline.MetadataException;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.DownSamplerUtils;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
 
 import java.sql.SQLException;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +47,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DISABLE_METRIC_METADATA_MGMT;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_SYNC_INIT_DELAY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_SYNC_SCHEDULE_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_UUID_KEYS_ENABLED;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_WILDCARD_EXPANSION_LIMIT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRIC_AGGREGATION_SQL_FILTERS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRIC_METADATA_FILTERS;
 
 public class TimelineMetricMetadataManager {
@@ -62,6 +67,11 @@ public class TimelineMetricMetadataManager {
 
   private PhoenixHBaseAccessor hBaseAccessor;
   private Configuration metricsConf;
+  // Ids written in place of persisted metric names and hostnames
+  private final TimelineMetricUuidDictionary uuidDictionary = TimelineMetricUuidDictionary.getInstance();
+  // Cached metric names and hostnames, to expand wildcards in queries
+  private final TimelineMetricNameIndex metricNameIndex = new TimelineMetricNameIndex();
+  private final int wildcardExpansionLimit;
 
   TimelineMetricMetadataSync metricMetadataSync;
   // Filter metrics names matching given patterns, from metadata
@@ -76,6 +86,9 @@ public class TimelineMetricMetadataManager {
     if (!StringUtils.isEmpty(patternStrings)) {
       metricNameFilters.addAll(Arrays.asList(patternStrings.split(",")));
     }
+    wildcardExpansionLimit = metricsConf.getInt(TIMELINE_METRICS_WILDCARD_EXPANSION_LIMIT, 100);
+    // Written by the cluster aggregator, without metadata
+    metricNameIndex.addMetric("live_hosts", TimelineMetricNameIndex.HOST_APP_ID);
   }
 
   /**
@@ -85,6 +98,7 @@ public class TimelineMetricMetadataManager {
     if (metricsConf.getBoolean(DISABLE_METRIC_METADATA_MGMT, false)) {
       isDisabled = true;
     } else {
+      configureUuidDictionary();
       metricMetadataSync = new TimelineMetricMetadataSync(this);
       // Schedule the executor to sync to store
       executorService.scheduleWithFixedDelay(metricMetadataSync,
@@ -98,11 +112,19 @@ public class TimelineMetricMetadataManager {
         LOG.info("Retrieved " + metadata.size() + ", metadata objects from store.");
         // Store in the cache
         METADATA_CACHE.putAll(metadata);
+        for (TimelineMetricMetadataKey key : metadata.keySet()) {
+          uuidDictionary.registerMetric(key.getMetricName(), key.getAppId());
+          metricNameIndex.addMetric(key.getMetricName(), key.getAppId());
+        }
 
         Map<String, Set<String>> hostedAppData = getHostedAppsFromStore();
 
         LOG.info("Retrieved " + hostedAppData.size() + " host objects from store.");
         HOSTED_APPS_MAP.putAll(hostedAppData);
+        for (Map.Entry<String, Set<String>> hostedApps : hostedAppData.entrySet()) {
+          uuidDictionary.registerHost(hostedApps.getKey());
+          indexHost(hostedApps.getKey(), hostedApps.getValue());
+        }
 
       } catch (SQLException e) {
         LOG.warn("Exception loading metric metadata", e);
@@ -110,6 +132,89 @@ public class TimelineMetricMetadataManager {
     }
   }
 
+  /**
+   * Metrics selected by name patterns in SQL, by the downsamplers and the
+   * cluster aggregator filters, are always stored by name.
+   */
+  private void configureUuidDictionary() {
+    if (!metricsConf.getBoolean(TIMELINE_METRICS_UUID_KEYS_ENABLED, false)) {
+      uuidDictionary.configure(false, null);
+      return;
+    }
+    List<String> plainPatterns = new ArrayList<>(DownSamplerUtils.getDownsampleMetricPatterns(metricsConf));
+    String skipAggrPatternStrings = metricsConf.get(TIMELINE_METRIC_AGGREGATION_SQL_FILTERS);
+    if (!StringUtils.isEmpty(skipAggrPatternStrings)) {
+      plainPatterns.addAll(Arrays.asList(skipAggrPatternStrings.split(",")));
+    }
+    uuidDictionary.configure(true, plainPatterns);
+    LOG.info("Storing metric and host ids in row keys, metrics stored by name : " + plainPatterns);
+  }
+
+  public TimelineMetricUuidDictionary getUuidDictionary() {
+    return uuidDictionary;
+  }
+
+  void indexHost(String hostname, Collection<String> appIds) {
+    for (String appId : appIds) {
+      metricNameIndex.addHost(hostname, appId);
+    }
+  }
+
+  public TimelineMetricNameIndex getMetricNameIndex() {
+    return metricNameIndex;
+  }
+
+  /**
+   * Replace the SQL LIKE patterns among the requested metric names by the
+   * cached names they match, so that a query reads the row key ranges of
+   * exact names instead of filtering a range scan on the pattern. A pattern
+   * is kept if it matches no cached name or more names than the expansion
+   * limit.
+   *
+   * @return the expanded names, or the same list if nothing was expanded
+   */
+  public List<String> expandMetricNames(List<String> metricNames, String appId) {
+    // Metrics skipped by the metadata filters are not cached
+    if (isDisabled || wildcardExpansionLimit <= 0 || !metricNameFilters.isEmpty()) {
+      return metricNames;
+    }
+    return expandWildcards(metricNames, appId, true);
+  }
+
+  /**
+   * Same as {@link #expandMetricNames(List, String)} for hostnames, matched
+   * against the hosts of the app.
+   */
+  public List<String> expandHostnames(List<String> hostnames, String appId) {
+    if (isDisabled || wildcardExpansionLimit <= 0) {
+      return hostnames;
+    }
+    return expandWildcards(hostnames, appId, false);
+  }
+
+  private List<String> expandWildcards(List<String> names, String appId, boolean metricNames) {
+    if (names == null) {
+      return null;
+    }
+    Set<String> expanded = new LinkedHashSet<>();
+    boolean matched = false;
+    for (String name : names) {
+      List<String> matches = null;
+      if (name.contains("%")) {
+        matches = metricNames ?
+          metricNameIndex.findMetricNames(name, appId, wildcardExpansionLimit) :
+          metricNameIndex.findHostnames(name, appId, wildcardExpansionLimit);
+      }
+      if (matches == null || matches.isEmpty()) {
+        expanded.add(name);
+      } else {
+        expanded.addAll(matches);
+        matched = true;
+      }
+    }
+    return matched ? new ArrayList<>(expanded) : names;
+  }
+
   public Map<TimelineMetricMetadataKey, TimelineMetricMetadata> getMetadataCache() {
     return METADATA_CACHE;
   }
@@ -168,6 +273,7 @@ public class TimelineMetricMetadataManager {
 
     } else {
       METADATA_CACHE.put(key, metadata);
+      metricNameIndex.addMetric(key.getMetricName(), key.getAppId());
     }
   }
 
@@ -185,6 +291,7 @@ public class TimelineMetricMetadataManager {
 
     if (!apps.contains(appId)) {
       apps.add(appId);
+      metricNameIndex.addHost(hostname, appId);
       SYNC_HOSTED_APPS_METADATA.set(true);
     }
   }
@@ -84,6 +84,8 @@ public class TimelineMetricMetadataSync implements Runnable {
         metadata.setIsPersisted(true);
         // Update cache
         cacheManager.getMetadataCache().put(key, metadata);
+        // Persisted names can be written as ids
+        cacheManager.getUuidDictionary().registerMetric(key.getMetricName(), key.getAppId());
       }
     }
   }
@@ -106,6 +108,10 @@ public class TimelineMetricMetadataSync implements Runnable {
         if (!cachedMetadata.containsKey(metadataEntry.getKey())) {
           cachedMetadata.put(metadataEntry.getKey(), metadataEntry.getValue());
         }
+        cacheManager.getUuidDictionary().registerMetric(
+          metadataEntry.getKey().getMetricName(), metadataEntry.getKey().getAppId());
+        cacheManager.getMetricNameIndex().addMetric(
+          metadataEntry.getKey().getMetricName(), metadataEntry.getKey().getAppId());
       }
     }
   }
@@ -137,6 +143,9 @@ public class TimelineMetricMetadataSync implements Runnable {
         try {
           cacheManager.persistHostedAppsMetadata(dataToSync);
           cacheManager.markSuccessOnSyncHostedAppsMetadata();
+          for (String hostname : dataToSync.keySet()) {
+            cacheManager.getUuidDictionary().registerHost(hostname);
+          }
 
         } catch (SQLException e) {
           LOG.warn("Error persisting hosted apps metadata.", e);
@@ -163,6 +172,8 @@ public class TimelineMetricMetadataSync implements Runnable {
         if (!cachedData.containsKey(storeEntry.getKey())) {
           cachedData.put(storeEntry.getKey(), storeEntry.getValue());
         }
+        cacheManager.getUuidDictionary().registerHost(storeEntry.getKey());
+        cacheManager.indexHost(storeEntry.getKey(), storeEntry.getValue());
       }
     }
   }
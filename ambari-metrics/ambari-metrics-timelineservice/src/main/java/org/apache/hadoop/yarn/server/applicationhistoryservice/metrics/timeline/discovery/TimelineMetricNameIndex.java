@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Sorted index of the metric names and hostnames in the metadata caches,
+ * with the apps reporting them. Used to replace SQL LIKE patterns in queries
+ * by the names they match.
+ *
+ * A pattern is only matched against the names sharing its literal prefix,
+ * so "regionserver.Server.%" visits the region server metrics and not every
+ * known metric.
+ */
+public class TimelineMetricNameIndex {
+  static final String HOST_APP_ID = "HOST";
+
+  // metric name -> appIds
+  private final ConcurrentSkipListMap<String, Set<String>> metricApps = new ConcurrentSkipListMap<>();
+  // hostname -> appIds
+  private final ConcurrentSkipListMap<String, Set<String>> hostApps = new ConcurrentSkipListMap<>();
+
+  public void addMetric(String metricName, String appId) {
+    add(metricApps, metricName, appId);
+  }
+
+  public void addHost(String hostname, String appId) {
+    add(hostApps, hostname, appId);
+  }
+
+  public void clear() {
+    metricApps.clear();
+    hostApps.clear();
+  }
+
+  /**
+   * Host metrics are also stored under the appId of the app aggregates, so
+   * metrics of the HOST app match any appId.
+   *
+   * @param appId the requested appId, metrics of all apps match if null
+   * @return the sorted metric names matching the LIKE pattern, null if more
+   * than limit names match
+   */
+  public List<String> findMetricNames(String likePattern, String appId, int limit) {
+    return find(metricApps, likePattern, appId, true, limit);
+  }
+
+  /**
+   * @param appId the requested appId, all hosts match if null
+   * @return the sorted hostnames matching the LIKE pattern, null if more
+   * than limit names match
+   */
+  public List<String> findHostnames(String likePattern, String appId, int limit) {
+    return find(hostApps, likePattern, appId, false, limit);
+  }
+
+  private static void add(ConcurrentSkipListMap<String, Set<String>> index, String name, String appId) {
+    if (name == null) {
+      return;
+    }
+    Set<String> apps = index.get(name);
+    if (apps == null) {
+      apps = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      Set<String> current = index.putIfAbsent(name, apps);
+      if (current != null) {
+        apps = current;
+      }
+    }
+    if (appId != null) {
+      apps.add(appId);
+    }
+  }
+
+  private static List<String> find(ConcurrentSkipListMap<String, Set<String>> index, String likePattern,
+                                   String appId, boolean matchHostApp, int limit) {
+    String prefix = literalPrefix(likePattern);
+    Pattern pattern = TimelineMetricUuidDictionary.toRegex(likePattern);
+    List<String> names = new ArrayList<>();
+
+    for (Map.Entry<String, Set<String>> entry : index.tailMap(prefix).entrySet()) {
+      String name = entry.getKey();
+      if (!name.startsWith(prefix)) {
+        break;
+      }
+      if (pattern.matcher(name).matches() && hasApp(entry.getValue(), appId, matchHostApp)) {
+        if (names.size() == limit) {
+          return null;
+        }
+        names.add(name);
+      }
+    }
+    return names;
+  }
+
+  private static boolean hasApp(Set<String> apps, String appId, boolean matchHostApp) {
+    if (appId == null) {
+      return true;
+    }
+    for (String app : apps) {
+      if (appId.equalsIgnoreCase(app) || (matchHostApp && HOST_APP_ID.equals(app))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static String literalPrefix(String likePattern) {
+    for (int i = 0; i < likePattern.length(); i++) {
+      char c = likePattern.charAt(i);
+      if (c == '%' || c == '_') {
+        return likePattern.substring(0, i);
+      }
+    }
+    return likePattern;
+  }
+}
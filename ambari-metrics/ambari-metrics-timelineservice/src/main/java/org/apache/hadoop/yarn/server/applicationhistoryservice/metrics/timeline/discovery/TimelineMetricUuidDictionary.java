@@ -0,0 +1,358 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Maps (metric name, appId) pairs and hostnames to short fixed width ids,
+ * which are stored in the METRIC_NAME and HOSTNAME row key columns in place
+ * of the full names.
+ *
+ * Ids are derived from an MD5 hash of the name, so every collector assigns
+ * the same id without coordination, and are prefixed with {@link #UUID_MARKER}
+ * which never occurs in a name. A metric id is 11 characters, a host id 8.
+ *
+ * Only names persisted to the METRICS_METADATA and HOSTED_APPS_METADATA
+ * tables are registered, so a row is never written with an id that cannot be
+ * translated back after a restart. Rows written with full names before the
+ * ids were enabled stay readable: queries look up both forms and ids are
+ * translated back to names on read.
+ */
+public class TimelineMetricUuidDictionary {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricUuidDictionary.class);
+
+  public static final char UUID_MARKER = '\u0001';
+  static final int METRIC_UUID_LENGTH = 10;
+  static final int HOST_UUID_LENGTH = 7;
+
+  // 6 bits per character, no SQL LIKE wildcards
+  private static final char[] ALPHABET =
+    "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz+/".toCharArray();
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final TimelineMetricUuidDictionary INSTANCE = new TimelineMetricUuidDictionary();
+
+  // metric name -> appId -> id
+  private final ConcurrentMap<String, Map<String, String>> metricUuids = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, TimelineMetricMetadataKey> metricsByUuid = new ConcurrentHashMap<>();
+  private final Map<String, String> hostUuids = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, String> hostsByUuid = new ConcurrentHashMap<>();
+  // Ids claimed by more than one name, never used for writing
+  private final Set<String> collidedUuids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final int metricUuidLength;
+  private final int hostUuidLength;
+  private volatile boolean enabled = false;
+  private volatile List<Pattern> plainMetricPatterns = Collections.emptyList();
+
+  TimelineMetricUuidDictionary() {
+    this(METRIC_UUID_LENGTH, HOST_UUID_LENGTH);
+  }
+
+  TimelineMetricUuidDictionary(int metricUuidLength, int hostUuidLength) {
+    this.metricUuidLength = metricUuidLength;
+    this.hostUuidLength = hostUuidLength;
+  }
+
+  public static TimelineMetricUuidDictionary getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param enabled write ids in place of names
+   * @param plainMetricNamePatterns SQL LIKE patterns of metric names which are
+   *                                always written in full, because aggregators
+   *                                select them by pattern
+   */
+  public void configure(boolean enabled, Collection<String> plainMetricNamePatterns) {
+    List<Pattern> patterns = new ArrayList<>();
+    if (plainMetricNamePatterns != null) {
+      for (String pattern : plainMetricNamePatterns) {
+        if (pattern != null && !pattern.trim().isEmpty()) {
+          patterns.add(toRegex(pattern.trim()));
+        }
+      }
+    }
+    this.plainMetricPatterns = patterns;
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void clear() {
+    metricUuids.clear();
+    metricsByUuid.clear();
+    hostUuids.clear();
+    hostsByUuid.clear();
+    collidedUuids.clear();
+  }
+
+  public static boolean isUuid(String name) {
+    return name != null && !name.isEmpty() && name.charAt(0) == UUID_MARKER;
+  }
+
+  /**
+   * Register a metric persisted to the metadata table.
+   */
+  public void registerMetric(String metricName, String appId) {
+    if (!enabled || metricName == null || isPlainMetric(metricName)) {
+      return;
+    }
+    String app = appId == null ? "" : appId;
+    Map<String, String> apps = metricUuids.get(metricName);
+    if (apps != null && apps.containsKey(app)) {
+      return;
+    }
+
+    String uuid = createUuid(metricName + '\0' + app, metricUuidLength);
+    TimelineMetricMetadataKey key = new TimelineMetricMetadataKey(metricName, appId);
+    TimelineMetricMetadataKey existing = metricsByUuid.putIfAbsent(uuid, key);
+    if (existing != null && !existing.equals(key)) {
+      LOG.warn("Metric " + metricName + " of " + appId + " has the same id as " +
+        existing.getMetricName() + " of " + existing.getAppId() + ", both are stored by name.");
+      collidedUuids.add(uuid);
+      return;
+    }
+
+    if (apps == null) {
+      apps = new ConcurrentHashMap<>();
+      Map<String, String> current = metricUuids.putIfAbsent(metricName, apps);
+      if (current != null) {
+        apps = current;
+      }
+    }
+    apps.put(app, uuid);
+  }
+
+  /**
+   * Register a host persisted to the hosted apps table.
+   */
+  public void registerHost(String hostname) {
+    if (!enabled || hostname == null || hostUuids.containsKey(hostname)) {
+      return;
+    }
+
+    String uuid = createUuid(hostname, hostUuidLength);
+    String existing = hostsByUuid.putIfAbsent(uuid, hostname);
+    if (existing != null && !existing.equals(hostname)) {
+      LOG.warn("Host " + hostname + " has the same id as " + existing + ", both are stored by name.");
+      collidedUuids.add(uuid);
+      return;
+    }
+    hostUuids.put(hostname, uuid);
+  }
+
+  /**
+   * @return the value to store in the METRIC_NAME column
+   */
+  public String encodeMetricName(String metricName, String appId) {
+    if (!enabled || metricName == null) {
+      return metricName;
+    }
+    Map<String, String> apps = metricUuids.get(metricName);
+    String uuid = apps == null ? null : apps.get(appId == null ? "" : appId);
+    return uuid == null || collidedUuids.contains(uuid) ? metricName : uuid;
+  }
+
+  /**
+   * @return the value to store in the HOSTNAME column
+   */
+  public String encodeHostname(String hostname) {
+    if (!enabled || hostname == null) {
+      return hostname;
+    }
+    String uuid = hostUuids.get(hostname);
+    return uuid == null || collidedUuids.contains(uuid) ? hostname : uuid;
+  }
+
+  /**
+   * @return the metric name of a stored METRIC_NAME value
+   */
+  public String decodeMetricName(String storedName) {
+    if (!isUuid(storedName)) {
+      return storedName;
+    }
+    TimelineMetricMetadataKey key = metricsByUuid.get(storedName);
+    return key == null ? storedName : key.getMetricName();
+  }
+
+  /**
+   * @return the hostname of a stored HOSTNAME value
+   */
+  public String decodeHostname(String storedName) {
+    if (!isUuid(storedName)) {
+      return storedName;
+    }
+    String hostname = hostsByUuid.get(storedName);
+    return hostname == null ? storedName : hostname;
+  }
+
+  /**
+   * Add the ids of the requested metrics, so that rows stored by name and by
+   * id are both found. Names with the SQL LIKE wildcard are matched against
+   * all registered metrics.
+   *
+   * @param appId the requested appId, ids of all apps are added if null
+   * @return the names followed by the ids, or the names if there are no ids
+   */
+  public List<String> expandMetricNames(List<String> metricNames, String appId) {
+    if (metricNames == null || metricNames.isEmpty() || metricsByUuid.isEmpty()) {
+      return metricNames;
+    }
+    Set<String> expanded = new LinkedHashSet<>(metricNames);
+    for (String metricName : metricNames) {
+      if (isUuid(metricName)) {
+        continue;
+      }
+      if (metricName.contains("%")) {
+        Pattern pattern = toRegex(metricName);
+        for (Map.Entry<String, Map<String, String>> entry : metricUuids.entrySet()) {
+          if (pattern.matcher(entry.getKey()).matches()) {
+            addMetricUuids(expanded, entry.getValue(), appId);
+          }
+        }
+      } else {
+        addMetricUuids(expanded, metricUuids.get(metricName), appId);
+      }
+    }
+    return expanded.size() == metricNames.size() ? metricNames : new ArrayList<>(expanded);
+  }
+
+  /**
+   * Same as {@link #expandMetricNames(List, String)} for hostnames.
+   */
+  public List<String> expandHostnames(List<String> hostnames) {
+    if (hostnames == null || hostnames.isEmpty() || hostsByUuid.isEmpty()) {
+      return hostnames;
+    }
+    Set<String> expanded = new LinkedHashSet<>(hostnames);
+    for (String hostname : hostnames) {
+      if (isUuid(hostname)) {
+        continue;
+      }
+      if (hostname.contains("%")) {
+        Pattern pattern = toRegex(hostname);
+        for (Map.Entry<String, String> entry : hostUuids.entrySet()) {
+          if (pattern.matcher(entry.getKey()).matches()) {
+            expanded.add(entry.getValue());
+          }
+        }
+      } else {
+        String uuid = hostUuids.get(hostname);
+        if (uuid != null) {
+          expanded.add(uuid);
+        }
+      }
+    }
+    return expanded.size() == hostnames.size() ? hostnames : new ArrayList<>(expanded);
+  }
+
+  /**
+   * @return the number of entries which are not ids
+   */
+  public static int countNames(Collection<String> names) {
+    int count = 0;
+    for (String name : names) {
+      if (!isUuid(name)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private void addMetricUuids(Set<String> expanded, Map<String, String> apps, String appId) {
+    if (apps == null) {
+      return;
+    }
+    for (Map.Entry<String, String> app : apps.entrySet()) {
+      if (appId == null || appId.equalsIgnoreCase(app.getKey())) {
+        expanded.add(app.getValue());
+      }
+    }
+  }
+
+  private boolean isPlainMetric(String metricName) {
+    for (Pattern pattern : plainMetricPatterns) {
+      if (pattern.matcher(metricName).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static String createUuid(String name, int length) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("MD5").digest(name.getBytes(UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    long bits = 0;
+    for (int i = 0; i < 8; i++) {
+      bits = (bits << 8) | (digest[i] & 0xff);
+    }
+    char[] uuid = new char[length + 1];
+    uuid[0] = UUID_MARKER;
+    for (int i = 1; i <= length; i++) {
+      uuid[i] = ALPHABET[(int) (bits & 0x3f)];
+      bits >>>= 6;
+    }
+    return new String(uuid);
+  }
+
+  /**
+   * Convert a SQL LIKE pattern to a regular expression.
+   */
+  static Pattern toRegex(String likePattern) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (char c : likePattern.toCharArray()) {
+      if (c == '%' || c == '_') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '%' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+}
@@ -18,15 +18,13 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.function;
 
 import com.google.common.base.Joiner;
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 public abstract class AbstractTimelineMetricsSeriesAggregateFunction
@@ -38,31 +36,44 @@ public abstract class AbstractTimelineMetricsSeriesAggregateFunction
     Set<String> hostNameSet = new TreeSet<>();
     Set<String> appIdSet = new TreeSet<>();
     Set<String> instanceIdSet = new TreeSet<>();
-    TreeMap<Long, List<Double>> metricValues = new TreeMap<>();
 
-    for (TimelineMetric timelineMetric : timelineMetrics.getMetrics()) {
+    List<TimelineMetric> metrics = timelineMetrics.getMetrics();
+    TimeSeries[] series = new TimeSeries[metrics.size()];
+    int maxSize = 0;
+    for (int i = 0; i < series.length; i++) {
+      TimelineMetric timelineMetric = metrics.get(i);
       metricNameSet.add(timelineMetric.getMetricName());
       addToSetOnlyNotNull(hostNameSet, timelineMetric.getHostName());
       addToSetOnlyNotNull(appIdSet, timelineMetric.getAppId());
       addToSetOnlyNotNull(instanceIdSet, timelineMetric.getInstanceId());
+      series[i] = timelineMetric.getMetricSeries();
+      maxSize = Math.max(maxSize, series[i].size());
+    }
 
-      for (Map.Entry<Long, Double> metricValue : timelineMetric.getMetricValues().entrySet()) {
-        Long timestamp = metricValue.getKey();
-        Double value = metricValue.getValue();
-        if (!metricValues.containsKey(timestamp)) {
-          metricValues.put(timestamp, new LinkedList<Double>());
+    // Merge the sorted series by timestamp, applying the function to all
+    // values that share a timestamp
+    TimeSeries aggregatedMetricValues = new TimeSeries(maxSize);
+    int[] cursors = new int[series.length];
+    double[] values = new double[series.length];
+    while (true) {
+      long timestamp = Long.MAX_VALUE;
+      boolean found = false;
+      for (int i = 0; i < series.length; i++) {
+        if (cursors[i] < series[i].size()) {
+          timestamp = Math.min(timestamp, series[i].getTimestamp(cursors[i]));
+          found = true;
         }
-        metricValues.get(timestamp).add(value);
       }
-    }
-
-    TreeMap<Long, Double> aggregatedMetricValues = new TreeMap<>();
-    for (Map.Entry<Long, List<Double>> metricValue : metricValues.entrySet()) {
-      List<Double> values = metricValue.getValue();
-      if (values.size() == 0) {
-        throw new IllegalArgumentException("count of values should be more than 0");
+      if (!found) {
+        break;
+      }
+      int count = 0;
+      for (int i = 0; i < series.length; i++) {
+        if (cursors[i] < series[i].size() && series[i].getTimestamp(cursors[i]) == timestamp) {
+          values[count++] = series[i].getValue(cursors[i]++);
+        }
       }
-      aggregatedMetricValues.put(metricValue.getKey(), applyFunction(values));
+      aggregatedMetricValues.put(timestamp, applyFunction(values, count));
     }
 
     TimelineMetric timelineMetric = new TimelineMetric();
@@ -70,10 +81,10 @@ public abstract class AbstractTimelineMetricsSeriesAggregateFunction
     timelineMetric.setHostName(joinStringsWithComma(hostNameSet.iterator()));
     timelineMetric.setAppId(joinStringsWithComma(appIdSet.iterator()));
     timelineMetric.setInstanceId(joinStringsWithComma(instanceIdSet.iterator()));
-    if (aggregatedMetricValues.size() > 0) {
-      timelineMetric.setStartTime(aggregatedMetricValues.firstKey());
+    if (!aggregatedMetricValues.isEmpty()) {
+      timelineMetric.setStartTime(aggregatedMetricValues.firstTimestamp());
     }
-    timelineMetric.setMetricValues(aggregatedMetricValues);
+    timelineMetric.setMetricSeries(aggregatedMetricValues);
     return timelineMetric;
   }
 
@@ -85,7 +96,10 @@ public abstract class AbstractTimelineMetricsSeriesAggregateFunction
     return Joiner.on(",").join(hostNames);
   }
 
-  protected abstract Double applyFunction(List<Double> values);
+  /**
+   * Apply to the first count entries of values, count is always positive.
+   */
+  protected abstract double applyFunction(double[] values, int count);
   protected abstract String getFunctionName();
 
   private void addToSetOnlyNotNull(Set<String> set, String value) {
@@ -17,17 +17,15 @@
  */
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.function;
 
-import java.util.List;
-
 public class TimelineMetricsSeriesMaxAggregateFunction extends AbstractTimelineMetricsSeriesAggregateFunction {
   private static final String FUNCTION_NAME = "MAX";
 
   @Override
-  protected Double applyFunction(List<Double> values) {
+  protected double applyFunction(double[] values, int count) {
     double max = Double.MIN_VALUE;
-    for (Double value : values) {
-      if (value > max) {
-        max = value;
+    for (int i = 0; i < count; i++) {
+      if (values[i] > max) {
+        max = values[i];
       }
     }
 
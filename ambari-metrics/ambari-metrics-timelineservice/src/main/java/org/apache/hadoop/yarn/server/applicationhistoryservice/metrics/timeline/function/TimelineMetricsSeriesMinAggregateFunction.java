@@ -17,17 +17,15 @@
  */
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.function;
 
-import java.util.List;
-
 public class TimelineMetricsSeriesMinAggregateFunction extends AbstractTimelineMetricsSeriesAggregateFunction {
   private static final String FUNCTION_NAME = "MIN";
 
   @Override
-  protected Double applyFunction(List<Double> values) {
+  protected double applyFunction(double[] values, int count) {
     double min = Double.MAX_VALUE;
-    for (Double value : values) {
-      if (value < min) {
-        min = value;
+    for (int i = 0; i < count; i++) {
+      if (values[i] < min) {
+        min = values[i];
       }
     }
 
@@ -43,6 +43,9 @@ public class DefaultCondition implements Condition {
   String statement;
   Set<String> orderByColumns = new LinkedHashSet<String>();
   boolean metricNamesNotCondition = false;
+  // Number of names requested before wildcards were expanded
+  Integer requestedMetricCount;
+  Integer requestedHostCount;
 
   private static final Log LOG = LogFactory.getLog(DefaultCondition.class);
 
@@ -72,6 +75,29 @@ public class DefaultCondition implements Condition {
     return metricNames == null || metricNames.isEmpty() ? null : metricNames;
   }
 
+  public void setMetricNames(List<String> metricNames) {
+    this.metricNames = metricNames;
+  }
+
+  /**
+   * Replace the requested metric names by the names their wildcards match.
+   * The result size is still estimated from the requested names, as a LIKE
+   * pattern selecting the same rows was.
+   */
+  public void setExpandedMetricNames(List<String> metricNames) {
+    if (requestedMetricCount == null && this.metricNames != null) {
+      requestedMetricCount = this.metricNames.size();
+    }
+    this.metricNames = metricNames;
+  }
+
+  /**
+   * @return the number of requested metric names, null if not expanded
+   */
+  public Integer getRequestedMetricCount() {
+    return requestedMetricCount;
+  }
+
   public StringBuilder getConditionClause() {
     StringBuilder sb = new StringBuilder();
 
@@ -105,6 +131,45 @@ public class DefaultCondition implements Condition {
     return hostnames;
   }
 
+  public void setHostnames(List<String> hostnames) {
+    this.hostnames = hostnames;
+  }
+
+  /**
+   * Same as {@link #setExpandedMetricNames(List)} for hostnames.
+   */
+  public void setExpandedHostnames(List<String> hostnames) {
+    if (requestedHostCount == null && this.hostnames != null) {
+      requestedHostCount = this.hostnames.size();
+    }
+    this.hostnames = hostnames;
+  }
+
+  /**
+   * @return the number of requested hostnames, null if not expanded
+   */
+  public Integer getRequestedHostCount() {
+    return requestedHostCount;
+  }
+
+  /**
+   * @return a copy of this condition reading the given part of its time range
+   */
+  public DefaultCondition copyForTimeRange(long startTime, long endTime) {
+    DefaultCondition condition = new DefaultCondition(
+      metricNames == null ? null : new ArrayList<>(metricNames),
+      hostnames == null ? null : new ArrayList<>(hostnames),
+      appId, instanceId, startTime, endTime, precision, limit, grouped);
+    condition.noLimit = noLimit;
+    condition.fetchSize = fetchSize;
+    condition.statement = statement;
+    condition.orderByColumns.addAll(orderByColumns);
+    condition.metricNamesNotCondition = metricNamesNotCondition;
+    condition.requestedMetricCount = requestedMetricCount;
+    condition.requestedHostCount = requestedHostCount;
+    return condition;
+  }
+
   public Precision getPrecision() {
     return precision;
   }
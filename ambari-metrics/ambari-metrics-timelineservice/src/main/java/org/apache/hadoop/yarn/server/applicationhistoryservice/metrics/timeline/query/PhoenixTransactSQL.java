@@ -22,6 +22,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.PrecisionLimitExceededException;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidDictionary;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -523,7 +524,7 @@ public class PhoenixTransactSQL {
     }
   }
 
-  private static void validateRowCountLimit(Condition condition) {
+  public static void validateRowCountLimit(Condition condition) {
     if (condition.getMetricNames() == null
       || condition.getMetricNames().isEmpty()) {
       //aggregator can use empty metrics query
@@ -531,35 +532,34 @@ public class PhoenixTransactSQL {
     }
 
     long range = condition.getEndTime() - condition.getStartTime();
-    long rowsPerMetric;
 
     //Get Precision (passed in or computed) and estimate values returned based on that.
     Precision precision = condition.getPrecision();
     if (precision == null) {
       precision = Precision.getPrecision(condition.getStartTime(), condition.getEndTime());
     }
+    long rowsPerMetric = getRowsPerMetric(precision, range);
 
-    switch (precision) {
-      case DAYS:
-        rowsPerMetric = TimeUnit.MILLISECONDS.toDays(range);
-        break;
-      case HOURS:
-        rowsPerMetric = TimeUnit.MILLISECONDS.toHours(range);
-        break;
-      case MINUTES:
-        rowsPerMetric = TimeUnit.MILLISECONDS.toMinutes(range)/5; //5 minute data in METRIC_AGGREGATE_MINUTE table.
-        break;
-      default:
-        rowsPerMetric = TimeUnit.MILLISECONDS.toSeconds(range)/10; //10 second data in METRIC_AGGREGATE table
-    }
-
+    // Ids added next to the names select the same series, they add no rows
     List<String> hostNames = condition.getHostnames();
-    int numHosts = (hostNames == null || hostNames.isEmpty()) ? 1 : condition.getHostnames().size();
+    int numHosts = (hostNames == null || hostNames.isEmpty()) ? 1 :
+      TimelineMetricUuidDictionary.countNames(hostNames);
+    int numMetrics = TimelineMetricUuidDictionary.countNames(condition.getMetricNames());
+    // Expanded wildcards are counted once, as the LIKE patterns were
+    if (condition instanceof DefaultCondition) {
+      DefaultCondition defaultCondition = (DefaultCondition) condition;
+      if (defaultCondition.getRequestedMetricCount() != null) {
+        numMetrics = defaultCondition.getRequestedMetricCount();
+      }
+      if (defaultCondition.getRequestedHostCount() != null) {
+        numHosts = Math.max(defaultCondition.getRequestedHostCount(), 1);
+      }
+    }
 
-    long totalRowsRequested = rowsPerMetric * condition.getMetricNames().size() * numHosts;
+    long totalRowsRequested = rowsPerMetric * numMetrics * numHosts;
 
     if (totalRowsRequested > PhoenixHBaseAccessor.RESULTSET_LIMIT) {
-      throw new PrecisionLimitExceededException("Requested " +  condition.getMetricNames().size() + " metrics for "
+      throw new PrecisionLimitExceededException("Requested " +  numMetrics + " metrics for "
         + numHosts + " hosts in " + precision +  " precision for the time range of " + range/1000
         + " seconds. Estimated resultset size of " + totalRowsRequested + " is greater than the limit of "
         + PhoenixHBaseAccessor.RESULTSET_LIMIT + ". Request lower precision or fewer number of metrics or hosts." +
@@ -567,6 +567,22 @@ public class PhoenixTransactSQL {
     }
   }
 
+  /**
+   * @return the estimated number of rows of one series in the time range
+   */
+  static long getRowsPerMetric(Precision precision, long range) {
+    switch (precision) {
+      case DAYS:
+        return TimeUnit.MILLISECONDS.toDays(range);
+      case HOURS:
+        return TimeUnit.MILLISECONDS.toHours(range);
+      case MINUTES:
+        return TimeUnit.MILLISECONDS.toMinutes(range)/5; //5 minute data in METRIC_AGGREGATE_MINUTE table.
+      default:
+        return TimeUnit.MILLISECONDS.toSeconds(range)/10; //10 second data in METRIC_AGGREGATE table
+    }
+  }
+
   public static PreparedStatement prepareGetLatestMetricSqlStmt(
     Connection connection, Condition condition) throws SQLException {
 
@@ -744,13 +760,17 @@ public class PhoenixTransactSQL {
     sb.append(" WHERE ");
     sb.append(condition.getConditionClause());
     String orderByClause = condition.getOrderByClause(false);
+    int metricCount = TimelineMetricUuidDictionary.countNames(condition.getMetricNames());
     if (orderByClause != null) {
       sb.append(orderByClause);
+    } else if (metricCount < condition.getMetricNames().size()) {
+      // Latest of the rows stored by name and by id
+      sb.append(" ORDER BY SERVER_TIME DESC ");
     } else {
       sb.append(" ORDER BY METRIC_NAME DESC, SERVER_TIME DESC  ");
     }
 
-    sb.append(" LIMIT ").append(condition.getMetricNames().size());
+    sb.append(" LIMIT ").append(metricCount);
 
     String query = sb.toString();
     if (LOG.isDebugEnabled()) {
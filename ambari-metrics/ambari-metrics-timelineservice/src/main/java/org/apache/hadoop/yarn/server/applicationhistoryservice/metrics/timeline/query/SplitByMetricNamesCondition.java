@@ -24,7 +24,7 @@ import java.util.List;
 // TODO get rid of this class
 public class SplitByMetricNamesCondition implements Condition {
   private final Condition adaptee;
-  private String currentMetric;
+  private List<String> currentMetrics;
   private boolean metricNamesNotCondition = false;
 
   public SplitByMetricNamesCondition(Condition condition){
@@ -38,7 +38,7 @@ public class SplitByMetricNamesCondition implements Condition {
 
   @Override
   public List<String> getMetricNames() {
-    return Collections.singletonList(currentMetric);
+    return currentMetrics;
   }
 
   @Override
@@ -87,12 +87,18 @@ public class SplitByMetricNamesCondition implements Condition {
     boolean appendConjunction = false;
 
     if (getMetricNames() != null) {
+      if (getMetricNames().size() > 1) {
+        sb.append("(");
+      }
       for (String name : getMetricNames()) {
         if (sb.length() > 1) {
           sb.append(" OR ");
         }
         sb.append("METRIC_NAME = ?");
       }
+      if (getMetricNames().size() > 1) {
+        sb.append(")");
+      }
 
       appendConjunction = true;
     }
@@ -179,7 +185,14 @@ public class SplitByMetricNamesCondition implements Condition {
   }
 
   public void setCurrentMetric(String currentMetric) {
-    this.currentMetric = currentMetric;
+    this.currentMetrics = Collections.singletonList(currentMetric);
+  }
+
+  /**
+   * Select one metric stored under several names, its name and its ids.
+   */
+  public void setCurrentMetrics(List<String> currentMetrics) {
+    this.currentMetrics = currentMetrics;
   }
 
  @Override
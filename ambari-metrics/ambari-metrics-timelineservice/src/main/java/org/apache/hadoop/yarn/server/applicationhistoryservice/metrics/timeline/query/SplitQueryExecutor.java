@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sub-queries of a split query concurrently and merges their
+ * results in plan order.
+ *
+ * The pool and its queue are bounded; when both are full the sub-query runs
+ * on the calling thread, which slows down the callers rather than queueing
+ * without bound. A query fails when it does not complete within the timeout,
+ * its remaining sub-queries are cancelled.
+ */
+public class SplitQueryExecutor {
+
+  /**
+   * Reads the metrics of one sub-query.
+   */
+  public interface SubQuery {
+    TimelineMetrics execute(Condition condition) throws SQLException, IOException;
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final long timeoutMillis;
+
+  public SplitQueryExecutor(int threads, long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<Runnable>(threads * 16), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "timeline-metrics-query-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      }, new ThreadPoolExecutor.CallerRunsPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * @param grouped merge the values of a series read by several sub-queries
+   *                into one metric, as a grouped query does
+   */
+  public TimelineMetrics execute(List<Condition> conditions, boolean grouped, final SubQuery subQuery)
+    throws SQLException, IOException {
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    List<Future<TimelineMetrics>> futures = new ArrayList<>(conditions.size());
+    try {
+      for (final Condition condition : conditions) {
+        futures.add(executor.submit(new Callable<TimelineMetrics>() {
+          @Override
+          public TimelineMetrics call() throws Exception {
+            return subQuery.execute(condition);
+          }
+        }));
+      }
+
+      List<TimelineMetrics> results = new ArrayList<>(futures.size());
+      for (Future<TimelineMetrics> future : futures) {
+        results.add(future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS));
+      }
+      return merge(results, grouped);
+
+    } catch (TimeoutException e) {
+      throw new SQLTimeoutException("Metrics query did not complete in " + timeoutMillis + " ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for metrics query", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new SQLException(cause);
+    } finally {
+      // No-op for completed sub-queries
+      for (Future<TimelineMetrics> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  static TimelineMetrics merge(List<TimelineMetrics> results, boolean grouped) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    if (!grouped) {
+      for (TimelineMetrics result : results) {
+        metrics.getMetrics().addAll(result.getMetrics());
+      }
+      return metrics;
+    }
+
+    // Same as TimelineMetrics.addOrMergeTimelineMetric, with a lookup by series
+    Map<String, TimelineMetric> series = new LinkedHashMap<>();
+    for (TimelineMetrics result : results) {
+      for (TimelineMetric metric : result.getMetrics()) {
+        String key = metric.getMetricName() + '\0' + metric.getHostName() + '\0' +
+          metric.getAppId() + '\0' + metric.getInstanceId();
+        TimelineMetric existing = series.get(key);
+        if (existing == null) {
+          series.put(key, metric);
+          continue;
+        }
+        existing.addMetricValues(metric.getMetricValues());
+        if (existing.getTimestamp() > metric.getTimestamp()) {
+          existing.setTimestamp(metric.getTimestamp());
+        }
+        if (existing.getStartTime() > metric.getStartTime()) {
+          existing.setStartTime(metric.getStartTime());
+        }
+      }
+    }
+    metrics.getMetrics().addAll(series.values());
+    return metrics;
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a metrics query into sub-queries over disjoint groups of metric
+ * names, groups of hostnames and consecutive time ranges. The sub-queries
+ * read disjoint row key ranges, so they can run concurrently and every
+ * series of the result is read by one sub-query per time range.
+ *
+ * Row keys start with the metric name, so a query is split by metric name
+ * first, then by host and last by time. Names with wildcards are not split,
+ * a pattern could select the rows of a name in another group.
+ */
+public class SplitQueryPlanner {
+  private final int maxSubQueries;
+  private final long rowsPerSubQuery;
+
+  /**
+   * @param maxSubQueries the maximum number of sub-queries of a query, a
+   *                      value of 1 disables splitting
+   * @param rowsPerSubQuery the estimated number of rows a sub-query reads
+   */
+  public SplitQueryPlanner(int maxSubQueries, long rowsPerSubQuery) {
+    this.maxSubQueries = maxSubQueries;
+    this.rowsPerSubQuery = Math.max(rowsPerSubQuery, 1);
+  }
+
+  /**
+   * @return the sub-queries in the order of their results, or the condition
+   * itself if it is not split
+   */
+  public List<Condition> plan(Condition condition) {
+    if (maxSubQueries <= 1 || !isSplittable(condition)) {
+      return Collections.singletonList(condition);
+    }
+    // The result size limit applies to the whole query
+    PhoenixTransactSQL.validateRowCountLimit(condition);
+
+    DefaultCondition query = (DefaultCondition) condition;
+    Precision precision = query.getPrecision();
+    if (precision == null) {
+      precision = Precision.getPrecision(query.getStartTime(), query.getEndTime());
+    }
+    List<String> metricNames = query.getMetricNames();
+    List<String> hostnames = query.getHostnames();
+    boolean splitHosts = hostnames != null && !hostnames.isEmpty() && !containsPattern(hostnames);
+
+    long range = query.getEndTime() - query.getStartTime();
+    long rowsPerSeries = Math.max(PhoenixTransactSQL.getRowsPerMetric(precision, range), 1);
+    long rows = rowsPerSeries * metricNames.size() * (splitHosts ? hostnames.size() : 1);
+    int subQueries = (int) Math.min(maxSubQueries, (rows + rowsPerSubQuery - 1) / rowsPerSubQuery);
+    if (subQueries <= 1) {
+      return Collections.singletonList(condition);
+    }
+
+    int metricGroups = containsPattern(metricNames) ? 1 : Math.min(subQueries, metricNames.size());
+    int hostGroups = splitHosts ? Math.max(Math.min(subQueries / metricGroups, hostnames.size()), 1) : 1;
+    int timeSlices = (int) Math.max(Math.min(subQueries / (metricGroups * hostGroups), rowsPerSeries), 1);
+
+    List<List<String>> metricNameGroups = partition(metricNames, metricGroups);
+    List<List<String>> hostnameGroups = splitHosts ?
+      partition(hostnames, hostGroups) : Collections.singletonList(hostnames);
+    long sliceLength = (range + timeSlices - 1) / timeSlices;
+
+    List<Condition> conditions = new ArrayList<>(metricGroups * hostGroups * timeSlices);
+    for (List<String> metricNameGroup : metricNameGroups) {
+      for (List<String> hostnameGroup : hostnameGroups) {
+        for (int slice = 0; slice < timeSlices; slice++) {
+          long startTime = query.getStartTime() + slice * sliceLength;
+          long endTime = slice == timeSlices - 1 ? query.getEndTime() : startTime + sliceLength;
+          DefaultCondition subQuery = new DefaultCondition(
+            new ArrayList<>(metricNameGroup),
+            hostnameGroup == null ? null : new ArrayList<>(hostnameGroup),
+            query.getAppId(), query.getInstanceId(), startTime, endTime,
+            precision, null, query.isGrouped());
+          subQuery.setFetchSize(query.getFetchSize());
+          if (query.noLimit) {
+            subQuery.setNoLimit();
+          }
+          conditions.add(subQuery);
+        }
+      }
+    }
+    return conditions;
+  }
+
+  private static boolean isSplittable(Condition condition) {
+    if (!(condition instanceof DefaultCondition) || condition instanceof TopNCondition) {
+      return false;
+    }
+    DefaultCondition query = (DefaultCondition) condition;
+    return query.getMetricNames() != null && !query.metricNamesNotCondition &&
+      query.getStartTime() != null && query.getEndTime() != null &&
+      query.getEndTime() > query.getStartTime() &&
+      // getLimit() defaults to the result size limit, checked before splitting
+      query.getStatement() == null && query.limit == null &&
+      query.getOrderByClause(true) == null;
+  }
+
+  private static boolean containsPattern(List<String> names) {
+    for (String name : names) {
+      if (name.contains("%")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Split the names into the given number of groups of consecutive names.
+   */
+  private static List<List<String>> partition(List<String> names, int groups) {
+    List<List<String>> partitions = new ArrayList<>(groups);
+    int start = 0;
+    for (int i = 0; i < groups; i++) {
+      int end = start + (names.size() - start) / (groups - i);
+      partitions.add(names.subList(start, end));
+      start = end;
+    }
+    return partitions;
+  }
+}
@@ -22,6 +22,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidDictionary;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.NATIVE_TIME_RANGE_DELTA;
 import java.util.List;
 
@@ -96,7 +97,7 @@ public class TopNCondition extends DefaultCondition{
       String orderByClause = getTopNOrderByClause();
 
       innerQuery = String.format(PhoenixTransactSQL.TOP_N_INNER_SQL, PhoenixTransactSQL.getNaiveTimeRangeHint(getStartTime(), NATIVE_TIME_RANGE_DELTA),
-        "METRIC_NAME", PhoenixTransactSQL.getTargetTableUsingPrecision(precision, (hostnames != null && hostnames.size() == 1)),
+        "METRIC_NAME", PhoenixTransactSQL.getTargetTableUsingPrecision(precision, (hostnames != null && TimelineMetricUuidDictionary.countNames(hostnames) == 1)),
         super.getConditionClause().toString(),
         groupByClause, orderByClause, topN);
     }
@@ -150,8 +151,9 @@ public class TopNCondition extends DefaultCondition{
     // Case 1 : 1 Metric, H hosts
     // Select Top N or Bottom N host series based on 1 metric (max/avg/sum)
     // Hostnames cannot be empty
-    // Only 1 metric allowed, without wildcards
-    return (CollectionUtils.isNotEmpty(hostnames) && metricNames.size() == 1 && !metricNamesHaveWildcard(metricNames));
+    // Only 1 metric allowed, without wildcards, the ids of stored names are not counted
+    return (CollectionUtils.isNotEmpty(hostnames) && TimelineMetricUuidDictionary.countNames(metricNames) == 1 &&
+      !metricNamesHaveWildcard(metricNames));
 
   }
 
@@ -165,8 +167,9 @@ public class TopNCondition extends DefaultCondition{
     // Case 2 : M Metric names or Regex, 1 or No host
     // Select Top N or Bottom N metric series based on metric values(max/avg/sum)
     // MetricNames cannot be empty
-    // No host (aggregate) or 1 host allowed, without wildcards
-    return (CollectionUtils.isNotEmpty(metricNames) && (hostnames == null || hostnames.size() <= 1) &&
+    // No host (aggregate) or 1 host allowed, without wildcards, the ids of stored names are not counted
+    return (CollectionUtils.isNotEmpty(metricNames) &&
+      (hostnames == null || TimelineMetricUuidDictionary.countNames(hostnames) <= 1) &&
       !hostNamesHaveWildcard(hostnames));
   }
 
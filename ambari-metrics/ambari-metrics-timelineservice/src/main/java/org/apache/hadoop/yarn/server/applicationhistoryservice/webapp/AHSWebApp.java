@@ -34,14 +34,17 @@ public class AHSWebApp extends WebApp implements YarnWebParams {
   private final TimelineStore timelineStore;
   private final TimelineMetricStore timelineMetricStore;
   private final ApplicationHistoryClientService historyClientService;
+  private final TimelineMetricsParser metricsParser;
 
   public AHSWebApp(TimelineStore timelineStore,
     TimelineMetricStore timelineMetricStore,
-    ApplicationHistoryClientService historyClientService) {
+    ApplicationHistoryClientService historyClientService,
+    TimelineMetricsParser metricsParser) {
 
     this.timelineStore = timelineStore;
     this.timelineMetricStore = timelineMetricStore;
     this.historyClientService = historyClientService;
+    this.metricsParser = metricsParser;
   }
 
   @Override
@@ -53,6 +56,7 @@ public class AHSWebApp extends WebApp implements YarnWebParams {
     bind(ApplicationBaseProtocol.class).toInstance(historyClientService);
     bind(TimelineStore.class).toInstance(timelineStore);
     bind(TimelineMetricStore.class).toInstance(timelineMetricStore);
+    bind(TimelineMetricsParser.class).toInstance(metricsParser);
     route("/", AHSController.class);
     route(pajoin("/apps", APP_STATE), AHSController.class);
     route(pajoin("/app", APPLICATION_ID), AHSController.class, "app");
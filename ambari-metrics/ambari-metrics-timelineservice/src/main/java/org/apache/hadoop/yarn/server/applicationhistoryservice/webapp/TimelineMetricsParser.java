@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.webapp;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Streaming reader of the {@link TimelineMetrics} JSON posted by the sinks.
+ * Datapoints are parsed straight into the primitive series the store
+ * buffers, without binding the body into a tree of objects and boxed
+ * {@code TreeMap} values first. The byte and datapoint limits are checked
+ * while reading, an oversized request fails as soon as it crosses a limit.
+ *
+ * Unknown fields are skipped, null values are ignored.
+ */
+public class TimelineMetricsParser {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final long maxBytes;
+  private final long maxDatapoints;
+
+  public TimelineMetricsParser(long maxBytes, long maxDatapoints) {
+    this.maxBytes = maxBytes;
+    this.maxDatapoints = maxDatapoints;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @throws MetricsRequestTooLargeException if the body exceeds a limit
+   * @throws JsonParseException if the body is not valid metrics JSON
+   */
+  public TimelineMetrics parse(InputStream in) throws IOException {
+    JsonParser jp = JSON_FACTORY.createJsonParser(new BoundedInputStream(in, maxBytes));
+    try {
+      return new Request(jp).readMetrics();
+    } finally {
+      jp.close();
+    }
+  }
+
+  /**
+   * State of the parsing of one request body.
+   */
+  private class Request {
+    private final JsonParser jp;
+    private long datapoints;
+    // Values repeated by the metrics of a sink, shared instead of copied
+    private String lastAppId;
+    private String lastInstanceId;
+    private String lastHostName;
+    private String lastType;
+    private String lastUnits;
+
+    Request(JsonParser jp) {
+      this.jp = jp;
+    }
+
+    TimelineMetrics readMetrics() throws IOException {
+      TimelineMetrics metrics = new TimelineMetrics();
+      JsonToken token = jp.nextToken();
+      if (token == null) {
+        // Empty body
+        return metrics;
+      }
+      expect(token, JsonToken.START_OBJECT);
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        String field = jp.getCurrentName();
+        token = jp.nextToken();
+        if ("metrics".equals(field) && token == JsonToken.START_ARRAY) {
+          while ((token = jp.nextToken()) != JsonToken.END_ARRAY) {
+            metrics.getMetrics().add(readMetric(token));
+          }
+        } else {
+          jp.skipChildren();
+        }
+      }
+      return metrics;
+    }
+
+    private TimelineMetric readMetric(JsonToken token) throws IOException {
+      expect(token, JsonToken.START_OBJECT);
+      TimelineMetric metric = new TimelineMetric();
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        String field = jp.getCurrentName();
+        if (jp.nextToken() == JsonToken.VALUE_NULL) {
+          continue;
+        }
+        switch (field) {
+          case "metricname":
+            metric.setMetricName(jp.getText());
+            break;
+          case "appid":
+            lastAppId = readRepeated(lastAppId);
+            metric.setAppId(lastAppId);
+            break;
+          case "instanceid":
+            lastInstanceId = readRepeated(lastInstanceId);
+            metric.setInstanceId(lastInstanceId);
+            break;
+          case "hostname":
+            lastHostName = readRepeated(lastHostName);
+            metric.setHostName(lastHostName);
+            break;
+          case "timestamp":
+            metric.setTimestamp(jp.getValueAsLong());
+            break;
+          case "starttime":
+            metric.setStartTime(jp.getValueAsLong());
+            break;
+          case "type":
+            lastType = readRepeated(lastType);
+            metric.setType(lastType);
+            break;
+          case "units":
+            lastUnits = readRepeated(lastUnits);
+            metric.setUnits(lastUnits);
+            break;
+          case "metrics":
+            metric.setMetricSeries(readSeries());
+            break;
+          case "metadata":
+            readMetadata(metric.getMetadata());
+            break;
+          default:
+            jp.skipChildren();
+        }
+      }
+      return metric;
+    }
+
+    /**
+     * Reads {"timestamp": value, ...}, values may be numbers or strings.
+     */
+    private TimeSeries readSeries() throws IOException {
+      expect(jp.getCurrentToken(), JsonToken.START_OBJECT);
+      TimeSeries series = new TimeSeries();
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        long timestamp = parseLong(jp.getCurrentName());
+        JsonToken token = jp.nextToken();
+        if (token == JsonToken.VALUE_NULL) {
+          continue;
+        }
+        if (++datapoints > maxDatapoints) {
+          throw new MetricsRequestTooLargeException("Request exceeds " + maxDatapoints + " datapoints");
+        }
+        double value = token == JsonToken.VALUE_STRING ? parseDouble(jp.getText()) : jp.getDoubleValue();
+        series.put(timestamp, value);
+      }
+      return series;
+    }
+
+    /**
+     * @return the previous value if the current text equals it, the text otherwise
+     */
+    private String readRepeated(String previous) throws IOException {
+      if (previous != null && jp.getTextLength() == previous.length()) {
+        char[] text = jp.getTextCharacters();
+        int offset = jp.getTextOffset();
+        int i = 0;
+        while (i < previous.length() && text[offset + i] == previous.charAt(i)) {
+          i++;
+        }
+        if (i == previous.length()) {
+          return previous;
+        }
+      }
+      return jp.getText();
+    }
+
+    private void readMetadata(Map<String, String> metadata) throws IOException {
+      expect(jp.getCurrentToken(), JsonToken.START_OBJECT);
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        String key = jp.getCurrentName();
+        if (jp.nextToken() == JsonToken.VALUE_NULL) {
+          continue;
+        }
+        metadata.put(key, jp.getText());
+      }
+    }
+
+    private long parseLong(String s) throws JsonParseException {
+      try {
+        return Long.parseLong(s);
+      } catch (NumberFormatException e) {
+        throw new JsonParseException("Invalid timestamp " + s, jp.getCurrentLocation(), e);
+      }
+    }
+
+    private double parseDouble(String s) throws JsonParseException {
+      try {
+        return Double.parseDouble(s);
+      } catch (NumberFormatException e) {
+        throw new JsonParseException("Invalid value " + s, jp.getCurrentLocation(), e);
+      }
+    }
+
+    private void expect(JsonToken token, JsonToken expected) throws JsonParseException {
+      if (token != expected) {
+        throw new JsonParseException("Expected " + expected + " but found " + token, jp.getCurrentLocation());
+      }
+    }
+  }
+
+  /**
+   * Fails the read that crosses the byte limit.
+   */
+  private static class BoundedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long bytes;
+
+    BoundedInputStream(InputStream in, long maxBytes) {
+      super(in);
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    private void count(long n) throws MetricsRequestTooLargeException {
+      bytes += n;
+      if (bytes > maxBytes) {
+        throw new MetricsRequestTooLargeException("Request exceeds " + maxBytes + " bytes");
+      }
+    }
+  }
+}
@@ -36,6 +36,7 @@ import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.MetricsCacheFullException;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.EntityIdentifier;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper;
@@ -63,6 +64,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -83,14 +85,24 @@ public class TimelineWebServices {
 
   private static final Log LOG = LogFactory.getLog(TimelineWebServices.class);
 
+  /**
+   * Status returned when metrics are rejected because the collector can not
+   * keep up; not defined by the JAX-RS version in use.
+   */
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int RETRY_AFTER_SECONDS = 10;
+
   private TimelineStore store;
   private TimelineMetricStore timelineMetricStore;
+  private TimelineMetricsParser metricsParser;
 
   @Inject
   public TimelineWebServices(TimelineStore store,
-                             TimelineMetricStore timelineMetricStore) {
+                             TimelineMetricStore timelineMetricStore,
+                             TimelineMetricsParser metricsParser) {
     this.store = store;
     this.timelineMetricStore = timelineMetricStore;
+    this.metricsParser = metricsParser;
   }
 
   @XmlRootElement(name = "about")
@@ -252,7 +264,8 @@ public class TimelineWebServices {
 
   /**
    * Store the given metrics into the timeline store, and return errors that
-   * happened during storing.
+   * happened during storing. The body is parsed as it is read, requests over
+   * the size limits are rejected with 413.
    */
   @Path("/metrics")
   @POST
@@ -260,11 +273,19 @@ public class TimelineWebServices {
   public TimelinePutResponse postMetrics(
     @Context HttpServletRequest req,
     @Context HttpServletResponse res,
-    TimelineMetrics metrics) {
+    InputStream body) {
 
     init(res);
-    if (metrics == null) {
-      return new TimelinePutResponse();
+    if (req.getContentLength() > metricsParser.getMaxBytes()) {
+      throw tooLarge("Request exceeds " + metricsParser.getMaxBytes() + " bytes");
+    }
+    TimelineMetrics metrics;
+    try {
+      metrics = metricsParser.parse(body);
+    } catch (MetricsRequestTooLargeException e) {
+      throw tooLarge(e.getMessage());
+    } catch (IOException e) {
+      throw new BadRequestException("Invalid metrics: " + e.getMessage());
     }
 
     try {
@@ -279,12 +300,22 @@ public class TimelineWebServices {
 
       return timelineMetricStore.putMetrics(metrics);
 
+    } catch (MetricsCacheFullException e) {
+      LOG.debug("Rejecting metrics: " + e.getMessage());
+      throw new WebApplicationException(Response.status(TOO_MANY_REQUESTS)
+        .header("Retry-After", RETRY_AFTER_SECONDS).entity(e.getMessage()).build());
     } catch (Exception e) {
       LOG.error("Error saving metrics.", e);
       throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
     }
   }
 
+  private static WebApplicationException tooLarge(String message) {
+    LOG.debug("Rejecting metrics: " + message);
+    return new WebApplicationException(Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+      .entity(message).build());
+  }
+
   @Path("/containermetrics")
   @POST
   @Consumes({ MediaType.APPLICATION_JSON /* , MediaType.APPLICATION_XML */})
@@ -52,8 +52,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @RunWith(PowerMockRunner.class)
@@ -214,38 +218,73 @@ public class PhoenixHBaseAccessorTest {
   }
 
   @Test
-  public void testMetricsCacheCommittingWhenFull() throws IOException, SQLException {
+  public void testMetricsCacheCommittingWhenFull() throws Exception {
     Configuration hbaseConf = new Configuration();
     hbaseConf.setStrings(ZOOKEEPER_QUORUM, "quorum");
     Configuration metricsConf = new Configuration();
-    metricsConf.setStrings(TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_SIZE, "1");
+    // full after a single series
+    metricsConf.setLong(TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_MAX_BYTES, 100);
     metricsConf.setStrings(TimelineMetricConfiguration.TIMELINE_METRICS_CACHE_COMMIT_INTERVAL, "100");
-    final Connection connection = EasyMock.createNiceMock(Connection.class);
-
+    final CountDownLatch commitAllowed = new CountDownLatch(1);
+    final List<TimelineMetrics> commits = Collections.synchronizedList(new LinkedList<TimelineMetrics>());
 
     PhoenixHBaseAccessor accessor = new PhoenixHBaseAccessor(hbaseConf, metricsConf) {
       @Override
       public void commitMetrics(Collection<TimelineMetrics> timelineMetricsCollection) {
         try {
-          connection.commit();
-        } catch (SQLException e) {
-          e.printStackTrace();
+          commitAllowed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
         }
+        commits.addAll(timelineMetricsCollection);
       }
     };
 
-    TimelineMetrics timelineMetrics = EasyMock.createNiceMock(TimelineMetrics.class);
-    EasyMock.expect(timelineMetrics.getMetrics()).andReturn(Collections.singletonList(new TimelineMetric())).anyTimes();
-    connection.commit();
-    EasyMock.expectLastCall().once();
+    long now = System.currentTimeMillis();
+    accessor.insertMetricRecords(createMetrics("mem_free", now));
 
-    EasyMock.replay(timelineMetrics, connection);
+    // the handler is not blocked while the commit is pending
+    try {
+      accessor.insertMetricRecords(createMetrics("cpu_user", now));
+      fail("Expected the full cache to reject the metrics");
+    } catch (MetricsCacheFullException e) {
+      // expected
+    }
 
-    accessor.insertMetricRecords(timelineMetrics);
-    accessor.insertMetricRecords(timelineMetrics);
-    accessor.insertMetricRecords(timelineMetrics);
+    // the committer thread commits the cache without waiting for the interval
+    // and gives the space back
+    commitAllowed.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    boolean added = false;
+    while (!added && System.currentTimeMillis() < deadline) {
+      try {
+        accessor.insertMetricRecords(createMetrics("cpu_user", now));
+        added = true;
+      } catch (MetricsCacheFullException e) {
+        Thread.sleep(10);
+      }
+    }
+    assertTrue(added);
+
+    // the metrics added last may already be committed as well
+    assertFalse(commits.isEmpty());
+    List<TimelineMetric> series = commits.get(0).getMetrics();
+    assertEquals(1, series.size());
+    assertEquals("mem_free", series.get(0).getMetricName());
+    assertEquals(1, series.get(0).getMetricValues().size());
+  }
 
-    EasyMock.verify(timelineMetrics, connection);
+  private static TimelineMetrics createMetrics(String metricName, long timestamp) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setAppId("HOST");
+    metric.setHostName("h1");
+    metric.setStartTime(timestamp);
+    metric.getMetricValues().put(timestamp, 1.0);
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+    return metrics;
   }
 
   @Test
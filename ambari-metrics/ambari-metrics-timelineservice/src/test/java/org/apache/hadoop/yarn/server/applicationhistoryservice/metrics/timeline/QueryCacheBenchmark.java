@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitQueryExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 50 Grafana dashboards refreshing the last hour of 8 metrics on 5 hosts
+ * every 30 seconds, read through {@link TimelineMetricsQueryCache} versus
+ * from the store. Dashboards show one of 10 host groups, so 5 dashboards
+ * run each query. A refresh runs the queries of all dashboards concurrently
+ * and every invocation advances the clock by 30 seconds.
+ *
+ * The store is simulated: it serves 8 scans at a time, a scan returns 1000
+ * rows per millisecond.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main QueryCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class QueryCacheBenchmark {
+  private static final int DASHBOARDS = 50;
+  private static final int HOST_GROUPS = 10;
+  private static final int HOSTS_PER_GROUP = 5;
+  private static final int METRICS = 8;
+  private static final long START_TIME = 1459000000000L;
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+  private static final int ROWS_PER_MILLI = 1000;
+
+  @Param({"true", "false"})
+  public boolean cached;
+
+  private final Semaphore scans = new Semaphore(8);
+  private final AtomicLong rowsRead = new AtomicLong();
+  private List<String> metricNames;
+  private TimelineMetricsQueryCache cache;
+  private ExecutorService handlers;
+  private long now;
+  private long refreshes;
+
+  private final SplitQueryExecutor.SubQuery store = new SplitQueryExecutor.SubQuery() {
+    @Override
+    public TimelineMetrics execute(Condition condition) {
+      return scan(condition);
+    }
+  };
+
+  @Setup
+  public void setup() {
+    metricNames = new ArrayList<>();
+    for (int i = 0; i < METRICS; i++) {
+      metricNames.add("regionserver.Server.metric" + i + "._rate");
+    }
+    cache = new TimelineMetricsQueryCache(64 * 1024 * 1024);
+    handlers = Executors.newFixedThreadPool(DASHBOARDS);
+    now = START_TIME + HOUR;
+  }
+
+  @TearDown
+  public void tearDown() {
+    handlers.shutdownNow();
+    System.out.println(String.format("%n%d rows read per refresh, %s", rowsRead.get() / refreshes,
+      cache.getStats()));
+  }
+
+  @Benchmark
+  public int refresh() throws Exception {
+    now += REFRESH_INTERVAL;
+    refreshes++;
+    final long refreshTime = now;
+    List<Future<TimelineMetrics>> results = new ArrayList<>(DASHBOARDS);
+    for (int i = 0; i < DASHBOARDS; i++) {
+      final int hostGroup = i % HOST_GROUPS;
+      results.add(handlers.submit(new Callable<TimelineMetrics>() {
+        @Override
+        public TimelineMetrics call() throws Exception {
+          return query(hostGroup, refreshTime);
+        }
+      }));
+    }
+
+    int series = 0;
+    for (Future<TimelineMetrics> result : results) {
+      series += result.get().getMetrics().size();
+    }
+    return series;
+  }
+
+  private TimelineMetrics query(int hostGroup, long refreshTime) throws Exception {
+    List<String> names = new ArrayList<>();
+    for (String metricName : metricNames) {
+      names.add(metricName.substring(0, metricName.indexOf("._")));
+    }
+    List<String> hostnames = new ArrayList<>();
+    for (int i = 0; i < HOSTS_PER_GROUP; i++) {
+      hostnames.add(String.format("c6401-%04d.ambari.apache.org", hostGroup * HOSTS_PER_GROUP + i));
+    }
+    DefaultCondition condition = new DefaultCondition(names, hostnames, "hbase", null,
+      refreshTime - HOUR, refreshTime, null, null, true);
+
+    if (cached) {
+      return cache.getMetrics(metricNames, condition, store, refreshTime);
+    }
+    return store.execute(condition);
+  }
+
+  /**
+   * Returns a value every 10 seconds of every series.
+   */
+  private TimelineMetrics scan(Condition condition) {
+    long firstTime = (condition.getStartTime() + 9999) / 10000 * 10000;
+    long rowsPerSeries = (condition.getEndTime() - firstTime + 9999) / 10000;
+    long rows = rowsPerSeries * condition.getMetricNames().size() * condition.getHostnames().size();
+    rowsRead.addAndGet(rows);
+
+    scans.acquireUninterruptibly();
+    try {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1) * rows / ROWS_PER_MILLI);
+    } finally {
+      scans.release();
+    }
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (String metricName : condition.getMetricNames()) {
+      for (String hostname : condition.getHostnames()) {
+        TreeMap<Long, Double> values = new TreeMap<>();
+        for (long time = firstTime; time < condition.getEndTime(); time += 10000) {
+          values.put(time, 1.0);
+        }
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName(metricName);
+        metric.setHostName(hostname);
+        metric.setAppId("hbase");
+        metric.setStartTime(firstTime);
+        metric.setTimestamp(firstTime);
+        metric.setMetricValues(values);
+        metrics.getMetrics().add(metric);
+      }
+    }
+    return metrics;
+  }
+}
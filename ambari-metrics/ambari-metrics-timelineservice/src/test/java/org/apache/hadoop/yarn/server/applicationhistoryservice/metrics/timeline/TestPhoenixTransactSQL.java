@@ -556,6 +556,41 @@ public class TestPhoenixTransactSQL {
     Assert.assertTrue(requestedSizeFoundInMessage);
   }
 
+  @Test
+  public void testResultSetLimitCheckWithExpandedWildcards() throws SQLException {
+    List<String> metrics = new ArrayList<String>();
+    for (int i = 0; i < 50; i++) {
+      metrics.add("TestMetric" + i);
+    }
+    List<String> hosts = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      hosts.add("TestHost" + i);
+    }
+
+    // 1 pattern x 1 host pattern x 1 hour with SECONDS precision = 360 points
+    DefaultCondition condition = new DefaultCondition(
+      new ArrayList<>(Collections.singletonList("TestMetric%")), new ArrayList<>(Collections.singletonList("TestHost%")),
+      "a1", "i1", 1407950000L, 1407953600L, Precision.SECONDS, null, false);
+    condition.setExpandedMetricNames(metrics);
+    condition.setExpandedHostnames(hosts);
+    Assert.assertEquals(Integer.valueOf(1), condition.getRequestedMetricCount());
+    Assert.assertEquals(Integer.valueOf(1), condition.getRequestedHostCount());
+
+    Connection connection = createNiceMock(Connection.class);
+    PreparedStatement preparedStatement = createNiceMock(PreparedStatement.class);
+    Capture<String> stmtCapture = new Capture<String>();
+    expect(connection.prepareStatement(EasyMock.and(EasyMock.anyString(), EasyMock.capture(stmtCapture))))
+      .andReturn(preparedStatement);
+
+    replay(connection, preparedStatement);
+    PhoenixTransactSQL.prepareGetMetricsSqlStmt(connection, condition);
+    String stmt = stmtCapture.getValue();
+    Assert.assertTrue(stmt.contains("METRIC_NAME IN ("));
+    Assert.assertTrue(stmt.contains("HOSTNAME IN ("));
+    Assert.assertFalse(stmt.contains("LIKE"));
+    verify(connection, preparedStatement);
+  }
+
   @Test
   public void testTopNHostsConditionClause() throws Exception {
     List<String> hosts = Arrays.asList("h1", "h2", "h3", "h4");
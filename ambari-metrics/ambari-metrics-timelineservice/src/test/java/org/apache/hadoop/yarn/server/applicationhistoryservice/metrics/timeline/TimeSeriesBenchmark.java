@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimeSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap footprint and allocation of 10k metrics x 1 hour of 10 second
+ * datapoints held as TreeMap versus TimeSeries. Retained heap is printed
+ * during setup, allocation rate is reported with the gc profiler.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main TimeSeriesBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class TimeSeriesBenchmark {
+  private static final int METRICS = 10000;
+  private static final int POINTS = 360;
+  private static final long START_TIME = 1459000000000L;
+
+  private List<TimelineMetric> treeMapMetrics;
+  private List<TimelineMetric> seriesMetrics;
+
+  @Setup
+  public void setup() {
+    long before = usedHeap();
+    treeMapMetrics = buildTreeMapMetrics();
+    long treeMapHeap = usedHeap() - before;
+
+    before = usedHeap();
+    seriesMetrics = buildSeriesMetrics();
+    long seriesHeap = usedHeap() - before;
+
+    long points = (long) METRICS * POINTS;
+    System.out.println(String.format("%nRetained heap: TreeMap %d MB (%.1f bytes/point), " +
+        "TimeSeries %d MB (%.1f bytes/point)",
+      treeMapHeap >> 20, (double) treeMapHeap / points,
+      seriesHeap >> 20, (double) seriesHeap / points));
+  }
+
+  @Benchmark
+  public List<TimelineMetric> buildTreeMapMetrics() {
+    List<TimelineMetric> metrics = new ArrayList<TimelineMetric>(METRICS);
+    for (int m = 0; m < METRICS; m++) {
+      TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+      for (int p = 0; p < POINTS; p++) {
+        values.put(START_TIME + p * 10000L, (double) (m + p));
+      }
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricValues(values);
+      metrics.add(metric);
+    }
+    return metrics;
+  }
+
+  @Benchmark
+  public List<TimelineMetric> buildSeriesMetrics() {
+    List<TimelineMetric> metrics = new ArrayList<TimelineMetric>(METRICS);
+    for (int m = 0; m < METRICS; m++) {
+      TimeSeries series = new TimeSeries(POINTS);
+      for (int p = 0; p < POINTS; p++) {
+        series.put(START_TIME + p * 10000L, (double) (m + p));
+      }
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricSeries(series);
+      metrics.add(metric);
+    }
+    return metrics;
+  }
+
+  @Benchmark
+  public double sumTreeMapMetrics() {
+    double sum = 0;
+    for (TimelineMetric metric : treeMapMetrics) {
+      for (Map.Entry<Long, Double> entry : metric.getMetricValues().entrySet()) {
+        sum += entry.getValue();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double sumSeriesMetrics() {
+    double sum = 0;
+    for (TimelineMetric metric : seriesMetrics) {
+      TimeSeries series = metric.getMetricSeries();
+      for (int i = 0; i < series.size(); i++) {
+        sum += series.getValue(i);
+      }
+    }
+    return sum;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadRunner;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net.MetricsSender;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricsMemTableTest {
+  private static final long START_TIME = 1459000000000L;
+
+  @Test
+  public void testSeriesMergedAcrossPuts() {
+    TimelineMetricsMemTable memTable = new TimelineMetricsMemTable(Long.MAX_VALUE);
+
+    TimelineMetric first = createMetric("mem_free", "h1", START_TIME, 1.0);
+    first.setUnits("bytes");
+    assertTrue(memTable.put(wrap(first)));
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME + 10000, 2.0))));
+    // a resent datapoint replaces the buffered one
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME + 10000, 3.0))));
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h2", START_TIME, 4.0))));
+
+    List<TimelineMetric> drained = memTable.drain().getMetrics().getMetrics();
+    assertEquals(2, drained.size());
+
+    Map<String, TimelineMetric> byHost = new HashMap<>();
+    for (TimelineMetric metric : drained) {
+      byHost.put(metric.getHostName(), metric);
+    }
+
+    TimelineMetric merged = byHost.get("h1");
+    assertEquals("mem_free", merged.getMetricName());
+    assertEquals("HOST", merged.getAppId());
+    assertEquals("bytes", merged.getUnits());
+    assertEquals(START_TIME, merged.getStartTime());
+    assertEquals(2, merged.getMetricValues().size());
+    assertEquals(1.0, merged.getMetricValues().get(START_TIME), 0.0);
+    assertEquals(3.0, merged.getMetricValues().get(START_TIME + 10000), 0.0);
+
+    assertEquals(1, byHost.get("h2").getMetricValues().size());
+  }
+
+  @Test
+  public void testBytesBoundAndRelease() {
+    TimelineMetricsMemTable memTable = new TimelineMetricsMemTable(
+      TimelineMetricsMemTable.BYTES_PER_SERIES);
+
+    assertTrue(memTable.isEmpty());
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME, 1.0))));
+    long bytes = memTable.getBytes();
+    assertTrue(bytes > TimelineMetricsMemTable.BYTES_PER_SERIES);
+
+    // full, nothing is added
+    assertFalse(memTable.put(wrap(createMetric("cpu_user", "h1", START_TIME, 1.0))));
+    assertEquals(bytes, memTable.getBytes());
+
+    // drained series stay accounted for until they are released
+    TimelineMetricsMemTable.Batch batch = memTable.drain();
+    assertTrue(memTable.isEmpty());
+    assertEquals(bytes, batch.getBytes());
+    assertEquals(bytes, memTable.getBytes());
+    assertFalse(memTable.put(wrap(createMetric("cpu_user", "h1", START_TIME, 1.0))));
+
+    memTable.release(batch);
+    assertEquals(0, memTable.getBytes());
+    assertTrue(memTable.put(wrap(createMetric("cpu_user", "h1", START_TIME, 1.0))));
+    assertEquals(1, memTable.drain().getMetrics().getMetrics().size());
+  }
+
+  @Test
+  public void testLargePutDoesNotOvershoot() {
+    TimelineMetricsMemTable memTable = new TimelineMetricsMemTable(
+      10 * (TimelineMetricsMemTable.BYTES_PER_SERIES + 100));
+
+    // a put larger than the buffer is accepted into an empty buffer only
+    TimelineMetrics large = new TimelineMetrics();
+    for (int i = 0; i < 20; i++) {
+      large.getMetrics().add(createMetric("metric" + i, "h1", START_TIME, 1.0));
+    }
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME, 1.0))));
+    long bytes = memTable.getBytes();
+    assertFalse(memTable.put(large));
+    assertEquals(bytes, memTable.getBytes());
+    assertEquals(1, memTable.drain().getMetrics().getMetrics().size());
+
+    memTable = new TimelineMetricsMemTable(10 * (TimelineMetricsMemTable.BYTES_PER_SERIES + 100));
+    assertTrue(memTable.put(large));
+    assertFalse(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME, 1.0))));
+  }
+
+  @Test
+  public void testReservationReleasedForMergedDatapoints() {
+    TimelineMetricsMemTable memTable = new TimelineMetricsMemTable(Long.MAX_VALUE);
+
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME, 1.0))));
+    long bytes = memTable.getBytes();
+    // a resent datapoint of a buffered series adds nothing
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME, 2.0))));
+    assertEquals(bytes, memTable.getBytes());
+    assertTrue(memTable.put(wrap(createMetric("mem_free", "h1", START_TIME + 10000, 2.0))));
+    assertEquals(bytes + TimelineMetricsMemTable.BYTES_PER_DATAPOINT, memTable.getBytes());
+  }
+
+  /**
+   * Payloads of simulated hosts sending through the {@link LoadRunner} in
+   * several rounds are merged into one series per metric and host. Ingest
+   * throughput is measured by MetricsIngestBenchmark.
+   */
+  @Test
+  public void testLoadRunnerRoundsMerged() throws Exception {
+    final int hosts = 20;
+    final int rounds = 10;
+    final TimelineMetricsMemTable memTable = new TimelineMetricsMemTable(Long.MAX_VALUE);
+    final Map<String, Set<Long>> sent = new HashMap<>();
+    final ObjectMapper mapper = new ObjectMapper();
+    mapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector());
+
+    MetricsSender sender = new MetricsSender() {
+      @Override
+      public String pushMetrics(String payload) {
+        try {
+          TimelineMetrics metrics = mapper.readValue(payload, TimelineMetrics.class);
+          synchronized (sent) {
+            for (TimelineMetric metric : metrics.getMetrics()) {
+              String key = key(metric);
+              if (!sent.containsKey(key)) {
+                sent.put(key, new HashSet<Long>());
+              }
+              sent.get(key).addAll(metric.getMetricValues().keySet());
+            }
+          }
+          memTable.put(metrics);
+          return "OK";
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    LoadRunner runner = new LoadRunner("host", hosts, "localhost", sender,
+      10000, 20000, true);
+    try {
+      for (int i = 0; i < rounds; i++) {
+        runner.runOnce();
+      }
+    } finally {
+      runner.shutdown();
+    }
+
+    List<TimelineMetric> drained = memTable.drain().getMetrics().getMetrics();
+    assertFalse(sent.isEmpty());
+    // every series sent in several rounds is written once, with all its datapoints
+    assertEquals(sent.size(), drained.size());
+    for (TimelineMetric metric : drained) {
+      assertEquals(sent.get(key(metric)), metric.getMetricValues().keySet());
+    }
+  }
+
+  private static String key(TimelineMetric metric) {
+    return metric.getMetricName() + '\0' + metric.getHostName() + '\0' +
+      metric.getAppId() + '\0' + metric.getInstanceId();
+  }
+
+  private static TimelineMetric createMetric(String metricName, String hostName,
+                                             long timestamp, double value) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(metricName);
+    metric.setAppId("HOST");
+    metric.setHostName(hostName);
+    metric.setStartTime(timestamp);
+    metric.getMetricValues().put(timestamp, value);
+    return metric;
+  }
+
+  private static TimelineMetrics wrap(TimelineMetric metric) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+    return metrics;
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.DefaultCondition;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitQueryExecutor;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricsQueryCacheTest {
+  // 100 seconds past a 5 minute bucket boundary
+  private static final long NOW = 1459000000000L + 7200000L;
+  private static final long HOUR = 3600000L;
+  private static final List<String> METRIC_NAMES = Arrays.asList("cpu_user", "mem_free._rate");
+
+  @Test
+  public void testSlidingWindowReusesBuckets() throws Exception {
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(Long.MAX_VALUE);
+    Reader reader = new Reader();
+
+    // The part before the first boundary, 10 buckets in one query, and the newest 400 seconds
+    TimelineMetrics metrics = cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertEquals(3, reader.queries.size());
+    assertEquals(Long.valueOf(NOW - HOUR + 200000), reader.queries.get(1).getStartTime());
+    assertEquals(Long.valueOf(NOW - 400000), reader.queries.get(1).getEndTime());
+    assertEquals(10, cache.getStats().missCount());
+    assertEquals(0, cache.getStats().hitCount());
+    for (Condition query : reader.queries) {
+      assertEquals(Precision.SECONDS, query.getPrecision());
+    }
+    assertSameSeries(reader.execute(createCondition(NOW - HOUR, NOW)), metrics);
+
+    // Refreshed 30 seconds later, names requested in another order
+    reader.queries.clear();
+    metrics = cache.getMetrics(Arrays.asList("mem_free._rate", "cpu_user"),
+      createCondition(NOW - HOUR + 30000, NOW + 30000), reader, NOW + 30000);
+    assertEquals(2, reader.queries.size());
+    assertEquals(Long.valueOf(NOW - HOUR + 30000), reader.queries.get(0).getStartTime());
+    assertEquals(Long.valueOf(NOW + 30000), reader.queries.get(1).getEndTime());
+    assertEquals(10, cache.getStats().hitCount());
+    assertSameSeries(reader.execute(createCondition(NOW - HOUR + 30000, NOW + 30000)), metrics);
+  }
+
+  @Test
+  public void testMissingBucketsReadTogether() throws Exception {
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(Long.MAX_VALUE);
+    Reader reader = new Reader();
+
+    // Caches the 4 buckets of the last half hour
+    cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR / 2, NOW), reader, NOW);
+    assertEquals(4, cache.getStats().missCount());
+
+    // The 6 older buckets are read with one query, the newer ones are cached
+    reader.queries.clear();
+    TimelineMetrics metrics = cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertEquals(3, reader.queries.size());
+    assertEquals(Long.valueOf(NOW - HOUR + 200000), reader.queries.get(1).getStartTime());
+    assertEquals(Long.valueOf(NOW - 1600000), reader.queries.get(1).getEndTime());
+    assertEquals(4, cache.getStats().hitCount());
+    assertEquals(10, cache.getStats().missCount());
+    assertSameSeries(reader.execute(createCondition(NOW - HOUR, NOW)), metrics);
+
+    // The buckets read together are cached one by one
+    reader.queries.clear();
+    metrics = cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertEquals(2, reader.queries.size());
+    assertEquals(14, cache.getStats().hitCount());
+    assertSameSeries(reader.execute(createCondition(NOW - HOUR, NOW)), metrics);
+  }
+
+  @Test
+  public void testMiddleBucketEvictedWithItsRun() throws Exception {
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(Long.MAX_VALUE);
+    RowReader reader = new RowReader();
+
+    // The 10 buckets are read with one query, rows reach into the next bucket
+    cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertEquals(3, reader.queries.size());
+
+    // Evicting a middle bucket removes the rest of its run
+    cache.invalidateBuckets(NOW - HOUR + 200000 + 5 * 300000);
+    reader.queries.clear();
+    TimelineMetrics metrics = cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertEquals(3, reader.queries.size());
+    assertEquals(Long.valueOf(NOW - HOUR + 200000), reader.queries.get(1).getStartTime());
+    assertEquals(Long.valueOf(NOW - 400000), reader.queries.get(1).getEndTime());
+    assertSameSeries(reader.execute(createCondition(NOW - HOUR, NOW)), metrics);
+  }
+
+  @Test
+  public void testCachedSeriesNotModified() throws Exception {
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(Long.MAX_VALUE);
+    Reader reader = new Reader();
+
+    TimelineMetrics metrics = cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    for (TimelineMetric metric : metrics.getMetrics()) {
+      HBaseTimelineMetricStore.updateValuesAsRate(metric.getMetricValues(), false);
+    }
+    metrics = cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertSameSeries(reader.execute(createCondition(NOW - HOUR, NOW)), metrics);
+  }
+
+  @Test
+  public void testRecentWindowNotCached() throws Exception {
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(Long.MAX_VALUE);
+    Reader reader = new Reader();
+
+    DefaultCondition condition = createCondition(NOW - 300000, NOW);
+    cache.getMetrics(METRIC_NAMES, condition, reader, NOW);
+    assertEquals(1, reader.queries.size());
+    assertSame(condition, reader.queries.get(0));
+    assertEquals(0, cache.getStats().requestCount());
+  }
+
+  @Test
+  public void testBytesBound() throws Exception {
+    // Room for about one bucket
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(
+      4 * (TimelineMetricsMemTable.BYTES_PER_SERIES + 30 * TimelineMetricsMemTable.BYTES_PER_DATAPOINT));
+    Reader reader = new Reader();
+
+    cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+    assertTrue(cache.getStats().evictionCount() >= 9);
+  }
+
+  @Test
+  public void testReadFailure() throws Exception {
+    TimelineMetricsQueryCache cache = new TimelineMetricsQueryCache(Long.MAX_VALUE);
+    SplitQueryExecutor.SubQuery reader = new SplitQueryExecutor.SubQuery() {
+      @Override
+      public TimelineMetrics execute(Condition condition) throws SQLException {
+        throw new SQLException("scan failed");
+      }
+    };
+
+    try {
+      cache.getMetrics(METRIC_NAMES, createCondition(NOW - HOUR, NOW), reader, NOW);
+      fail();
+    } catch (SQLException e) {
+      assertEquals("scan failed", e.getMessage());
+    }
+    assertEquals(0, cache.getStats().hitCount());
+  }
+
+  private static DefaultCondition createCondition(long startTime, long endTime) {
+    return new DefaultCondition(new ArrayList<>(Arrays.asList("cpu_user", "mem_free")),
+      new ArrayList<>(Arrays.asList("h1", "h2")), "HOST", null, startTime, endTime, null, null, true);
+  }
+
+  private static void assertSameSeries(TimelineMetrics expected, TimelineMetrics actual) {
+    assertEquals(expected.getMetrics().size(), actual.getMetrics().size());
+    for (int i = 0; i < expected.getMetrics().size(); i++) {
+      TimelineMetric expectedMetric = expected.getMetrics().get(i);
+      TimelineMetric actualMetric = actual.getMetrics().get(i);
+      assertEquals(expectedMetric.getMetricName(), actualMetric.getMetricName());
+      assertEquals(expectedMetric.getHostName(), actualMetric.getHostName());
+      assertEquals(expectedMetric.getStartTime(), actualMetric.getStartTime());
+      assertEquals(expectedMetric.getMetricValues(), actualMetric.getMetricValues());
+    }
+  }
+
+  /**
+   * Returns the rows of every series whose server time is in the time range
+   * of the query. A row is written every 2 minutes and holds a value every
+   * 10 seconds from its server time on.
+   */
+  private static class RowReader implements SplitQueryExecutor.SubQuery {
+    private final List<Condition> queries = new ArrayList<>();
+
+    @Override
+    public TimelineMetrics execute(Condition condition) {
+      queries.add(condition);
+      TimelineMetrics metrics = new TimelineMetrics();
+      for (String metricName : condition.getMetricNames()) {
+        for (String hostname : condition.getHostnames()) {
+          long firstRow = (condition.getStartTime() + 119999) / 120000 * 120000;
+          TreeMap<Long, Double> values = new TreeMap<>();
+          for (long row = firstRow; row < condition.getEndTime(); row += 120000) {
+            for (long time = row; time < row + 120000; time += 10000) {
+              values.put(time, (double) time / 1000);
+            }
+          }
+          TimelineMetric metric = new TimelineMetric();
+          metric.setMetricName(metricName);
+          metric.setHostName(hostname);
+          metric.setAppId("HOST");
+          metric.setStartTime(firstRow);
+          metric.setTimestamp(firstRow);
+          metric.setMetricValues(values);
+          metrics.getMetrics().add(metric);
+        }
+      }
+      return metrics;
+    }
+  }
+
+  /**
+   * Returns a value every 10 seconds of every series.
+   */
+  private static class Reader implements SplitQueryExecutor.SubQuery {
+    private final List<Condition> queries = new ArrayList<>();
+
+    @Override
+    public TimelineMetrics execute(Condition condition) {
+      queries.add(condition);
+      TimelineMetrics metrics = new TimelineMetrics();
+      for (String metricName : condition.getMetricNames()) {
+        for (String hostname : condition.getHostnames()) {
+          long firstTime = (condition.getStartTime() + 9999) / 10000 * 10000;
+          TreeMap<Long, Double> values = new TreeMap<>();
+          for (long time = firstTime; time < condition.getEndTime(); time += 10000) {
+            values.put(time, (double) time / 1000);
+          }
+          TimelineMetric metric = new TimelineMetric();
+          metric.setMetricName(metricName);
+          metric.setHostName(hostname);
+          metric.setAppId("HOST");
+          metric.setStartTime(firstTime);
+          metric.setTimestamp(firstTime);
+          metric.setMetricValues(values);
+          metrics.getMetrics().add(metric);
+        }
+      }
+      return metrics;
+    }
+  }
+}
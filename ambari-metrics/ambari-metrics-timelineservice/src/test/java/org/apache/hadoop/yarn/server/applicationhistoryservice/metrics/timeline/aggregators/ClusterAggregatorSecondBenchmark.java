@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.easymock.EasyMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_SECOND;
+
+/**
+ * Wall time and allocation of a cluster second aggregation run over
+ * 5,000 hosts x 500 metrics with 10 second datapoints. The streaming run
+ * folds the result set into per slice accumulators, the per metric run slices
+ * every host metric into a map as the aggregator used to. Allocation rate is
+ * reported with the gc profiler.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ClusterAggregatorSecondBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ClusterAggregatorSecondBenchmark {
+  private static final int HOSTS = 5000;
+  private static final int METRICS = 500;
+  private static final int DISTINCT_SERIES = 64;
+  private static final long AGGREGATOR_INTERVAL = 120000L;
+  private static final long SLICE_INTERVAL = 30000L;
+  private static final long POINT_INTERVAL = 10000L;
+  private static final long START_TIME = 1459000000000L;
+
+  private final String[] metricNames = new String[METRICS];
+  private final String[] hostNames = new String[HOSTS];
+  private final String[] series = new String[DISTINCT_SERIES];
+
+  private TimelineMetricClusterAggregatorSecond aggregator;
+  private TimelineMetricReadHelper readHelper;
+  private List<Long[]> timeSlices;
+
+  @Setup
+  public void setup() {
+    for (int m = 0; m < METRICS; m++) {
+      metricNames[m] = "metric." + m;
+    }
+    for (int h = 0; h < HOSTS; h++) {
+      hostNames[h] = "host" + h + ".example.com";
+    }
+
+    // rows share a pool of stored values, only parsing them is measured
+    Random random = new Random(7L);
+    for (int s = 0; s < DISTINCT_SERIES; s++) {
+      StringBuilder values = new StringBuilder("{");
+      for (long t = START_TIME + POINT_INTERVAL; t <= START_TIME + AGGREGATOR_INTERVAL; t += POINT_INTERVAL) {
+        if (values.length() > 1) {
+          values.append(',');
+        }
+        values.append('"').append(t).append("\":").append(random.nextInt(1000) / 10.0);
+      }
+      series[s] = values.append('}').toString();
+    }
+
+    Configuration configuration = new Configuration();
+    configuration.set(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "0");
+
+    TimelineMetricMetadataManager metadataManager = EasyMock.createNiceMock(TimelineMetricMetadataManager.class);
+    EasyMock.expect(metadataManager.getHostedAppsCache())
+      .andReturn(new HashMap<String, Set<String>>()).anyTimes();
+    PhoenixHBaseAccessor hBaseAccessor = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    EasyMock.replay(metadataManager, hBaseAccessor);
+
+    aggregator = new TimelineMetricClusterAggregatorSecond(
+      METRIC_AGGREGATE_SECOND, metadataManager, hBaseAccessor, configuration, null,
+      AGGREGATOR_INTERVAL, 2, "false", "", "", AGGREGATOR_INTERVAL, SLICE_INTERVAL, null);
+    readHelper = new TimelineMetricReadHelper(true);
+    timeSlices = aggregator.getTimeSlices(START_TIME, START_TIME + AGGREGATOR_INTERVAL);
+  }
+
+  @Benchmark
+  public void streamingAggregate() throws Exception {
+    aggregator.aggregate(createResultSet(), START_TIME, START_TIME + AGGREGATOR_INTERVAL);
+  }
+
+  @Benchmark
+  public Map<TimelineClusterMetric, MetricClusterAggregate> perMetricAggregate() throws Exception {
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregates = new HashMap<>();
+    ResultSet rs = createResultSet();
+    while (rs.next()) {
+      TimelineMetric metric = readHelper.getTimelineMetricWithSeriesFromResultSet(rs);
+      aggregator.processAggregateClusterMetrics(aggregates, metric, timeSlices);
+    }
+    return aggregates;
+  }
+
+  /**
+   * Result set of one row per metric and host in row key order.
+   */
+  private ResultSet createResultSet() {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+        private int row = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          int metric = row / HOSTS;
+          int host = row % HOSTS;
+          switch (method.getName()) {
+            case "next":
+              return ++row < METRICS * HOSTS;
+            case "getString":
+              switch ((String) args[0]) {
+                case "METRIC_NAME":
+                  return metricNames[metric];
+                case "HOSTNAME":
+                  return hostNames[host];
+                case "APP_ID":
+                  return "HOST";
+                case "METRICS":
+                  return series[(metric + host) % DISTINCT_SERIES];
+                default:
+                  return null;
+              }
+            case "getLong":
+              return "START_TIME".equals(args[0]) ? START_TIME : START_TIME + AGGREGATOR_INTERVAL;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        }
+      });
+  }
+}
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import junit.framework.Assert;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricUuidDictionary;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_HOURLY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_SECOND;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_RECORD_HOURLY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_HOURLY_TABLE_NAME;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_AGGREGATE_MINUTE_TABLE_NAME;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.METRICS_CLUSTER_AGGREGATE_MINUTE_TABLE_NAME;
+
+/**
+ * Aggregation of series which have rows stored by name and rows stored by id.
+ * The ids sort before the names, so the rows of such a series are not
+ * adjacent.
+ */
+public class MixedRowKeyAggregationTest {
+  private static final long HOUR = 3600000l;
+
+  private final TimelineMetricUuidDictionary dictionary = TimelineMetricUuidDictionary.getInstance();
+
+  @Before
+  public void setUp() {
+    dictionary.configure(true, null);
+    dictionary.registerMetric("m1", "a1");
+    dictionary.registerHost("h1");
+  }
+
+  @After
+  public void tearDown() {
+    dictionary.configure(false, null);
+    dictionary.clear();
+  }
+
+  @Test
+  public void testHostAggregateMergesNameAndIdRows() throws Exception {
+    PhoenixHBaseAccessor hBaseAccessor = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Map<TimelineMetric, MetricHostAggregate>> saved = new Capture<>();
+    hBaseAccessor.saveHostAggregateRecords(EasyMock.capture(saved),
+      EasyMock.eq(METRICS_AGGREGATE_HOURLY_TABLE_NAME));
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(hBaseAccessor);
+
+    TimelineMetricHostAggregator aggregator = new TimelineMetricHostAggregator(
+      METRIC_RECORD_HOURLY, hBaseAccessor, new Configuration(), null, HOUR, 2, "false",
+      METRICS_AGGREGATE_MINUTE_TABLE_NAME, METRICS_AGGREGATE_HOURLY_TABLE_NAME, HOUR, null);
+
+    String metricId = dictionary.encodeMetricName("m1", "a1");
+    String hostId = dictionary.encodeHostname("h1");
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(metricId));
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(hostId));
+    long startTime = 10 * HOUR;
+
+    // rows in row key order: m1 of h1 stored by id, another series, then m1
+    // of h1 stored by name
+    List<Map<String, Object>> rows = new ArrayList<>();
+    rows.add(hostRow(metricId, hostId, startTime, 1.0, 1.0, 1.0, 1));
+    rows.add(hostRow("m0", "h1", startTime, 5.0, 5.0, 5.0, 1));
+    rows.add(hostRow("m1", "h1", startTime + 60000, 6.0, 4.0, 2.0, 2));
+
+    aggregator.aggregate(createResultSet(rows), startTime, startTime + HOUR);
+    EasyMock.verify(hBaseAccessor);
+
+    Map<TimelineMetric, MetricHostAggregate> aggregates = saved.getValue();
+    Assert.assertEquals(2, aggregates.size());
+
+    TimelineMetric m1 = new TimelineMetric();
+    m1.setMetricName("m1");
+    m1.setHostName("h1");
+    m1.setAppId("a1");
+    m1.setTimestamp(startTime + HOUR);
+    MetricHostAggregate aggregate = aggregates.get(m1);
+    Assert.assertEquals(7.0, aggregate.getSum());
+    Assert.assertEquals(4.0, aggregate.getMax());
+    Assert.assertEquals(1.0, aggregate.getMin());
+    Assert.assertEquals(3, aggregate.getNumberOfSamples());
+  }
+
+  @Test
+  public void testClusterAggregateMergesNameAndIdRows() throws Exception {
+    PhoenixHBaseAccessor hBaseAccessor = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Map<TimelineClusterMetric, MetricHostAggregate>> saved = new Capture<>();
+    hBaseAccessor.saveClusterTimeAggregateRecords(EasyMock.capture(saved),
+      EasyMock.eq(METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME));
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(hBaseAccessor);
+
+    TimelineMetricClusterAggregator aggregator = new TimelineMetricClusterAggregator(
+      METRIC_AGGREGATE_HOURLY, hBaseAccessor, new Configuration(), null, HOUR, 2, "false",
+      METRICS_CLUSTER_AGGREGATE_MINUTE_TABLE_NAME, METRICS_CLUSTER_AGGREGATE_HOURLY_TABLE_NAME, HOUR, null);
+
+    String metricId = dictionary.encodeMetricName("m1", "a1");
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(metricId));
+    long startTime = 10 * HOUR;
+
+    List<Map<String, Object>> rows = new ArrayList<>();
+    rows.add(clusterRow(metricId, startTime, 1.0, 1.0, 1.0, 1));
+    rows.add(clusterRow("m0", startTime, 5.0, 5.0, 5.0, 1));
+    rows.add(clusterRow("m1", startTime + 60000, 6.0, 4.0, 2.0, 2));
+
+    aggregator.aggregate(createResultSet(rows), startTime, startTime + HOUR);
+    EasyMock.verify(hBaseAccessor);
+
+    Map<TimelineClusterMetric, MetricHostAggregate> aggregates = saved.getValue();
+    Assert.assertEquals(2, aggregates.size());
+
+    MetricHostAggregate aggregate = aggregates.get(
+      new TimelineClusterMetric("m1", "a1", null, startTime + HOUR, null));
+    Assert.assertEquals(7.0, aggregate.getSum());
+    Assert.assertEquals(4.0, aggregate.getMax());
+    Assert.assertEquals(1.0, aggregate.getMin());
+    Assert.assertEquals(3, aggregate.getNumberOfSamples());
+  }
+
+  @Test
+  public void testClusterSecondAggregateMergesNameAndIdRows() throws Exception {
+    long aggregatorInterval = 120000l;
+    long sliceInterval = 30000l;
+    long seconds = 1000;
+
+    Configuration configuration = new Configuration();
+    configuration.set(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "0");
+    TimelineMetricMetadataManager metadataManager = EasyMock.createNiceMock(TimelineMetricMetadataManager.class);
+    EasyMock.expect(metadataManager.getHostedAppsCache())
+      .andReturn(new HashMap<String, Set<String>>()).anyTimes();
+    PhoenixHBaseAccessor hBaseAccessor = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Map<TimelineClusterMetric, MetricClusterAggregate>> saved = new Capture<>(CaptureType.ALL);
+    hBaseAccessor.saveClusterAggregateRecords(EasyMock.capture(saved));
+    EasyMock.expectLastCall().anyTimes();
+    EasyMock.replay(metadataManager, hBaseAccessor);
+
+    TimelineMetricClusterAggregatorSecond aggregator = new TimelineMetricClusterAggregatorSecond(
+      METRIC_AGGREGATE_SECOND, metadataManager, hBaseAccessor, configuration, null,
+      aggregatorInterval, 2, "false", "", "", aggregatorInterval, sliceInterval, null);
+
+    dictionary.registerHost("h2");
+    String metricId = dictionary.encodeMetricName("m1", "a1");
+    String hostId = dictionary.encodeHostname("h1");
+    String host2Id = dictionary.encodeHostname("h2");
+    long startTime = 10 * HOUR;
+
+    // rows in row key order: m1 of h1 and h2 stored by id, enough other
+    // series to save a batch of aggregates, then m1 of h1 stored by name
+    List<Map<String, Object>> rows = new ArrayList<>();
+    rows.add(secondRow(metricId, hostId, startTime, "{\"" + (startTime + 15 * seconds) + "\":1.0}"));
+    rows.add(secondRow(metricId, host2Id, startTime, "{\"" + (startTime + 15 * seconds) + "\":5.0}"));
+    for (int i = 0; i < 3000; i++) {
+      rows.add(secondRow(String.format("m0-%04d", i), "h1", startTime,
+        "{\"" + (startTime + 15 * seconds) + "\":1.0}"));
+    }
+    rows.add(secondRow("m1", "h1", startTime, "{\"" + (startTime + 45 * seconds) + "\":3.0}"));
+
+    aggregator.aggregate(createResultSet(rows), startTime, startTime + aggregatorInterval);
+    EasyMock.verify(hBaseAccessor);
+    Assert.assertTrue(saved.getValues().size() > 1);
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregates = new HashMap<>();
+    for (Map<TimelineClusterMetric, MetricClusterAggregate> batch : saved.getValues()) {
+      for (TimelineClusterMetric clusterMetric : batch.keySet()) {
+        // no aggregate is saved twice, a later save would overwrite the first
+        Assert.assertFalse(aggregates.containsKey(clusterMetric));
+      }
+      aggregates.putAll(batch);
+    }
+
+    // h1 is counted once, with the values of its rows stored by id and name
+    MetricClusterAggregate aggregate = aggregates.get(
+      new TimelineClusterMetric("m1", "a1", null, startTime + 30 * seconds, null));
+    Assert.assertEquals(6.0, aggregate.getSum());
+    Assert.assertEquals(2, aggregate.getNumberOfHosts());
+    aggregate = aggregates.get(
+      new TimelineClusterMetric("m1", "a1", null, startTime + 60 * seconds, null));
+    Assert.assertEquals(8.0, aggregate.getSum());
+    Assert.assertEquals(2, aggregate.getNumberOfHosts());
+    Assert.assertEquals(3.0, aggregate.getMin());
+  }
+
+  private static Map<String, Object> secondRow(String metricName, String hostName, long startTime,
+                                               String metrics) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("METRIC_NAME", metricName);
+    row.put("HOSTNAME", hostName);
+    row.put("APP_ID", "a1");
+    row.put("START_TIME", startTime);
+    row.put("METRICS", metrics);
+    return row;
+  }
+
+  private static Map<String, Object> hostRow(String metricName, String hostName, long serverTime,
+                                             double sum, double max, double min, long count) {
+    Map<String, Object> row = clusterRow(metricName, serverTime, sum, max, min, count);
+    row.put("HOSTNAME", hostName);
+    return row;
+  }
+
+  private static Map<String, Object> clusterRow(String metricName, long serverTime,
+                                                double sum, double max, double min, long count) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("METRIC_NAME", metricName);
+    row.put("APP_ID", "a1");
+    row.put("SERVER_TIME", serverTime);
+    row.put("METRIC_SUM", sum);
+    row.put("METRIC_MAX", max);
+    row.put("METRIC_MIN", min);
+    row.put("METRIC_COUNT", count);
+    return row;
+  }
+
+  /**
+   * Result set over rows of column values, columns which are missing read as
+   * null or zero.
+   */
+  private static ResultSet createResultSet(final List<Map<String, Object>> rows) {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+        private int row = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if ("next".equals(method.getName())) {
+            return ++row < rows.size();
+          }
+
+          Object value = rows.get(row).get(args[0]);
+          switch (method.getName()) {
+            case "getString":
+              return value;
+            case "getLong":
+              return value == null ? 0L : ((Number) value).longValue();
+            case "getInt":
+              return value == null ? 0 : ((Number) value).intValue();
+            case "getDouble":
+              return value == null ? 0.0 : ((Number) value).doubleValue();
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        }
+      });
+  }
+}
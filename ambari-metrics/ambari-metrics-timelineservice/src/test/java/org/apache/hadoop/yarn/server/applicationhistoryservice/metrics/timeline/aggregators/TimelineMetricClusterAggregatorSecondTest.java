@@ -20,16 +20,27 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import junit.framework.Assert;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_APP_ID;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.availability.AggregationTaskRunner.AGGREGATOR_NAME.METRIC_AGGREGATE_SECOND;
 
 public class TimelineMetricClusterAggregatorSecondTest {
@@ -313,4 +324,94 @@ public class TimelineMetricClusterAggregatorSecondTest {
 
   }
 
+  @Test
+  public void testStreamingAggregationFromResultSet() throws Exception {
+    long aggregatorInterval = 120000l;
+    long sliceInterval = 30000l;
+    long seconds = 1000;
+
+    Configuration configuration = new Configuration();
+    configuration.set(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "0");
+    TimelineMetricMetadataManager metricMetadataManagerMock = EasyMock.createNiceMock(TimelineMetricMetadataManager.class);
+    EasyMock.expect(metricMetadataManagerMock.getHostedAppsCache())
+      .andReturn(new HashMap<String, Set<String>>()).anyTimes();
+    PhoenixHBaseAccessor hBaseAccessor = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Map<TimelineClusterMetric, MetricClusterAggregate>> saved = new Capture<>();
+    hBaseAccessor.saveClusterAggregateRecords(EasyMock.capture(saved));
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(metricMetadataManagerMock, hBaseAccessor);
+
+    TimelineMetricClusterAggregatorSecond secondAggregator = new TimelineMetricClusterAggregatorSecond(
+      METRIC_AGGREGATE_SECOND, metricMetadataManagerMock, hBaseAccessor, configuration, null,
+      aggregatorInterval, 2, "false", "", "", aggregatorInterval, sliceInterval, null);
+
+    long startTime = AbstractTimelineAggregator.getRoundedCheckPointTimeMillis(System.currentTimeMillis(), aggregatorInterval);
+
+    // rows in row key order, the first host sends m1 in two rows
+    List<Object[]> rows = new ArrayList<>();
+    rows.add(row("m1", "h1", "a1", startTime, "{\"" + (startTime + 15 * seconds) + "\":1.0,\"" +
+      (startTime + 45 * seconds) + "\":2.0}"));
+    rows.add(row("m1", "h1", "a1", startTime, "{\"" + (startTime + 75 * seconds) + "\":3.0,\"" +
+      (startTime + 105 * seconds) + "\":4.0}"));
+    rows.add(row("m1", "h2", "a1", startTime, "{\"" + (startTime + 15 * seconds) + "\":3.0,\"" +
+      (startTime + 45 * seconds) + "\":5.0,\"" + (startTime + 75 * seconds) + "\":7.0,\"" +
+      (startTime + 105 * seconds) + "\":9.0}"));
+    rows.add(row("m2", "h1", "a1", startTime, "{\"" + (startTime + 15 * seconds) + "\":10.0}"));
+
+    secondAggregator.aggregate(createResultSet(rows), startTime, startTime + aggregatorInterval);
+    EasyMock.verify(hBaseAccessor);
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> aggregates = saved.getValue();
+    // 4 slices of m1 and m2 each, and live hosts
+    Assert.assertEquals(9, aggregates.size());
+
+    MetricClusterAggregate aggregate = aggregates.get(
+      new TimelineClusterMetric("m1", "a1", null, startTime + 60 * seconds, null));
+    Assert.assertEquals(7.0, aggregate.getSum());
+    Assert.assertEquals(2, aggregate.getNumberOfHosts());
+    Assert.assertEquals(5.0, aggregate.getMax());
+    Assert.assertEquals(2.0, aggregate.getMin());
+
+    // m2 is painted from its single value
+    aggregate = aggregates.get(new TimelineClusterMetric("m2", "a1", null, startTime + 120 * seconds, null));
+    Assert.assertEquals(10.0, aggregate.getSum());
+    Assert.assertEquals(1, aggregate.getNumberOfHosts());
+
+    aggregate = aggregates.get(new TimelineClusterMetric("live_hosts", HOST_APP_ID, null,
+      startTime + aggregatorInterval, null));
+    Assert.assertEquals(2.0, aggregate.getSum());
+  }
+
+  private static Object[] row(String metricName, String hostName, String appId,
+                              long startTime, String metrics) {
+    return new Object[] { metricName, hostName, appId, startTime, metrics };
+  }
+
+  /**
+   * Result set over rows of METRIC_NAME, HOSTNAME, APP_ID, START_TIME and
+   * METRICS.
+   */
+  private static ResultSet createResultSet(final List<Object[]> rows) {
+    final List<String> columns = Arrays.asList("METRIC_NAME", "HOSTNAME", "APP_ID", "START_TIME", "METRICS");
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+        private int row = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          switch (method.getName()) {
+            case "next":
+              return ++row < rows.size();
+            case "getString":
+              int index = columns.indexOf(args[0]);
+              return index < 0 ? null : rows.get(row)[index];
+            case "getLong":
+              Object value = rows.get(row)[columns.indexOf("START_TIME")];
+              return "START_TIME".equals(args[0]) ? value : (Object) 0L;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        }
+      });
+  }
 }
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON and binary METRICS column encodings. Bytes per point
+ * for each format are printed once during setup.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main MetricValuesCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetricValuesCodecBenchmark {
+
+  /**
+   * 6 points per minute from the sinks: 1 minute, 1 hour and 1 day series.
+   */
+  @Param({"6", "360", "8640"})
+  public int points;
+
+  private TreeMap<Long, Double> values;
+  private String json;
+  private String binary;
+
+  @Setup
+  public void setup() throws Exception {
+    Random random = new Random(points);
+    values = new TreeMap<Long, Double>();
+    long timestamp = 1459000000000L;
+    double value = 0;
+    for (int i = 0; i < points; i++) {
+      timestamp += 10000 + random.nextInt(5);
+      if (random.nextInt(3) == 0) {
+        value = Math.round(random.nextDouble() * 10000) / 100.0;
+      }
+      values.put(timestamp, value);
+    }
+    json = MetricValuesCodec.encode(values, MetricValuesEncoding.JSON);
+    binary = MetricValuesCodec.encode(values, MetricValuesEncoding.BINARY);
+    System.out.println(String.format("%n%d points: json %.2f bytes/point, binary %.2f bytes/point",
+      points, (double) json.length() / points, (double) binary.length() / points));
+  }
+
+  @Benchmark
+  public String encodeJson() throws Exception {
+    return MetricValuesCodec.encode(values, MetricValuesEncoding.JSON);
+  }
+
+  @Benchmark
+  public String encodeBinary() throws Exception {
+    return MetricValuesCodec.encode(values, MetricValuesEncoding.BINARY);
+  }
+
+  @Benchmark
+  public TreeMap<Long, Double> decodeJson() throws Exception {
+    return MetricValuesCodec.decode(json);
+  }
+
+  @Benchmark
+  public TreeMap<Long, Double> decodeBinary() throws Exception {
+    return MetricValuesCodec.decode(binary);
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.codec;
+
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricValuesCodecTest {
+
+  private static TreeMap<Long, Double> createSeries(int points, long interval, Random random) {
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    long timestamp = 1459000000000L;
+    double value = 100.0;
+    for (int i = 0; i < points; i++) {
+      // Jitter of a few millis, as seen from sinks
+      timestamp += interval + random.nextInt(5);
+      if (random.nextInt(3) == 0) {
+        value = Math.round(random.nextDouble() * 10000) / 100.0;
+      }
+      values.put(timestamp, value);
+    }
+    return values;
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws Exception {
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      TreeMap<Long, Double> values = createSeries(random.nextInt(500), 10000, random);
+      byte[] encoded = GorillaSeriesCodec.encode(values);
+      assertEquals(values, GorillaSeriesCodec.decode(encoded));
+    }
+  }
+
+  @Test
+  public void testSpecialValuesAndIrregularTimestamps() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(1L, Double.NaN);
+    values.put(2L, Double.MAX_VALUE);
+    values.put(100000L, -0.0);
+    values.put(100001L, Double.NEGATIVE_INFINITY);
+    values.put(Long.MAX_VALUE / 2, Double.MIN_VALUE);
+    values.put(Long.MAX_VALUE, 0.0);
+
+    assertEquals(values, GorillaSeriesCodec.decode(GorillaSeriesCodec.encode(values)));
+    assertEquals(new TreeMap<Long, Double>(),
+      GorillaSeriesCodec.decode(GorillaSeriesCodec.encode(new TreeMap<Long, Double>())));
+  }
+
+  @Test
+  public void testJsonAndBinaryRowsReadSideBySide() throws Exception {
+    TreeMap<Long, Double> values = createSeries(60, 10000, new Random(7));
+
+    String json = MetricValuesCodec.encode(values, MetricValuesEncoding.JSON);
+    String binary = MetricValuesCodec.encode(values, MetricValuesEncoding.BINARY);
+
+    assertEquals(TimelineUtils.dumpTimelineRecordtoJSON(values), json);
+    assertEquals(MetricValuesCodec.BINARY_MARKER, binary.charAt(0));
+    assertEquals(values, MetricValuesCodec.decode(json));
+    assertEquals(values, MetricValuesCodec.decode(binary));
+  }
+
+  @Test
+  public void testNullValuesFallBackToJson() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(1000L, 1.0);
+    values.put(2000L, null);
+
+    String stored = MetricValuesCodec.encode(values, MetricValuesEncoding.BINARY);
+    assertEquals('{', stored.charAt(0));
+    assertEquals(values, MetricValuesCodec.decode(stored));
+  }
+
+  @Test
+  public void testBinaryIsSmallerThanJson() throws Exception {
+    TreeMap<Long, Double> values = createSeries(360, 10000, new Random(1));
+
+    int jsonLength = MetricValuesCodec.encode(values, MetricValuesEncoding.JSON).length();
+    int binaryLength = MetricValuesCodec.encode(values, MetricValuesEncoding.BINARY).length();
+    assertTrue("binary = " + binaryLength + ", json = " + jsonLength,
+      binaryLength * 4 < jsonLength);
+  }
+
+  @Test
+  public void testEncodingFromString() {
+    assertEquals(MetricValuesEncoding.JSON, MetricValuesEncoding.fromString(null));
+    assertEquals(MetricValuesEncoding.JSON, MetricValuesEncoding.fromString(""));
+    assertEquals(MetricValuesEncoding.BINARY, MetricValuesEncoding.fromString(" binary "));
+    assertEquals(MetricValuesEncoding.JSON, MetricValuesEncoding.fromString("gorilla"));
+  }
+}
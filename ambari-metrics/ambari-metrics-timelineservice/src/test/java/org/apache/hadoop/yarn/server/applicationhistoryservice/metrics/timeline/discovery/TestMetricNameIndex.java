@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata.MetricType.GAUGE;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+public class TestMetricNameIndex {
+
+  @Test
+  public void testFindMetricNames() {
+    TimelineMetricNameIndex index = new TimelineMetricNameIndex();
+    index.addMetric("regionserver.Server.readRequestCount", "hbase");
+    index.addMetric("regionserver.Server.writeRequestCount", "hbase");
+    index.addMetric("regionserver.Server.readRequestCount", "ams-hbase");
+    index.addMetric("regionserver.Replication.sizeOfLogQueue", "hbase");
+    index.addMetric("regionserverX", "hbase");
+    index.addMetric("cpu_user", "HOST");
+
+    Assert.assertEquals(Arrays.asList("regionserver.Server.readRequestCount",
+        "regionserver.Server.writeRequestCount"),
+      index.findMetricNames("regionserver.Server.%", "hbase", 10));
+    Assert.assertEquals(Collections.singletonList("regionserver.Server.readRequestCount"),
+      index.findMetricNames("regionserver.Server.%", "AMS-HBASE", 10));
+    Assert.assertEquals(Arrays.asList("regionserver.Server.readRequestCount",
+        "regionserver.Server.writeRequestCount"),
+      index.findMetricNames("regionserver.%.%RequestCount", null, 10));
+    Assert.assertEquals(Collections.singletonList("regionserverX"),
+      index.findMetricNames("regionserver_", null, 10));
+    Assert.assertTrue(index.findMetricNames("jvm.%", null, 10).isEmpty());
+
+    // Host metrics are aggregated per app
+    Assert.assertEquals(Collections.singletonList("cpu_user"),
+      index.findMetricNames("cpu_%", "namenode", 10));
+
+    // Too many matches
+    Assert.assertNull(index.findMetricNames("regionserver%", "hbase", 3));
+    Assert.assertEquals(5, index.findMetricNames("%", null, 5).size());
+    Assert.assertNull(index.findMetricNames("%", null, 4));
+  }
+
+  @Test
+  public void testFindHostnames() {
+    TimelineMetricNameIndex index = new TimelineMetricNameIndex();
+    index.addHost("h1.example.com", "HOST");
+    index.addHost("h1.example.com", "datanode");
+    index.addHost("h2.example.com", "HOST");
+    index.addHost("h10.example.com", "HOST");
+    index.addHost("g1.example.com", "datanode");
+
+    Assert.assertEquals(Arrays.asList("h1.example.com", "h10.example.com", "h2.example.com"),
+      index.findHostnames("h%", "HOST", 10));
+    Assert.assertEquals(Collections.singletonList("h1.example.com"),
+      index.findHostnames("h%", "datanode", 10));
+    Assert.assertEquals(Arrays.asList("g1.example.com", "h1.example.com"),
+      index.findHostnames("%1.example.com", "datanode", 10));
+    Assert.assertTrue(index.findHostnames("h%", "namenode", 10).isEmpty());
+    Assert.assertEquals("h1", TimelineMetricNameIndex.literalPrefix("h1%.com"));
+  }
+
+  @Test
+  public void testExpandWildcards() throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.setInt("timeline.metrics.service.metadata.sync.init.delay", 3600);
+    configuration.setInt("timeline.metrics.service.wildcard.expansion.limit", 3);
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+
+    Map<TimelineMetricMetadataKey, TimelineMetricMetadata> metadata = new HashMap<>();
+    metadata.put(new TimelineMetricMetadataKey("m1", "a1"),
+      new TimelineMetricMetadata("m1", "a1", "", GAUGE.name(), System.currentTimeMillis(), true));
+    Map<String, Set<String>> hostedApps = new HashMap<>();
+    hostedApps.put("h1", new HashSet<>(Collections.singletonList("a1")));
+    expect(hBaseAccessor.getTimelineMetricMetadata()).andReturn(metadata).anyTimes();
+    expect(hBaseAccessor.getHostedAppsMetadata()).andReturn(hostedApps).anyTimes();
+    replay(hBaseAccessor);
+
+    TimelineMetricMetadataManager metadataManager = new TimelineMetricMetadataManager(hBaseAccessor, configuration);
+    metadataManager.initializeMetadata();
+
+    // Names without wildcards are not copied
+    List<String> names = Arrays.asList("m1", "m2");
+    Assert.assertSame(names, metadataManager.expandMetricNames(names, "a1"));
+
+    // Names written after the store was read
+    metadataManager.putIfModifiedTimelineMetricMetadata(
+      new TimelineMetricMetadata("m2", "a1", "", GAUGE.name(), System.currentTimeMillis(), true));
+    metadataManager.putIfModifiedHostedAppsMetadata("h2", "a1");
+
+    Assert.assertEquals(Arrays.asList("m1", "m2"),
+      metadataManager.expandMetricNames(Arrays.asList("m%", "m1"), "a1"));
+    Assert.assertEquals(Arrays.asList("h1", "h2"),
+      metadataManager.expandHostnames(Collections.singletonList("h%"), "a1"));
+
+    // Patterns matching nothing or too much are kept
+    Assert.assertEquals(Arrays.asList("x%", "m1", "m2"),
+      metadataManager.expandMetricNames(Arrays.asList("x%", "m%"), "a1"));
+    metadataManager.putIfModifiedTimelineMetricMetadata(
+      new TimelineMetricMetadata("m3", "a1", "", GAUGE.name(), System.currentTimeMillis(), true));
+    metadataManager.putIfModifiedTimelineMetricMetadata(
+      new TimelineMetricMetadata("m4", "a1", "", GAUGE.name(), System.currentTimeMillis(), true));
+    Assert.assertEquals(Collections.singletonList("m%"),
+      metadataManager.expandMetricNames(Collections.singletonList("m%"), "a1"));
+  }
+}
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata.MetricType.GAUGE;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+public class TestUuidDictionary {
+
+  @After
+  public void tearDown() {
+    TimelineMetricUuidDictionary.getInstance().configure(false, null);
+    TimelineMetricUuidDictionary.getInstance().clear();
+  }
+
+  @Test
+  public void testEncodeDecode() {
+    TimelineMetricUuidDictionary dictionary = new TimelineMetricUuidDictionary();
+    dictionary.configure(true, null);
+    dictionary.registerMetric("regionserver.Server.Region.metric", "hbase");
+    dictionary.registerHost("h1.example.com");
+
+    String metricUuid = dictionary.encodeMetricName("regionserver.Server.Region.metric", "hbase");
+    String hostUuid = dictionary.encodeHostname("h1.example.com");
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(metricUuid));
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(hostUuid));
+    Assert.assertEquals(TimelineMetricUuidDictionary.METRIC_UUID_LENGTH + 1, metricUuid.length());
+    Assert.assertEquals(TimelineMetricUuidDictionary.HOST_UUID_LENGTH + 1, hostUuid.length());
+    Assert.assertFalse(metricUuid.contains("%") || metricUuid.contains("_"));
+
+    Assert.assertEquals("regionserver.Server.Region.metric", dictionary.decodeMetricName(metricUuid));
+    Assert.assertEquals("h1.example.com", dictionary.decodeHostname(hostUuid));
+
+    // Ids are the same on every collector
+    TimelineMetricUuidDictionary other = new TimelineMetricUuidDictionary();
+    other.configure(true, null);
+    other.registerMetric("regionserver.Server.Region.metric", "hbase");
+    Assert.assertEquals(metricUuid, other.encodeMetricName("regionserver.Server.Region.metric", "hbase"));
+
+    // Unregistered names and other apps are stored by name
+    Assert.assertEquals("m2", dictionary.encodeMetricName("m2", "hbase"));
+    Assert.assertEquals("regionserver.Server.Region.metric",
+      dictionary.encodeMetricName("regionserver.Server.Region.metric", "HOST"));
+    Assert.assertEquals("h2", dictionary.encodeHostname("h2"));
+    Assert.assertEquals("m2", dictionary.decodeMetricName("m2"));
+
+    // Nothing is encoded once disabled, ids are still decoded
+    dictionary.configure(false, null);
+    Assert.assertEquals("h1.example.com", dictionary.encodeHostname("h1.example.com"));
+    Assert.assertEquals("h1.example.com", dictionary.decodeHostname(hostUuid));
+  }
+
+  @Test
+  public void testExpand() {
+    TimelineMetricUuidDictionary dictionary = new TimelineMetricUuidDictionary();
+    List<String> names = Arrays.asList("m1", "m%");
+    Assert.assertSame(names, dictionary.expandMetricNames(names, null));
+
+    dictionary.configure(true, null);
+    dictionary.registerMetric("m1", "a1");
+    dictionary.registerMetric("m1", "a2");
+    dictionary.registerMetric("m2", "a1");
+    dictionary.registerMetric("x1", "a1");
+    dictionary.registerHost("h1");
+    dictionary.registerHost("h2");
+
+    List<String> expanded = dictionary.expandMetricNames(Collections.singletonList("m1"), "A1");
+    Assert.assertEquals(Arrays.asList("m1", dictionary.encodeMetricName("m1", "a1")), expanded);
+
+    expanded = dictionary.expandMetricNames(Collections.singletonList("m1"), null);
+    Assert.assertEquals(3, expanded.size());
+    Assert.assertEquals(1, TimelineMetricUuidDictionary.countNames(expanded));
+
+    expanded = dictionary.expandMetricNames(Collections.singletonList("m%"), "a1");
+    Assert.assertEquals(new HashSet<>(Arrays.asList("m%", dictionary.encodeMetricName("m1", "a1"),
+      dictionary.encodeMetricName("m2", "a1"))), new HashSet<>(expanded));
+    Assert.assertEquals(expanded, dictionary.expandMetricNames(expanded, "a1"));
+
+    expanded = dictionary.expandHostnames(Arrays.asList("h1", "h3"));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("h1", "h3", dictionary.encodeHostname("h1"))),
+      new HashSet<>(expanded));
+    Assert.assertEquals(3, dictionary.expandHostnames(Collections.singletonList("h%")).size());
+  }
+
+  @Test
+  public void testPlainPatterns() {
+    TimelineMetricUuidDictionary dictionary = new TimelineMetricUuidDictionary();
+    dictionary.configure(true, Arrays.asList("dfs.NNTopUserOpCounts.windowMs=60000.op%", "jvm.se_sion"));
+    dictionary.registerMetric("dfs.NNTopUserOpCounts.windowMs=60000.op=create.user=hdfs.count", "namenode");
+    dictionary.registerMetric("jvm.session", "namenode");
+    dictionary.registerMetric("jvm.gc", "namenode");
+
+    Assert.assertEquals("dfs.NNTopUserOpCounts.windowMs=60000.op=create.user=hdfs.count",
+      dictionary.encodeMetricName("dfs.NNTopUserOpCounts.windowMs=60000.op=create.user=hdfs.count", "namenode"));
+    Assert.assertEquals("jvm.session", dictionary.encodeMetricName("jvm.session", "namenode"));
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(dictionary.encodeMetricName("jvm.gc", "namenode")));
+  }
+
+  @Test
+  public void testCollision() {
+    // 12 bit host ids collide within a few hundred hosts
+    TimelineMetricUuidDictionary dictionary = new TimelineMetricUuidDictionary(
+      TimelineMetricUuidDictionary.METRIC_UUID_LENGTH, 2);
+    dictionary.configure(true, null);
+
+    Map<String, String> hostsByUuid = new HashMap<>();
+    String first = null;
+    String second = null;
+    for (int i = 0; second == null; i++) {
+      String hostname = "h" + i;
+      dictionary.registerHost(hostname);
+      String uuid = TimelineMetricUuidDictionary.createUuid(hostname, 2);
+      if (hostsByUuid.containsKey(uuid)) {
+        first = hostsByUuid.get(uuid);
+        second = hostname;
+      }
+      hostsByUuid.put(uuid, hostname);
+    }
+
+    // Both hosts are stored by name, rows stored by id before are still read
+    String uuid = TimelineMetricUuidDictionary.createUuid(first, 2);
+    Assert.assertEquals(first, dictionary.encodeHostname(first));
+    Assert.assertEquals(second, dictionary.encodeHostname(second));
+    Assert.assertEquals(first, dictionary.decodeHostname(uuid));
+    Assert.assertEquals(Arrays.asList(first, uuid), dictionary.expandHostnames(Collections.singletonList(first)));
+    Assert.assertEquals(Collections.singletonList(second),
+      dictionary.expandHostnames(Collections.singletonList(second)));
+  }
+
+  @Test
+  public void testRegisterPersistedNames() throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.setBoolean("timeline.metrics.uuid.keys.enabled", true);
+    configuration.setInt("timeline.metrics.service.metadata.sync.init.delay", 3600);
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+
+    Map<TimelineMetricMetadataKey, TimelineMetricMetadata> metadata = new HashMap<>();
+    metadata.put(new TimelineMetricMetadataKey("m1", "a1"),
+      new TimelineMetricMetadata("m1", "a1", "", GAUGE.name(), System.currentTimeMillis(), true));
+    Map<String, Set<String>> hostedApps = new HashMap<>();
+    hostedApps.put("h1", new HashSet<>(Collections.singletonList("a1")));
+    expect(hBaseAccessor.getTimelineMetricMetadata()).andReturn(metadata).anyTimes();
+    expect(hBaseAccessor.getHostedAppsMetadata()).andReturn(hostedApps).anyTimes();
+    replay(hBaseAccessor);
+
+    TimelineMetricMetadataManager metadataManager = new TimelineMetricMetadataManager(hBaseAccessor, configuration);
+    metadataManager.initializeMetadata();
+    TimelineMetricUuidDictionary dictionary = metadataManager.getUuidDictionary();
+
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(dictionary.encodeMetricName("m1", "a1")));
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(dictionary.encodeHostname("h1")));
+
+    // New metrics are stored by name until their metadata is persisted
+    metadataManager.putIfModifiedTimelineMetricMetadata(
+      new TimelineMetricMetadata("m2", "a1", "", GAUGE.name(), System.currentTimeMillis(), true));
+    Assert.assertEquals("m2", dictionary.encodeMetricName("m2", "a1"));
+    new TimelineMetricMetadataSync(metadataManager).run();
+    Assert.assertTrue(TimelineMetricUuidDictionary.isUuid(dictionary.encodeMetricName("m2", "a1")));
+  }
+}
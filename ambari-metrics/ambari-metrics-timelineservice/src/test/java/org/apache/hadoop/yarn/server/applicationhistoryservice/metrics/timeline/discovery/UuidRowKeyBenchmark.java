@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * METRIC_RECORD row keys of a 2000 host cluster with metric names and
+ * hostnames stored in full versus as ids. The key bytes of 24 hours of data
+ * are printed during setup; the benchmarks scan a 10 minute sample of sorted
+ * keys held in one buffer, as in an HBase block, for the rows of one metric.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main UuidRowKeyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class UuidRowKeyBenchmark {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int HOSTS = 2000;
+  private static final int SAMPLE_HOSTS = 200;
+  private static final int SAMPLE_MINUTES = 10;
+  // One row per series per minute
+  private static final int ROWS_PER_DAY = 1440;
+  // START_TIME, UNITS, METRIC_SUM, METRIC_COUNT, METRIC_MAX, METRIC_MIN,
+  // METRICS and the Phoenix empty column each repeat the row key
+  private static final int CELLS_PER_ROW = 8;
+  private static final long START_TIME = 1459000000000L;
+
+  private final TimelineMetricUuidDictionary dictionary = new TimelineMetricUuidDictionary();
+  private List<String[]> metrics;
+
+  private byte[] nameKeys;
+  private byte[] uuidKeys;
+  private byte[] nameTarget;
+  private byte[] uuidTarget;
+
+  @Setup
+  public void setup() {
+    dictionary.configure(true, null);
+    metrics = createMetrics();
+    for (String[] metric : metrics) {
+      dictionary.registerMetric(metric[0], metric[1]);
+    }
+    for (int h = 0; h < HOSTS; h++) {
+      dictionary.registerHost(hostname(h));
+    }
+
+    long nameBytes = 0;
+    long uuidBytes = 0;
+    for (int h = 0; h < HOSTS; h++) {
+      String hostname = hostname(h);
+      for (String[] metric : metrics) {
+        nameBytes += rowKey(metric[0], hostname, metric[1], START_TIME).length;
+        uuidBytes += rowKey(dictionary.encodeMetricName(metric[0], metric[1]),
+          dictionary.encodeHostname(hostname), metric[1], START_TIME).length;
+      }
+    }
+    long series = (long) HOSTS * metrics.size();
+    long keyCopies = (long) ROWS_PER_DAY * CELLS_PER_ROW;
+    System.out.println(String.format("%n%d series, 24 hours: names %.1f bytes/key %.1f GB, " +
+        "ids %.1f bytes/key %.1f GB",
+      series, (double) nameBytes / series, nameBytes * keyCopies / 1e9,
+      (double) uuidBytes / series, uuidBytes * keyCopies / 1e9));
+
+    nameKeys = createSample(false);
+    uuidKeys = createSample(true);
+    String[] target = metrics.get(metrics.size() - 1);
+    nameTarget = target[0].getBytes(UTF_8);
+    uuidTarget = dictionary.encodeMetricName(target[0], target[1]).getBytes(UTF_8);
+    System.out.println(String.format("%d minute sample of %d hosts: names %d MB, ids %d MB",
+      SAMPLE_MINUTES, SAMPLE_HOSTS, nameKeys.length >> 20, uuidKeys.length >> 20));
+  }
+
+  @Benchmark
+  public int scanNames() {
+    return scan(nameKeys, nameTarget);
+  }
+
+  @Benchmark
+  public int scanUuids() {
+    return scan(uuidKeys, uuidTarget);
+  }
+
+  /**
+   * Walk all keys, as a scan with a row filter does, and count the rows of
+   * the target metric.
+   */
+  private static int scan(byte[] keys, byte[] metricName) {
+    int rows = 0;
+    int pos = 0;
+    while (pos < keys.length) {
+      int length = ((keys[pos] & 0xff) << 8) | (keys[pos + 1] & 0xff);
+      pos += 2;
+      if (length > metricName.length && keys[pos + metricName.length] == 0 &&
+        startsWith(keys, pos, metricName)) {
+        rows++;
+      }
+      pos += length;
+    }
+    return rows;
+  }
+
+  private static boolean startsWith(byte[] keys, int pos, byte[] prefix) {
+    for (int i = 0; i < prefix.length; i++) {
+      if (keys[pos + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] createSample(boolean uuids) {
+    List<byte[]> keys = new ArrayList<>();
+    for (int h = 0; h < SAMPLE_HOSTS; h++) {
+      String hostname = hostname(h);
+      for (String[] metric : metrics) {
+        String metricName = uuids ? dictionary.encodeMetricName(metric[0], metric[1]) : metric[0];
+        String host = uuids ? dictionary.encodeHostname(hostname) : hostname;
+        for (int m = 0; m < SAMPLE_MINUTES; m++) {
+          keys.add(rowKey(metricName, host, metric[1], START_TIME + m * 60000L));
+        }
+      }
+    }
+    Collections.sort(keys, new Comparator<byte[]>() {
+      @Override
+      public int compare(byte[] left, byte[] right) {
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+          int diff = (left[i] & 0xff) - (right[i] & 0xff);
+          if (diff != 0) {
+            return diff;
+          }
+        }
+        return left.length - right.length;
+      }
+    });
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    for (byte[] key : keys) {
+      buffer.write(key.length >> 8);
+      buffer.write(key.length);
+      buffer.write(key, 0, key.length);
+    }
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Phoenix row key of METRIC_NAME, HOSTNAME, SERVER_TIME, APP_ID and an
+   * empty INSTANCE_ID, variable length columns separated by a zero byte.
+   */
+  private static byte[] rowKey(String metricName, String hostname, String appId, long serverTime) {
+    byte[] name = metricName.getBytes(UTF_8);
+    byte[] host = hostname.getBytes(UTF_8);
+    byte[] app = appId.getBytes(UTF_8);
+    return ByteBuffer.allocate(name.length + host.length + app.length + 11)
+      .put(name).put((byte) 0)
+      .put(host).put((byte) 0)
+      .putLong(serverTime)
+      .put(app).put((byte) 0)
+      .array();
+  }
+
+  private static String hostname(int h) {
+    return String.format("c6401-%04d.rack%02d.dc1.example.com", h, h % 40);
+  }
+
+  /**
+   * 50 host metrics, 100 datanode metrics and 100 region metrics per host.
+   */
+  private static List<String[]> createMetrics() {
+    List<String[]> metrics = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      metrics.add(new String[] { "cpu_metric_" + i, "HOST" });
+    }
+    for (int i = 0; i < 100; i++) {
+      metrics.add(new String[] { "dfs.datanode.DataNodeActivity.BlocksReadLatency" + i, "datanode" });
+    }
+    for (int i = 0; i < 100; i++) {
+      metrics.add(new String[] { String.format(
+        "regionserver.Regions.Namespace_default_table_usertable_region_%032x_metric_storeFileSize", i),
+        "hbase" });
+    }
+    return metrics;
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Wildcard queries of Grafana dashboards against the sorted METRIC_RECORD
+ * row keys of a 500 host cluster, run as a range scan filtering on the LIKE
+ * patterns versus a lookup of the rows of each name the patterns expand to
+ * in {@link TimelineMetricNameIndex}, as a skip scan does. The expansion is
+ * part of the measured time.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main WildcardQueryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class WildcardQueryBenchmark {
+  private static final int HOSTS = 500;
+  // One minute of 10 second data
+  private static final int ROWS_PER_SERIES = 6;
+  private static final int LIMIT = 100;
+
+  // Region server dashboard, first 100 hosts
+  private static final String PREFIX_METRIC = "regionserver.Server.%";
+  private static final String PREFIX_HOST = "c6401-00%";
+  // One metric of every app on a host dashboard
+  private static final String SUFFIX_METRIC = "%.ReadRequestCount";
+  private static final String SUFFIX_HOST = "c6401-0042.ambari.apache.org";
+
+  private final TimelineMetricNameIndex index = new TimelineMetricNameIndex();
+  private String[] keys;
+
+  @Setup
+  public void setup() {
+    List<String> metrics = createMetrics();
+    List<String> rows = new ArrayList<>();
+    for (String metric : metrics) {
+      index.addMetric(metric, "hbase");
+      for (int h = 0; h < HOSTS; h++) {
+        for (int t = 0; t < ROWS_PER_SERIES; t++) {
+          rows.add(rowKey(metric, hostname(h)) + t);
+        }
+      }
+    }
+    for (int h = 0; h < HOSTS; h++) {
+      index.addHost(hostname(h), "hbase");
+    }
+    Collections.sort(rows);
+    keys = rows.toArray(new String[rows.size()]);
+
+    System.out.println(String.format("%n%d rows, prefix query: %d rows, suffix query: %d rows",
+      keys.length, likePrefix(), likeSuffix()));
+  }
+
+  @Benchmark
+  public int likePrefix() {
+    return scanLike(PREFIX_METRIC, PREFIX_HOST);
+  }
+
+  @Benchmark
+  public int expandedPrefix() {
+    return scanExpanded(PREFIX_METRIC, PREFIX_HOST);
+  }
+
+  @Benchmark
+  public int likeSuffix() {
+    return scanLike(SUFFIX_METRIC, SUFFIX_HOST);
+  }
+
+  @Benchmark
+  public int expandedSuffix() {
+    return scanExpanded(SUFFIX_METRIC, SUFFIX_HOST);
+  }
+
+  /**
+   * Scan the keys from the literal prefix of the metric name pattern and
+   * filter every row on both patterns.
+   */
+  private int scanLike(String metricPattern, String hostPattern) {
+    String prefix = TimelineMetricNameIndex.literalPrefix(metricPattern);
+    Pattern metricRegex = TimelineMetricUuidDictionary.toRegex(metricPattern);
+    Pattern hostRegex = TimelineMetricUuidDictionary.toRegex(hostPattern);
+
+    int rows = 0;
+    for (int i = lowerBound(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+      String key = keys[i];
+      int metricEnd = key.indexOf('\0');
+      int hostEnd = key.indexOf('\0', metricEnd + 1);
+      if (metricRegex.matcher(key.substring(0, metricEnd)).matches() &&
+        hostRegex.matcher(key.substring(metricEnd + 1, hostEnd)).matches()) {
+        rows++;
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Expand both patterns and seek to the rows of every metric and host.
+   */
+  private int scanExpanded(String metricPattern, String hostPattern) {
+    List<String> metricNames = index.findMetricNames(metricPattern, "hbase", LIMIT);
+    List<String> hostnames = hostPattern.contains("%") ?
+      index.findHostnames(hostPattern, "hbase", LIMIT) : Collections.singletonList(hostPattern);
+
+    int rows = 0;
+    for (String metricName : metricNames) {
+      for (String hostname : hostnames) {
+        String prefix = rowKey(metricName, hostname);
+        for (int i = lowerBound(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+          rows++;
+        }
+      }
+    }
+    return rows;
+  }
+
+  private int lowerBound(String key) {
+    int i = Arrays.binarySearch(keys, key);
+    return i < 0 ? -i - 1 : i;
+  }
+
+  private static String rowKey(String metricName, String hostname) {
+    return metricName + '\0' + hostname + '\0';
+  }
+
+  private static String hostname(int h) {
+    return String.format("c6401-%04d.ambari.apache.org", h);
+  }
+
+  /**
+   * 20 region server metrics and 40 metrics of each of 5 other prefixes,
+   * every prefix has a ReadRequestCount metric.
+   */
+  private static List<String> createMetrics() {
+    List<String> metrics = new ArrayList<>();
+    for (int i = 0; i < 19; i++) {
+      metrics.add("regionserver.Server.metric" + i);
+    }
+    metrics.add("regionserver.Server.ReadRequestCount");
+    for (String prefix : Arrays.asList("cpu", "disk", "dfs.datanode", "jvm", "regionserver.Regions")) {
+      for (int i = 0; i < 39; i++) {
+        metrics.add(prefix + ".metric" + i);
+      }
+      metrics.add(prefix + ".ReadRequestCount");
+    }
+    return metrics;
+  }
+}
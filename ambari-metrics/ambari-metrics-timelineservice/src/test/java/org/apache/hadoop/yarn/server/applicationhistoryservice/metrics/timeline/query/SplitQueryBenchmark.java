@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of a 100 metric x 500 host query over 1 day, 14.4 million rows of
+ * the METRIC_AGGREGATE_MINUTE table, run as one scan versus split into
+ * concurrent sub-queries.
+ *
+ * The scans are simulated: a scanner returns 1000 rows per millisecond,
+ * as a region server streaming one scan does, and every series is returned
+ * with one value. The model assumes the table is spread over enough regions
+ * for the sub-queries not to contend on a region server. The result size
+ * limit is lifted, as the query exceeds the default.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main SplitQueryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SplitQueryBenchmark {
+  private static final int METRICS = 100;
+  private static final int HOSTS = 500;
+  private static final long START_TIME = 1459000000000L;
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+  private static final int ROWS_PER_MILLI = 1000;
+
+  @Param({"1", "4", "8", "16"})
+  public int parallelism;
+
+  private SplitQueryPlanner planner;
+  private SplitQueryExecutor executor;
+  private int resultSetLimit;
+
+  @Setup
+  public void setup() {
+    resultSetLimit = PhoenixHBaseAccessor.RESULTSET_LIMIT;
+    PhoenixHBaseAccessor.RESULTSET_LIMIT = Integer.MAX_VALUE;
+    planner = new SplitQueryPlanner(parallelism, 4000);
+    executor = new SplitQueryExecutor(parallelism, TimeUnit.MINUTES.toMillis(5));
+    System.out.println(String.format("%n%d sub-queries", planner.plan(createCondition()).size()));
+  }
+
+  @TearDown
+  public void tearDown() {
+    PhoenixHBaseAccessor.RESULTSET_LIMIT = resultSetLimit;
+  }
+
+  @Benchmark
+  public TimelineMetrics query() throws Exception {
+    List<Condition> subQueries = planner.plan(createCondition());
+    SplitQueryExecutor.SubQuery scan = new SplitQueryExecutor.SubQuery() {
+      @Override
+      public TimelineMetrics execute(Condition condition) {
+        return scan(condition);
+      }
+    };
+    if (subQueries.size() == 1) {
+      return scan.execute(subQueries.get(0));
+    }
+    return executor.execute(subQueries, true, scan);
+  }
+
+  private static TimelineMetrics scan(Condition condition) {
+    // Resolved by the planner for sub-queries
+    Precision precision = condition.getPrecision() != null ? condition.getPrecision() :
+      Precision.getPrecision(condition.getStartTime(), condition.getEndTime());
+    long rowsPerSeries = PhoenixTransactSQL.getRowsPerMetric(precision,
+      condition.getEndTime() - condition.getStartTime());
+    long rows = rowsPerSeries * condition.getMetricNames().size() * condition.getHostnames().size();
+    for (long scanned = 0; scanned < rows; scanned += ROWS_PER_MILLI) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (String metricName : condition.getMetricNames()) {
+      for (String hostname : condition.getHostnames()) {
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName(metricName);
+        metric.setHostName(hostname);
+        metric.setAppId("hbase");
+        metric.setStartTime(condition.getStartTime());
+        metric.setTimestamp(condition.getStartTime());
+        TreeMap<Long, Double> values = new TreeMap<>();
+        values.put(condition.getStartTime(), 1.0);
+        metric.setMetricValues(values);
+        metrics.getMetrics().add(metric);
+      }
+    }
+    return metrics;
+  }
+
+  private static Condition createCondition() {
+    List<String> metricNames = new ArrayList<>();
+    for (int i = 0; i < METRICS; i++) {
+      metricNames.add("regionserver.Server.metric" + i);
+    }
+    List<String> hostnames = new ArrayList<>();
+    for (int i = 0; i < HOSTS; i++) {
+      hostnames.add(String.format("c6401-%04d.ambari.apache.org", i));
+    }
+    return new DefaultCondition(metricNames, hostnames, "hbase", null,
+      START_TIME, START_TIME + DAY, null, null, true);
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query;
+
+import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class SplitQueryTest {
+  private static final long START_TIME = 1459000000000L;
+  private static final long HOUR = 3600000L;
+
+  @Test
+  public void testNotSplit() {
+    SplitQueryPlanner planner = new SplitQueryPlanner(8, 100);
+
+    // Row limit, top N, latest values and small queries run as one query
+    List<Condition> conditions = Arrays.<Condition>asList(
+      new DefaultCondition(names("m", 10), names("h", 4), "a1", null, START_TIME, START_TIME + HOUR,
+        Precision.SECONDS, 10, true),
+      new TopNCondition(names("m", 1), names("h", 4), "a1", null, START_TIME, START_TIME + HOUR,
+        Precision.SECONDS, null, true, 2, null, false),
+      new DefaultCondition(names("m", 10), names("h", 4), "a1", null, null, null, null, null, true),
+      new DefaultCondition(names("m", 1), names("h", 1), "a1", null, START_TIME, START_TIME + 60000,
+        Precision.SECONDS, null, true));
+    for (Condition condition : conditions) {
+      Assert.assertEquals(Collections.singletonList(condition), planner.plan(condition));
+    }
+    DefaultCondition condition = new DefaultCondition(names("m", 10), names("h", 4), "a1", null,
+      START_TIME, START_TIME + HOUR, Precision.SECONDS, null, true);
+    Assert.assertEquals(1, new SplitQueryPlanner(1, 100).plan(condition).size());
+  }
+
+  @Test
+  public void testSplitByMetricName() {
+    // 10 metrics x 4 hosts x 360 rows
+    DefaultCondition condition = new DefaultCondition(names("m", 10), names("h", 4), "a1", "i1",
+      START_TIME, START_TIME + HOUR, null, null, true);
+    List<Condition> subQueries = new SplitQueryPlanner(8, 1000).plan(condition);
+
+    Assert.assertEquals(8, subQueries.size());
+    Set<String> metricNames = new HashSet<>();
+    for (Condition subQuery : subQueries) {
+      Assert.assertTrue(metricNames.addAll(subQuery.getMetricNames()));
+      Assert.assertEquals(names("h", 4), subQuery.getHostnames());
+      Assert.assertEquals("a1", subQuery.getAppId());
+      Assert.assertEquals("i1", subQuery.getInstanceId());
+      Assert.assertEquals(Long.valueOf(START_TIME), subQuery.getStartTime());
+      Assert.assertEquals(Long.valueOf(START_TIME + HOUR), subQuery.getEndTime());
+      Assert.assertEquals(Precision.SECONDS, subQuery.getPrecision());
+      Assert.assertNull(((DefaultCondition) subQuery).limit);
+    }
+    Assert.assertEquals(new HashSet<>(names("m", 10)), metricNames);
+  }
+
+  @Test
+  public void testSplitByHostAndTime() {
+    // 2 metrics x 2 hosts x 360 rows
+    DefaultCondition condition = new DefaultCondition(names("m", 2), names("h", 2), "a1", null,
+      START_TIME, START_TIME + HOUR, Precision.SECONDS, null, true);
+    List<Condition> subQueries = new SplitQueryPlanner(8, 100).plan(condition);
+
+    Assert.assertEquals(8, subQueries.size());
+    for (int i = 0; i < subQueries.size(); i += 2) {
+      Condition first = subQueries.get(i);
+      Condition second = subQueries.get(i + 1);
+      Assert.assertEquals(1, first.getMetricNames().size());
+      Assert.assertEquals(1, first.getHostnames().size());
+      Assert.assertEquals(first.getMetricNames(), second.getMetricNames());
+      Assert.assertEquals(first.getHostnames(), second.getHostnames());
+      Assert.assertEquals(Long.valueOf(START_TIME), first.getStartTime());
+      Assert.assertEquals(first.getEndTime(), second.getStartTime());
+      Assert.assertEquals(Long.valueOf(START_TIME + HOUR), second.getEndTime());
+    }
+
+    // Patterns are not split
+    condition = new DefaultCondition(new ArrayList<>(Arrays.asList("m1", "m%")), names("h", 2), "a1", null,
+      START_TIME, START_TIME + HOUR, Precision.SECONDS, null, true);
+    subQueries = new SplitQueryPlanner(8, 100).plan(condition);
+    Assert.assertEquals(8, subQueries.size());
+    Assert.assertEquals(Arrays.asList("m1", "m%"), subQueries.get(0).getMetricNames());
+  }
+
+  @Test
+  public void testExecuteAndMerge() throws Exception {
+    DefaultCondition condition = new DefaultCondition(names("m", 2), names("h", 2), "a1", null,
+      START_TIME, START_TIME + HOUR, Precision.SECONDS, null, true);
+    List<Condition> subQueries = new SplitQueryPlanner(8, 100).plan(condition);
+    SplitQueryExecutor executor = new SplitQueryExecutor(4, 60000);
+
+    SplitQueryExecutor.SubQuery subQuery = new SplitQueryExecutor.SubQuery() {
+      @Override
+      public TimelineMetrics execute(Condition condition) {
+        // One value per series at the start of the time range
+        TimelineMetrics metrics = new TimelineMetrics();
+        for (String metricName : condition.getMetricNames()) {
+          for (String hostname : condition.getHostnames()) {
+            TimelineMetric metric = new TimelineMetric();
+            metric.setMetricName(metricName);
+            metric.setHostName(hostname);
+            metric.setAppId("a1");
+            metric.setStartTime(condition.getStartTime());
+            metric.setTimestamp(condition.getStartTime());
+            TreeMap<Long, Double> values = new TreeMap<>();
+            values.put(condition.getStartTime(), 1.0);
+            metric.setMetricValues(values);
+            metrics.getMetrics().add(metric);
+          }
+        }
+        return metrics;
+      }
+    };
+
+    TimelineMetrics grouped = executor.execute(subQueries, true, subQuery);
+    Assert.assertEquals(4, grouped.getMetrics().size());
+    for (TimelineMetric metric : grouped.getMetrics()) {
+      Assert.assertEquals(2, metric.getMetricValues().size());
+      Assert.assertEquals(START_TIME, metric.getStartTime());
+    }
+    Assert.assertEquals("m0", grouped.getMetrics().get(0).getMetricName());
+    Assert.assertEquals("h0", grouped.getMetrics().get(0).getHostName());
+
+    Assert.assertEquals(8, executor.execute(subQueries, false, subQuery).getMetrics().size());
+  }
+
+  @Test
+  public void testExecuteFailure() throws Exception {
+    DefaultCondition condition = new DefaultCondition(names("m", 2), names("h", 2), "a1", null,
+      START_TIME, START_TIME + HOUR, Precision.SECONDS, null, true);
+    List<Condition> subQueries = new SplitQueryPlanner(8, 100).plan(condition);
+
+    try {
+      new SplitQueryExecutor(4, 60000).execute(subQueries, true, new SplitQueryExecutor.SubQuery() {
+        @Override
+        public TimelineMetrics execute(Condition condition) throws IOException {
+          throw new IOException("scan failed");
+        }
+      });
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("scan failed", e.getMessage());
+    }
+
+    try {
+      new SplitQueryExecutor(4, 100).execute(subQueries, true, new SplitQueryExecutor.SubQuery() {
+        @Override
+        public TimelineMetrics execute(Condition condition) throws SQLException {
+          try {
+            Thread.sleep(10000);
+          } catch (InterruptedException e) {
+            throw new SQLException(e);
+          }
+          return new TimelineMetrics();
+        }
+      });
+      Assert.fail();
+    } catch (SQLTimeoutException e) {
+      // Expected
+    }
+  }
+
+  private static List<String> names(String prefix, int count) {
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      names.add(prefix + i);
+    }
+    return names;
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.webapp;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.LoadRunner;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.net.MetricsSender;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricsMemTable;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest of the payloads sent by 200 simulated hosts in one round of the
+ * {@link LoadRunner}, bound by the JAXB Jackson mapper as the generic JSON
+ * provider did versus read by {@link TimelineMetricsParser}, and merged into
+ * the write buffer. The datapoints per round are printed during setup to
+ * derive the CPU time per million datapoints, allocation and GC time are
+ * reported with the gc profiler. No results have been recorded with it yet.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main MetricsIngestBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class MetricsIngestBenchmark {
+  private static final int HOSTS = 200;
+
+  private final List<byte[]> payloads = Collections.synchronizedList(new ArrayList<byte[]>());
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final TimelineMetricsParser parser = new TimelineMetricsParser(Long.MAX_VALUE, Long.MAX_VALUE);
+  private final TimelineMetricsMemTable memTable = new TimelineMetricsMemTable(Long.MAX_VALUE);
+
+  @Setup
+  public void setup() throws Exception {
+    mapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector());
+    LoadRunner runner = new LoadRunner("host", HOSTS, "localhost", new MetricsSender() {
+      @Override
+      public String pushMetrics(String payload) {
+        payloads.add(payload.getBytes(StandardCharsets.UTF_8));
+        return "OK";
+      }
+    }, 10000, 60000, true);
+    try {
+      runner.runOnce();
+    } finally {
+      runner.shutdown();
+    }
+
+    long bytes = 0;
+    long datapoints = 0;
+    for (byte[] payload : payloads) {
+      bytes += payload.length;
+      for (TimelineMetric metric : parser.parse(new ByteArrayInputStream(payload)).getMetrics()) {
+        datapoints += metric.getMetricSeries().size();
+      }
+    }
+    System.out.println(String.format("%n%d payloads, %d KB, %d datapoints per round",
+      payloads.size(), bytes >> 10, datapoints));
+  }
+
+  @Benchmark
+  public long bindPayloads() throws IOException {
+    for (byte[] payload : payloads) {
+      memTable.put(mapper.readValue(payload, TimelineMetrics.class));
+    }
+    return commit();
+  }
+
+  @Benchmark
+  public long parsePayloads() throws IOException {
+    for (byte[] payload : payloads) {
+      memTable.put(parser.parse(new ByteArrayInputStream(payload)));
+    }
+    return commit();
+  }
+
+  private long commit() {
+    TimelineMetricsMemTable.Batch batch = memTable.drain();
+    memTable.release(batch);
+    return batch.getBytes();
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.webapp;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.codehaus.jackson.JsonParseException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestTimelineMetricsParser {
+
+  @Test
+  public void testParseSerializedMetrics() throws Exception {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("regionserver.Server.totalRequestCount");
+    metric.setAppId("hbase");
+    metric.setHostName("h1");
+    metric.setInstanceId("i1");
+    metric.setType("Long");
+    metric.setStartTime(1000L);
+    metric.setTimestamp(1000L);
+    metric.getMetadata().put("skipAggregation", "true");
+    TreeMap<Long, Double> values = new TreeMap<>();
+    values.put(1000L, 1.5);
+    values.put(2000L, 2.5);
+    metric.setMetricValues(values);
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+
+    TimelineMetrics parsed = parse(new TimelineMetricsParser(Long.MAX_VALUE, Long.MAX_VALUE),
+      TimelineUtils.dumpTimelineRecordtoJSON(metrics));
+    assertEquals(1, parsed.getMetrics().size());
+    TimelineMetric parsedMetric = parsed.getMetrics().get(0);
+    assertEquals(metric, parsedMetric);
+    assertEquals("Long", parsedMetric.getType());
+    assertEquals(1000L, parsedMetric.getTimestamp());
+    assertEquals("true", parsedMetric.getMetadata().get("skipAggregation"));
+    assertEquals(values, parsedMetric.getMetricValues());
+  }
+
+  @Test
+  public void testLenientValues() throws Exception {
+    TimelineMetrics metrics = parse(new TimelineMetricsParser(Long.MAX_VALUE, Long.MAX_VALUE),
+      "{\"unknown\":{\"a\":[1,2]},\"metrics\":[{\"metricname\":\"cpu_user\",\"instanceid\":null," +
+        "\"starttime\":\"5\",\"extra\":[{}],\"metrics\":{\"2\":\"2.5\",\"1\":1,\"3\":null}}]}");
+    TimelineMetric metric = metrics.getMetrics().get(0);
+    assertEquals("cpu_user", metric.getMetricName());
+    assertNull(metric.getInstanceId());
+    assertEquals(5L, metric.getStartTime());
+    assertEquals(2, metric.getMetricSeries().size());
+    assertEquals(1L, metric.getMetricSeries().firstTimestamp());
+    assertEquals(2.5, metric.getMetricSeries().getValue(1), 0.0);
+
+    assertTrue(parse(new TimelineMetricsParser(Long.MAX_VALUE, Long.MAX_VALUE), "").getMetrics().isEmpty());
+  }
+
+  @Test
+  public void testDatapointLimit() throws Exception {
+    TimelineMetricsParser parser = new TimelineMetricsParser(Long.MAX_VALUE, 3);
+    assertEquals(2, parse(parser, "{\"metrics\":[{\"metrics\":{\"1\":1,\"2\":2}}," +
+      "{\"metrics\":{\"1\":1,\"2\":null}}]}").getMetrics().size());
+    try {
+      parse(parser, "{\"metrics\":[{\"metrics\":{\"1\":1,\"2\":2}},{\"metrics\":{\"1\":1,\"2\":2}}]}");
+      fail();
+    } catch (MetricsRequestTooLargeException e) {
+      assertEquals("Request exceeds 3 datapoints", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testByteLimit() throws Exception {
+    StringBuilder json = new StringBuilder("{\"metrics\":[{\"metricname\":\"cpu_user\",\"metrics\":{");
+    for (int i = 0; i < 10000; i++) {
+      json.append(i == 0 ? "" : ",").append('"').append(i).append("\":").append(i);
+    }
+    json.append("}}]}");
+
+    try {
+      parse(new TimelineMetricsParser(json.length() - 1, Long.MAX_VALUE), json.toString());
+      fail();
+    } catch (MetricsRequestTooLargeException e) {
+      assertEquals("Request exceeds " + (json.length() - 1) + " bytes", e.getMessage());
+    }
+    assertEquals(10000, parse(new TimelineMetricsParser(json.length(), Long.MAX_VALUE),
+      json.toString()).getMetrics().get(0).getMetricSeries().size());
+  }
+
+  @Test
+  public void testInvalidMetrics() throws Exception {
+    TimelineMetricsParser parser = new TimelineMetricsParser(Long.MAX_VALUE, Long.MAX_VALUE);
+    for (String json : new String[] {"[]", "{\"metrics\":[[]]}", "{\"metrics\":[{\"metrics\":[1]}]}",
+        "{\"metrics\":[{\"metrics\":{\"now\":1}}]}", "{\"metrics\":[{\"metrics\":{\"1\":\"one\"}}]}",
+        "{\"metrics\":[{\"metrics\":{\"1\":1"}) {
+      try {
+        parse(parser, json);
+        fail(json);
+      } catch (JsonParseException e) {
+        // expected
+      }
+    }
+  }
+
+  private static TimelineMetrics parse(TimelineMetricsParser parser, String json) throws IOException {
+    return parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -71,6 +71,7 @@ public class TestTimelineWebServices extends JerseyTest {
       }
       bind(TimelineStore.class).toInstance(store);
       bind(TimelineMetricStore.class).toInstance(metricStore);
+      bind(TimelineMetricsParser.class).toInstance(new TimelineMetricsParser(4096, 5));
       serve("/*").with(GuiceContainer.class);
     }
 
@@ -388,4 +389,30 @@ public class TestTimelineWebServices extends JerseyTest {
     assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
     verifyMetrics(response.getEntity(TimelineMetrics.class));
   }
+
+  @Test
+  public void testPostMetrics() throws Exception {
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").type(MediaType.APPLICATION_JSON)
+      .post(ClientResponse.class, "{\"metrics\":[{\"metricname\":\"cpu_user\",\"appid\":\"HOST\"," +
+        "\"hostname\":\"h1\",\"starttime\":1,\"metrics\":{\"1\":1.0,\"2\":2.0}}]}");
+    assertEquals(200, response.getStatus());
+    Assert.assertEquals(0, response.getEntity(TimelinePutResponse.class).getErrors().size());
+  }
+
+  @Test
+  public void testPostMetricsLimits() throws Exception {
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").type(MediaType.APPLICATION_JSON)
+      .post(ClientResponse.class, "{\"metrics\":[{\"metricname\":\"cpu_user\",\"metrics\":" +
+        "{\"1\":1.0,\"2\":2.0,\"3\":3.0,\"4\":4.0,\"5\":5.0,\"6\":6.0}}]}");
+    assertEquals(413, response.getStatus());
+
+    response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").type(MediaType.APPLICATION_JSON)
+      .post(ClientResponse.class, "{\"metrics\":[{\"metricname\":\"cpu_user\",\"metrics\":[1.0]}]}");
+    assertEquals(400, response.getStatus());
+  }
 }
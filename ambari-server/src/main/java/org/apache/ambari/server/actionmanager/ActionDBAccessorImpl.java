@@ -23,9 +23,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.annotations.Experimental;
@@ -105,6 +107,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
   @Inject
   ExecutionCommandDAO executionCommandDAO;
 
+  @Inject
+  ExecutionCommandStorage executionCommandStorage;
+
   @Inject
   RoleSuccessCriteriaDAO roleSuccessCriteriaDAO;
 
@@ -361,6 +366,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       stageEntity.setRequest(requestEntity);
       stageDAO.create(stageEntity);
 
+      // the hashes of the command parts stored for the stage
+      Set<String> storedPartHashes = new HashSet<>();
+
       List<HostRoleCommand> orderedHostRoleCommands = stage.getOrderedHostRoleCommands();
 
       for (HostRoleCommand hostRoleCommand : orderedHostRoleCommands) {
@@ -406,7 +414,9 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
         hostRoleCommandEntity.setOutputLog(hostRoleCommand.getOutputLog());
         hostRoleCommandEntity.setErrorLog(hostRoleCommand.getErrorLog());
 
-        ExecutionCommandEntity executionCommandEntity = hostRoleCommand.constructExecutionCommandEntity();
+        ExecutionCommandEntity executionCommandEntity = hostRoleCommand.constructExecutionCommandEntity(
+            executionCommandStorage.toStoredCommand(stageEntity,
+                hostRoleCommand.getExecutionCommandWrapper().getJson(), storedPartHashes));
         executionCommandEntity.setHostRoleCommand(hostRoleCommandEntity);
 
         executionCommandEntity.setTaskId(hostRoleCommandEntity.getTaskId());
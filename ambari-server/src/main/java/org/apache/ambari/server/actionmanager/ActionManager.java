@@ -91,6 +91,7 @@ public class ActionManager {
       }
     }
     db.persistActions(request);
+    scheduler.onRequestCreated(request.getRequestId());
     scheduler.awake();
   }
 
@@ -165,6 +166,7 @@ public class ActionManager {
     }
 
     db.updateHostRoleStates(reportsToProcess);
+    scheduler.onCommandReports(reportsToProcess, commands);
   }
 
   /**
@@ -256,6 +258,7 @@ public class ActionManager {
 
   public void resubmitTasks(List<Long> taskIds) {
     db.resubmitTasks(taskIds);
+    scheduler.onTasksResubmitted();
   }
 
 }
@@ -154,6 +154,12 @@ class ActionScheduler implements Runnable {
   private final Object wakeupSyncObject = new Object();
   private final ServerActionExecutor serverActionExecutor;
 
+  /**
+   * The stages in progress, used instead of reloading them on every wake up
+   * when incremental scheduling is enabled.
+   */
+  private final ActiveStagesModel activeStagesModel;
+
   private final Set<Long> requestsInProgress = new HashSet<Long>();
 
   /**
@@ -203,6 +209,7 @@ class ActionScheduler implements Runnable {
     this.jpaPublisher.register(this);
 
     serverActionExecutor = new ServerActionExecutor(db, sleepTime);
+    activeStagesModel = new ActiveStagesModel(db);
 
     initializeCaches();
   }
@@ -245,6 +252,7 @@ class ActionScheduler implements Runnable {
     jpaPublisher = null;
 
     serverActionExecutor = new ServerActionExecutor(db, sleepTime);
+    activeStagesModel = new ActiveStagesModel(db);
     initializeCaches();
   }
 
@@ -314,9 +322,11 @@ class ActionScheduler implements Runnable {
       } catch (Exception ex) {
         LOG.warn("Exception received", ex);
         requestsInProgress.clear();
+        activeStagesModel.invalidate(false);
       } catch (Throwable t) {
         LOG.warn("ERROR", t);
         requestsInProgress.clear();
+        activeStagesModel.invalidate(false);
       }
     }
   }
@@ -331,21 +341,28 @@ class ActionScheduler implements Runnable {
       // The first thing to do is to abort requests that are cancelled
       processCancelledRequestsList();
 
-      // !!! getting the stages in progress could be a very expensive call due
-      // to the join being used; there's no need to make it if there are
-      // no commands in progress
-      if (db.getCommandsInProgressCount() == 0) {
-        // Nothing to do
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("There are no stages currently in progress.");
+      List<Stage> stages;
+      if (isIncrementalSchedulingEnabled()) {
+        stages = activeStagesModel.getStagesInProgress(
+            configuration.getIncrementalStageSchedulingReloadInterval());
+      } else {
+        // !!! getting the stages in progress could be a very expensive call due
+        // to the join being used; there's no need to make it if there are
+        // no commands in progress
+        if (db.getCommandsInProgressCount() == 0) {
+          // Nothing to do
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("There are no stages currently in progress.");
+          }
+
+          actionQueue.updateListOfHostsWithPendingTask(null);
+          return;
         }
 
-        actionQueue.updateListOfHostsWithPendingTask(null);
-        return;
+        stages = db.getStagesInProgress();
       }
 
       Set<Long> runningRequestIds = new HashSet<Long>();
-      List<Stage> stages = db.getStagesInProgress();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Scheduler wakes up");
         LOG.debug("Processing {} in progress stages ", stages.size());
@@ -495,6 +512,7 @@ class ActionScheduler implements Runnable {
 
           cancelHostRoleCommands(hostRoleCommands, FAILED_TASK_ABORT_REASONING);
           db.bulkAbortHostRole(stage, commandsToAbort);
+          markRequestChanged(stage.getRequestId());
         }
 
         LOG.debug("==> Adding {} tasks to queue...", commandsToUpdate.size());
@@ -793,6 +811,7 @@ class ActionScheduler implements Runnable {
           // Abort the command itself
           // We don't need to send CANCEL_COMMANDs in this case
           db.abortHostRole(host, s.getRequestId(), s.getStageId(), c.getRole(), message);
+          markRequestChanged(s.getRequestId());
           if (c.getRoleCommand().equals(RoleCommand.ACTIONEXECUTE)) {
             processActionDeath(cluster.getClusterName(), c.getHostname(), roleStr);
           }
@@ -811,6 +830,7 @@ class ActionScheduler implements Runnable {
             }
 
             db.timeoutHostRole(host, s.getRequestId(), s.getStageId(), c.getRole(), isSkipSupported);
+            markRequestChanged(s.getRequestId());
             //Reinitialize status
             status = s.getHostRoleStatus(host, roleStr);
 
@@ -910,6 +930,7 @@ class ActionScheduler implements Runnable {
       }
     }
     db.abortOperation(stage.getRequestId());
+    markRequestChanged(stage.getRequestId());
   }
 
   /**
@@ -1344,6 +1365,90 @@ class ActionScheduler implements Runnable {
     } catch (Throwable throwable) {
       LOG.error("Unable to clear the EntityManager for the scheduler thread", throwable);
     }
+
+    activeStagesModel.invalidate(false);
+  }
+
+  /**
+   * Notifies the scheduler that a request was persisted, so that its stages
+   * are picked up when incremental scheduling is enabled.
+   *
+   * @param requestId
+   *          the ID of the new request
+   */
+  public void onRequestCreated(long requestId) {
+    if (isIncrementalSchedulingEnabled()) {
+      activeStagesModel.requestCreated(requestId);
+    }
+  }
+
+  /**
+   * Applies the command reports which were persisted to the stages in
+   * progress when incremental scheduling is enabled. The scheduler is woken up
+   * as soon as a command completes so that the following commands are
+   * dispatched without waiting for the next scheduled run.
+   *
+   * @param reports
+   *          the persisted command reports
+   * @param commands
+   *          the reported commands, by task ID
+   */
+  public void onCommandReports(Collection<CommandReport> reports, Map<Long, HostRoleCommand> commands) {
+    if (reports.isEmpty() || !isIncrementalSchedulingEnabled()) {
+      return;
+    }
+
+    boolean commandCompleted = false;
+    for (CommandReport report : reports) {
+      HostRoleCommand command = commands.get(report.getTaskId());
+      if (null == command || command.getStatus() == HostRoleStatus.ABORTED) {
+        continue;
+      }
+
+      // same as the status persisted by ActionDBAccessor#updateHostRoleStates
+      HostRoleStatus status = HostRoleStatus.valueOf(report.getStatus());
+      if (status == HostRoleStatus.FAILED && command.isRetryAllowed()) {
+        status = HostRoleStatus.HOLDING_FAILED;
+
+        if (command.isFailureAutoSkipped()) {
+          status = HostRoleStatus.SKIPPED_FAILED;
+        }
+      }
+
+      activeStagesModel.commandReported(command.getRequestId(), command.getStageId(),
+          command.getTaskId(), status);
+      commandCompleted |= status.isCompletedState();
+    }
+
+    if (commandCompleted) {
+      awake();
+    }
+  }
+
+  /**
+   * Notifies the scheduler that tasks were reset in the database, which
+   * requires a full reload of the stages in progress.
+   */
+  public void onTasksResubmitted() {
+    activeStagesModel.invalidate(true);
+  }
+
+  /**
+   * Marks the request to be reloaded by the next run when incremental
+   * scheduling is enabled.
+   */
+  private void markRequestChanged(long requestId) {
+    if (isIncrementalSchedulingEnabled()) {
+      activeStagesModel.requestChanged(requestId);
+    }
+  }
+
+  private boolean isIncrementalSchedulingEnabled() {
+    return null != configuration && configuration.isIncrementalStageSchedulingEnabled();
+  }
+
+  ActiveStagesModel getActiveStagesModel() {
+    return activeStagesModel;
   }
 
   static class RoleStats {
@@ -0,0 +1,456 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.ambari.server.Role;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ActiveStagesModel} is the in-memory view of the stages in
+ * progress which the {@link ActionScheduler} uses when incremental scheduling
+ * is enabled.
+ * <p/>
+ * Instead of loading every stage in progress on each wake up, the model is
+ * updated from the events which change it:
+ * <ul>
+ * <li>command reports received from the agents update the status of the
+ * reported commands in memory; once a stage has no more commands in progress
+ * its request is reloaded from the database so that the next stage is picked
+ * up</li>
+ * <li>newly created requests are loaded as soon as they are visible in the
+ * database</li>
+ * <li>requests modified by the scheduler itself (timeouts, aborts) are
+ * reloaded on the next wake up</li>
+ * </ul>
+ * Requests which are waiting on state that is not reported by the agents,
+ * such as server side actions or commands in a holding state, are reloaded on
+ * every wake up. A full reload is performed periodically as a consistency
+ * check.
+ * <p/>
+ * Command reports may be applied before the transaction which persists them
+ * is committed. Reported statuses are therefore kept until a reload shows the
+ * same status in the database and are re-applied to the reloaded stages.
+ * <p/>
+ * The notification methods are thread safe; {@link #getStagesInProgress(long)}
+ * must only be invoked by the scheduler thread.
+ */
+class ActiveStagesModel {
+  private static final Logger LOG = LoggerFactory.getLogger(ActiveStagesModel.class);
+
+  private final ActionDBAccessor db;
+
+  /**
+   * Requests which were created, but may not be committed yet.
+   */
+  private final Set<Long> createdRequests = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+  /**
+   * Requests which must be reloaded from the database on the next wake up.
+   */
+  private final Set<Long> changedRequests = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+  /**
+   * Statuses reported by the agents which were not applied to the model yet.
+   */
+  private final Queue<ReportedStatus> reportedStatuses = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean reloadRequired = true;
+
+  /**
+   * Reported statuses received before this time are discarded.
+   */
+  private volatile long discardReportsBefore = 0;
+
+  /**
+   * The stages in progress, by request ID and ordered by stage ID.
+   */
+  private final TreeMap<Long, List<Stage>> stagesByRequest = new TreeMap<>();
+
+  /**
+   * Created requests which were not found in the database yet, mapped to the
+   * time they were created.
+   */
+  private final Map<Long, Long> requestsAwaitingCommit = new HashMap<>();
+
+  /**
+   * Reported statuses which were not confirmed by the database yet, by task
+   * ID.
+   */
+  private final Map<Long, ReportedStatus> unconfirmedStatuses = new HashMap<>();
+
+  /**
+   * Requests reloaded on every wake up.
+   */
+  private final Set<Long> requestsToPoll = new HashSet<>();
+
+  private long lastReload = 0;
+
+  private long fullReloads = 0;
+  private long requestReloads = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param db
+   *          the accessor used to load stages.
+   */
+  ActiveStagesModel(ActionDBAccessor db) {
+    this.db = db;
+  }
+
+  /**
+   * Notifies the model of a newly created request.
+   *
+   * @param requestId
+   *          the ID of the request
+   */
+  void requestCreated(long requestId) {
+    createdRequests.add(requestId);
+  }
+
+  /**
+   * Notifies the model that the stages of the request were changed in the
+   * database.
+   *
+   * @param requestId
+   *          the ID of the request
+   */
+  void requestChanged(long requestId) {
+    changedRequests.add(requestId);
+  }
+
+  /**
+   * Notifies the model of the status of a command reported by an agent.
+   *
+   * @param requestId
+   *          the request of the command
+   * @param stageId
+   *          the stage of the command
+   * @param taskId
+   *          the ID of the command
+   * @param status
+   *          the reported status, as it is persisted
+   */
+  void commandReported(long requestId, long stageId, long taskId, HostRoleStatus status) {
+    reportedStatuses.add(new ReportedStatus(requestId, stageId, taskId, status));
+  }
+
+  /**
+   * Forces a full reload on the next wake up.
+   *
+   * @param discardReports
+   *          {@code true} to discard the statuses reported so far, which is
+   *          required when commands were reset in the database.
+   */
+  void invalidate(boolean discardReports) {
+    if (discardReports) {
+      discardReportsBefore = System.currentTimeMillis();
+    }
+    reloadRequired = true;
+  }
+
+  /**
+   * Gets the stages in progress, ordered by request ID and stage ID, updating
+   * the model from the events received since the last invocation.
+   *
+   * @param reloadInterval
+   *          the time, in milliseconds, between full reloads.
+   * @return the stages in progress
+   */
+  List<Stage> getStagesInProgress(long reloadInterval) {
+    long now = System.currentTimeMillis();
+
+    Set<Long> requestsToReload = new HashSet<>(requestsToPoll);
+    for (Iterator<Long> iterator = changedRequests.iterator(); iterator.hasNext();) {
+      requestsToReload.add(iterator.next());
+      iterator.remove();
+    }
+
+    for (Iterator<Long> iterator = createdRequests.iterator(); iterator.hasNext();) {
+      requestsAwaitingCommit.put(iterator.next(), now);
+      iterator.remove();
+    }
+
+    applyReportedStatuses(requestsToReload);
+
+    if (reloadRequired || now - lastReload >= reloadInterval) {
+      reloadAll(now, reloadInterval);
+    } else {
+      requestsToReload.addAll(requestsAwaitingCommit.keySet());
+      for (Long requestId : requestsToReload) {
+        reloadRequest(requestId);
+      }
+    }
+
+    // requests created so long ago are either committed and loaded or rolled back
+    for (Iterator<Long> iterator = requestsAwaitingCommit.values().iterator(); iterator.hasNext();) {
+      if (now - iterator.next() >= reloadInterval) {
+        iterator.remove();
+      }
+    }
+
+    requestsToPoll.clear();
+    for (ReportedStatus reported : unconfirmedStatuses.values()) {
+      requestsToPoll.add(reported.requestId);
+    }
+
+    List<Stage> stages = new ArrayList<>();
+    for (Map.Entry<Long, List<Stage>> entry : stagesByRequest.entrySet()) {
+      List<Stage> requestStages = entry.getValue();
+      if (isUpdatedOutsideOfReports(requestStages.get(0))) {
+        requestsToPoll.add(entry.getKey());
+      }
+      stages.addAll(requestStages);
+    }
+
+    return stages;
+  }
+
+  /**
+   * @return the number of full reloads performed.
+   */
+  long getFullReloadCount() {
+    return fullReloads;
+  }
+
+  /**
+   * @return the number of single request reloads performed.
+   */
+  long getRequestReloadCount() {
+    return requestReloads;
+  }
+
+  /**
+   * Applies the reported statuses to the commands in the model. Requests
+   * whose reported stage has no more commands in progress are added to the
+   * requests to reload.
+   */
+  private void applyReportedStatuses(Set<Long> requestsToReload) {
+    long discardBefore = discardReportsBefore;
+    if (discardBefore > 0) {
+      for (Iterator<ReportedStatus> iterator = unconfirmedStatuses.values().iterator(); iterator.hasNext();) {
+        if (iterator.next().time < discardBefore) {
+          iterator.remove();
+        }
+      }
+    }
+
+    ReportedStatus reported;
+    while (null != (reported = reportedStatuses.poll())) {
+      if (reported.time < discardBefore) {
+        continue;
+      }
+
+      unconfirmedStatuses.put(reported.taskId, reported);
+
+      List<Stage> stages = stagesByRequest.get(reported.requestId);
+      if (null == stages) {
+        continue;
+      }
+
+      for (Stage stage : stages) {
+        if (stage.getStageId() != reported.stageId) {
+          continue;
+        }
+
+        HostRoleCommand command = stage.getHostRoleCommand(reported.taskId);
+        if (null != command && command.getStatus() != HostRoleStatus.ABORTED) {
+          command.setStatus(reported.status);
+          if (!isInProgress(stage)) {
+            requestsToReload.add(reported.requestId);
+          }
+        }
+        break;
+      }
+    }
+  }
+
+  private void reloadAll(long now, long reloadInterval) {
+    reloadRequired = false;
+    lastReload = now;
+    fullReloads++;
+
+    // statuses which are still not persisted after a whole interval are lost
+    for (Iterator<ReportedStatus> iterator = unconfirmedStatuses.values().iterator(); iterator.hasNext();) {
+      if (now - iterator.next().time >= reloadInterval) {
+        iterator.remove();
+      }
+    }
+
+    stagesByRequest.clear();
+
+    // !!! getting the stages in progress could be a very expensive call due
+    // to the join being used; there's no need to make it if there are
+    // no commands in progress
+    List<Stage> stages = Collections.emptyList();
+    if (db.getCommandsInProgressCount() > 0) {
+      stages = db.getStagesInProgress();
+    }
+
+    for (Stage stage : stages) {
+      List<Stage> requestStages = stagesByRequest.get(stage.getRequestId());
+      if (null == requestStages) {
+        requestStages = new ArrayList<>();
+        stagesByRequest.put(stage.getRequestId(), requestStages);
+      }
+
+      applyUnconfirmedStatuses(stage);
+      requestStages.add(stage);
+    }
+
+    confirmFinishedStages(null);
+    requestsAwaitingCommit.keySet().removeAll(stagesByRequest.keySet());
+
+    LOG.debug("Reloaded {} stages in progress of {} requests", stages.size(), stagesByRequest.size());
+  }
+
+  private void reloadRequest(Long requestId) {
+    requestReloads++;
+
+    List<Stage> stages = db.getStagesInProgressForRequest(requestId);
+    for (Stage stage : stages) {
+      applyUnconfirmedStatuses(stage);
+    }
+
+    if (stages.isEmpty()) {
+      stagesByRequest.remove(requestId);
+    } else {
+      stagesByRequest.put(requestId, new ArrayList<>(stages));
+      requestsAwaitingCommit.remove(requestId);
+    }
+
+    confirmFinishedStages(requestId);
+  }
+
+  /**
+   * Re-applies reported statuses which the database does not reflect yet, and
+   * drops those which it does.
+   */
+  private void applyUnconfirmedStatuses(Stage stage) {
+    if (unconfirmedStatuses.isEmpty()) {
+      return;
+    }
+
+    for (HostRoleCommand command : stage.getOrderedHostRoleCommands()) {
+      ReportedStatus reported = unconfirmedStatuses.get(command.getTaskId());
+      if (null == reported) {
+        continue;
+      }
+
+      HostRoleStatus persisted = command.getStatus();
+      if (persisted == reported.status || !HostRoleStatus.IN_PROGRESS_STATUSES.contains(persisted)) {
+        unconfirmedStatuses.remove(command.getTaskId());
+      } else {
+        command.setStatus(reported.status);
+      }
+    }
+  }
+
+  /**
+   * Drops the unconfirmed statuses of stages which are no longer in progress
+   * in the database.
+   *
+   * @param requestId
+   *          the reloaded request, or {@code null} after a full reload
+   */
+  private void confirmFinishedStages(Long requestId) {
+    for (Iterator<ReportedStatus> iterator = unconfirmedStatuses.values().iterator(); iterator.hasNext();) {
+      ReportedStatus reported = iterator.next();
+      if (null != requestId && requestId != reported.requestId) {
+        continue;
+      }
+
+      if (!containsStage(reported.requestId, reported.stageId)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private boolean containsStage(long requestId, long stageId) {
+    List<Stage> stages = stagesByRequest.get(requestId);
+    if (null != stages) {
+      for (Stage stage : stages) {
+        if (stage.getStageId() == stageId) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isInProgress(Stage stage) {
+    for (HostRoleCommand command : stage.getOrderedHostRoleCommands()) {
+      if (HostRoleStatus.IN_PROGRESS_STATUSES.contains(command.getStatus())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets whether the stage is waiting on status changes which are not
+   * reported by the agents, such as server side actions and commands in a
+   * holding state which are resolved through the API.
+   */
+  private static boolean isUpdatedOutsideOfReports(Stage stage) {
+    for (HostRoleCommand command : stage.getOrderedHostRoleCommands()) {
+      HostRoleStatus status = command.getStatus();
+      if (status.isHoldingState()) {
+        return true;
+      }
+
+      if (Role.AMBARI_SERVER_ACTION.equals(command.getRole())
+          && (status == HostRoleStatus.QUEUED || status == HostRoleStatus.IN_PROGRESS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A status reported for a single command.
+   */
+  private static final class ReportedStatus {
+    private final long requestId;
+    private final long stageId;
+    private final long taskId;
+    private final HostRoleStatus status;
+    private final long time = System.currentTimeMillis();
+
+    private ReportedStatus(long requestId, long stageId, long taskId, HostRoleStatus status) {
+      this.requestId = requestId;
+      this.stageId = stageId;
+      this.taskId = taskId;
+      this.status = status;
+    }
+  }
+}
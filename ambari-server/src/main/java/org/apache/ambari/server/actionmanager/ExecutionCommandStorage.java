@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.actionmanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.dao.ExecutionCommandPartDAO;
+import org.apache.ambari.server.orm.entities.ExecutionCommandPartEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Converts the JSON of execution commands to the form stored in the
+ * {@code execution_command} table and back.
+ * <p/>
+ * Commands are stored GZIP compressed. The large parts of a command which all
+ * commands of a stage usually have in common, such as the configurations and
+ * the cluster host info, are taken out of the command and stored once per
+ * stage as {@link ExecutionCommandPartEntity}, addressed by the SHA-256 hash of
+ * their JSON. The stored command refers to them by hash.
+ * <p/>
+ * Commands stored as plain JSON before compression was introduced, or while it
+ * is disabled, are read as they are.
+ */
+@Singleton
+public class ExecutionCommandStorage {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The fields of an execution command which are stored once per stage.
+   */
+  private static final String[] SHARED_PARTS = { "configurations", "configuration_attributes",
+      "configurationTags", "clusterHostInfo", "hostLevelParams" };
+
+  /**
+   * Parts with shorter JSON are kept in the command, as it is cheaper to store
+   * them again than to look them up.
+   */
+  static final int MIN_SHARED_PART_LENGTH = 1024;
+
+  /**
+   * The number of parsed parts kept in memory. Parts are immutable, so a part
+   * is reused for every stage which stored the same content.
+   */
+  private static final int PART_CACHE_SIZE = 100;
+
+  private static final String REQUEST_ID = "requestId";
+  private static final String STAGE_ID = "stageId";
+  private static final String PARTS = "parts";
+  private static final String COMMAND = "command";
+
+  @Inject
+  private Configuration configuration;
+
+  @Inject
+  private ExecutionCommandPartDAO executionCommandPartDAO;
+
+  private final Cache<String, JsonElement> partCache = CacheBuilder.newBuilder()
+      .maximumSize(PART_CACHE_SIZE).expireAfterAccess(10, TimeUnit.MINUTES).build();
+
+  /**
+   * Converts the JSON of a command of a stage to its stored form, persisting
+   * the parts which were not stored for the stage yet.
+   *
+   * @param stageEntity
+   *          the stage of the command
+   * @param json
+   *          the JSON of the command
+   * @param storedPartHashes
+   *          the hashes of the parts already stored for the stage, updated with
+   *          the parts stored by this call
+   * @return the command to store in {@link org.apache.ambari.server.orm.entities.ExecutionCommandEntity}
+   */
+  public byte[] toStoredCommand(StageEntity stageEntity, String json, Set<String> storedPartHashes) {
+    if (!configuration.isCommandCompressionEnabled()) {
+      return json.getBytes();
+    }
+
+    JsonObject command = new JsonParser().parse(json).getAsJsonObject();
+    JsonObject parts = new JsonObject();
+
+    for (String field : SHARED_PARTS) {
+      JsonElement element = command.get(field);
+      if (null == element || element.isJsonNull()) {
+        continue;
+      }
+
+      String partJson = element.toString();
+      if (partJson.length() < MIN_SHARED_PART_LENGTH) {
+        continue;
+      }
+
+      byte[] part = partJson.getBytes(UTF_8);
+      String partHash = DigestUtils.sha256Hex(part);
+      if (storedPartHashes.add(partHash)) {
+        ExecutionCommandPartEntity partEntity = new ExecutionCommandPartEntity();
+        partEntity.setStage(stageEntity);
+        partEntity.setPartHash(partHash);
+        partEntity.setContent(compress(part));
+        executionCommandPartDAO.create(partEntity);
+
+        partCache.put(partHash, element);
+      }
+
+      command.remove(field);
+      parts.addProperty(field, partHash);
+    }
+
+    JsonObject stored = new JsonObject();
+    stored.addProperty(REQUEST_ID, stageEntity.getRequestId());
+    stored.addProperty(STAGE_ID, stageEntity.getStageId());
+    stored.add(PARTS, parts);
+    stored.add(COMMAND, command);
+    return compress(stored.toString().getBytes(UTF_8));
+  }
+
+  /**
+   * Converts a stored command back to its JSON, putting the shared parts back
+   * in.
+   *
+   * @param storedCommand
+   *          the command stored in {@link org.apache.ambari.server.orm.entities.ExecutionCommandEntity}
+   * @return the JSON of the command
+   */
+  public String toJson(byte[] storedCommand) {
+    if (!isCompressed(storedCommand)) {
+      return new String(storedCommand);
+    }
+
+    JsonObject stored = new JsonParser().parse(decompress(storedCommand)).getAsJsonObject();
+    long requestId = stored.get(REQUEST_ID).getAsLong();
+    long stageId = stored.get(STAGE_ID).getAsLong();
+
+    JsonObject command = stored.getAsJsonObject(COMMAND);
+    for (Map.Entry<String, JsonElement> part : stored.getAsJsonObject(PARTS).entrySet()) {
+      command.add(part.getKey(), getPart(requestId, stageId, part.getValue().getAsString()));
+    }
+
+    return command.toString();
+  }
+
+  /**
+   * @return {@code true} if the stored command starts with the GZIP magic
+   *         number, which JSON never does
+   */
+  static boolean isCompressed(byte[] storedCommand) {
+    return storedCommand.length > 2 && storedCommand[0] == (byte) GZIPInputStream.GZIP_MAGIC
+        && storedCommand[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+  }
+
+  private JsonElement getPart(final long requestId, final long stageId, final String partHash) {
+    try {
+      return partCache.get(partHash, new Callable<JsonElement>() {
+        @Override
+        public JsonElement call() {
+          ExecutionCommandPartEntity partEntity = executionCommandPartDAO.findByPK(requestId, stageId, partHash);
+          if (null == partEntity) {
+            throw new IllegalStateException(String.format(
+                "Invalid DB state, missing execution command part %s of stage %d of request %d",
+                partHash, stageId, requestId));
+          }
+
+          return new JsonParser().parse(decompress(partEntity.getContent()));
+        }
+      });
+    } catch (UncheckedExecutionException e) {
+      throw (RuntimeException) e.getCause();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private static byte[] compress(byte[] content) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4);
+    try {
+      GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+      gzip.write(content);
+      gzip.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static String decompress(byte[] content) {
+    try {
+      GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content));
+      try {
+        return IOUtils.toString(gzip, "UTF-8");
+      } finally {
+        gzip.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
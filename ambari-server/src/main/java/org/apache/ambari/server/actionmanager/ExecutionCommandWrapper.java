@@ -44,6 +44,12 @@ public class ExecutionCommandWrapper {
   String jsonExecutionCommand = null;
   ExecutionCommand executionCommand = null;
 
+  /**
+   * The command as stored in the database, converted to JSON when it is first
+   * needed.
+   */
+  byte[] storedCommand = null;
+
   @Inject
   Clusters clusters;
 
@@ -56,6 +62,9 @@ public class ExecutionCommandWrapper {
   @Inject
   private Gson gson;
 
+  @Inject
+  private ExecutionCommandStorage executionCommandStorage;
+
   @AssistedInject
   public ExecutionCommandWrapper(@Assisted String jsonExecutionCommand) {
     this.jsonExecutionCommand = jsonExecutionCommand;
@@ -66,6 +75,11 @@ public class ExecutionCommandWrapper {
     this.executionCommand = executionCommand;
   }
 
+  @AssistedInject
+  public ExecutionCommandWrapper(@Assisted byte[] storedCommand) {
+    this.storedCommand = storedCommand;
+  }
+
   /**
    * Gets the execution command by either de-serializing the backing JSON
    * command or returning the encapsulated instance which has already been
@@ -84,7 +98,7 @@ public class ExecutionCommandWrapper {
       return executionCommand;
     }
 
-    if( null == jsonExecutionCommand ){
+    if( null == getStoredJson() ){
       throw new RuntimeException(
           "Invalid ExecutionCommandWrapper, both object and string representations are null");
     }
@@ -203,7 +217,7 @@ public class ExecutionCommandWrapper {
       return executionCommand.getCommandType();
     }
 
-    if (null == jsonExecutionCommand) {
+    if (null == getStoredJson()) {
       throw new RuntimeException(
           "Invalid ExecutionCommandWrapper, both object and string" + " representations are null");
     }
@@ -213,7 +227,7 @@ public class ExecutionCommandWrapper {
   }
 
   public String getJson() {
-    if (jsonExecutionCommand != null) {
+    if (getStoredJson() != null) {
       return jsonExecutionCommand;
     } else if (executionCommand != null) {
       jsonExecutionCommand = gson.toJson(executionCommand);
@@ -247,12 +261,27 @@ public class ExecutionCommandWrapper {
   public int hashCode() {
     if (executionCommand != null) {
       return executionCommand.hashCode();
-    } else if (jsonExecutionCommand != null) {
+    } else if (getStoredJson() != null) {
       return jsonExecutionCommand.hashCode();
     }
     throw new RuntimeException("Invalid Wrapper object");
   }
 
+  /**
+   * Gets the JSON of the command, reassembling it from the stored command
+   * the first time.
+   *
+   * @return the JSON or {@code null} if the wrapper was created from an
+   *         {@link ExecutionCommand} which was not serialized yet
+   */
+  private String getStoredJson() {
+    if (null == jsonExecutionCommand && null != storedCommand) {
+      jsonExecutionCommand = executionCommandStorage.toJson(storedCommand);
+      storedCommand = null;
+    }
+    return jsonExecutionCommand;
+  }
+
   void invalidateJson() {
     if (executionCommand == null) {
       throw new RuntimeException("Invalid Wrapper object");
@@ -29,4 +29,12 @@ public interface ExecutionCommandWrapperFactory {
 
   ExecutionCommandWrapper createFromCommand(ExecutionCommand executionCommand);
 
+  /**
+   * Creates a wrapper of a command as it is stored in
+   * {@link org.apache.ambari.server.orm.entities.ExecutionCommandEntity},
+   * which is converted to JSON by the {@link ExecutionCommandStorage} when it
+   * is first needed.
+   */
+  ExecutionCommandWrapper createFromStoredCommand(byte[] storedCommand);
+
 }
@@ -228,9 +228,13 @@ public class HostRoleCommand {
     return hostRoleCommandEntity;
   }
 
-  ExecutionCommandEntity constructExecutionCommandEntity() {
+  /**
+   * @param storedCommand
+   *          the command in the form produced by {@link ExecutionCommandStorage}
+   */
+  ExecutionCommandEntity constructExecutionCommandEntity(byte[] storedCommand) {
     ExecutionCommandEntity executionCommandEntity = new ExecutionCommandEntity();
-    executionCommandEntity.setCommand(executionCommandWrapper.getJson().getBytes());
+    executionCommandEntity.setCommand(storedCommand);
     return executionCommandEntity;
   }
 
@@ -406,7 +410,7 @@ public class HostRoleCommand {
         throw new RuntimeException("Invalid DB state, broken one-to-one relation for taskId=" + taskId);
       }
 
-      executionCommandWrapper = ecwFactory.createFromJson(new String(commandEntity.getCommand()));
+      executionCommandWrapper = ecwFactory.createFromStoredCommand(commandEntity.getCommand());
     }
 
     return executionCommandWrapper;
@@ -19,13 +19,17 @@ package org.apache.ambari.server.agent;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ambari.server.agent.AgentCommand.AgentCommandType;
 import org.slf4j.Logger;
@@ -33,22 +37,44 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.Singleton;
 
+/**
+ * The commands waiting to be sent to each host with the next heartbeat
+ * response.
+ * <p/>
+ * Every host has a queue per command type, so commands of one type are
+ * removed without scanning the others. Queued execution commands are indexed
+ * by command id. A command is removed by atomically marking its entry as
+ * taken; entries taken out of the middle of a queue are unlinked when the
+ * queue is next drained. Sizes are kept in counters. Only the index of a
+ * host is updated under a lock, which is held by no other operation.
+ * <p/>
+ * Status commands are regenerated for every host periodically, so at most
+ * {@link #MAX_STATUS_COMMANDS} of them are kept per host; the oldest ones are
+ * dropped beyond that.
+ */
 @Singleton
 public class ActionQueue {
 
   private static Logger LOG = LoggerFactory.getLogger(ActionQueue.class);
 
-  private static HashSet<String> EMPTY_HOST_LIST = new HashSet<String>();
+  /**
+   * The maximum number of status commands queued for a host.
+   */
+  static final int MAX_STATUS_COMMANDS = 10000;
 
-  final ConcurrentMap<String, Queue<AgentCommand>> hostQueues;
+  final ConcurrentMap<String, HostQueue> hostQueues;
 
-  HashSet<String> hostsWithPendingTask = new HashSet<String>();
+  /**
+   * The hosts with tasks in progress, as last reported by the action
+   * scheduler. Replaced, never modified.
+   */
+  private volatile Set<String> hostsWithPendingTask = Collections.emptySet();
 
   public ActionQueue() {
-    hostQueues = new ConcurrentHashMap<String, Queue<AgentCommand>>();
+    hostQueues = new ConcurrentHashMap<String, HostQueue>();
   }
 
-  private Queue<AgentCommand> getQueue(String hostname) {
+  private HostQueue getQueue(String hostname) {
     return hostQueues.get(hostname);
   }
 
@@ -59,11 +85,11 @@ public class ActionQueue {
    * @throws NullPointerException - if hostname is {@code}null{@code}
    */
   public void enqueue(String hostname, AgentCommand cmd) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
 
     if (q == null) {
       //try to add new queue to map if not found
-      q = hostQueues.putIfAbsent(hostname, new ConcurrentLinkedQueue<AgentCommand>());
+      q = hostQueues.putIfAbsent(hostname, new HostQueue());
       if (q == null) {
         //null means that new queue was added to map, get it
         q = getQueue(hostname);
@@ -72,15 +98,23 @@ public class ActionQueue {
     }
 
     q.add(cmd);
+
+    if (q.size(AgentCommandType.STATUS_COMMAND) > MAX_STATUS_COMMANDS) {
+      int dropped = q.trim(AgentCommandType.STATUS_COMMAND, MAX_STATUS_COMMANDS);
+      if (dropped > 0) {
+        LOG.warn("Dropped {} status commands for host {} which has not received them", dropped, hostname);
+      }
+    }
   }
 
   /**
    * Get command from queue for given hostname
    * @param hostname
-   * @return
+   * @return the command which was queued first, or {@code null} if there is
+   *         none
    */
   public AgentCommand dequeue(String hostname) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return null;
     }
@@ -104,23 +138,14 @@ public class ActionQueue {
       return Collections.emptyList();
     }
 
-    Queue<AgentCommand> queue = getQueue(hostname);
+    HostQueue queue = getQueue(hostname);
     if (null == queue) {
       return null;
     }
 
     List<AgentCommand> removedCommands = new ArrayList<AgentCommand>(
-        queue.size());
-
-    Iterator<AgentCommand> iterator = queue.iterator();
-    while (iterator.hasNext()) {
-      AgentCommand command = iterator.next();
-      if (command.getCommandType() == commandType) {
-        removedCommands.add(command);
-        iterator.remove();
-      }
-    }
-
+        queue.size(commandType));
+    queue.drainTo(commandType, removedCommands);
     return removedCommands;
   }
 
@@ -129,68 +154,57 @@ public class ActionQueue {
    *
    * @param hostname
    * @param commandId
-   * @return
+   * @return the first queued execution command with the id, or {@code null}
+   *         if there is none
    */
   public AgentCommand dequeue(String hostname, String commandId) {
-    Queue<AgentCommand> q = getQueue(hostname);
-    if (q == null) {
+    HostQueue q = getQueue(hostname);
+    if (q == null || commandId == null) {
       return null;
     }
-    if (q.isEmpty()) {
-      return null;
-    } else {
-      AgentCommand c = null;
-      for (Iterator<AgentCommand> it = q.iterator(); it.hasNext();) {
-        AgentCommand ac = it.next();
-        if (ac instanceof ExecutionCommand && ((ExecutionCommand) ac)
-          .getCommandId().equals(commandId)) {
-          c = ac;
-          it.remove();
-          break;
-        }
-      }
-      return c;
-    }
+
+    return q.remove(commandId);
   }
 
   public int size(String hostname) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return 0;
     }
-      return q.size();
+    return q.size();
   }
 
+  /**
+   * Removes all commands queued for a host.
+   *
+   * @param hostname
+   * @return the commands in the order they were queued, or {@code null} if
+   *         nothing was ever queued for the host
+   */
   public List<AgentCommand> dequeueAll(String hostname) {
-    Queue<AgentCommand> q = getQueue(hostname);
+    HostQueue q = getQueue(hostname);
     if (q == null) {
       return null;
     }
 
-    List<AgentCommand> l = new ArrayList<AgentCommand>();
-
-    AgentCommand command;
-    do {
-      //get commands from queue until empty
-      command = q.poll();
-      if (command != null) {
-        l.add(command);
-      }
-    } while (command != null);
-
-    return l;
+    return q.drainAll();
   }
 
   /**
-   * Update the cache of hosts that have pending tasks
+   * Update the cache of hosts that have pending tasks. The set is only
+   * replaced if the hosts changed.
    *
-   * @param hosts
+   * @param hosts the hosts, which must not be modified afterwards, or
+   *          {@code null} for none
    */
   public void updateListOfHostsWithPendingTask(HashSet<String> hosts) {
-    if (hosts != null) {
+    Set<String> current = hostsWithPendingTask;
+    if (hosts == null || hosts.isEmpty()) {
+      if (!current.isEmpty()) {
+        hostsWithPendingTask = Collections.emptySet();
+      }
+    } else if (hosts != current && !hosts.equals(current)) {
       hostsWithPendingTask = hosts;
-    } else if (hostsWithPendingTask.size() > 0) {
-      hostsWithPendingTask = EMPTY_HOST_LIST;
     }
   }
 
@@ -200,11 +214,242 @@ public class ActionQueue {
    * @return
    */
   public boolean hasPendingTask(String hostName) {
-    HashSet<String> copyHostsWithTaskPending = hostsWithPendingTask;
-    if (copyHostsWithTaskPending != null) {
-      return copyHostsWithTaskPending.contains(hostName);
+    return hostsWithPendingTask.contains(hostName);
+  }
+
+  /**
+   * A queued command, which is taken out of the queue exactly once.
+   */
+  private static final class Entry extends AtomicBoolean {
+    private final AgentCommand command;
+    private final int type;
+    private final long sequence;
+
+    /**
+     * The id under which the command is indexed, {@code null} if it is not.
+     */
+    private final String commandId;
+
+    private Entry(AgentCommand command, int type, long sequence, String commandId) {
+      this.command = command;
+      this.type = type;
+      this.sequence = sequence;
+      this.commandId = commandId;
     }
 
-    return false;
+    private boolean isTaken() {
+      return get();
+    }
+  }
+
+  private static final Comparator<Entry> QUEUE_ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry left, Entry right) {
+      return Long.compare(left.sequence, right.sequence);
+    }
+  };
+
+  /**
+   * The commands queued for a single host.
+   */
+  static final class HostQueue {
+
+    /**
+     * The queue of commands without a type, which only mocks have.
+     */
+    private static final int UNTYPED = AgentCommandType.values().length;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The queues by command type ordinal.
+     */
+    private final List<Queue<Entry>> queues;
+
+    /**
+     * The number of commands in each queue which are not taken.
+     */
+    private final AtomicIntegerArray sizes;
+
+    /**
+     * Queued execution commands by command id. Commands of different roles of
+     * a stage on the same host share an id. Updated while holding the map, so
+     * that adding to the queue of an id and dropping it as empty do not
+     * interleave; the queues are read without it.
+     */
+    private final ConcurrentMap<String, Queue<Entry>> index = new ConcurrentHashMap<>();
+
+    HostQueue() {
+      queues = new ArrayList<>(UNTYPED + 1);
+      for (int i = 0; i <= UNTYPED; i++) {
+        queues.add(new ConcurrentLinkedQueue<Entry>());
+      }
+      sizes = new AtomicIntegerArray(UNTYPED + 1);
+    }
+
+    void add(AgentCommand command) {
+      AgentCommandType commandType = command.getCommandType();
+      int type = null == commandType ? UNTYPED : commandType.ordinal();
+
+      String commandId = command instanceof ExecutionCommand ? ((ExecutionCommand) command).getCommandId() : null;
+      Entry entry = new Entry(command, type, sequence.getAndIncrement(), commandId);
+
+      // indexed before it can be taken, so that taking it always unindexes it
+      if (null != commandId) {
+        index(entry);
+      }
+
+      sizes.incrementAndGet(type);
+      queues.get(type).add(entry);
+    }
+
+    int size() {
+      int size = 0;
+      for (int i = 0; i < sizes.length(); i++) {
+        size += sizes.get(i);
+      }
+      return size;
+    }
+
+    int size(AgentCommandType commandType) {
+      return sizes.get(commandType.ordinal());
+    }
+
+    AgentCommand poll() {
+      while (true) {
+        Entry oldest = null;
+        for (Queue<Entry> queue : queues) {
+          Entry head = peek(queue);
+          if (null != head && (null == oldest || head.sequence < oldest.sequence)) {
+            oldest = head;
+          }
+        }
+
+        if (null == oldest) {
+          return null;
+        }
+
+        if (take(oldest)) {
+          queues.get(oldest.type).remove(oldest);
+          return oldest.command;
+        }
+      }
+    }
+
+    AgentCommand remove(String commandId) {
+      Queue<Entry> entries = index.get(commandId);
+      if (null == entries) {
+        return null;
+      }
+
+      for (Entry entry : entries) {
+        // the entry stays in its type queue until the queue is drained
+        if (take(entry)) {
+          return entry.command;
+        }
+      }
+      return null;
+    }
+
+    void drainTo(AgentCommandType commandType, List<AgentCommand> commands) {
+      Queue<Entry> queue = queues.get(commandType.ordinal());
+      Entry entry;
+      while (null != (entry = queue.poll())) {
+        if (take(entry)) {
+          commands.add(entry.command);
+        }
+      }
+    }
+
+    List<AgentCommand> drainAll() {
+      List<Entry> entries = new ArrayList<>(size());
+      for (Queue<Entry> queue : queues) {
+        Entry entry;
+        while (null != (entry = queue.poll())) {
+          if (take(entry)) {
+            entries.add(entry);
+          }
+        }
+      }
+
+      Collections.sort(entries, QUEUE_ORDER);
+
+      List<AgentCommand> commands = new ArrayList<>(entries.size());
+      for (Entry entry : entries) {
+        commands.add(entry.command);
+      }
+      return commands;
+    }
+
+    /**
+     * Drops the oldest commands of a type beyond a limit.
+     *
+     * @return the number of dropped commands
+     */
+    int trim(AgentCommandType commandType, int limit) {
+      Queue<Entry> queue = queues.get(commandType.ordinal());
+      int dropped = 0;
+      Entry entry;
+      while (sizes.get(commandType.ordinal()) > limit && null != (entry = queue.poll())) {
+        if (take(entry)) {
+          dropped++;
+        }
+      }
+      return dropped;
+    }
+
+    /**
+     * @return the first entry of the queue which is not taken, unlinking the
+     *         taken ones before it
+     */
+    private Entry peek(Queue<Entry> queue) {
+      Entry head;
+      while (null != (head = queue.peek()) && head.isTaken()) {
+        queue.remove(head);
+      }
+      return head;
+    }
+
+    /**
+     * Marks an entry as taken, updating the size and the index.
+     *
+     * @return {@code true} if the entry was not taken before
+     */
+    private boolean take(Entry entry) {
+      if (!entry.compareAndSet(false, true)) {
+        return false;
+      }
+
+      sizes.decrementAndGet(entry.type);
+      if (null != entry.commandId) {
+        unindex(entry);
+      }
+      return true;
+    }
+
+    private void index(Entry entry) {
+      synchronized (index) {
+        Queue<Entry> entries = index.get(entry.commandId);
+        if (null == entries) {
+          entries = new ConcurrentLinkedQueue<>();
+          index.put(entry.commandId, entries);
+        }
+        entries.add(entry);
+      }
+    }
+
+    private void unindex(Entry entry) {
+      synchronized (index) {
+        Queue<Entry> entries = index.get(entry.commandId);
+        if (null == entries) {
+          return;
+        }
+
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+          index.remove(entry.commandId);
+        }
+      }
+    }
   }
 }
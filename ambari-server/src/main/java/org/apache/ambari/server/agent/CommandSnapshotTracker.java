@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.agent;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Singleton;
+
+/**
+ * Tracks the configurations and cluster host info each agent has received, so
+ * that execution commands only carry the parts a host does not have yet.
+ * <p/>
+ * Every configuration type, configuration attribute type and the cluster host
+ * info of a command is identified by a hash of its content, which is sent in
+ * {@link ExecutionCommand#getSnapshotHashes()}. A part is left out of a
+ * command if the host acknowledged the same hash before and no other version
+ * of it was sent earlier in the same response; the agent then takes it from
+ * its cache, which keeps the last version received of each part. A host acknowledges everything sent in a heartbeat
+ * response by sending the next heartbeat with the id of that response, so a
+ * lost response, which is sent again, never causes parts to be left out.
+ * <p/>
+ * Only hosts which registered with an agent supporting snapshots are tracked.
+ * The snapshots of a host are forgotten whenever it registers, which it does
+ * after an agent or server restart.
+ */
+@Singleton
+public class CommandSnapshotTracker {
+
+  static final String CONFIGURATIONS_PREFIX = "configurations/";
+  static final String CONFIGURATION_ATTRIBUTES_PREFIX = "configuration_attributes/";
+  static final String CLUSTER_HOST_INFO = "clusterHostInfo";
+
+  /**
+   * The snapshots of the hosts receiving command deltas.
+   */
+  private final Map<String, HostSnapshots> hostSnapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Starts or stops tracking a host when it registers.
+   *
+   * @param hostname
+   *          the host
+   * @param enabled
+   *          {@code true} if the host receives command deltas
+   */
+  public void register(String hostname, boolean enabled) {
+    if (enabled) {
+      hostSnapshots.put(hostname, new HostSnapshots());
+    } else {
+      hostSnapshots.remove(hostname);
+    }
+  }
+
+  /**
+   * Records that a host received a heartbeat response.
+   *
+   * @param hostname
+   *          the host
+   * @param responseId
+   *          the id of the response the host received
+   */
+  public void acknowledge(String hostname, long responseId) {
+    HostSnapshots snapshots = hostSnapshots.get(hostname);
+    if (null == snapshots) {
+      return;
+    }
+
+    synchronized (snapshots) {
+      if (snapshots.pendingResponseId == responseId) {
+        snapshots.acknowledged.putAll(snapshots.pending);
+        snapshots.pending.clear();
+        snapshots.pendingResponseId = -1;
+      }
+    }
+  }
+
+  /**
+   * Gets the command to send to a host in a heartbeat response.
+   *
+   * @param hostname
+   *          the host
+   * @param responseId
+   *          the id of the response the command is sent in
+   * @param command
+   *          the command, which is not changed
+   * @return the command itself if the host receives full commands, or a copy
+   *         of it without the parts the host already has
+   */
+  public ExecutionCommand getDelta(String hostname, long responseId, ExecutionCommand command) {
+    HostSnapshots snapshots = hostSnapshots.get(hostname);
+    if (null == snapshots) {
+      return command;
+    }
+
+    Map<String, String> hashes = new HashMap<>();
+    ExecutionCommand delta = new ExecutionCommand(command);
+
+    synchronized (snapshots) {
+      if (snapshots.pendingResponseId != responseId) {
+        snapshots.pending.clear();
+        snapshots.pendingResponseId = responseId;
+      }
+
+      delta.setConfigurations(filter(snapshots, CONFIGURATIONS_PREFIX, command.getConfigurations(), hashes));
+      delta.setConfigurationAttributes(filter(snapshots, CONFIGURATION_ATTRIBUTES_PREFIX,
+          command.getConfigurationAttributes(), hashes));
+
+      Map<String, ?> clusterHostInfo = command.getClusterHostInfo();
+      if (null != clusterHostInfo && !clusterHostInfo.isEmpty()) {
+        String hash = hash(clusterHostInfo);
+        hashes.put(CLUSTER_HOST_INFO, hash);
+        if (isAcknowledged(snapshots, CLUSTER_HOST_INFO, hash)) {
+          delta.setClusterHostInfo(null);
+        }
+      }
+    }
+
+    delta.setSnapshotHashes(hashes);
+    return delta;
+  }
+
+  /**
+   * Computes the hashes of the types of a section of a command and leaves out
+   * the types the host already has.
+   *
+   * @return the types the host does not have
+   */
+  private <T> Map<String, T> filter(HostSnapshots snapshots, String prefix, Map<String, T> section,
+      Map<String, String> hashes) {
+    if (null == section) {
+      return null;
+    }
+
+    Map<String, T> filtered = new TreeMap<>();
+    for (Map.Entry<String, T> type : section.entrySet()) {
+      String key = prefix + type.getKey();
+      String hash = hash(type.getValue());
+      hashes.put(key, hash);
+      if (!isAcknowledged(snapshots, key, hash)) {
+        filtered.put(type.getKey(), type.getValue());
+      }
+    }
+    return filtered;
+  }
+
+  /**
+   * @return {@code true} if the host has the part, otherwise the part is
+   *         recorded as sent with the pending response
+   */
+  private boolean isAcknowledged(HostSnapshots snapshots, String key, String hash) {
+    // another version sent earlier in the response replaces the acknowledged
+    // one in the cache of the agent
+    String pending = snapshots.pending.get(key);
+    if (hash.equals(snapshots.acknowledged.get(key)) && (null == pending || hash.equals(pending))) {
+      return true;
+    }
+    snapshots.pending.put(key, hash);
+    return false;
+  }
+
+  /**
+   * Hashes the content of maps, collections and strings. Map keys are hashed
+   * in sorted order, so equal maps have the same hash regardless of their
+   * implementation. Collection elements are hashed in iteration order, since
+   * the order of lists and ordered sets such as {@code all_hosts} is
+   * significant to the agent.
+   */
+  static String hash(Object value) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hash(hasher, value);
+    return hasher.hash().toString();
+  }
+
+  private static void hash(Hasher hasher, Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> entries = new TreeMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        entries.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+
+      hasher.putChar('{');
+      for (Map.Entry<String, Object> entry : entries.entrySet()) {
+        hashString(hasher, entry.getKey());
+        hash(hasher, entry.getValue());
+      }
+      hasher.putChar('}');
+    } else if (value instanceof Collection) {
+      hasher.putChar('[');
+      for (Object element : (Collection<?>) value) {
+        hash(hasher, element);
+      }
+      hasher.putChar(']');
+    } else if (null == value) {
+      hasher.putChar('n');
+    } else {
+      hashString(hasher, value.toString());
+    }
+  }
+
+  private static void hashString(Hasher hasher, String value) {
+    hasher.putChar('s').putInt(value.length()).putUnencodedChars(value);
+  }
+
+  /**
+   * The hashes of the parts a host has, and of those sent to it with a
+   * response it did not acknowledge yet.
+   */
+  private static final class HostSnapshots {
+    private final Map<String, String> acknowledged = new HashMap<>();
+    private final Map<String, String> pending = new HashMap<>();
+    private long pendingResponseId = -1;
+  }
+}
@@ -45,6 +45,43 @@ public class ExecutionCommand extends AgentCommand {
     super(AgentCommandType.EXECUTION_COMMAND);
   }
 
+  /**
+   * Creates a shallow copy of a command, so that maps of the copy can be
+   * replaced before it is sent to an agent without changing the command kept
+   * by the server. Fields added to this class must be copied here.
+   *
+   * @param other
+   *          the command to copy
+   */
+  public ExecutionCommand(ExecutionCommand other) {
+    super(other.getCommandType());
+    clusterName = other.clusterName;
+    requestId = other.requestId;
+    stageId = other.stageId;
+    taskId = other.taskId;
+    commandId = other.commandId;
+    hostname = other.hostname;
+    role = other.role;
+    hostLevelParams = other.hostLevelParams;
+    roleParams = other.roleParams;
+    roleCommand = other.roleCommand;
+    clusterHostInfo = other.clusterHostInfo;
+    configurations = other.configurations;
+    configurationAttributes = other.configurationAttributes;
+    configurationTags = other.configurationTags;
+    forceRefreshConfigTagsBeforeExecution = other.forceRefreshConfigTagsBeforeExecution;
+    commandParams = other.commandParams;
+    serviceName = other.serviceName;
+    serviceType = other.serviceType;
+    componentName = other.componentName;
+    kerberosCommandParams = other.kerberosCommandParams;
+    localComponents = other.localComponents;
+    availableServices = other.availableServices;
+    credentialStoreEnabled = other.credentialStoreEnabled;
+    configurationCredentials = other.configurationCredentials;
+    snapshotHashes = other.snapshotHashes;
+  }
+
   @SerializedName("clusterName")
   private String clusterName;
 
@@ -144,6 +181,16 @@ public class ExecutionCommand extends AgentCommand {
   @SerializedName("configuration_credentials")
   private Map<String, Map<String, String>> configurationCredentials;
 
+  /**
+   * The hashes of the configuration types, configuration attribute types and
+   * cluster host info of the command, as computed by
+   * {@link CommandSnapshotTracker}. A part whose hash is listed but which is
+   * missing from the command was sent to the agent before and is taken from
+   * its cache. {@code null} for agents which receive full commands.
+   */
+  @SerializedName("snapshotHashes")
+  private Map<String, String> snapshotHashes;
+
   public void setConfigurationCredentials(Map<String, Map<String, String>> configurationCredentials) {
     this.configurationCredentials = configurationCredentials;
   }
@@ -152,6 +199,14 @@ public class ExecutionCommand extends AgentCommand {
     return this.configurationCredentials;
   }
 
+  public Map<String, String> getSnapshotHashes() {
+    return snapshotHashes;
+  }
+
+  public void setSnapshotHashes(Map<String, String> snapshotHashes) {
+    this.snapshotHashes = snapshotHashes;
+  }
+
   public String getCommandId() {
     return commandId;
   }
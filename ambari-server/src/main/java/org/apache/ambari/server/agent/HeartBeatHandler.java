@@ -104,6 +104,9 @@ public class HeartBeatHandler {
   @Inject
   private RecoveryConfigHelper recoveryConfigHelper;
 
+  @Inject
+  private CommandSnapshotTracker commandSnapshotTracker;
+
   /**
    * KerberosIdentityDataFileReaderFactory used to create KerberosIdentityDataFileReader instances
    */
@@ -172,6 +175,9 @@ public class HeartBeatHandler {
       return createRestartCommand(currentResponseId);
     }
 
+    // the agent received the previous response
+    commandSnapshotTracker.acknowledge(hostname, currentResponseId);
+
     response = new HeartBeatResponse();
     response.setResponseId(++currentResponseId);
 
@@ -301,7 +307,8 @@ public class HeartBeatHandler {
                 }
               }
             }
-            response.addExecutionCommand((ExecutionCommand) ac);
+            response.addExecutionCommand(
+                commandSnapshotTracker.getDelta(hostname, response.getResponseId(), ec));
             break;
           }
           case STATUS_COMMAND: {
@@ -463,6 +470,10 @@ public class HeartBeatHandler {
       }
     }
 
+    // the agent starts with an empty cache
+    commandSnapshotTracker.register(hostname,
+        config.isAgentCommandSnapshotsEnabled() && register.isCommandSnapshotsSupported());
+
     Long requestId = 0L;
     hostResponseIds.put(hostname, requestId);
     response.setResponseId(requestId);
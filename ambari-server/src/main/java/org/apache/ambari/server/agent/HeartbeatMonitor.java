@@ -27,12 +27,15 @@ import static org.apache.ambari.server.agent.ExecutionCommand.KeyNames.STACK_NAM
 import static org.apache.ambari.server.agent.ExecutionCommand.KeyNames.STACK_VERSION;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.RoleCommand;
@@ -40,6 +43,8 @@ import org.apache.ambari.server.actionmanager.ActionManager;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.AmbariManagementController;
+import org.apache.ambari.server.events.ClusterConfigChangedEvent;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
 import org.apache.ambari.server.state.Cluster;
 import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.CommandScriptDefinition;
@@ -61,6 +66,11 @@ import org.apache.ambari.server.state.host.HostHeartbeatLostEvent;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Injector;
 
 /**
@@ -80,6 +90,23 @@ public class HeartbeatMonitor implements Runnable {
   private final Configuration configuration;
   private final AgentRequests agentRequests;
 
+  /**
+   * The number of distinct '*-env' configurations of hosts kept in memory.
+   * Hosts only differ in them if they belong to different config groups.
+   */
+  private static final int ENV_CONFIGURATION_CACHE_SIZE = 1000;
+
+  /**
+   * Status command templates by stack, service and component.
+   */
+  private final Map<String, StatusCommandTemplate> templates = new ConcurrentHashMap<>();
+
+  /**
+   * The '*-env' configurations by cluster and effective tags.
+   */
+  private final Cache<List<Object>, EnvConfigurations> envConfigurationCache = CacheBuilder.newBuilder()
+      .maximumSize(ENV_CONFIGURATION_CACHE_SIZE).build();
+
   public HeartbeatMonitor(Clusters clusters, ActionQueue aq, ActionManager am,
                           int threadWakeupInterval, Injector injector) {
     this.clusters = clusters;
@@ -92,6 +119,7 @@ public class HeartbeatMonitor implements Runnable {
             AmbariManagementController.class);
     configuration = injector.getInstance(Configuration.class);
     agentRequests = new AgentRequests();
+    injector.getInstance(AmbariEventPublisher.class).register(this);
   }
 
   public void shutdown() {
@@ -137,32 +165,36 @@ public class HeartbeatMonitor implements Runnable {
   //Go through all the nodes, check for last heartbeat or any waiting state
   //If heartbeat is lost, update node clusters state, purge the action queue
   //notify action manager for node failure.
-  private void doWork() throws InvalidStateTransitionException, AmbariException {
+  void doWork() throws InvalidStateTransitionException, AmbariException {
+    long start = System.currentTimeMillis();
+
+    // snapshot the heartbeat times first, so that the liveness check is a scan
+    // over an array instead of a lookup per host
     List<Host> allHosts = clusters.getHosts();
+    Host[] hosts = allHosts.toArray(new Host[allHosts.size()]);
+    long[] lastHeartbeats = new long[hosts.length];
+    for (int i = 0; i < hosts.length; i++) {
+      lastHeartbeats[i] = hosts[i].getLastHeartbeatTime();
+    }
+
     long now = System.currentTimeMillis();
-    for (Host hostObj : allHosts) {
-      if (hostObj.getState() == HostState.HEARTBEAT_LOST) {
+    for (int i = 0; i < hosts.length; i++) {
+      Host hostObj = hosts[i];
+      HostState hostState = hostObj.getState();
+      if (hostState == HostState.HEARTBEAT_LOST) {
         //do not check if host already known be lost
         continue;
       }
       String host = hostObj.getHostName();
-      HostState hostState = hostObj.getState();
-      String hostname = hostObj.getHostName();
 
-      long lastHeartbeat = 0;
-      try {
-        lastHeartbeat = clusters.getHost(host).getLastHeartbeatTime();
-      } catch (AmbariException e) {
-        LOG.warn("Exception in getting host object; Is it fatal?", e);
-      }
-      if (lastHeartbeat + 2 * threadWakeupInterval < now) {
+      if (lastHeartbeats[i] + 2 * threadWakeupInterval < now) {
         LOG.warn("Heartbeat lost from host " + host);
         //Heartbeat is expired
         hostObj.handleEvent(new HostHeartbeatLostEvent(host));
 
         // mark all components that are not clients with unknown status
-        for (Cluster cluster : clusters.getClustersForHost(hostObj.getHostName())) {
-          for (ServiceComponentHost sch : cluster.getServiceComponentHosts(hostObj.getHostName())) {
+        for (Cluster cluster : clusters.getClustersForHost(host)) {
+          for (ServiceComponentHost sch : cluster.getServiceComponentHosts(host)) {
             Service s = cluster.getService(sch.getServiceName());
             ServiceComponent sc = s.getServiceComponent(sch.getServiceComponentName());
             if (!sc.isClientComponent() &&
@@ -192,17 +224,21 @@ public class HeartbeatMonitor implements Runnable {
       }
 
       // Get status of service components
-      List<StatusCommand> cmds = generateStatusCommands(hostname);
+      List<StatusCommand> cmds = generateStatusCommands(host);
       LOG.trace("Generated " + cmds.size() + " status commands for host: " +
-        hostname);
-      if (cmds.isEmpty()) {
-        // Nothing to do
-      } else {
-        for (StatusCommand command : cmds) {
-          actionQueue.enqueue(hostname, command);
-        }
+        host);
+      for (StatusCommand command : cmds) {
+        actionQueue.enqueue(host, command);
       }
     }
+
+    long passTime = System.currentTimeMillis() - start;
+    if (passTime > threadWakeupInterval) {
+      LOG.warn("Checking " + hosts.length + " hosts took " + passTime +
+        " milliseconds, which is longer than the monitor interval of " + threadWakeupInterval + " milliseconds");
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("Checked " + hosts.length + " hosts in " + passTime + " milliseconds");
+    }
   }
 
   /**
@@ -213,7 +249,8 @@ public class HeartbeatMonitor implements Runnable {
     List<StatusCommand> cmds = new ArrayList<StatusCommand>();
 
     for (Cluster cl : clusters.getClustersForHost(hostname)) {
-      Map<String, DesiredConfig> desiredConfigs = cl.getDesiredConfigs();
+      Map<String, DesiredConfig> desiredConfigs = null;
+      EnvConfigurations envConfigurations = null;
       for (ServiceComponentHost sch : cl.getServiceComponentHosts(hostname)) {
         switch (sch.getState()) {
           case INIT:
@@ -223,7 +260,13 @@ public class HeartbeatMonitor implements Runnable {
             //don't send commands until component is installed at least
             continue;
           default:
-            StatusCommand statusCmd = createStatusCommand(hostname, cl, sch, desiredConfigs);
+            // the configurations are the same for all components of the host
+            if (null == envConfigurations) {
+              desiredConfigs = cl.getDesiredConfigs();
+              envConfigurations = getEnvConfigurations(hostname, cl, desiredConfigs);
+            }
+            StatusCommand statusCmd = createStatusCommand(hostname, cl, sch, desiredConfigs,
+                envConfigurations);
             cmds.add(statusCmd);
         }
 
@@ -232,15 +275,77 @@ public class HeartbeatMonitor implements Runnable {
     return cmds;
   }
 
+  /**
+   * Clears the cached configurations when the properties of a configuration
+   * change, which may happen without a new tag.
+   *
+   * @param event
+   *          the configuration change
+   */
+  @Subscribe
+  @AllowConcurrentEvents
+  public void onConfigChanged(ClusterConfigChangedEvent event) {
+    envConfigurationCache.invalidateAll();
+  }
+
   /**
    * Generates status command and fills all appropriate fields.
    * @throws AmbariException
    */
   private StatusCommand createStatusCommand(String hostname, Cluster cluster,
-      ServiceComponentHost sch, Map<String, DesiredConfig> desiredConfigs) throws AmbariException {
+      ServiceComponentHost sch, Map<String, DesiredConfig> desiredConfigs,
+      EnvConfigurations envConfigurations) throws AmbariException {
     String serviceName = sch.getServiceName();
     String componentName = sch.getServiceComponentName();
-    StackId stackId = cluster.getDesiredStackVersion();
+    StatusCommandTemplate template = getTemplate(cluster.getDesiredStackVersion(), serviceName,
+        componentName);
+
+    StatusCommand statusCmd = new StatusCommand();
+    statusCmd.setClusterName(cluster.getClusterName());
+    statusCmd.setServiceName(serviceName);
+    statusCmd.setComponentName(componentName);
+    statusCmd.setConfigurations(envConfigurations.configurations);
+    statusCmd.setConfigurationAttributes(envConfigurations.configurationAttributes);
+    statusCmd.setHostname(hostname);
+
+    // If Agent wants the command and the States differ
+    statusCmd.setDesiredState(sch.getDesiredState());
+    statusCmd.setHasStaleConfigs(configHelper.isStaleConfigs(sch, desiredConfigs));
+    if (getAgentRequests().shouldSendExecutionDetails(hostname, componentName)) {
+      LOG.info(componentName + " is at " + sch.getState() + " adding more payload per agent ask");
+      statusCmd.setPayloadLevel(StatusCommand.StatusCommandPayload.EXECUTION_COMMAND);
+    }
+
+    // Fill command params
+    statusCmd.getCommandParams().putAll(template.commandParams);
+
+    // Fill host level params
+    Map<String, String> hostLevelParams = statusCmd.getHostLevelParams();
+    hostLevelParams.put(JDK_LOCATION, ambariManagementController.getJdkResourceUrl());
+    hostLevelParams.putAll(template.hostLevelParams);
+
+    if (statusCmd.getPayloadLevel() == StatusCommand.StatusCommandPayload.EXECUTION_COMMAND) {
+      ExecutionCommand ec = ambariManagementController.getExecutionCommand(cluster, sch, RoleCommand.START);
+      statusCmd.setExecutionCommand(ec);
+      LOG.debug(componentName + " has more payload for execution command");
+    }
+
+    return statusCmd;
+  }
+
+  /**
+   * Gets the parts of the status commands of a component which only depend on
+   * the stack. As the stack is part of the key, a stack upgrade uses new
+   * templates.
+   */
+  private StatusCommandTemplate getTemplate(StackId stackId, String serviceName,
+      String componentName) throws AmbariException {
+    String key = stackId.getStackId() + "/" + serviceName + "/" + componentName;
+    StatusCommandTemplate template = templates.get(key);
+    if (null != template) {
+      return template;
+    }
+
     ServiceInfo serviceInfo = ambariMetaInfo.getService(stackId.getStackName(),
         stackId.getStackVersion(), serviceName);
     ComponentInfo componentInfo = ambariMetaInfo.getComponent(
@@ -249,37 +354,83 @@ public class HeartbeatMonitor implements Runnable {
     StackInfo stackInfo = ambariMetaInfo.getStack(stackId.getStackName(),
         stackId.getStackVersion());
 
-    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
-    Map<String, Map<String,  Map<String, String>>> configurationAttributes = new TreeMap<String, Map<String, Map<String, String>>>();
-
-    // get the cluster config for type '*-env'
-    // apply config group overrides
-    //Config clusterConfig = cluster.getDesiredConfigByType(GLOBAL);
-    Collection<Config> clusterConfigs = cluster.getAllConfigs();
+    template = new StatusCommandTemplate();
+    String commandTimeout = configuration.getDefaultAgentTaskTimeout(false);
+    CommandScriptDefinition script = componentInfo.getCommandScript();
+    if (serviceInfo.getSchemaVersion().equals(AmbariMetaInfo.SCHEMA_VERSION_2)) {
+      if (script != null) {
+        template.commandParams.put(SCRIPT, script.getScript());
+        template.commandParams.put(SCRIPT_TYPE, script.getScriptType().toString());
+        if (script.getTimeout() > 0) {
+          commandTimeout = String.valueOf(script.getTimeout());
+        }
+      } else {
+        String message = String.format("Component %s of service %s has not " +
+                "command script defined", componentName, serviceName);
+        throw new AmbariException(message);
+      }
+    }
+    template.commandParams.put(COMMAND_TIMEOUT, commandTimeout);
+    template.commandParams.put(SERVICE_PACKAGE_FOLDER,
+       serviceInfo.getServicePackageFolder());
+    template.commandParams.put(HOOKS_FOLDER, stackInfo.getStackHooksFolder());
+    template.hostLevelParams.put(STACK_NAME, stackId.getStackName());
+    template.hostLevelParams.put(STACK_VERSION, stackId.getStackVersion());
 
-    // creating list with desired config types to validate if cluster config actual
-    Set<String> desiredConfigTypes = cluster.getDesiredConfigs().keySet();
+    templates.put(key, template);
+    return template;
+  }
 
-    // Apply global properties for this host from all config groups
+  /**
+   * Gets the '*-env' configurations of a host with the config group overrides
+   * applied. They are cached by the effective tags of the host, so hosts in
+   * the same config groups share them and a change of the desired tags or the
+   * config groups is picked up right away.
+   */
+  private EnvConfigurations getEnvConfigurations(String hostname, final Cluster cluster,
+      Map<String, DesiredConfig> desiredConfigs) throws AmbariException {
     Map<String, Map<String, String>> allConfigTags = configHelper
-        .getEffectiveDesiredTags(cluster, hostname);
+        .getEffectiveDesiredTags(cluster, hostname, desiredConfigs);
+
+    final Map<String, Map<String, String>> envConfigTags = new TreeMap<String, Map<String, String>>();
+    for (Map.Entry<String, Map<String, String>> entry : allConfigTags.entrySet()) {
+      if (entry.getKey().endsWith("-env") && desiredConfigs.containsKey(entry.getKey())) {
+        envConfigTags.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    List<Object> key = Arrays.<Object>asList(cluster.getClusterId(), envConfigTags);
+    try {
+      return envConfigurationCache.get(key, new Callable<EnvConfigurations>() {
+        @Override
+        public EnvConfigurations call() {
+          return createEnvConfigurations(cluster, envConfigTags);
+        }
+      });
+    } catch (UncheckedExecutionException e) {
+      throw (RuntimeException) e.getCause();
+    } catch (ExecutionException e) {
+      throw new AmbariException("Unable to read the configurations of host " + hostname, e.getCause());
+    }
+  }
 
-    for(Config clusterConfig: clusterConfigs) {
-      String configType = clusterConfig.getType();
-      if(!configType.endsWith("-env") || !desiredConfigTypes.contains(configType)) {
+  private EnvConfigurations createEnvConfigurations(Cluster cluster,
+      Map<String, Map<String, String>> envConfigTags) {
+    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
+    Map<String, Map<String,  Map<String, String>>> configurationAttributes = new TreeMap<String, Map<String, Map<String, String>>>();
+
+    for (Map.Entry<String, Map<String, String>> entry : envConfigTags.entrySet()) {
+      String configType = entry.getKey();
+      Config clusterConfig = cluster.getDesiredConfigByType(configType);
+      if (null == clusterConfig) {
         continue;
       }
 
       // cluster config for 'global'
       Map<String, String> props = new HashMap<>(clusterConfig.getProperties());
 
-      Map<String, Map<String, String>> configTags = new HashMap<>();
-
-      for (Map.Entry<String, Map<String, String>> entry : allConfigTags.entrySet()) {
-        if (entry.getKey().equals(clusterConfig.getType())) {
-          configTags.put(clusterConfig.getType(), entry.getValue());
-        }
-      }
+      // apply config group overrides
+      Map<String, Map<String, String>> configTags = Collections.singletonMap(configType, entry.getValue());
 
       Map<String, Map<String, String>> properties = configHelper
               .getEffectiveConfigProperties(cluster, configTags);
@@ -290,7 +441,7 @@ public class HeartbeatMonitor implements Runnable {
         }
       }
 
-      configurations.put(clusterConfig.getType(), props);
+      configurations.put(configType, Collections.unmodifiableMap(props));
 
       Map<String, Map<String, String>> attrs = new TreeMap<>();
       configHelper.cloneAttributesMap(clusterConfig.getPropertiesAttributes(), attrs);
@@ -300,59 +451,30 @@ public class HeartbeatMonitor implements Runnable {
       for (Map<String, Map<String, String>> attributesMap : attributes.values()) {
         configHelper.cloneAttributesMap(attributesMap, attrs);
       }
-      configurationAttributes.put(clusterConfig.getType(), attrs);
-    }
-
-    StatusCommand statusCmd = new StatusCommand();
-    statusCmd.setClusterName(cluster.getClusterName());
-    statusCmd.setServiceName(serviceName);
-    statusCmd.setComponentName(componentName);
-    statusCmd.setConfigurations(configurations);
-    statusCmd.setConfigurationAttributes(configurationAttributes);
-    statusCmd.setHostname(hostname);
-
-    // If Agent wants the command and the States differ
-    statusCmd.setDesiredState(sch.getDesiredState());
-    statusCmd.setHasStaleConfigs(configHelper.isStaleConfigs(sch, desiredConfigs));
-    if (getAgentRequests().shouldSendExecutionDetails(hostname, componentName)) {
-      LOG.info(componentName + " is at " + sch.getState() + " adding more payload per agent ask");
-      statusCmd.setPayloadLevel(StatusCommand.StatusCommandPayload.EXECUTION_COMMAND);
+      configurationAttributes.put(configType, Collections.unmodifiableMap(attrs));
     }
 
-    // Fill command params
-    Map<String, String> commandParams = statusCmd.getCommandParams();
-
-    String commandTimeout = configuration.getDefaultAgentTaskTimeout(false);
-    CommandScriptDefinition script = componentInfo.getCommandScript();
-    if (serviceInfo.getSchemaVersion().equals(AmbariMetaInfo.SCHEMA_VERSION_2)) {
-      if (script != null) {
-        commandParams.put(SCRIPT, script.getScript());
-        commandParams.put(SCRIPT_TYPE, script.getScriptType().toString());
-        if (script.getTimeout() > 0) {
-          commandTimeout = String.valueOf(script.getTimeout());
-        }
-      } else {
-        String message = String.format("Component %s of service %s has not " +
-                "command script defined", componentName, serviceName);
-        throw new AmbariException(message);
-      }
-    }
-    commandParams.put(COMMAND_TIMEOUT, commandTimeout);
-    commandParams.put(SERVICE_PACKAGE_FOLDER,
-       serviceInfo.getServicePackageFolder());
-    commandParams.put(HOOKS_FOLDER, stackInfo.getStackHooksFolder());
-    // Fill host level params
-    Map<String, String> hostLevelParams = statusCmd.getHostLevelParams();
-    hostLevelParams.put(JDK_LOCATION, ambariManagementController.getJdkResourceUrl());
-    hostLevelParams.put(STACK_NAME, stackId.getStackName());
-    hostLevelParams.put(STACK_VERSION, stackId.getStackVersion());
+    EnvConfigurations envConfigurations = new EnvConfigurations();
+    envConfigurations.configurations = Collections.unmodifiableMap(configurations);
+    envConfigurations.configurationAttributes = Collections.unmodifiableMap(configurationAttributes);
+    return envConfigurations;
+  }
 
-    if (statusCmd.getPayloadLevel() == StatusCommand.StatusCommandPayload.EXECUTION_COMMAND) {
-      ExecutionCommand ec = ambariManagementController.getExecutionCommand(cluster, sch, RoleCommand.START);
-      statusCmd.setExecutionCommand(ec);
-      LOG.debug(componentName + " has more payload for execution command");
-    }
+  /**
+   * The command and host level parameters of the status commands of a
+   * component of a stack.
+   */
+  private static final class StatusCommandTemplate {
+    private final Map<String, String> commandParams = new HashMap<>();
+    private final Map<String, String> hostLevelParams = new HashMap<>();
+  }
 
-    return statusCmd;
+  /**
+   * The '*-env' configurations sent with the status commands of a host. They
+   * are shared by status commands and must not be changed.
+   */
+  private static final class EnvConfigurations {
+    private Map<String, Map<String, String>> configurations;
+    private Map<String, Map<String, Map<String, String>>> configurationAttributes;
   }
 }
@@ -19,11 +19,17 @@ package org.apache.ambari.server.agent;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +45,7 @@ import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.agent.ExecutionCommand.KeyNames;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.MaintenanceStateHelper;
 import org.apache.ambari.server.events.ActionFinalReportReceivedEvent;
 import org.apache.ambari.server.events.AlertEvent;
@@ -48,6 +55,7 @@ import org.apache.ambari.server.events.publishers.AlertEventPublisher;
 import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
 import org.apache.ambari.server.events.publishers.VersionEventPublisher;
 import org.apache.ambari.server.metadata.ActionMetadata;
+import org.apache.ambari.server.metrics.system.impl.HeartbeatProcessorMetricsSource;
 import org.apache.ambari.server.orm.dao.KerberosPrincipalHostDAO;
 import org.apache.ambari.server.state.Alert;
 import org.apache.ambari.server.state.Cluster;
@@ -75,6 +83,11 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.util.concurrent.AbstractService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
@@ -82,17 +95,35 @@ import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.persist.Transactional;
 
 /**
- * HeartbeatProcessor class is used for bulk processing data retrieved from agents in background
- *
+ * HeartbeatProcessor class is used for bulk processing data retrieved from agents in background.
+ * <p/>
+ * Heartbeats are partitioned by host name between a fixed number of worker
+ * threads, so that heartbeats of a single host are always processed in the
+ * order they were received by the same worker. Every worker drains its queue
+ * in batches which contain at most one heartbeat per host. The command
+ * reports of each heartbeat of a batch are persisted in their own JPA
+ * transaction, so a failure of one host does not roll back the others.
  */
 public class HeartbeatProcessor extends AbstractService{
   private static final Logger LOG = LoggerFactory.getLogger(HeartbeatProcessor.class);
 
+  /**
+   * Names of the metrics exposed by the processing pipeline.
+   */
+  static final String METRIC_QUEUE_DEPTH = "heartbeat.processor.queue.depth";
+  static final String METRIC_BATCH_SIZE = "heartbeat.processor.batch.size";
+  static final String METRIC_PROCESSED = "heartbeat.processor.processed";
+  static final String METRIC_ALERTS_TIME = "heartbeat.processor.alerts";
+  static final String METRIC_STATUS_REPORTS_TIME = "heartbeat.processor.status.reports";
+  static final String METRIC_COMMAND_REPORTS_TIME = "heartbeat.processor.command.reports";
+  static final String METRIC_HOST_STATUS_TIME = "heartbeat.processor.host.status";
+
   private ScheduledExecutorService executor;
 
-  private ConcurrentLinkedQueue<HeartBeat> heartBeatsQueue = new ConcurrentLinkedQueue<>();
+  private List<HeartbeatWorker> workers;
 
   private volatile boolean shouldRun = true;
 
@@ -102,11 +133,20 @@ public class HeartbeatProcessor extends AbstractService{
 
   private int poolSize = 1;
 
+  private int batchSize = 1;
+
   private Clusters clusterFsm;
   private HeartbeatMonitor heartbeatMonitor;
   private Injector injector;
   private ActionManager actionManager;
 
+  private final Histogram batchSizeHistogram;
+  private final Meter processedMeter;
+  private final Timer alertsTimer;
+  private final Timer statusReportsTimer;
+  private final Timer commandReportsTimer;
+  private final Timer hostStatusTimer;
+
   /**
    * Publishes {@link AlertEvent} instances.
    */
@@ -134,6 +174,15 @@ public class HeartbeatProcessor extends AbstractService{
   @Inject
   Gson gson;
 
+  @Inject
+  Configuration configuration;
+
+  /**
+   * Used to persist the command reports of each host in its own transaction.
+   */
+  @Inject
+  CommandReportsTransaction commandReportsTransaction;
+
   @Inject
   public HeartbeatProcessor(Clusters clusterFsm, ActionManager am, HeartbeatMonitor heartbeatMonitor,
                             Injector injector) {
@@ -143,15 +192,43 @@ public class HeartbeatProcessor extends AbstractService{
     this.heartbeatMonitor = heartbeatMonitor;
     this.clusterFsm = clusterFsm;
     actionManager = am;
+
+    if (null != configuration) {
+      poolSize = Math.max(1, configuration.getHeartbeatProcessorThreads());
+      batchSize = Math.max(1, configuration.getHeartbeatProcessorBatchSize());
+    }
+
+    workers = new ArrayList<>(poolSize);
+    for (int i = 0; i < poolSize; i++) {
+      workers.add(new HeartbeatWorker());
+    }
+
+    MetricRegistry registry = HeartbeatProcessorMetricsSource.getRegistry();
+    batchSizeHistogram = registry.histogram(METRIC_BATCH_SIZE);
+    processedMeter = registry.meter(METRIC_PROCESSED);
+    alertsTimer = registry.timer(METRIC_ALERTS_TIME);
+    statusReportsTimer = registry.timer(METRIC_STATUS_REPORTS_TIME);
+    commandReportsTimer = registry.timer(METRIC_COMMAND_REPORTS_TIME);
+    hostStatusTimer = registry.timer(METRIC_HOST_STATUS_TIME);
+
+    // the gauge is bound to the latest processor instance
+    registry.remove(METRIC_QUEUE_DEPTH);
+    registry.register(METRIC_QUEUE_DEPTH, new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return getQueueDepth();
+      }
+    });
+
     ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("ambari-heartbeat-processor-%d").build();
     executor = Executors.newScheduledThreadPool(poolSize, threadFactory);
   }
 
   @Override
   protected void doStart() {
-    LOG.info("**** Starting heartbeats processing threads ****");
-    for (int i=0; i< poolSize; i++) {
-      executor.scheduleAtFixedRate(new HeartbeatProcessingTask(), delay, period, TimeUnit.MILLISECONDS);
+    LOG.info("**** Starting {} heartbeats processing threads with batch size {} ****", poolSize, batchSize);
+    for (HeartbeatWorker worker : workers) {
+      executor.schedule(worker, delay, TimeUnit.MILLISECONDS);
     }
   }
 
@@ -162,37 +239,131 @@ public class HeartbeatProcessor extends AbstractService{
     executor.shutdown();
   }
 
+  /**
+   * Sets the delay before the processing threads start polling heartbeats.
+   *
+   * @param delay the delay, in milliseconds
+   */
+  void setDelay(long delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * Queues the heartbeat for the worker which owns the heartbeat's host.
+   *
+   * @param heartBeat heartbeat to queue
+   */
   public void addHeartbeat(HeartBeat heartBeat) {
-    heartBeatsQueue.add(heartBeat);
+    workers.get(getPartition(heartBeat.getHostname())).queue.add(heartBeat);
+  }
+
+  /**
+   * Gets the number of heartbeats which were received but not processed yet.
+   *
+   * @return the number of pending heartbeats
+   */
+  public int getQueueDepth() {
+    int depth = 0;
+    for (HeartbeatWorker worker : workers) {
+      depth += worker.queue.size() + worker.pending.size();
+    }
+    return depth;
   }
 
-  private HeartBeat pollHeartbeat() {
-    return heartBeatsQueue.poll();
+  /**
+   * Gets the index of the worker responsible for the given host.
+   *
+   * @param hostname the host name
+   * @return the worker index
+   */
+  int getPartition(String hostname) {
+    if (null == hostname) {
+      return 0;
+    }
+    return (hostname.hashCode() & Integer.MAX_VALUE) % poolSize;
   }
 
   /**
-   * Processing task to be scheduled for execution
+   * Processing task which is bound to a single partition of hosts. The task
+   * runs until the processor is stopped, waiting at most {@link #period}
+   * milliseconds for the next heartbeat before rechecking the stop flag.
    */
-  private class HeartbeatProcessingTask implements Runnable {
+  private class HeartbeatWorker implements Runnable {
+
+    private final BlockingQueue<HeartBeat> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Heartbeats taken from the queue but not yet assigned to a batch. Only
+     * accessed by the worker thread; read concurrently for the queue depth
+     * gauge only.
+     */
+    private final Queue<HeartBeat> pending = new ConcurrentLinkedQueue<>();
 
     @Override
     public void run() {
       while (shouldRun) {
         try {
-          HeartBeat heartbeat = pollHeartbeat();
-          if (heartbeat == null) {
-            break;
+          List<HeartBeat> batch = nextBatch();
+          if (!batch.isEmpty()) {
+            processHeartbeatBatch(batch);
           }
-          processHeartbeat(heartbeat);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
         } catch (Exception e) {
           LOG.error("Exception received while processing heartbeat", e);
         } catch (Throwable throwable) {
           //catch everything to prevent task suppression
           LOG.error("ERROR: ", throwable);
         }
+      }
+    }
+
+    /**
+     * Builds the next batch of heartbeats. A batch never contains two
+     * heartbeats of the same host, the later one is kept for the next batch
+     * so that each heartbeat is fully processed before the following one of
+     * the same host.
+     */
+    private List<HeartBeat> nextBatch() throws InterruptedException {
+      if (pending.isEmpty()) {
+        HeartBeat heartbeat = queue.poll(period, TimeUnit.MILLISECONDS);
+        if (heartbeat == null) {
+          return Collections.emptyList();
+        }
+        pending.add(heartbeat);
+      }
 
+      int capacity = batchSize - pending.size();
+      if (capacity > 0) {
+        queue.drainTo(pending, capacity);
+      }
 
+      List<HeartBeat> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+      Set<String> hosts = new HashSet<>();
+      while (batch.size() < batchSize && !pending.isEmpty()) {
+        if (!hosts.add(pending.peek().getHostname())) {
+          break;
+        }
+        batch.add(pending.poll());
       }
+      return batch;
+    }
+  }
+
+  /**
+   * Persists the command reports of one heartbeat in a transaction of its
+   * own, so that a failure of one host of a batch, which marks its
+   * transaction rollback-only, does not roll back the reports of the others.
+   * Must be called through the injected instance for the transaction to
+   * apply.
+   */
+  public static class CommandReportsTransaction {
+
+    @Transactional
+    public void processCommandReports(HeartbeatProcessor processor, HeartBeat heartbeat, long now)
+        throws AmbariException {
+      processor.processCommandReports(heartbeat, now);
     }
   }
 
@@ -213,7 +384,69 @@ public class HeartbeatProcessor extends AbstractService{
     processHostStatus(heartbeat);
   }
 
+  /**
+   * Processes a batch of heartbeats from distinct hosts stage by stage, in
+   * the same stage order as {@link #processHeartbeat(HeartBeat)}. A heartbeat
+   * which fails in one stage is skipped by the following stages.
+   *
+   * @param batch heartbeats to process, at most one per host
+   */
+  void processHeartbeatBatch(List<HeartBeat> batch) {
+    batchSizeHistogram.update(batch.size());
+    long now = System.currentTimeMillis();
+
+    Timer.Context timer = alertsTimer.time();
+    List<HeartBeat> heartbeats = new ArrayList<>(batch.size());
+    for (HeartBeat heartbeat : batch) {
+      try {
+        processAlerts(heartbeat);
+        heartbeats.add(heartbeat);
+      } catch (Exception e) {
+        LOG.error("Exception received while processing alerts from host " + heartbeat.getHostname(), e);
+      }
+    }
+    timer.stop();
+
+    //process status reports before command reports to prevent status override immediately after task finish
+    timer = statusReportsTimer.time();
+    Iterator<HeartBeat> iterator = heartbeats.iterator();
+    while (iterator.hasNext()) {
+      HeartBeat heartbeat = iterator.next();
+      try {
+        processStatusReports(heartbeat);
+      } catch (Exception e) {
+        LOG.error("Exception received while processing status reports from host " + heartbeat.getHostname(), e);
+        iterator.remove();
+      }
+    }
+    timer.stop();
+
+    timer = commandReportsTimer.time();
+    iterator = heartbeats.iterator();
+    while (iterator.hasNext()) {
+      HeartBeat heartbeat = iterator.next();
+      try {
+        commandReportsTransaction.processCommandReports(this, heartbeat, now);
+      } catch (Exception e) {
+        LOG.error("Exception received while processing command reports from host " + heartbeat.getHostname(), e);
+        iterator.remove();
+      }
+    }
+    timer.stop();
 
+    //host status calculation are based on task and status reports, should be performed last
+    timer = hostStatusTimer.time();
+    for (HeartBeat heartbeat : heartbeats) {
+      try {
+        processHostStatus(heartbeat);
+      } catch (Exception e) {
+        LOG.error("Exception received while processing host status of host " + heartbeat.getHostname(), e);
+      }
+    }
+    timer.stop();
+
+    processedMeter.mark(batch.size());
+  }
 
   /**
    * Extracts all of the {@link Alert}s from the heartbeat and fires
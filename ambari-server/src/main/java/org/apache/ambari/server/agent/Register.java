@@ -36,6 +36,12 @@ public class Register {
   private String agentVersion;
   private String prefix;
 
+  /**
+   * {@code true} if the agent can take the parts of execution commands it
+   * received before from its cache.
+   */
+  private boolean commandSnapshotsSupported;
+
   @JsonProperty("responseId")
   public int getResponseId() {
     return responseId;
@@ -98,6 +104,14 @@ public class Register {
     this.agentVersion = agentVersion;
   }
 
+  public boolean isCommandSnapshotsSupported() {
+    return commandSnapshotsSupported;
+  }
+
+  public void setCommandSnapshotsSupported(boolean commandSnapshotsSupported) {
+    this.commandSnapshotsSupported = commandSnapshotsSupported;
+  }
+
   public int getCurrentPingPort() {
     return currentPingPort;
   }
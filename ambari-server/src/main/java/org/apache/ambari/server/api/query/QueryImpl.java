@@ -18,13 +18,23 @@
 
 package org.apache.ambari.server.api.query;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.ambari.server.api.query.render.DefaultRenderer;
 import org.apache.ambari.server.api.query.render.Renderer;
@@ -37,6 +47,7 @@ import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.services.ResultImpl;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.internal.QueryResponseImpl;
 import org.apache.ambari.server.controller.predicate.AndPredicate;
 import org.apache.ambari.server.controller.predicate.EqualsPredicate;
@@ -61,6 +72,11 @@ import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.apache.ambari.server.security.authorization.AuthorizationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.persist.UnitOfWork;
 
 /**
  * Default read query.
@@ -169,6 +185,63 @@ public class QueryImpl implements Query, ResourceInstance {
   private final static Logger LOG =
       LoggerFactory.getLogger(QueryImpl.class);
 
+  /**
+   * The executor used to query for the sub-resources of all parent resources
+   * in parallel; null if sub-resources are queried one parent resource at a
+   * time.
+   */
+  private static volatile ExecutorService subResourceExecutor;
+
+  /**
+   * The maximum time, in milliseconds, to wait for the sub-resources of a
+   * query level to be retrieved in parallel.
+   */
+  private static volatile long subResourceTimeout;
+
+  /**
+   * The unit of work which gives each executor thread its own entity manager
+   * for the duration of a sub-resource query; may be null.
+   */
+  private static volatile UnitOfWork subResourceUnitOfWork;
+
+
+  // ----- Static initialization ---------------------------------------------
+
+  /**
+   * Initialize the parallel sub-resource query support.
+   *
+   * @param configuration  the server configuration
+   * @param unitOfWork     the unit of work used by the executor threads; may be null
+   */
+  public static synchronized void init(Configuration configuration, UnitOfWork unitOfWork) {
+    ExecutorService previous = subResourceExecutor;
+
+    subResourceTimeout    = configuration.getApiQuerySubResourcesTimeout();
+    subResourceUnitOfWork = unitOfWork;
+    subResourceExecutor   = configuration.isApiQuerySubResourcesParallelEnabled() ?
+        createSubResourceExecutor(configuration.getApiQuerySubResourcesThreadPoolSize()) : null;
+
+    if (previous != null) {
+      previous.shutdown();
+    }
+  }
+
+  /**
+   * Create the bounded executor used to query for sub-resources.
+   *
+   * @param poolSize  the number of threads
+   *
+   * @return the executor
+   */
+  private static ExecutorService createSubResourceExecutor(int poolSize) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ambari-subresource-query-%d").build());
+
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
 
   // ----- Constructor -------------------------------------------------------
 
@@ -456,7 +529,10 @@ public class QueryImpl implements Query, ResourceInstance {
 
   /**
    * Query the cluster controller for the sub-resources associated with
-   * this query object.
+   * this query object.  The queries for the sub-resources of all of the
+   * parent resources, and of all of the requested sub-resource types, are
+   * independent of each other so they are run in parallel if enabled.  The
+   * results are always collected in the order of the parent resources.
    */
   private void queryForSubResources()
       throws UnsupportedPropertyException,
@@ -464,46 +540,144 @@ public class QueryImpl implements Query, ResourceInstance {
       NoSuchResourceException,
       NoSuchParentResourceException {
 
-    for (Map.Entry<String, QueryImpl> entry : requestedSubResources.entrySet()) {
-      QueryImpl     subResource         = entry.getValue();
-      Resource.Type resourceType        = subResource.getResourceDefinition().getType();
-      Request       request             = subResource.createRequest();
-      Set<Resource> providerResourceSet = new HashSet<Resource>();
+    List<QueryImpl>        subResources       = new ArrayList<QueryImpl>(requestedSubResources.values());
+    List<Request>          requests           = new ArrayList<Request>(subResources.size());
+    List<SubResourceQuery> subResourceQueries = new ArrayList<SubResourceQuery>();
+
+    for (QueryImpl subResource : subResources) {
+      Request request = subResource.createRequest();
+      requests.add(request);
 
       for (QueryResult queryResult : populatedQueryResults.values()) {
         for (Resource resource : queryResult.getQueryResponse().getResources()) {
           Map<Resource.Type, String> map = getKeyValueMap(resource, queryResult.getKeyValueMap());
 
-          Predicate     queryPredicate = subResource.createPredicate(map, subResource.processedPredicate);
-          Set<Resource> resourceSet    = new LinkedHashSet<Resource>();
+          Predicate queryPredicate = subResource.createPredicate(map, subResource.processedPredicate);
 
-          try {
-            Set<Resource> queryResources =
-                subResource.doQuery(resourceType, request, queryPredicate, false).getResources();
-
-            providerResourceSet.addAll(queryResources);
-            resourceSet.addAll(queryResources);
-          } catch (NoSuchResourceException e) {
-            // do nothing ...
-          } catch (AuthorizationException e) {
-            // do nothing, since the user does not have access to the data ...
-            LOG.debug("User does not have authorization to get {} resources. The data will not be added to the response.", resourceType.name());
-          }
-          subResource.queryResults.put(resource,
-              new QueryResult(request, queryPredicate, subResourcePredicate, map, new QueryResponseImpl(resourceSet)));
-          subResource.populatedQueryResults.put(resource,
-            new QueryResult(request, queryPredicate, subResourcePredicate, map, new QueryResponseImpl(resourceSet)));
+          subResourceQueries.add(new SubResourceQuery(subResource, resource, request, queryPredicate, map));
         }
       }
+    }
+
+    List<Set<Resource>> resourceSets = executeSubResourceQueries(subResourceQueries);
+
+    // the queries are grouped by sub-resource, in the order of the sub-resources
+    int index = 0;
+    for (int i = 0; i < subResources.size(); i++) {
+      QueryImpl     subResource         = subResources.get(i);
+      Request       request             = requests.get(i);
+      Set<Resource> providerResourceSet = new HashSet<Resource>();
+
+      for (; index < subResourceQueries.size() && subResourceQueries.get(index).subResource == subResource; index++) {
+        SubResourceQuery subResourceQuery = subResourceQueries.get(index);
+        Set<Resource>    resourceSet      = resourceSets.get(index);
+
+        providerResourceSet.addAll(resourceSet);
+
+        subResource.queryResults.put(subResourceQuery.parentResource,
+            new QueryResult(request, subResourceQuery.predicate, subResourcePredicate,
+                subResourceQuery.keyValueMap, new QueryResponseImpl(resourceSet)));
+        subResource.populatedQueryResults.put(subResourceQuery.parentResource,
+            new QueryResult(request, subResourceQuery.predicate, subResourcePredicate,
+                subResourceQuery.keyValueMap, new QueryResponseImpl(resourceSet)));
+      }
 
       if (renderer.requiresPropertyProviderInput()) {
-        clusterController.populateResources(resourceType, providerResourceSet, request, subResourcePredicate);
+        clusterController.populateResources(subResource.getResourceDefinition().getType(),
+            providerResourceSet, request, subResourcePredicate);
       }
 
       subResource.queryForSubResources();
     }
   }
 
+  /**
+   * Execute the given sub-resource queries, in parallel if enabled.
+   *
+   * @param subResourceQueries  the sub-resource queries
+   *
+   * @return the resource sets of the given queries, in the same order
+   */
+  private List<Set<Resource>> executeSubResourceQueries(List<SubResourceQuery> subResourceQueries)
+      throws UnsupportedPropertyException,
+      SystemException,
+      NoSuchParentResourceException {
+
+    List<Set<Resource>> resourceSets = new ArrayList<Set<Resource>>(subResourceQueries.size());
+    ExecutorService     executor     = subResourceExecutor;
+
+    if (executor == null || subResourceQueries.size() < 2) {
+      for (SubResourceQuery subResourceQuery : subResourceQueries) {
+        resourceSets.add(subResourceQuery.execute());
+      }
+      return resourceSets;
+    }
+
+    final SecurityContext securityContext = SecurityContextHolder.getContext();
+    final UnitOfWork      unitOfWork      = subResourceUnitOfWork;
+    long                  timeout         = subResourceTimeout;
+
+    List<Future<Set<Resource>>> futures = new ArrayList<Future<Set<Resource>>>(subResourceQueries.size());
+    for (final SubResourceQuery subResourceQuery : subResourceQueries) {
+      futures.add(executor.submit(new Callable<Set<Resource>>() {
+        @Override
+        public Set<Resource> call() throws Exception {
+          // the resource providers authorize against the caller's security context
+          SecurityContextHolder.setContext(securityContext);
+          if (unitOfWork != null) {
+            unitOfWork.begin();
+          }
+          try {
+            return subResourceQuery.execute();
+          } finally {
+            if (unitOfWork != null) {
+              unitOfWork.end();
+            }
+            SecurityContextHolder.clearContext();
+          }
+        }
+      }));
+    }
+
+    long deadline = System.currentTimeMillis() + timeout;
+    try {
+      for (Future<Set<Resource>> future : futures) {
+        long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+        resourceSets.add(future.get(remaining, TimeUnit.MILLISECONDS));
+      }
+    } catch (TimeoutException e) {
+      throw new SystemException("Timed out after " + timeout + "ms waiting for the " +
+          subResourceQueries.size() + " sub-resource queries of " + getResourceDefinition().getType());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SystemException("Interrupted while waiting for sub-resource queries", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UnsupportedPropertyException) {
+        throw (UnsupportedPropertyException) cause;
+      }
+      if (cause instanceof NoSuchParentResourceException) {
+        throw (NoSuchParentResourceException) cause;
+      }
+      if (cause instanceof SystemException) {
+        throw (SystemException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new SystemException("Caught exception executing sub-resource query", cause);
+    } finally {
+      // queries which have not started yet are no longer needed
+      for (Future<Set<Resource>> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return resourceSets;
+  }
+
   /**
    * Query the cluster controller for the resources.
    *
@@ -1077,6 +1251,55 @@ public class QueryImpl implements Query, ResourceInstance {
         resource.getSingularName();
   }
 
+  // ----- inner class : SubResourceQuery ------------------------------------
+
+  /**
+   * The query for the sub-resources of a single parent resource.
+   */
+  private static class SubResourceQuery {
+    private final QueryImpl subResource;
+    private final Resource parentResource;
+    private final Request request;
+    private final Predicate predicate;
+    private final Map<Resource.Type, String> keyValueMap;
+
+    // ----- Constructor -----------------------------------------------------
+
+    private SubResourceQuery(QueryImpl subResource, Resource parentResource, Request request,
+                             Predicate predicate, Map<Resource.Type, String> keyValueMap) {
+      this.subResource    = subResource;
+      this.parentResource = parentResource;
+      this.request        = request;
+      this.predicate      = predicate;
+      this.keyValueMap    = keyValueMap;
+    }
+
+    /**
+     * Query for the sub-resources.
+     *
+     * @return the sub-resources; empty if none were found or if the user is
+     *         not authorized to see them
+     */
+    private Set<Resource> execute()
+        throws UnsupportedPropertyException,
+        SystemException,
+        NoSuchParentResourceException {
+
+      Resource.Type resourceType = subResource.getResourceDefinition().getType();
+      Set<Resource> resourceSet  = new LinkedHashSet<Resource>();
+
+      try {
+        resourceSet.addAll(subResource.doQuery(resourceType, request, predicate, false).getResources());
+      } catch (NoSuchResourceException e) {
+        // do nothing ...
+      } catch (AuthorizationException e) {
+        // do nothing, since the user does not have access to the data ...
+        LOG.debug("User does not have authorization to get {} resources. The data will not be added to the response.", resourceType.name());
+      }
+      return resourceSet;
+    }
+  }
+
   // ----- inner class : QueryResult -----------------------------------------
 
   /**
@@ -59,10 +59,16 @@ public abstract class BaseService {
    */
   private ResourceInstanceFactory m_resourceFactory = new ResourceInstanceFactoryImpl();
 
+  /**
+   * Whether JSON responses are streamed to the client instead of being
+   * rendered in memory first.
+   */
+  private static volatile boolean responseStreamingEnabled = false;
+
   /**
    * Result serializer.
    */
-  private ResultSerializer m_serializer = new JsonSerializer();
+  private ResultSerializer m_serializer = new JsonSerializer(responseStreamingEnabled);
 
   protected static RequestAuditLogger requestAuditLogger;
 
@@ -70,6 +76,19 @@ public abstract class BaseService {
     requestAuditLogger = instance;
   }
 
+  /**
+   * Static initialization.
+   *
+   * @param instance          the request audit logger
+   * @param streamingEnabled  whether JSON responses are streamed to the client
+   *
+   * @see org.apache.ambari.server.configuration.Configuration#isApiResponseStreamingEnabled()
+   */
+  public static void init(RequestAuditLogger instance, boolean streamingEnabled) {
+    requestAuditLogger = instance;
+    responseStreamingEnabled = streamingEnabled;
+  }
+
   /**
    * Requests are funneled through this method so that common logic can be executed.
    * Creates a request instance and invokes it's process method.  Uses the default
@@ -20,11 +20,15 @@ package org.apache.ambari.server.api.services.serializers;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.ws.rs.core.StreamingOutput;
+
 import org.apache.ambari.server.api.services.DeleteResultMetadata;
 import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.services.ResultMetadata;
@@ -40,6 +44,10 @@ import org.codehaus.jackson.util.DefaultPrettyPrinter;
 /**
  * JSON serializer.
  * Responsible for representing a result as JSON.
+ * <p/>
+ * In streaming mode the result is not rendered into memory; instead a
+ * {@link StreamingOutput} is returned which writes the result straight to the
+ * response output stream once the response entity is written.
  */
 public class JsonSerializer implements ResultSerializer {
 
@@ -55,20 +63,49 @@ public class JsonSerializer implements ResultSerializer {
    */
   JsonGenerator m_generator;
 
+  /**
+   * Whether results are streamed to the client instead of being rendered
+   * into a String.
+   */
+  private final boolean m_streaming;
+
+  /**
+   * Whether resource nodes are detached from the result tree once they have
+   * been written.
+   */
+  private boolean m_releaseWrittenNodes;
+
+
+  /**
+   * Constructor.  Results are rendered into a String.
+   */
+  public JsonSerializer() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param streaming  whether results should be streamed to the client
+   *                   instead of being rendered into a String
+   */
+  public JsonSerializer(boolean streaming) {
+    m_streaming = streaming;
+  }
 
   @Override
   public Object serialize(Result result) {
-    try {
-      ByteArrayOutputStream bytesOut = init();
+    if (result.getStatus().isErrorState()) {
+      return serializeError(result.getStatus());
+    }
 
-      if (result.getStatus().isErrorState()) {
-        return serializeError(result.getStatus());
-      }
+    if (m_streaming) {
+      return new JsonStreamingOutput(result);
+    }
 
-      TreeNode<Resource> treeNode = result.getResultTree();
-      processNode(treeNode);
-      processResultMetadata(result.getResultMetadata());
-      m_generator.close();
+    try {
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      serialize(result, bytesOut, false);
       return bytesOut.toString("UTF-8");
     } catch (IOException e) {
       //todo: exception handling.  Create ResultStatus 500 and call serializeError
@@ -76,10 +113,32 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
+  /**
+   * Write the given result as JSON to the given stream.  The stream is
+   * flushed but not closed.
+   *
+   * @param result   the result to serialize
+   * @param out      the stream to write to
+   * @param release  whether resource nodes should be detached from the result
+   *                 tree once written so that the memory they hold can be
+   *                 reclaimed while the rest of the result is written
+   *
+   * @throws IOException if unable to write to the stream
+   */
+  void serialize(Result result, OutputStream out, boolean release) throws IOException {
+    m_generator = createJsonGenerator(out);
+    m_releaseWrittenNodes = release;
+
+    processNode(result.getResultTree());
+    processResultMetadata(result.getResultMetadata());
+    m_generator.close();
+  }
+
   @Override
   public Object serializeError(ResultStatus error) {
     try {
-      ByteArrayOutputStream bytesOut = init();
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      m_generator = createJsonGenerator(bytesOut);
       //m_mapper.writeValue(m_generator, error);
       m_generator.writeStartObject();
       m_generator.writeNumberField("status", error.getStatus().getStatus());
@@ -94,17 +153,6 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
-  private ByteArrayOutputStream init() throws IOException {
-    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-    m_generator = createJsonGenerator(bytesOut);
-
-    DefaultPrettyPrinter p = new DefaultPrettyPrinter();
-    p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
-    m_generator.setPrettyPrinter(p);
-
-    return bytesOut;
-  }
-
   private void processResultMetadata(ResultMetadata resultMetadata) throws IOException {
     if (resultMetadata == null) {
       return;
@@ -145,7 +193,11 @@ public class JsonSerializer implements ResultSerializer {
   }
 
   private void processNode(TreeNode<Resource> node) throws IOException {
-    if (isObject(node)) {
+    // evaluated once since written children may be detached from the node
+    boolean isObject = isObject(node);
+    boolean isArray = isArray(node);
+
+    if (isObject) {
       m_generator.writeStartObject();
 
       writeHref(node);
@@ -157,22 +209,26 @@ public class JsonSerializer implements ResultSerializer {
       }
     }
 
-    if (isArray(node)) {
+    if (isArray) {
       if (node.getName() != null)
         m_generator.writeArrayFieldStart(node.getName());
       else
         m_generator.writeStartArray();
     }
 
-    for (TreeNode<Resource> child : node.getChildren()) {
-      processNode(child);
+    Iterator<TreeNode<Resource>> children = node.getChildren().iterator();
+    while (children.hasNext()) {
+      processNode(children.next());
+      if (m_releaseWrittenNodes) {
+        children.remove();
+      }
     }
 
-    if (isArray(node)) {
+    if (isArray) {
       m_generator.writeEndArray();
     }
 
-    if (isObject(node)) {
+    if (isObject) {
       m_generator.writeEndObject();
     }
   }
@@ -245,10 +301,13 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
-  private JsonGenerator createJsonGenerator(ByteArrayOutputStream baos) throws IOException {
-    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(baos,
+  private JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(out,
         Charset.forName("UTF-8").newEncoder()));
 
+    // the response output stream is closed by the container
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     DefaultPrettyPrinter p = new DefaultPrettyPrinter();
     p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
     generator.setPrettyPrinter(p);
@@ -271,4 +330,36 @@ public class JsonSerializer implements ResultSerializer {
       node.setProperty("count", null);
     }
   }
+
+  /**
+   * Writes a result straight to the response output stream when the response
+   * entity is written.
+   */
+  private static class JsonStreamingOutput implements StreamingOutput {
+
+    /**
+     * The result to write.
+     */
+    private final Result m_result;
+
+    private JsonStreamingOutput(Result result) {
+      m_result = result;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+      new JsonSerializer().serialize(m_result, out, true);
+    }
+
+    /**
+     * Renders the result into a String for callers which need the whole
+     * document, such as conversions to other media types.
+     *
+     * @return the result as JSON
+     */
+    @Override
+    public String toString() {
+      return (String) new JsonSerializer().serialize(m_result);
+    }
+  }
 }
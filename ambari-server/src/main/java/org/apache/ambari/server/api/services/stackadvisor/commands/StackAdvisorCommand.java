@@ -41,6 +41,8 @@ import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.api.services.BaseService;
 import org.apache.ambari.server.api.services.LocalUriInfo;
 import org.apache.ambari.server.api.services.Request;
+import org.apache.ambari.server.api.services.serializers.JsonSerializer;
+import org.apache.ambari.server.api.services.serializers.ResultSerializer;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorException;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorRequest;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorResponse;
@@ -354,6 +356,17 @@ public abstract class StackAdvisorCommand<T extends StackAdvisorResponse> extend
     }
   }
 
+  /**
+   * The hosts and services information is read back as a String, so it is
+   * never streamed regardless of the api.response.streaming.enabled setting.
+   *
+   * @return a non-streaming JSON serializer
+   */
+  @Override
+  protected ResultSerializer getResultSerializer() {
+    return new JsonSerializer();
+  }
+
   String getHostsInformation(StackAdvisorRequest request) throws StackAdvisorException {
     String hostsURI = String.format(GET_HOSTS_INFO_URI, request.getHostsCommaSeparated());
 
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.cleanup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.DBAccessor;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+
+/**
+ * Deletes the history of finished requests (requests, stages, tasks, execution
+ * commands and their shared parts, role success criteria, resource filters and
+ * operation levels) with set based SQL statements rather than by removing
+ * entities one by one.
+ * <p/>
+ * Requests are purged in batches of ascending request id. The tasks of a batch
+ * are deleted by ranges of task ids, so no statement touches more than a
+ * bounded number of rows. Statements run on the auto-commit connection of the
+ * {@link DBAccessor}, so that locks are only held for the duration of a single
+ * statement and the purge can run while Ambari is online. A batch which was
+ * interrupted part way through is completed by the next purge, since its
+ * requests are still selected.
+ * <p/>
+ * Requests which are referenced by an upgrade or whose tasks are referenced by
+ * a topology request are kept.
+ */
+@Singleton
+public class RequestHistoryPurger {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestHistoryPurger.class);
+
+  /**
+   * Finished requests of a cluster which ended before a given time and which
+   * are not referenced by an upgrade or a topology request.
+   */
+  private static final String PURGEABLE_REQUESTS_CONDITION =
+      "FROM request r WHERE r.cluster_id = %d AND r.end_time > 0 AND r.end_time < %d " +
+      "AND NOT EXISTS (SELECT 1 FROM upgrade u WHERE u.request_id = r.request_id) " +
+      "AND NOT EXISTS (SELECT 1 FROM topology_logical_task t, host_role_command h " +
+      "WHERE t.physical_task_id = h.task_id AND h.request_id = r.request_id)";
+
+  private static final String COUNT_REQUESTS_SQL = "SELECT COUNT(*) " + PURGEABLE_REQUESTS_CONDITION;
+
+  private static final String SELECT_REQUESTS_SQL = "SELECT r.request_id " + PURGEABLE_REQUESTS_CONDITION +
+      " AND r.request_id > %d ORDER BY r.request_id";
+
+  private static final String TASK_RANGE_SQL =
+      "SELECT MIN(task_id), MAX(task_id) FROM host_role_command WHERE request_id IN (%s)";
+
+  private static final String DELETE_EXECUTION_COMMANDS_SQL =
+      "DELETE FROM execution_command WHERE task_id BETWEEN %2$d AND %3$d AND task_id IN " +
+      "(SELECT task_id FROM host_role_command WHERE request_id IN (%1$s) AND task_id BETWEEN %2$d AND %3$d)";
+
+  private static final String DELETE_TASKS_SQL =
+      "DELETE FROM host_role_command WHERE request_id IN (%s) AND task_id BETWEEN %d AND %d";
+
+  /**
+   * Tables referencing requests, in the order they are deleted from after the
+   * tasks of a batch are gone.
+   */
+  private static final String[] REQUEST_TABLES = {
+      "role_success_criteria", "execution_command_part", "stage", "requestresourcefilter",
+      "requestoperationlevel", "request" };
+
+  @Inject
+  private Configuration configuration;
+
+  /**
+   * Used to look up the {@link DBAccessor} when a purge runs, so that the
+   * accessor and its connection are only created when needed.
+   */
+  @Inject
+  private Injector injector;
+
+  /**
+   * Deletes the history of the requests of a cluster which ended before the
+   * given time.
+   *
+   * @param clusterId
+   *          the id of the cluster
+   * @param toDateInMillis
+   *          requests which ended before this time are purged
+   * @return the number of deleted rows
+   * @throws SQLException
+   *           if a statement fails; requests purged by earlier batches stay
+   *           deleted
+   */
+  public long purge(long clusterId, long toDateInMillis) throws SQLException {
+    int batchSize = configuration.getDbCleanupRequestBatchSize();
+    int taskBatchSize = configuration.getDbCleanupRequestTaskBatchSize();
+    long pause = configuration.getDbCleanupRequestBatchPause();
+
+    long total = count(String.format(COUNT_REQUESTS_SQL, clusterId, toDateInMillis));
+    LOG.info("Purging the history of {} requests of cluster {} which ended before {}", total, clusterId,
+        toDateInMillis);
+
+    long start = System.currentTimeMillis();
+    long purgedRequests = 0;
+    long affectedRows = 0;
+    long lastRequestId = -1L;
+
+    List<Long> requestIds = selectRequests(clusterId, toDateInMillis, lastRequestId, batchSize);
+    while (!requestIds.isEmpty()) {
+      affectedRows += purgeBatch(StringUtils.join(requestIds, ','), taskBatchSize);
+      purgedRequests += requestIds.size();
+      lastRequestId = requestIds.get(requestIds.size() - 1);
+
+      LOG.info("Purged {} of {} requests, {} rows deleted in {} ms", purgedRequests, total, affectedRows,
+          System.currentTimeMillis() - start);
+
+      if (pause > 0) {
+        try {
+          Thread.sleep(pause);
+        } catch (InterruptedException e) {
+          LOG.warn("Purging request history was interrupted after {} requests", purgedRequests);
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+
+      requestIds = selectRequests(clusterId, toDateInMillis, lastRequestId, batchSize);
+    }
+
+    return affectedRows;
+  }
+
+  /**
+   * Deletes the history of a batch of requests, tasks first.
+   *
+   * @param requestIds
+   *          the comma separated ids of the requests
+   * @param taskBatchSize
+   *          the range of task ids deleted by a single statement
+   * @return the number of deleted rows
+   */
+  private long purgeBatch(String requestIds, int taskBatchSize) throws SQLException {
+    DBAccessor accessor = getDBAccessor();
+    long affectedRows = 0;
+
+    long[] taskRange = selectTaskRange(requestIds);
+    if (taskRange != null) {
+      for (long from = taskRange[0]; from <= taskRange[1]; from += taskBatchSize) {
+        long to = Math.min(taskRange[1], from + taskBatchSize - 1);
+        affectedRows += accessor.executeUpdate(String.format(DELETE_EXECUTION_COMMANDS_SQL, requestIds, from, to));
+        affectedRows += accessor.executeUpdate(String.format(DELETE_TASKS_SQL, requestIds, from, to));
+      }
+    }
+
+    for (String table : REQUEST_TABLES) {
+      affectedRows += accessor.executeUpdate(
+          String.format("DELETE FROM %s WHERE request_id IN (%s)", table, requestIds));
+    }
+
+    return affectedRows;
+  }
+
+  private List<Long> selectRequests(long clusterId, long toDateInMillis, long lastRequestId, int batchSize)
+      throws SQLException {
+    List<Long> requestIds = new ArrayList<>(batchSize);
+    Statement statement = getDBAccessor().getConnection().createStatement();
+    try {
+      statement.setMaxRows(batchSize);
+      ResultSet rs = statement.executeQuery(
+          String.format(SELECT_REQUESTS_SQL, clusterId, toDateInMillis, lastRequestId));
+      while (rs.next()) {
+        requestIds.add(rs.getLong(1));
+      }
+      rs.close();
+    } finally {
+      statement.close();
+    }
+    return requestIds;
+  }
+
+  /**
+   * @return the lowest and highest task id of the requests, or {@code null} if
+   *         they have no tasks
+   */
+  private long[] selectTaskRange(String requestIds) throws SQLException {
+    Statement statement = getDBAccessor().getConnection().createStatement();
+    try {
+      ResultSet rs = statement.executeQuery(String.format(TASK_RANGE_SQL, requestIds));
+      long[] range = null;
+      if (rs.next()) {
+        long min = rs.getLong(1);
+        if (!rs.wasNull()) {
+          range = new long[] { min, rs.getLong(2) };
+        }
+      }
+      rs.close();
+      return range;
+    } finally {
+      statement.close();
+    }
+  }
+
+  private DBAccessor getDBAccessor() {
+    return injector.getInstance(DBAccessor.class);
+  }
+
+  private long count(String sql) throws SQLException {
+    Statement statement = getDBAccessor().getConnection().createStatement();
+    try {
+      ResultSet rs = statement.executeQuery(sql);
+      long count = rs.next() ? rs.getLong(1) : 0;
+      rs.close();
+      return count;
+    } finally {
+      statement.close();
+    }
+  }
+}
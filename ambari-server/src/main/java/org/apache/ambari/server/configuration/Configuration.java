@@ -463,6 +463,37 @@ public class Configuration {
   public static final ConfigurationProperty<String> API_GZIP_MIN_COMPRESSION_SIZE = new ConfigurationProperty<>(
       "api.gzip.compression.min.size", "10240");
 
+  /**
+   * Determines whether REST API responses are written straight to the
+   * response output stream instead of being rendered in memory first.
+   */
+  @Markdown(description = "Determines whether REST API responses are written directly to the client as they are serialized instead of being rendered in memory first. This reduces the memory needed for large responses, such as host listings on large clusters.")
+  public static final ConfigurationProperty<Boolean> API_RESPONSE_STREAMING_ENABLED = new ConfigurationProperty<>(
+      "api.response.streaming.enabled", Boolean.FALSE);
+
+  /**
+   * Determines whether the sub-resources of a REST API query are retrieved
+   * for all of the parent resources in parallel.
+   */
+  @Markdown(description = "Determines whether the sub-resources of a REST API query, such as the components of each host, are retrieved in parallel for all of the parent resources instead of one parent resource at a time.")
+  public static final ConfigurationProperty<Boolean> API_QUERY_SUBRESOURCES_PARALLEL_ENABLED = new ConfigurationProperty<>(
+      "api.query.subresources.parallel.enabled", Boolean.FALSE);
+
+  /**
+   * The number of threads used to retrieve sub-resources in parallel.
+   */
+  @Markdown(description = "The number of threads that will be used to retrieve the sub-resources of REST API queries in parallel.<br/><br/>This property is related to `api.query.subresources.parallel.enabled`.")
+  public static final ConfigurationProperty<Integer> API_QUERY_SUBRESOURCES_THREADPOOL_SIZE = new ConfigurationProperty<>(
+      "api.query.subresources.threadpool.size", PROCESSOR_BASED_THREADPOOL_CORE_SIZE_DEFAULT);
+
+  /**
+   * The maximum time, in {@link TimeUnit#MILLISECONDS}, that a REST API query
+   * can wait for its sub-resources to be retrieved in parallel.
+   */
+  @Markdown(description = "The maximum time, in milliseconds, that a REST API query can wait for its sub-resources to be retrieved in parallel before the request fails.<br/><br/>This property is related to `api.query.subresources.parallel.enabled`.")
+  public static final ConfigurationProperty<Long> API_QUERY_SUBRESOURCES_TIMEOUT = new ConfigurationProperty<>(
+      "api.query.subresources.timeout", 60000L);
+
   /**
    * Determiens whether communication with the Ambari Agents should have the
    * JSON payloads compressed with GZIP.
@@ -898,6 +929,29 @@ public class Configuration {
   public static final ConfigurationProperty<String> MYSQL_JAR_NAME = new ConfigurationProperty<>(
       "db.mysql.jdbc.name", "mysql-connector-java.jar");
 
+  /**
+   * The number of requests whose history is deleted together by
+   * {@code ambari-server db-cleanup}.
+   */
+  @Markdown(description = "The number of requests whose stages, tasks and execution commands are deleted together when purging request history with `ambari-server db-cleanup`. Values above 1000 are lowered to 1000.")
+  public static final ConfigurationProperty<Integer> DB_CLEANUP_REQUEST_BATCH_SIZE = new ConfigurationProperty<>(
+      "db.cleanup.request.batch.size", 100);
+
+  /**
+   * The range of task ids deleted by a single statement when purging request
+   * history.
+   */
+  @Markdown(description = "The range of task IDs whose tasks and execution commands are deleted by a single statement when purging request history with `ambari-server db-cleanup`.")
+  public static final ConfigurationProperty<Integer> DB_CLEANUP_REQUEST_TASK_BATCH_SIZE = new ConfigurationProperty<>(
+      "db.cleanup.request.task.batch.size", 10000);
+
+  /**
+   * The time to wait between batches of requests when purging request history.
+   */
+  @Markdown(description = "The time, in milliseconds, to wait between batches of requests when purging request history with `ambari-server db-cleanup`, so that the purge can run against a live database.")
+  public static final ConfigurationProperty<Long> DB_CLEANUP_REQUEST_BATCH_PAUSE = new ConfigurationProperty<>(
+      "db.cleanup.request.batch.pause", 100L);
+
   /**
    * For development purposes only, should be changed to 'false'
    */
@@ -1414,6 +1468,22 @@ public class Configuration {
   @Markdown(description = "The time to wait (in seconds) between failed kerberos operations retries.")
   public static final ConfigurationProperty<Integer> KERBEROS_OPERATION_RETRY_TIMEOUT = new ConfigurationProperty<>(
       "kerberos.operation.retry.timeout", 10);
+
+  /**
+   * The number of KDC sessions used to create principals and keytab files
+   * concurrently.
+   */
+  @Markdown(description = "The number of concurrent KDC sessions used to create Kerberos principals and keytab files.")
+  public static final ConfigurationProperty<Integer> KERBEROS_OPERATION_THREADS = new ConfigurationProperty<>(
+      "kerberos.operation.threads", 4);
+
+  /**
+   * The number of times the principals and keytab files of a principal which
+   * failed to be created are retried on a new KDC session.
+   */
+  @Markdown(description = "The number of times creating the principal or keytab files of a Kerberos identity which failed should be retried using a new KDC session. The wait between retries is `kerberos.operation.retry.timeout`.")
+  public static final ConfigurationProperty<Integer> KERBEROS_OPERATION_PRINCIPAL_RETRIES = new ConfigurationProperty<>(
+      "kerberos.operation.principal.retries", 1);
   /**
    * The type of connection pool to use with JDBC connections to the database.
    */
@@ -1866,6 +1936,24 @@ public class Configuration {
   public static final ConfigurationProperty<Boolean> PARALLEL_STAGE_EXECUTION = new ConfigurationProperty<>(
       "server.stages.parallel", Boolean.TRUE);
 
+  /**
+   * Determines whether the action scheduler keeps an in-memory model of the
+   * stages in progress instead of reloading them on every wake up.
+   */
+  @Markdown(description = "Determines whether the action scheduler keeps the stages in progress in memory, updating them from command reports and newly created requests, instead of reloading all of them from the database every time it wakes up.")
+  public static final ConfigurationProperty<Boolean> INCREMENTAL_STAGE_SCHEDULING_ENABLED = new ConfigurationProperty<>(
+      "server.stages.incremental_scheduling.enabled", Boolean.FALSE);
+
+  /**
+   * The interval, in {@link TimeUnit#SECONDS}, between full reloads of the
+   * stages in progress when incremental scheduling is enabled.
+   */
+  @Markdown(
+      relatedTo = "server.stages.incremental_scheduling.enabled",
+      description = "The time, in seconds, between consistency checks which reload all stages in progress from the database when incremental stage scheduling is enabled.")
+  public static final ConfigurationProperty<Long> INCREMENTAL_STAGE_SCHEDULING_RELOAD_INTERVAL = new ConfigurationProperty<>(
+      "server.stages.incremental_scheduling.reload_interval", 60L);
+
   /**
    *
    * Property driving the view extraction.
@@ -1891,6 +1979,14 @@ public class Configuration {
   public static final ConfigurationProperty<String> COMMAND_EXECUTION_TYPE = new ConfigurationProperty<>(
     "server.stage.command.execution_type", CommandExecutionType.STAGE.toString());
 
+  /**
+   * Determines whether execution commands are stored compressed, with the
+   * configurations and other parts they have in common stored once per stage.
+   */
+  @Markdown(description = "Determines whether the execution commands of new stages are stored compressed, with the parts they share, such as configurations and cluster host info, stored once per stage. Commands which were stored uncompressed can always be read.")
+  public static final ConfigurationProperty<Boolean> COMMAND_COMPRESSION_ENABLED = new ConfigurationProperty<>(
+    "server.stage.command.compression.enabled", Boolean.TRUE);
+
   /**
    * The time, in {@link TimeUnit#SECONDS}, before agent commands are killed.
    * This does not include package installation commands.
@@ -2180,6 +2276,39 @@ public class Configuration {
   public static final ConfigurationProperty<Boolean> EXPERIMENTAL_CONCURRENCY_STAGE_PROCESSING_ENABLED = new ConfigurationProperty<>(
       "experimental.concurrency.stage_processing.enabled", Boolean.FALSE);
 
+  /**
+   * The number of threads which process agent heartbeats.
+   */
+  @ConfigurationMarkdown(
+      group = ConfigurationGrouping.JETTY_THREAD_POOL,
+      scaleValues = {
+          @ClusterScale(clusterSize = ClusterSizeType.HOSTS_10, value = "2"),
+          @ClusterScale(clusterSize = ClusterSizeType.HOSTS_50, value = "2"),
+          @ClusterScale(clusterSize = ClusterSizeType.HOSTS_100, value = "4"),
+          @ClusterScale(clusterSize = ClusterSizeType.HOSTS_500, value = "8") },
+      markdown = @Markdown(
+          description = "The number of threads used to process heartbeats received from the Ambari Agents. Heartbeats of a single host are always processed by the same thread."))
+  public static final ConfigurationProperty<Integer> AGENT_HEARTBEAT_PROCESSOR_THREADS = new ConfigurationProperty<>(
+      "agent.heartbeat.processor.threads", 4);
+
+  /**
+   * The maximum number of heartbeats processed together by a heartbeat
+   * processing thread.
+   */
+  @Markdown(
+      relatedTo = "agent.heartbeat.processor.threads",
+      description = "The maximum number of heartbeats, each from a different host, which a heartbeat processing thread handles together. The command reports of each heartbeat are persisted in their own database transaction.")
+  public static final ConfigurationProperty<Integer> AGENT_HEARTBEAT_PROCESSOR_BATCH_SIZE = new ConfigurationProperty<>(
+      "agent.heartbeat.processor.batch.size", 50);
+
+  /**
+   * Determines whether execution commands sent to agents leave out the
+   * configurations and cluster host info the agent received before.
+   */
+  @Markdown(description = "Determines whether execution commands sent to the Ambari Agents leave out the configuration types and cluster host info which the agent already received with earlier commands. The agent takes them from its cache instead.")
+  public static final ConfigurationProperty<Boolean> AGENT_COMMAND_SNAPSHOTS_ENABLED = new ConfigurationProperty<>(
+      "agent.command.snapshots.enabled", Boolean.TRUE);
+
   /**
    * The full path to the XML file that describes the different alert templates.
    */
@@ -2202,6 +2331,14 @@ public class Configuration {
   public static final ConfigurationProperty<Integer> ALERTS_EXECUTION_SCHEDULER_THREADS = new ConfigurationProperty<>(
       "alerts.execution.scheduler.maxThreads", 2);
 
+  /**
+   * The number of threads which deliver server events to their listeners.
+   */
+  @Markdown(
+      description = "The number of threads used to deliver Ambari Server events, such as host and service component state changes, to their listeners. Events of a single cluster or host are always delivered in order by the same thread.")
+  public static final ConfigurationProperty<Integer> SERVER_EVENTS_THREADS = new ConfigurationProperty<>(
+      "server.events.threads", 4);
+
   /**
    * If {@code true} then alert information is cached and not immediately
    * persisted in the database.
@@ -2252,6 +2389,23 @@ public class Configuration {
   public static final ConfigurationProperty<Integer> ALERTS_CACHE_SIZE = new ConfigurationProperty<>(
       "alerts.cache.size", 50000);
 
+  /**
+   * The maximum number of received alerts processed together.
+   */
+  @Markdown(
+      description = "The maximum number of alerts received from the Ambari Agents which are processed together in a single database transaction. Alerts of many heartbeats are collected into a batch and only the latest result of each alert is kept. A value of `0` processes the alerts of every heartbeat separately as they arrive.")
+  public static final ConfigurationProperty<Integer> ALERTS_RECEIVED_BATCH_SIZE = new ConfigurationProperty<>(
+      "alerts.received.batch.size", 0);
+
+  /**
+   * The maximum time received alerts wait for a batch to fill.
+   */
+  @Markdown(
+      relatedTo = "alerts.received.batch.size",
+      description = "The time, in milliseconds, that alerts received from the Ambari Agents are collected before their batch is processed, unless the batch is full earlier.")
+  public static final ConfigurationProperty<Integer> ALERTS_RECEIVED_BATCH_INTERVAL = new ConfigurationProperty<>(
+      "alerts.received.batch.interval", 1000);
+
   /**
    * When using SSL, this will be used to set the {@code Strict-Transport-Security} response header.
    */
@@ -3220,6 +3374,14 @@ public class Configuration {
     return CommandExecutionType.valueOf(getProperty(COMMAND_EXECUTION_TYPE));
   }
 
+  /**
+   * @return {@code true} if execution commands are stored compressed, with
+   *         their shared parts stored once per stage
+   */
+  public boolean isCommandCompressionEnabled() {
+    return Boolean.parseBoolean(getProperty(COMMAND_COMPRESSION_ENABLED));
+  }
+
   public String getStackAdvisorScript() {
     return getProperty(STACK_ADVISOR_SCRIPT);
   }
@@ -3722,6 +3884,47 @@ public class Configuration {
     return getProperty(API_GZIP_MIN_COMPRESSION_SIZE);
   }
 
+  /**
+   * Check to see if the API responses should be streamed to the client while
+   * they are serialized.
+   *
+   * @return {@code true} if API responses are streamed, {@code false} if they
+   *         are rendered in memory first.
+   */
+  public boolean isApiResponseStreamingEnabled() {
+    return Boolean.parseBoolean(getProperty(API_RESPONSE_STREAMING_ENABLED));
+  }
+
+  /**
+   * Check to see if the sub-resources of API queries should be retrieved in
+   * parallel.
+   *
+   * @return {@code true} if sub-resources are retrieved in parallel.
+   */
+  public boolean isApiQuerySubResourcesParallelEnabled() {
+    return Boolean.parseBoolean(getProperty(API_QUERY_SUBRESOURCES_PARALLEL_ENABLED));
+  }
+
+  /**
+   * Get the number of threads used to retrieve the sub-resources of API
+   * queries in parallel.
+   *
+   * @return the thread pool size
+   */
+  public int getApiQuerySubResourcesThreadPoolSize() {
+    return Integer.parseInt(getProperty(API_QUERY_SUBRESOURCES_THREADPOOL_SIZE));
+  }
+
+  /**
+   * Get the maximum time, in milliseconds, that an API query waits for its
+   * sub-resources to be retrieved in parallel.
+   *
+   * @return the timeout in milliseconds
+   */
+  public long getApiQuerySubResourcesTimeout() {
+    return Long.parseLong(getProperty(API_QUERY_SUBRESOURCES_TIMEOUT));
+  }
+
   /**
    * Check persistence type Ambari Server should use. Possible values:
    * in-memory - use in-memory Derby database to store data
@@ -3949,6 +4152,38 @@ public class Configuration {
     return getProperty(MYSQL_JAR_NAME);
   }
 
+  /**
+   * Gets the number of requests whose history is deleted together when
+   * purging request history. Bounded by 1000, the largest {@code IN} list
+   * accepted by Oracle.
+   *
+   * @return the number of requests per batch
+   */
+  public int getDbCleanupRequestBatchSize() {
+    int batchSize = Integer.parseInt(getProperty(DB_CLEANUP_REQUEST_BATCH_SIZE));
+    return Math.min(1000, Math.max(1, batchSize));
+  }
+
+  /**
+   * Gets the range of task ids deleted by a single statement when purging
+   * request history.
+   *
+   * @return the task id range, at least 1
+   */
+  public int getDbCleanupRequestTaskBatchSize() {
+    return Math.max(1, Integer.parseInt(getProperty(DB_CLEANUP_REQUEST_TASK_BATCH_SIZE)));
+  }
+
+  /**
+   * Gets the time to wait between batches of requests when purging request
+   * history.
+   *
+   * @return the pause in milliseconds
+   */
+  public long getDbCleanupRequestBatchPause() {
+    return Math.max(0L, Long.parseLong(getProperty(DB_CLEANUP_REQUEST_BATCH_PAUSE)));
+  }
+
   public JPATableGenerationStrategy getJPATableGenerationStrategy() {
     return JPATableGenerationStrategy.fromString(
         System.getProperty(SERVER_JDBC_GENERATE_TABLES.getKey()));
@@ -4401,6 +4636,26 @@ public class Configuration {
     return Boolean.parseBoolean(configsMap.get(PARALLEL_STAGE_EXECUTION.getKey()));
   }
 
+  /**
+   * Gets whether the action scheduler keeps an in-memory model of the stages
+   * in progress.
+   *
+   * @return {@code true} if incremental stage scheduling is enabled.
+   */
+  public boolean isIncrementalStageSchedulingEnabled() {
+    return Boolean.parseBoolean(getProperty(INCREMENTAL_STAGE_SCHEDULING_ENABLED));
+  }
+
+  /**
+   * Gets the interval between full reloads of the stages in progress when
+   * incremental stage scheduling is enabled.
+   *
+   * @return the interval, in milliseconds.
+   */
+  public long getIncrementalStageSchedulingReloadInterval() {
+    return TimeUnit.SECONDS.toMillis(Long.parseLong(getProperty(INCREMENTAL_STAGE_SCHEDULING_RELOAD_INTERVAL)));
+  }
+
   public String getCustomActionDefinitionPath() {
     return getProperty(CUSTOM_ACTION_DEFINITION);
   }
@@ -4600,6 +4855,43 @@ public class Configuration {
     return Integer.parseInt(getProperty(ALERTS_EXECUTION_SCHEDULER_THREADS));
   }
 
+  /**
+   * Gets the number of threads which deliver events published through the
+   * {@link org.apache.ambari.server.events.publishers.AmbariEventPublisher}.
+   *
+   * @return the event thread count.
+   */
+  public int getServerEventsThreads() {
+    return Integer.parseInt(getProperty(SERVER_EVENTS_THREADS));
+  }
+
+  /**
+   * Gets the number of threads which process agent heartbeats.
+   *
+   * @return the heartbeat processor thread count.
+   */
+  public int getHeartbeatProcessorThreads() {
+    return Integer.parseInt(getProperty(AGENT_HEARTBEAT_PROCESSOR_THREADS));
+  }
+
+  /**
+   * Gets the maximum number of heartbeats processed together in one batch.
+   *
+   * @return the heartbeat processor batch size.
+   */
+  public int getHeartbeatProcessorBatchSize() {
+    return Integer.parseInt(getProperty(AGENT_HEARTBEAT_PROCESSOR_BATCH_SIZE));
+  }
+
+  /**
+   * Gets whether execution commands leave out the parts an agent already has.
+   *
+   * @return {@code true} if command snapshots are enabled.
+   */
+  public boolean isAgentCommandSnapshotsEnabled() {
+    return Boolean.parseBoolean(getProperty(AGENT_COMMAND_SNAPSHOTS_ENABLED));
+  }
+
   /**
    * Get the node recovery type DEFAULT|AUTO_START|FULL
    * @return
@@ -5077,6 +5369,25 @@ public class Configuration {
     return Integer.parseInt(getProperty(ALERTS_CACHE_SIZE));
   }
 
+  /**
+   * Gets the maximum number of received alerts processed together.
+   *
+   * @return the batch size, or {@code 0} if alerts are not batched.
+   */
+  public int getAlertReceivedBatchSize() {
+    return Integer.parseInt(getProperty(ALERTS_RECEIVED_BATCH_SIZE));
+  }
+
+  /**
+   * Gets the time, in milliseconds, that received alerts are collected for a
+   * batch.
+   *
+   * @return the batch interval.
+   */
+  public int getAlertReceivedBatchInterval() {
+    return Integer.parseInt(getProperty(ALERTS_RECEIVED_BATCH_INTERVAL));
+  }
+
   /**
    * Get the ambari display URL
    * @return
@@ -5819,6 +6130,26 @@ public class Configuration {
     return Integer.valueOf(getProperty(KERBEROS_OPERATION_RETRY_TIMEOUT));
   }
 
+  /**
+   * Gets the number of concurrent KDC sessions used to create Kerberos
+   * principals and keytab files.
+   *
+   * @return the number of KDC sessions, at least 1
+   */
+  public int getKerberosOperationThreads() {
+    return Math.max(1, Integer.parseInt(getProperty(KERBEROS_OPERATION_THREADS)));
+  }
+
+  /**
+   * Gets the number of times a Kerberos identity which failed to be created is
+   * retried on a new KDC session.
+   *
+   * @return the number of retries
+   */
+  public int getKerberosOperationPrincipalRetries() {
+    return Math.max(0, Integer.parseInt(getProperty(KERBEROS_OPERATION_PRINCIPAL_RETRIES)));
+  }
+
   /**
    * Return configured acceptors for agent api connector. Default = null
    */
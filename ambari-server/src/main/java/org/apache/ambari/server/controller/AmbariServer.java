@@ -46,6 +46,7 @@ import org.apache.ambari.server.api.AmbariErrorHandler;
 import org.apache.ambari.server.api.AmbariPersistFilter;
 import org.apache.ambari.server.api.MethodOverrideFilter;
 import org.apache.ambari.server.api.UserNameOverrideFilter;
+import org.apache.ambari.server.api.query.QueryImpl;
 import org.apache.ambari.server.api.rest.BootStrapResource;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.api.services.BaseService;
@@ -165,6 +166,7 @@ import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
 import com.sun.jersey.spi.container.servlet.ServletContainer;
 
 
@@ -940,7 +942,9 @@ public class AmbariServer {
     StackAdvisorBlueprintProcessor.init(injector.getInstance(StackAdvisorHelper.class));
     ThreadPoolEnabledPropertyProvider.init(injector.getInstance(Configuration.class));
 
-    BaseService.init(injector.getInstance(RequestAuditLogger.class));
+    BaseService.init(injector.getInstance(RequestAuditLogger.class),
+        configs.isApiResponseStreamingEnabled());
+    QueryImpl.init(configs, injector.getInstance(UnitOfWork.class));
 
     RetryHelper.init(injector.getInstance(Clusters.class), configs.getOperationsRetryAttempts());
   }
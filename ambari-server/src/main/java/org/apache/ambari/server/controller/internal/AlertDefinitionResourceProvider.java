@@ -376,8 +376,8 @@ public class AlertDefinitionResourceProvider extends AbstractControllerResourceP
           // remove the entity
           alertDefinitionDAO.remove(entity);
 
-          // publish the hash invalidation
-          final Set<String> invalidatedHosts = alertDefinitionHash.invalidateHosts(entity);
+          // remove from the hash index and publish the invalidation
+          final Set<String> invalidatedHosts = alertDefinitionHash.removeDefinition(entity);
           AlertHashInvalidationEvent event = new AlertHashInvalidationEvent(
               clusterId, invalidatedHosts);
 
@@ -18,20 +18,48 @@
 
 package org.apache.ambari.server.controller.internal;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
 
 /**
  * Simple resource implementation.
+ * <p/>
+ * Categories and properties are kept in compact sorted maps, so they iterate
+ * in the same order as a {@link java.util.TreeMap} would.  A resource is not
+ * synchronized; a resource populated on another thread, as done by
+ * {@link org.apache.ambari.server.controller.metrics.ThreadPoolEnabledPropertyProvider},
+ * must be handed back through a {@link java.util.concurrent.Future} or
+ * another construct providing the same memory visibility guarantees.
  */
 public class ResourceImpl implements Resource {
 
+  /**
+   * The maximum number of property ids for which the split category key and
+   * property name are cached.  Property ids are mostly taken from the
+   * property catalogs, but some metrics ids embed arguments and so the cache
+   * must not grow without bound.
+   */
+  private static final int MAX_CACHED_PROPERTY_KEYS = 100000;
+
+  /**
+   * Cache of property ids split into their category key and property name.
+   * Besides avoiding to split the id on every access, all resources share the
+   * same category and name instances.
+   */
+  private static final ConcurrentMap<String, PropertyKey> PROPERTY_KEYS =
+      new ConcurrentHashMap<String, PropertyKey>();
+
+  /**
+   * The canonical instance of every cached category key.
+   */
+  private static final ConcurrentMap<String, String> CATEGORY_KEYS =
+      new ConcurrentHashMap<String, String>();
+
   /**
    * The resource type.
    */
@@ -41,7 +69,7 @@ public class ResourceImpl implements Resource {
    * The map of property maps keyed by property category.
    */
   private final Map<String, Map<String, Object>> propertiesMap =
-      Collections.synchronizedMap(new TreeMap<String, Map<String, Object>>());
+      new SortedArrayMap<Map<String, Object>>();
 
   // ----- Constructors ------------------------------------------------------
 
@@ -104,14 +132,14 @@ public class ResourceImpl implements Resource {
 
   @Override
   public void setProperty(String id, Object value) {
-    String categoryKey = getCategoryKey(PropertyHelper.getPropertyCategory(id));
+    PropertyKey key = getPropertyKey(id);
 
-    Map<String, Object> properties = propertiesMap.get(categoryKey);
+    Map<String, Object> properties = propertiesMap.get(key.category);
     if (properties == null) {
-      properties = Collections.synchronizedMap(new TreeMap<String, Object>());
-      propertiesMap.put(categoryKey, properties);
+      properties = new SortedArrayMap<Object>();
+      propertiesMap.put(key.category, properties);
     }
-    properties.put(PropertyHelper.getPropertyName(id), value);
+    properties.put(key.name, value);
   }
 
   @Override
@@ -119,18 +147,18 @@ public class ResourceImpl implements Resource {
     String categoryKey = getCategoryKey(id);
 
     if (!propertiesMap.containsKey(categoryKey)) {
-      propertiesMap.put(categoryKey, new HashMap<String, Object>());
+      propertiesMap.put(categoryKey, new SortedArrayMap<Object>());
     }
   }
 
   @Override
   public Object getPropertyValue(String id) {
-    String categoryKey = getCategoryKey(PropertyHelper.getPropertyCategory(id));
+    PropertyKey key = getPropertyKey(id);
 
-    Map<String, Object> properties = propertiesMap.get(categoryKey);
+    Map<String, Object> properties = propertiesMap.get(key.category);
 
     return properties == null ?
-        null : properties.get(PropertyHelper.getPropertyName(id));
+        null : properties.get(key.name);
   }
 
 
@@ -165,7 +193,47 @@ public class ResourceImpl implements Resource {
 
   // ----- utility methods ---------------------------------------------------
 
-  private String getCategoryKey(String category) {
+  private static String getCategoryKey(String category) {
     return category == null ? "" : category;
   }
+
+  /**
+   * Get the category key and property name of the given property id.
+   *
+   * @param id  the property id
+   *
+   * @return the split property id
+   */
+  private static PropertyKey getPropertyKey(String id) {
+    PropertyKey key = PROPERTY_KEYS.get(id);
+    if (key != null) {
+      return key;
+    }
+
+    String category = getCategoryKey(PropertyHelper.getPropertyCategory(id));
+    String name = PropertyHelper.getPropertyName(id);
+
+    if (PROPERTY_KEYS.size() >= MAX_CACHED_PROPERTY_KEYS) {
+      return new PropertyKey(category, name);
+    }
+
+    String existingCategory = CATEGORY_KEYS.putIfAbsent(category, category);
+    key = new PropertyKey(existingCategory == null ? category : existingCategory, name);
+
+    PropertyKey existingKey = PROPERTY_KEYS.putIfAbsent(id, key);
+    return existingKey == null ? key : existingKey;
+  }
+
+  /**
+   * A property id split into its category key and property name.
+   */
+  private static class PropertyKey {
+    private final String category;
+    private final String name;
+
+    private PropertyKey(String category, String name) {
+      this.category = category;
+      this.name = name;
+    }
+  }
 }
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map of String keys kept in their natural order in a pair of flat
+ * arrays.  Lookups are binary searches and there is no per entry object, which
+ * makes it much smaller than a {@link java.util.TreeMap} for the handful of
+ * entries held by a resource category.  Iteration order is the same as for a
+ * {@link java.util.TreeMap}.
+ * <p/>
+ * This map is not synchronized.  Null keys are not permitted.
+ *
+ * @param <V> the type of the values
+ */
+class SortedArrayMap<V> extends AbstractMap<String, V> {
+
+  private static final String[] EMPTY_KEYS = new String[0];
+  private static final Object[] EMPTY_VALUES = new Object[0];
+  private static final int INITIAL_CAPACITY = 4;
+
+  /**
+   * The keys in ascending order; only the first {@link #size} are used.
+   */
+  private String[] keys = EMPTY_KEYS;
+
+  /**
+   * The values at the same index as their keys.
+   */
+  private Object[] values = EMPTY_VALUES;
+
+  /**
+   * The number of entries.
+   */
+  private int size;
+
+  /**
+   * Incremented on every structural change to detect concurrent modification
+   * during iteration.
+   */
+  private int modCount;
+
+
+  // ----- Map ---------------------------------------------------------------
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    int index = indexOf(key);
+    return index >= 0 ? (V) values[index] : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(String key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Null keys are not permitted");
+    }
+
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      V previous = (V) values[index];
+      values[index] = value;
+      return previous;
+    }
+
+    index = -(index + 1);
+    if (size == keys.length) {
+      int capacity = size == 0 ? INITIAL_CAPACITY : size + (size >> 1);
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    keys[index] = key;
+    values[index] = value;
+    size++;
+    modCount++;
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+
+    V previous = (V) values[index];
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Set<Entry<String, V>> entrySet() {
+    return new AbstractSet<Entry<String, V>>() {
+      @Override
+      public Iterator<Entry<String, V>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  private int indexOf(Object key) {
+    if (!(key instanceof String)) {
+      return -1;
+    }
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  private void removeAt(int index) {
+    int moved = size - index - 1;
+    System.arraycopy(keys, index + 1, keys, index, moved);
+    System.arraycopy(values, index + 1, values, index, moved);
+    size--;
+    keys[size] = null;
+    values[size] = null;
+    modCount++;
+  }
+
+
+  // ----- inner classes -----------------------------------------------------
+
+  /**
+   * Iterates over the entries in key order.  The entries are views over the
+   * backing arrays.
+   */
+  private class EntryIterator implements Iterator<Entry<String, V>> {
+    private int next;
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public Entry<String, V> next() {
+      if (expectedModCount != modCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      return new ArrayEntry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (expectedModCount != modCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  /**
+   * An entry backed by an index into the arrays.
+   */
+  private class ArrayEntry implements Entry<String, V> {
+    private final int index;
+
+    private ArrayEntry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getKey() {
+      return keys[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getValue() {
+      return (V) values[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V setValue(V value) {
+      V previous = (V) values[index];
+      values[index] = value;
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+      Object value = getValue();
+      return getKey().equals(entry.getKey()) &&
+          (value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Object value = getValue();
+      return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
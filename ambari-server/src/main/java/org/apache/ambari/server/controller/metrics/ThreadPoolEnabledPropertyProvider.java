@@ -224,6 +224,10 @@ public abstract class ThreadPoolEnabledPropertyProvider extends AbstractProperty
     return new Callable<Resource>() {
       @Override
       public Resource call() throws SystemException {
+        // resources are not synchronized; each one is populated by a single
+        // thread and only read by the calling thread once its future is done.
+        // A resource whose thread is still running after a timeout is left
+        // out of the result set.
         return populateResource(resource, request, predicate, ticket);
       }
     };
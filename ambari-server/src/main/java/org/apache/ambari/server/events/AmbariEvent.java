@@ -167,6 +167,18 @@ public abstract class AmbariEvent {
     return m_eventType;
   }
 
+  /**
+   * Gets the key which determines the order in which the event is delivered.
+   * Events with equal keys are delivered in the order they were published;
+   * events with different keys may be delivered concurrently.
+   *
+   * @return the key, the event type unless the event is scoped to a cluster
+   *         or a host (never {@code null}).
+   */
+  public Object getPartitionKey() {
+    return m_eventType;
+  }
+
   /**
    * {@inheritDoc}
    */
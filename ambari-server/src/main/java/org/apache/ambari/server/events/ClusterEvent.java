@@ -47,4 +47,14 @@ public class ClusterEvent extends AmbariEvent {
     return m_clusterId;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Events of a cluster are delivered in order.
+   */
+  @Override
+  public Object getPartitionKey() {
+    return m_clusterId;
+  }
+
 }
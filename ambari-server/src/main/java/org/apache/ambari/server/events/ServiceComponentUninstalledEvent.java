@@ -62,6 +62,16 @@ public class ServiceComponentUninstalledEvent extends ServiceEvent {
     return m_hostName;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Events of the components of a host are delivered in order.
+   */
+  @Override
+  public Object getPartitionKey() {
+    return m_hostName;
+  }
+
   /**
    * @return recovery enabled.
    */
@@ -95,6 +95,7 @@ public class AlertLifecycleListener {
    * following tasks:
    * <ul>
    * <li>Registration with {@link AggregateDefinitionMapping}</li>
+   * <li>Adding the definition to the {@link AlertDefinitionHash} index</li>
    * </ul>
    *
    * @param event
@@ -112,6 +113,8 @@ public class AlertLifecycleListener {
     if (definition.getSource().getType() == SourceType.AGGREGATE) {
       m_aggregateMapping.registerAggregate(event.getClusterId(), definition);
     }
+
+    m_alertDefinitionHash.get().updateDefinition(definition);
   }
 
   /**
@@ -119,6 +122,7 @@ public class AlertLifecycleListener {
    * tasks:
    * <ul>
    * <li>Updating definition with {@link AggregateDefinitionMapping}</li>
+   * <li>Updating the definition in the {@link AlertDefinitionHash} index</li>
    * <li>Updating current alerts with definition label</li>
    * </ul>
    *
@@ -138,6 +142,8 @@ public class AlertLifecycleListener {
       m_aggregateMapping.registerAggregate(event.getClusterId(), definition);
     }
 
+    m_alertDefinitionHash.get().updateDefinition(definition);
+
     // update any current alerts
     List<AlertCurrentEntity> currentAlerts = m_alertsDao.findCurrentByDefinitionId(definition.getDefinitionId());
     for (AlertCurrentEntity current : currentAlerts) {
@@ -178,9 +184,10 @@ public class AlertLifecycleListener {
     m_aggregateMapping.removeAssociatedAggregate(event.getClusterId(),
         definition.getName());
 
-    // invalidate and publish
+    // remove from the index and publish; the deleted definition is not read
+    // back, so it cannot be indexed again
     AlertDefinitionHash hashHelper = m_alertDefinitionHash.get();
-    Set<String> invalidatedHosts = hashHelper.invalidateHosts(definition);
+    Set<String> invalidatedHosts = hashHelper.removeDefinition(definition);
     AlertHashInvalidationEvent hashInvalidationEvent = new AlertHashInvalidationEvent(
         definition.getClusterId(), invalidatedHosts);
 
@@ -18,8 +18,18 @@
 package org.apache.ambari.server.events.listeners.alerts;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 
 import org.apache.ambari.server.AmbariException;
@@ -64,6 +74,10 @@ import com.google.inject.persist.Transactional;
  * The {@link AlertReceivedListener} class handles {@link AlertReceivedEvent}
  * and updates the appropriate DAOs. It may also fire new
  * {@link AlertStateChangeEvent} when an {@link AlertState} change is detected.
+ * <p/>
+ * When {@link Configuration#getAlertReceivedBatchSize()} is set, the alerts of
+ * many events are queued and processed in batches by a single thread, which
+ * merges the changed alerts of a batch in one transaction.
  */
 @Singleton
 @EagerSingleton
@@ -73,6 +87,13 @@ public class AlertReceivedListener {
    */
   private static final Logger LOG = LoggerFactory.getLogger(AlertReceivedListener.class);
 
+  /**
+   * The number of alerts of a cluster being processed together from which on
+   * the definitions and current alerts of the cluster are looked up in bulk
+   * instead of one by one.
+   */
+  static final int BULK_LOOKUP_THRESHOLD = 10;
+
   @Inject
   Configuration m_configuration;
 
@@ -109,6 +130,16 @@ public class AlertReceivedListener {
    */
   private Striped<Lock> creationLocks = Striped.lazyWeakLock(100);
 
+  /**
+   * The received alerts waiting to be processed in a batch.
+   */
+  private final BlockingQueue<ReceivedAlert> m_batchQueue = new LinkedBlockingQueue<>();
+
+  /**
+   * Whether the thread processing batches of received alerts was started.
+   */
+  private final AtomicBoolean m_batchProcessingStarted = new AtomicBoolean();
+
   /**
    * Constructor.
    *
@@ -122,6 +153,9 @@ public class AlertReceivedListener {
 
   /**
    * Adds an alert. Checks for a new state before creating a new history record.
+   * <p/>
+   * If received alerts are batched, the alerts are only queued and processed
+   * later together with those of other events.
    *
    * @param event
    *          the event to handle.
@@ -134,32 +168,82 @@ public class AlertReceivedListener {
       LOG.debug(event.toString());
     }
 
-    // process the list of alerts inside of a single transaction to prevent too
-    // many transactions/commits
-    List<Alert> alerts = event.getAlerts();
+    List<ReceivedAlert> received = new ArrayList<>(event.getAlerts().size());
+    for (Alert alert : event.getAlerts()) {
+      received.add(new ReceivedAlert(event.getClusterId(), alert));
+    }
 
-    // these can be wrapped in their own transaction
-    List<AlertCurrentEntity> toMerge = new ArrayList<>();
-    List<AlertCurrentEntity> toCreateHistoryAndMerge = new ArrayList<>();
+    if (m_configuration.getAlertReceivedBatchSize() > 0) {
+      startBatchProcessing();
+      m_batchQueue.addAll(received);
+      return;
+    }
 
-    List<AlertEvent> alertEvents = new ArrayList<>(20);
+    processAlerts(received);
+  }
+
+  /**
+   * Processes received alerts inside of a single transaction. Only the latest
+   * result of each alert is processed. The definitions and current alerts of
+   * clusters with many received alerts are looked up together.
+   *
+   * @param received
+   *          the alerts in the order they were received.
+   */
+  @RequiresSession
+  void processAlerts(List<ReceivedAlert> received) {
+    // keep the latest result of every alert
+    Map<List<Object>, ReceivedAlert> latest = new LinkedHashMap<>();
+    for (ReceivedAlert receivedAlert : received) {
+      Alert alert = receivedAlert.m_alert;
+      List<Object> key = Arrays.<Object> asList(receivedAlert.m_clusterId, alert.getCluster(),
+          alert.getName(), alert.getHostName());
+
+      ReceivedAlert previous = latest.get(key);
+      if (null == previous || previous.m_alert.getTimestamp() <= alert.getTimestamp()) {
+        latest.put(key, receivedAlert);
+      }
+    }
 
-    for (Alert alert : alerts) {
+    // resolve the cluster of every valid alert
+    List<ReceivedAlert> alerts = new ArrayList<>(latest.size());
+    Map<Long, Integer> alertsPerCluster = new HashMap<>();
+    for (ReceivedAlert receivedAlert : latest.values()) {
       // jobs that were running when a service/component/host was changed
       // which invalidate the alert should not be reported
-      if (!isValid(alert)) {
+      if (!isValid(receivedAlert.m_alert)) {
         continue;
       }
 
-      String clusterName = alert.getCluster();
-      Long clusterId = getClusterIdByName(clusterName);
-      if (clusterId == null) {
-        // check event
-        clusterId = event.getClusterId();
+      Long clusterId = getClusterIdByName(receivedAlert.m_alert.getCluster());
+      if (clusterId != null) {
+        receivedAlert.m_clusterId = clusterId;
       }
 
-      AlertDefinitionEntity definition = m_definitionDao.findByName(clusterId,
-        alert.getName());
+      alerts.add(receivedAlert);
+      Integer count = alertsPerCluster.get(receivedAlert.m_clusterId);
+      alertsPerCluster.put(receivedAlert.m_clusterId, null == count ? 1 : count + 1);
+    }
+
+    AlertLookup lookup = new AlertLookup();
+    for (Map.Entry<Long, Integer> cluster : alertsPerCluster.entrySet()) {
+      if (cluster.getValue() >= BULK_LOOKUP_THRESHOLD) {
+        lookup.load(cluster.getKey(), alerts);
+      }
+    }
+
+    // these can be wrapped in their own transaction
+    List<AlertCurrentEntity> toMerge = new ArrayList<>();
+    List<AlertCurrentEntity> toCreateHistoryAndMerge = new ArrayList<>();
+
+    List<AlertEvent> alertEvents = new ArrayList<>(20);
+
+    for (ReceivedAlert receivedAlert : alerts) {
+      Alert alert = receivedAlert.m_alert;
+      String clusterName = alert.getCluster();
+      long clusterId = receivedAlert.m_clusterId;
+
+      AlertDefinitionEntity definition = lookup.getDefinition(clusterId, alert.getName());
 
       if (null == definition) {
         LOG.warn(
@@ -183,7 +267,7 @@ public class AlertReceivedListener {
       AlertState alertState = alert.getState();
 
       // attempt to lookup the current alert
-      current = getCurrentEntity(clusterId, alert, definition);
+      current = lookup.getCurrentEntity(clusterId, alert, definition);
 
       // if it doesn't exist then we must create it, ensuring that two or more
       // aren't created from other threads
@@ -352,6 +436,75 @@ public class AlertReceivedListener {
     }
   }
 
+  /**
+   * Starts the thread processing batches of received alerts, unless it is
+   * already running.
+   */
+  private void startBatchProcessing() {
+    if (!m_batchProcessingStarted.compareAndSet(false, true)) {
+      return;
+    }
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        processBatches();
+      }
+    }, "alert-received-batch");
+
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Takes batches of received alerts off the queue and processes them. A
+   * batch is processed when it is full or when its first alert waited for
+   * the batch interval.
+   */
+  private void processBatches() {
+    List<ReceivedAlert> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(m_batchQueue.take());
+
+        int batchSize = m_configuration.getAlertReceivedBatchSize();
+        long deadline = System.currentTimeMillis() + m_configuration.getAlertReceivedBatchInterval();
+        while (batch.size() < batchSize) {
+          m_batchQueue.drainTo(batch, batchSize - batch.size());
+
+          long wait = deadline - System.currentTimeMillis();
+          if (batch.size() >= batchSize || wait <= 0) {
+            break;
+          }
+
+          ReceivedAlert next = m_batchQueue.poll(wait, TimeUnit.MILLISECONDS);
+          if (null == next) {
+            break;
+          }
+
+          batch.add(next);
+        }
+
+        long start = System.currentTimeMillis();
+        processAlerts(batch);
+
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Processed a batch of {} received alerts in {}ms, {} alerts waiting", batch.size(),
+              System.currentTimeMillis() - start, m_batchQueue.size());
+        }
+      } catch (InterruptedException interruptedException) {
+        LOG.warn("Stopped processing received alerts, {} alerts were not processed",
+            batch.size() + m_batchQueue.size());
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception exception) {
+        LOG.error("Unable to process a batch of {} received alerts", batch.size(), exception);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
   /**
    * Gets the cluster ID given a name.
    *
@@ -649,4 +802,91 @@ public class AlertReceivedListener {
 
     return repeatTolerance;
   }
+
+  /**
+   * An alert received with an {@link AlertReceivedEvent}.
+   */
+  static final class ReceivedAlert {
+    /**
+     * The cluster of the event, replaced by the cluster the alert names if it
+     * exists.
+     */
+    private long m_clusterId;
+
+    private final Alert m_alert;
+
+    ReceivedAlert(long clusterId, Alert alert) {
+      m_clusterId = clusterId;
+      m_alert = alert;
+    }
+  }
+
+  /**
+   * Looks up the definitions and current alerts of received alerts, either
+   * one by one or from the results of bulk queries per cluster.
+   */
+  private final class AlertLookup {
+    private final Map<Long, Map<String, AlertDefinitionEntity>> m_definitions = new HashMap<>();
+
+    /**
+     * The current alerts of the hosts of the received alerts by definition
+     * name and host name.
+     */
+    private final Map<Long, Map<List<String>, AlertCurrentEntity>> m_currentAlerts = new HashMap<>();
+
+    /**
+     * Loads the definitions of a cluster and the current alerts of the hosts
+     * which reported alerts for it.
+     */
+    private void load(long clusterId, List<ReceivedAlert> alerts) {
+      Map<String, AlertDefinitionEntity> definitions = new HashMap<>();
+      for (AlertDefinitionEntity definition : m_definitionDao.findAll(clusterId)) {
+        definitions.put(definition.getDefinitionName(), definition);
+      }
+      m_definitions.put(clusterId, definitions);
+
+      // the alert cache already prevents database hits for current alerts
+      if (m_configuration.isAlertCacheEnabled()) {
+        return;
+      }
+
+      Set<String> hostNames = new HashSet<>();
+      for (ReceivedAlert receivedAlert : alerts) {
+        String hostName = receivedAlert.m_alert.getHostName();
+        if (receivedAlert.m_clusterId == clusterId && StringUtils.isNotBlank(hostName)) {
+          hostNames.add(hostName);
+        }
+      }
+
+      Map<List<String>, AlertCurrentEntity> currentAlerts = new HashMap<>();
+      if (!hostNames.isEmpty()) {
+        for (AlertCurrentEntity current : m_alertsDao.findCurrentByHosts(clusterId, hostNames)) {
+          AlertHistoryEntity history = current.getAlertHistory();
+          currentAlerts.put(Arrays.asList(history.getAlertDefinition().getDefinitionName(),
+              history.getHostName()), current);
+        }
+      }
+      m_currentAlerts.put(clusterId, currentAlerts);
+    }
+
+    private AlertDefinitionEntity getDefinition(long clusterId, String definitionName) {
+      Map<String, AlertDefinitionEntity> definitions = m_definitions.get(clusterId);
+      if (null == definitions) {
+        return m_definitionDao.findByName(clusterId, definitionName);
+      }
+
+      return definitions.get(definitionName);
+    }
+
+    private AlertCurrentEntity getCurrentEntity(long clusterId, Alert alert,
+        AlertDefinitionEntity definition) {
+      Map<List<String>, AlertCurrentEntity> currentAlerts = m_currentAlerts.get(clusterId);
+      if (null == currentAlerts || StringUtils.isBlank(alert.getHostName())
+          || definition.isHostIgnored()) {
+        return AlertReceivedListener.this.getCurrentEntity(clusterId, alert, definition);
+      }
+
+      return currentAlerts.get(Arrays.asList(alert.getName(), alert.getHostName()));
+    }
+  }
 }
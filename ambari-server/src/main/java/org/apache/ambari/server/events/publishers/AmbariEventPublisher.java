@@ -17,25 +17,27 @@
  */
 package org.apache.ambari.server.events.publishers;
 
-import java.util.concurrent.Executors;
-
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.events.AmbariEvent;
+import org.apache.ambari.server.metrics.system.impl.AmbariEventMetricsSource;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
  * The {@link AmbariEventPublisher} is used to publish instances of
- * {@link AmbariEvent} to any {@link Subscribe} methods interested. It uses a
- * single-threaded {@link AsyncEventBus}.
+ * {@link AmbariEvent} to any {@link Subscribe} methods interested. Events are
+ * delivered asynchronously by a {@link PartitionedEventBus}; events of the same
+ * cluster or host are delivered in the order they were published.
  */
 @Singleton
 public class AmbariEventPublisher {
 
   /**
-   * A single threaded event bus for processing Ambari events in serial.
+   * An event bus for processing Ambari events, in serial for each cluster or
+   * host.
    */
   private final EventBus m_eventBus;
 
@@ -43,8 +45,23 @@ public class AmbariEventPublisher {
    * Constructor.
    */
   public AmbariEventPublisher() {
-    m_eventBus = new AsyncEventBus("ambari-event-bus",
-        Executors.newSingleThreadExecutor());
+    this(Configuration.SERVER_EVENTS_THREADS.getDefaultValue());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param configuration
+   *          the configuration which sets the number of event threads.
+   */
+  @Inject
+  public AmbariEventPublisher(Configuration configuration) {
+    this(configuration.getServerEventsThreads());
+  }
+
+  private AmbariEventPublisher(int threads) {
+    m_eventBus = new PartitionedEventBus("ambari-event-bus", threads,
+        AmbariEventMetricsSource.getRegistry());
   }
 
   /**
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.server.events.AmbariEvent;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * An {@link EventBus} which delivers events asynchronously on a fixed number of
+ * single threaded partitions. The partition of an {@link AmbariEvent} is
+ * chosen by its {@link AmbariEvent#getPartitionKey()}, so events with the same
+ * key are delivered in the order they were published while events with
+ * different keys are delivered concurrently.
+ * <p/>
+ * Every listener is registered on an {@link EventBus} of its own. A listener
+ * whose subscriber methods are all marked with {@link AllowConcurrentEvents}
+ * is invoked on the partition of each event, so a slow listener only holds up
+ * the partition it is running on. The events of any other listener are queued
+ * for it and delivered one at a time, in the order the partitions offered
+ * them, by whichever partition thread finds the listener idle; none of its
+ * subscriber methods run concurrently, even for events of different
+ * partitions.
+ * <p/>
+ * For every listener the number of published events which were not offered to
+ * it yet and the time it takes to handle an event are recorded.
+ */
+class PartitionedEventBus extends EventBus {
+
+  private final String m_identifier;
+
+  private final ExecutorService[] m_partitions;
+
+  private final MetricRegistry m_registry;
+
+  /**
+   * The listeners in the order they were registered.
+   */
+  private final List<Listener> m_listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Constructor.
+   *
+   * @param identifier
+   *          the name of the bus, used for its threads and metrics.
+   * @param partitions
+   *          the number of partitions, each having one thread.
+   * @param registry
+   *          the registry to record the metrics of the listeners to.
+   */
+  PartitionedEventBus(String identifier, int partitions, MetricRegistry registry) {
+    super(identifier);
+    m_identifier = identifier;
+    m_registry = registry;
+
+    m_partitions = new ExecutorService[Math.max(1, partitions)];
+    for (int i = 0; i < m_partitions.length; i++) {
+      m_partitions[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(), new PartitionThreadFactory(identifier + "-" + i));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void register(Object object) {
+    for (Listener listener : m_listeners) {
+      if (listener.m_object == object) {
+        return;
+      }
+    }
+
+    m_listeners.add(new Listener(object));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void unregister(Object object) {
+    for (Listener listener : m_listeners) {
+      if (listener.m_object == object) {
+        m_listeners.remove(listener);
+        return;
+      }
+    }
+
+    throw new IllegalArgumentException("missing event subscriber for an annotated method. Is " + object
+        + " registered?");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void post(final Object event) {
+    final Listener[] listeners = m_listeners.toArray(new Listener[0]);
+    for (Listener listener : listeners) {
+      listener.m_pending.inc();
+    }
+
+    getPartition(event).execute(new Runnable() {
+      @Override
+      public void run() {
+        for (Listener listener : listeners) {
+          listener.deliver(event);
+        }
+      }
+    });
+  }
+
+  private ExecutorService getPartition(Object event) {
+    Object key = null;
+    if (event instanceof AmbariEvent) {
+      key = ((AmbariEvent) event).getPartitionKey();
+    }
+
+    if (null == key) {
+      key = event.getClass();
+    }
+
+    return m_partitions[(key.hashCode() & Integer.MAX_VALUE) % m_partitions.length];
+  }
+
+  /**
+   * @return the name of the class of a listener, without the suffix of the
+   *         subclasses generated by Guice.
+   */
+  static String getListenerName(Object object) {
+    String name = object.getClass().getSimpleName();
+    if (name.isEmpty()) {
+      name = object.getClass().getName();
+    }
+
+    int generated = name.indexOf("$$");
+    return generated > 0 ? name.substring(0, generated) : name;
+  }
+
+  /**
+   * @return {@code true} if every subscriber method of a listener is marked
+   *         with {@link AllowConcurrentEvents}.
+   */
+  static boolean isConcurrent(Object object) {
+    for (Class<?> clazz = object.getClass(); null != clazz; clazz = clazz.getSuperclass()) {
+      for (Method method : clazz.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Subscribe.class)
+            && !method.isAnnotationPresent(AllowConcurrentEvents.class)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A registered listener.
+   */
+  private final class Listener {
+    private final Object m_object;
+    private final EventBus m_eventBus;
+    private final Counter m_pending;
+    private final Timer m_latency;
+
+    /**
+     * The events waiting to be delivered to a listener which is not
+     * concurrent, {@code null} for a concurrent one.
+     */
+    private final Queue<Object> m_queue;
+
+    /**
+     * Whether a thread is delivering the queued events.
+     */
+    private final AtomicBoolean m_delivering = new AtomicBoolean();
+
+    private Listener(Object object) {
+      m_object = object;
+
+      String name = getListenerName(object);
+      m_eventBus = new EventBus(m_identifier + "-" + name);
+      m_eventBus.register(object);
+
+      m_pending = m_registry.counter(MetricRegistry.name(m_identifier, name, "pending"));
+      m_latency = m_registry.timer(MetricRegistry.name(m_identifier, name, "latency"));
+
+      m_queue = isConcurrent(object) ? null : new ConcurrentLinkedQueue<Object>();
+    }
+
+    private void deliver(Object event) {
+      if (null == m_queue) {
+        handle(event);
+        return;
+      }
+
+      m_queue.add(event);
+
+      // an event queued while the delivering thread is giving up is picked up
+      // by it again, or by the thread which queued it
+      while (!m_queue.isEmpty() && m_delivering.compareAndSet(false, true)) {
+        try {
+          Object next;
+          while (null != (next = m_queue.poll())) {
+            handle(next);
+          }
+        } finally {
+          m_delivering.set(false);
+        }
+      }
+    }
+
+    private void handle(Object event) {
+      Timer.Context context = m_latency.time();
+      try {
+        m_eventBus.post(event);
+      } finally {
+        context.stop();
+        m_pending.dec();
+      }
+    }
+  }
+
+  /**
+   * Names the thread of a partition.
+   */
+  private static final class PartitionThreadFactory implements ThreadFactory {
+    private final String m_name;
+    private final AtomicInteger m_threadCount = new AtomicInteger();
+
+    private PartitionThreadFactory(String name) {
+      m_name = name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+      int count = m_threadCount.getAndIncrement();
+      return new Thread(r, count == 0 ? m_name : m_name + "-" + count);
+    }
+  }
+}
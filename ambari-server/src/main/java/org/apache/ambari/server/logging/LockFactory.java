@@ -17,7 +17,9 @@
  */
 package org.apache.ambari.server.logging;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -95,6 +97,59 @@ public class LockFactory {
     return baseLock;
   }
 
+  /**
+   * @return whether locks created by this factory collect profiling statistics
+   */
+  public boolean isProfilingEnabled() {
+    return profiling;
+  }
+
+  /**
+   * Sums the time spent waiting for the locks created by this factory across
+   * all threads.  The read and write halves of a read-write lock, as well as
+   * all locks sharing the same label, are reported as a single entry.
+   *
+   * @return total time spent waiting (in milliseconds) by lock label, empty if
+   *         lock profiling is disabled
+   */
+  public Map<String, Long> getTimeSpentWaitingForLocks() {
+    Map<String, Long> result = new TreeMap<>();
+    if (profiling) {
+      for (ProfiledLock lock : profiledLocks) {
+        String label = lock.getLabel().trim();
+        long total = result.containsKey(label) ? result.get(label) : 0L;
+        for (Long waited : lock.getTimeSpentWaitingForLock().values()) {
+          total += waited;
+        }
+        result.put(label, total);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sums the number of times the locks created by this factory were taken
+   * across all threads, grouped the same way as
+   * {@link #getTimeSpentWaitingForLocks()}.
+   *
+   * @return the number of times locks were taken by lock label, empty if lock
+   *         profiling is disabled
+   */
+  public Map<String, Long> getLockCounts() {
+    Map<String, Long> result = new TreeMap<>();
+    if (profiling) {
+      for (ProfiledLock lock : profiledLocks) {
+        String label = lock.getLabel().trim();
+        long total = result.containsKey(label) ? result.get(label) : 0L;
+        for (Integer count : lock.getLockCount().values()) {
+          total += count;
+        }
+        result.put(label, total);
+      }
+    }
+    return result;
+  }
+
   /**
    * If lock profiling is enabled, append summary statistics about lock usage to <code>sb</code>
    * @param sb the buffer to append the statistics to
@@ -113,6 +168,15 @@ public class LockFactory {
         sb.append("\n");
       }
       sb.append("]");
+
+      Map<String, Long> counts = getLockCounts();
+      sb.append("\n\t\tLock waits: [");
+      for (Map.Entry<String, Long> entry : getTimeSpentWaitingForLocks().entrySet()) {
+        sb.append("\n\t\t\t").append(entry.getKey())
+          .append(" total waited: ").append(entry.getValue())
+          .append(" total times locked: ").append(counts.get(entry.getKey()));
+      }
+      sb.append("]");
     }
   }
 
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.metrics.system.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.metrics.system.AmbariMetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Publishes the number of events waiting for each listener of the
+ * {@link org.apache.ambari.server.events.publishers.AmbariEventPublisher} and
+ * the time each listener takes to handle an event.
+ */
+public class AmbariEventMetricsSource extends AbstractMetricsSource {
+  static final MetricRegistry registry = new MetricRegistry();
+  private static Logger LOG = LoggerFactory.getLogger(AmbariEventMetricsSource.class);
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * Gets the registry the event publisher records its metrics to.
+   *
+   * @return the registry
+   */
+  public static MetricRegistry getRegistry() {
+    return registry;
+  }
+
+  @Override
+  public void init(AmbariMetricSink sink) {
+    super.init(sink);
+  }
+
+  @Override
+  public void run() {
+    this.sink.publish(getMetrics());
+    LOG.debug("********* Published event publisher metrics to sink **********");
+  }
+
+  @Override
+  public Map<String, Number> getMetrics() {
+    Map<String, Number> map = new HashMap<>();
+    for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+      map.put(entry.getKey(), entry.getValue().getCount());
+    }
+
+    for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+      Timer timer = entry.getValue();
+      Snapshot snapshot = timer.getSnapshot();
+      map.put(entry.getKey() + ".rate", timer.getOneMinuteRate());
+      map.put(entry.getKey() + ".mean_ms", snapshot.getMean() / NANOS_PER_MILLI);
+      map.put(entry.getKey() + ".p95_ms", snapshot.get95thPercentile() / NANOS_PER_MILLI);
+    }
+    return map;
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.ambari.server.orm.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
@@ -516,6 +517,40 @@ public class AlertsDAO implements Cleanable {
     return alerts;
   }
 
+  /**
+   * Gets the current alerts of a set of hosts in a cluster, querying the hosts
+   * in batches.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param hostNames
+   *          the names of the hosts (not {@code null}).
+   * @return the current alerts of the hosts or an empty list if none exist
+   *         (never {@code null}).
+   */
+  @RequiresSession
+  public List<AlertCurrentEntity> findCurrentByHosts(long clusterId, Collection<String> hostNames) {
+    TypedQuery<AlertCurrentEntity> query = m_entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.findByClusterAndHosts", AlertCurrentEntity.class);
+
+    query.setParameter("clusterId", Long.valueOf(clusterId));
+
+    List<String> names = new ArrayList<>(hostNames);
+    List<AlertCurrentEntity> alerts = new ArrayList<>();
+    for (int i = 0; i < names.size(); i += BATCH_SIZE) {
+      int endIndex = (i + BATCH_SIZE) > names.size() ? names.size() : (i + BATCH_SIZE);
+      query.setParameter("hostNames", names.subList(i, endIndex));
+      alerts.addAll(m_daoUtils.selectList(query));
+    }
+
+    // if caching is enabled, replace results with cached values when present
+    if (m_configuration.isAlertCacheEnabled()) {
+      alerts = supplementWithCachedAlerts(alerts);
+    }
+
+    return alerts;
+  }
+
   /**
    * Retrieves the summary information for a particular scope. The result is a
    * DTO since the columns are aggregated and don't fit to an entity.
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.orm.dao;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ambari.server.orm.RequiresSession;
+import org.apache.ambari.server.orm.entities.ExecutionCommandPartEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandPartEntityPK;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+
+@Singleton
+public class ExecutionCommandPartDAO {
+
+  @Inject
+  Provider<EntityManager> entityManagerProvider;
+
+  @RequiresSession
+  public ExecutionCommandPartEntity findByPK(long requestId, long stageId, String partHash) {
+    ExecutionCommandPartEntityPK pk = new ExecutionCommandPartEntityPK();
+    pk.setRequestId(requestId);
+    pk.setStageId(stageId);
+    pk.setPartHash(partHash);
+    return entityManagerProvider.get().find(ExecutionCommandPartEntity.class, pk);
+  }
+
+  @Transactional
+  public void create(ExecutionCommandPartEntity executionCommandPart) {
+    entityManagerProvider.get().persist(executionCommandPart);
+  }
+}
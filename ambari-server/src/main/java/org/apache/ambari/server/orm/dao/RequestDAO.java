@@ -18,20 +18,33 @@
 
 package org.apache.ambari.server.orm.dao;
 
+import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.cleanup.RequestHistoryPurger;
+import org.apache.ambari.server.cleanup.TimeBasedCleanupPolicy;
 import org.apache.ambari.server.orm.RequiresSession;
+import org.apache.ambari.server.orm.entities.ClusterEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandEntity;
+import org.apache.ambari.server.orm.entities.ExecutionCommandPartEntity;
+import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
 import org.apache.ambari.server.orm.entities.RequestEntity;
+import org.apache.ambari.server.orm.entities.RequestOperationLevelEntity;
 import org.apache.ambari.server.orm.entities.RequestResourceFilterEntity;
+import org.apache.ambari.server.orm.entities.RoleSuccessCriteriaEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -39,7 +52,9 @@ import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
 
 @Singleton
-public class RequestDAO {
+public class RequestDAO implements Cleanable {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestDAO.class);
+
   /**
    * SQL template to retrieve all request IDs, sorted by the ID.
    */
@@ -64,6 +79,12 @@ public class RequestDAO {
   @Inject
   DaoUtils daoUtils;
 
+  @Inject
+  private ClusterDAO clusterDAO;
+
+  @Inject
+  private Provider<RequestHistoryPurger> requestHistoryPurger;
+
   @RequiresSession
   public RequestEntity findByPK(Long requestId) {
     return entityManagerProvider.get().find(RequestEntity.class, requestId);
@@ -189,4 +210,38 @@ public class RequestDAO {
 
     return daoUtils.selectList(query);
   }
+
+  /**
+   * Purges the history of the requests of the cluster which ended before the
+   * date of the policy. Rows are deleted with set based statements by the
+   * {@link RequestHistoryPurger}, so the cached entities of the request graph
+   * are evicted afterwards.
+   */
+  @Override
+  public long cleanup(TimeBasedCleanupPolicy policy) {
+    ClusterEntity cluster = clusterDAO.findByName(policy.getClusterName());
+    if (null == cluster) {
+      throw new IllegalStateException("Cluster not found: " + policy.getClusterName());
+    }
+
+    long affectedRows;
+    try {
+      affectedRows = requestHistoryPurger.get().purge(cluster.getClusterId(), policy.getToDateInMillis());
+    } catch (SQLException e) {
+      LOG.error("Error while purging the request history of cluster: {}", policy.getClusterName(), e);
+      throw new IllegalStateException(e);
+    } finally {
+      Cache cache = entityManagerProvider.get().getEntityManagerFactory().getCache();
+      cache.evict(ExecutionCommandEntity.class);
+      cache.evict(ExecutionCommandPartEntity.class);
+      cache.evict(HostRoleCommandEntity.class);
+      cache.evict(RoleSuccessCriteriaEntity.class);
+      cache.evict(StageEntity.class);
+      cache.evict(RequestResourceFilterEntity.class);
+      cache.evict(RequestOperationLevelEntity.class);
+      cache.evict(RequestEntity.class);
+    }
+
+    return affectedRows;
+  }
 }
@@ -121,6 +121,9 @@ public class StageEntity {
   @OneToMany(mappedBy = "stage", cascade = CascadeType.REMOVE)
   private Collection<RoleSuccessCriteriaEntity> roleSuccessCriterias;
 
+  @OneToMany(mappedBy = "stage", cascade = CascadeType.REMOVE, fetch = FetchType.LAZY)
+  private Collection<ExecutionCommandPartEntity> executionCommandParts;
+
   public Long getClusterId() {
     return clusterId;
   }
@@ -247,6 +250,14 @@ public class StageEntity {
     this.roleSuccessCriterias = roleSuccessCriterias;
   }
 
+  public Collection<ExecutionCommandPartEntity> getExecutionCommandParts() {
+    return executionCommandParts;
+  }
+
+  public void setExecutionCommandParts(Collection<ExecutionCommandPartEntity> executionCommandParts) {
+    this.executionCommandParts = executionCommandParts;
+  }
+
   public RequestEntity getRequest() {
     return request;
   }
@@ -20,10 +20,10 @@ package org.apache.ambari.server.serveraction.kerberos;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ambari.server.AmbariException;
@@ -85,8 +85,17 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
   /**
    * A map of data used to track what has been processed in order to optimize the creation of keytabs
    * such as knowing when to create a cached keytab file or use a cached keytab file.
+   * <p/>
+   * Principals are processed concurrently, but the records of a given principal are processed by
+   * a single thread, so only the outer map is concurrent.
+   */
+  Map<String, Set<String>> visitedIdentities = new ConcurrentHashMap<String, Set<String>>();
+
+  /**
+   * Locks serializing the updates of each destination keytab file. Different principals can share
+   * a keytab file, and an update reads the file, merges the new entries and writes it back.
    */
-  Map<String, Set<String>> visitedIdentities = new HashMap<String, Set<String>>();
+  private final ConcurrentMap<File, Object> keytabFileLocks = new ConcurrentHashMap<File, Object>();
 
   /**
    * Called to execute this action.  Upon invocation, calls
@@ -107,6 +116,15 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
     return processIdentities(requestSharedDataContext);
   }
 
+  /**
+   * The keytab files of different principals are created on several KDC sessions at once.
+   *
+   * @return true
+   */
+  @Override
+  protected boolean canProcessIdentitiesConcurrently() {
+    return true;
+  }
 
   /**
    * For each identity, create a keytab and append to a new or existing keytab file.
@@ -235,7 +253,9 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
                       commandReport = createCommandReport(1, HostRoleStatus.FAILED, "{}", actionLog.getStdOut(), actionLog.getStdErr());
                     } else {
                       try {
-                        operationHandler.createKeytabFile(new File(cachedKeytabPath), destinationKeytabFile);
+                        synchronized (getKeytabFileLock(destinationKeytabFile)) {
+                          operationHandler.createKeytabFile(new File(cachedKeytabPath), destinationKeytabFile);
+                        }
                       } catch (KerberosOperationException e) {
                         message = String.format("Failed to create keytab file for %s - %s", evaluatedPrincipal, e.getMessage());
                         actionLog.writeStdErr(message);
@@ -251,7 +271,12 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
 
                   if (keytab != null) {
                     try {
-                      if (operationHandler.createKeytabFile(keytab, destinationKeytabFile)) {
+                      boolean created;
+                      synchronized (getKeytabFileLock(destinationKeytabFile)) {
+                        created = operationHandler.createKeytabFile(keytab, destinationKeytabFile);
+                      }
+
+                      if (created) {
                         ensureAmbariOnlyAccess(destinationKeytabFile);
 
                         message = String.format("Successfully created keytab file for %s at %s", evaluatedPrincipal, destinationKeytabFile.getAbsolutePath());
@@ -273,12 +298,15 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
                     commandReport = createCommandReport(1, HostRoleStatus.FAILED, "{}", actionLog.getStdOut(), actionLog.getStdErr());
                   }
 
-                  if (visitedPrincipalKeys == null) {
-                    visitedPrincipalKeys = new HashSet<String>();
-                    visitedIdentities.put(evaluatedPrincipal, visitedPrincipalKeys);
-                  }
+                  // A failed keytab file is created again if it is retried
+                  if (commandReport == null) {
+                    if (visitedPrincipalKeys == null) {
+                      visitedPrincipalKeys = new HashSet<String>();
+                      visitedIdentities.put(evaluatedPrincipal, visitedPrincipalKeys);
+                    }
 
-                  visitedPrincipalKeys.add(visitationKey);
+                    visitedPrincipalKeys.add(visitationKey);
+                  }
                 }
               } else {
                 message = String.format("Failed to create keytab file for %s, the container directory does not exist: %s",
@@ -384,6 +412,24 @@ public class CreateKeytabFilesServerAction extends KerberosServerAction {
   }
 
 
+  /**
+   * Gets the lock guarding the updates of a destination keytab file.
+   *
+   * @param destinationKeytabFile the destination keytab file
+   * @return the lock of the file
+   */
+  private Object getKeytabFileLock(File destinationKeytabFile) {
+    Object lock = keytabFileLocks.get(destinationKeytabFile);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = keytabFileLocks.putIfAbsent(destinationKeytabFile, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
   /**
    * Cache a keytab given its relative principal name and the keytab data.
    * <p/>
@@ -18,9 +18,10 @@
 
 package org.apache.ambari.server.serveraction.kerberos;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ambari.server.AmbariException;
@@ -71,7 +72,7 @@ public class CreatePrincipalsServerAction extends KerberosServerAction {
    * A set of visited principal names used to prevent unnecessary processing on already processed
    * principal names
    */
-  private Set<String> seenPrincipals = new HashSet<String>();
+  private Set<String> seenPrincipals = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
   /**
    * Called to execute this action.  Upon invocation, calls
@@ -92,6 +93,15 @@ public class CreatePrincipalsServerAction extends KerberosServerAction {
     return processIdentities(requestSharedDataContext);
   }
 
+  /**
+   * Principals are independent of each other, so they are created on several KDC sessions at once.
+   *
+   * @return true
+   */
+  @Override
+  protected boolean canProcessIdentitiesConcurrently() {
+    return true;
+  }
 
   /**
    * For each identity, generate a unique password create a new or update an existing principal in
@@ -160,6 +170,8 @@ public class CreatePrincipalsServerAction extends KerberosServerAction {
           CreatePrincipalResult result = createPrincipal(evaluatedPrincipal, servicePrincipal, kerberosConfiguration, operationHandler, regenerateKeytabs, actionLog);
 
           if (result == null) {
+            // Allow the principal to be processed again if it is retried
+            seenPrincipals.remove(evaluatedPrincipal);
             commandReport = createCommandReport(1, HostRoleStatus.FAILED, "{}", actionLog.getStdOut(), actionLog.getStdErr());
           } else {
             Map<String, Integer> principalKeyNumberMap = getPrincipalKeyNumberMap(requestSharedDataContext);
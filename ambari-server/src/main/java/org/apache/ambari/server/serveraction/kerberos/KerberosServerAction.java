@@ -22,13 +22,27 @@ import static org.apache.ambari.server.serveraction.kerberos.KerberosIdentityDat
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.agent.CommandReport;
 import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.KerberosHelper;
 import org.apache.ambari.server.security.credential.PrincipalKeyCredential;
 import org.apache.ambari.server.serveraction.AbstractServerAction;
@@ -38,7 +52,9 @@ import org.apache.ambari.server.utils.StageUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import com.google.inject.persist.UnitOfWork;
 
 /**
  * KerberosServerAction is an abstract class to be implemented by Kerberos-related
@@ -160,6 +176,18 @@ public abstract class KerberosServerAction extends AbstractServerAction {
   @Inject
   private KerberosHelper kerberosHelper;
 
+  /**
+   * Configuration used to get the number of KDC sessions and retries used to process identities
+   */
+  @Inject
+  private Configuration configuration;
+
+  /**
+   * The unit of work started by the threads processing identities concurrently
+   */
+  @Inject(optional = true)
+  private UnitOfWork unitOfWork;
+
   /**
    * Given a (command parameter) Map and a property name, attempts to safely retrieve the requested
    * data.
@@ -410,14 +438,19 @@ public abstract class KerberosServerAction extends AbstractServerAction {
             KerberosIdentityDataFileReader reader = null;
             try {
               reader = kerberosIdentityDataFileReaderFactory.createKerberosIdentityDataFileReader(identityDataFile);
-              for (Map<String, String> record : reader) {
-                // Process the current record
-                commandReport = processRecord(record, defaultRealm, handler, kerberosConfiguration, requestSharedDataContext);
-
-                // If the principal processor returns a CommandReport, than it is time to stop since
-                // an error condition has probably occurred, else all is assumed to be well.
-                if (commandReport != null) {
-                  break;
+              if (canProcessIdentitiesConcurrently()) {
+                commandReport = processPrincipals(getPrincipalRecords(reader, defaultRealm), handler,
+                    administratorCredential, defaultRealm, kdcType, kerberosConfiguration, requestSharedDataContext);
+              } else {
+                for (Map<String, String> record : reader) {
+                  // Process the current record
+                  commandReport = processRecord(record, defaultRealm, handler, kerberosConfiguration, requestSharedDataContext);
+
+                  // If the principal processor returns a CommandReport, than it is time to stop since
+                  // an error condition has probably occurred, else all is assumed to be well.
+                  if (commandReport != null) {
+                    break;
+                  }
                 }
               }
             } catch (AmbariException e) {
@@ -464,6 +497,23 @@ public abstract class KerberosServerAction extends AbstractServerAction {
         : commandReport;
   }
 
+  /**
+   * Indicates whether the identities of different principals may be processed concurrently, each
+   * on its own {@link KerberosOperationHandler} session.
+   * <p/>
+   * Implementations returning true must allow {@link #processIdentity(Map, String, KerberosOperationHandler, Map, Map)}
+   * to be called from several threads at once for different principals. The records of a given
+   * principal are always processed in order by a single thread, and a principal whose processing
+   * failed is retried from its failed record on a new session; the processing of a record must
+   * therefore be safe to repeat.
+   *
+   * @return true if identities may be processed concurrently; false to process them one at a time
+   *         in the order of the identity data file
+   */
+  protected boolean canProcessIdentitiesConcurrently() {
+    return false;
+  }
+
   /**
    * Processes an identity as necessary.
    * <p/>
@@ -513,27 +563,401 @@ public abstract class KerberosServerAction extends AbstractServerAction {
                                       Map<String, String> kerberosConfiguration, Map<String, Object> requestSharedDataContext)
       throws AmbariException {
     CommandReport commandReport = null;
+    String evaluatedPrincipal = evaluatePrincipal(record, defaultRealm);
+
+    if (evaluatedPrincipal != null) {
+      commandReport = processIdentity(record, evaluatedPrincipal, operationHandler, kerberosConfiguration, requestSharedDataContext);
+    }
+
+    return commandReport;
+  }
+
+  /**
+   * Generates the concrete principal of an identity record by replacing the _HOST and _REALM
+   * variables in its principal pattern.
+   *
+   * @param record       a Map containing the data for the current identity record
+   * @param defaultRealm a String declaring the default Kerberos realm
+   * @return the evaluated principal or null if the record does not declare a principal
+   */
+  private String evaluatePrincipal(Map<String, String> record, String defaultRealm) {
+    String principal = (record == null) ? null : record.get(KerberosIdentityDataFileReader.PRINCIPAL);
+
+    if (principal == null) {
+      return null;
+    }
+
+    String hostname = record.get(KerberosIdentityDataFileReader.HOSTNAME);
 
-    if (record != null) {
-      String principal = record.get(KerberosIdentityDataFileReader.PRINCIPAL);
+    if(KerberosHelper.AMBARI_SERVER_HOST_NAME.equals(hostname)) {
+      // Replace KerberosHelper.AMBARI_SERVER_HOST_NAME with the actual hostname where the Ambari
+      // server is... this host
+      hostname = StageUtils.getHostName();
+    }
 
-      if (principal != null) {
-        String hostname = record.get(KerberosIdentityDataFileReader.HOSTNAME);
+    // Evaluate the principal "pattern" found in the record to generate the "evaluated principal"
+    // by replacing the _HOST and _REALM variables.
+    return principal.replace("_HOST", hostname).replace("_REALM", defaultRealm);
+  }
 
-        if(KerberosHelper.AMBARI_SERVER_HOST_NAME.equals(hostname)) {
-          // Replace KerberosHelper.AMBARI_SERVER_HOST_NAME with the actual hostname where the Ambari
-          // server is... this host
-          hostname = StageUtils.getHostName();
+  /**
+   * Reads all identity records and groups them by evaluated principal, so that a principal shared
+   * by several hosts or components is handed to a single KDC session.
+   *
+   * @param reader       the identity data file reader
+   * @param defaultRealm a String declaring the default Kerberos realm
+   * @return the records of each evaluated principal, in the order the principals and records
+   *         appear in the identity data file
+   */
+  private Map<String, List<Map<String, String>>> getPrincipalRecords(KerberosIdentityDataFileReader reader,
+                                                                     String defaultRealm) {
+    Map<String, List<Map<String, String>>> principalRecords = new LinkedHashMap<String, List<Map<String, String>>>();
+
+    for (Map<String, String> record : reader) {
+      String evaluatedPrincipal = evaluatePrincipal(record, defaultRealm);
+
+      if (evaluatedPrincipal != null) {
+        List<Map<String, String>> records = principalRecords.get(evaluatedPrincipal);
+        if (records == null) {
+          records = new ArrayList<Map<String, String>>();
+          principalRecords.put(evaluatedPrincipal, records);
         }
+        records.add(record);
+      }
+    }
+
+    return principalRecords;
+  }
+
+  /**
+   * Processes the identity records of each principal using up to
+   * {@link Configuration#getKerberosOperationThreads()} concurrent KDC sessions.
+   * <p/>
+   * The already opened handler is used as the first session, additional handlers are opened with
+   * the same credentials before any identity is processed. The first failure stops the processing
+   * of the remaining principals.
+   *
+   * @param principalRecords         the identity records of each evaluated principal
+   * @param handler                  the opened KerberosOperationHandler
+   * @param administratorCredential  the KDC administrator credential used to open handlers
+   * @param defaultRealm             a String declaring the default Kerberos realm
+   * @param kdcType                  the type of KDC to open handlers for
+   * @param kerberosConfiguration    a Map of configuration properties from kerberos-env
+   * @param requestSharedDataContext a Map to be used a shared data among all ServerActions related
+   *                                 to a given request
+   * @return a CommandReport indicating the first error that occurred; or null, indicating success
+   * @throws AmbariException if an error occurs while processing the identity records
+   */
+  private CommandReport processPrincipals(Map<String, List<Map<String, String>>> principalRecords,
+                                          KerberosOperationHandler handler,
+                                          PrincipalKeyCredential administratorCredential,
+                                          String defaultRealm, KDCType kdcType,
+                                          Map<String, String> kerberosConfiguration,
+                                          Map<String, Object> requestSharedDataContext)
+      throws AmbariException {
+    long startTime = System.currentTimeMillis();
+    int sessionCount = Math.max(1, Math.min(configuration.getKerberosOperationThreads(), principalRecords.size()));
+
+    // The shared maps are updated by all sessions
+    ensureConcurrentSharedData(requestSharedDataContext);
 
-        // Evaluate the principal "pattern" found in the record to generate the "evaluated principal"
-        // by replacing the _HOST and _REALM variables.
-        String evaluatedPrincipal = principal.replace("_HOST", hostname).replace("_REALM", defaultRealm);
+    final PrincipalProcessor processor = new PrincipalProcessor(principalRecords, administratorCredential,
+        defaultRealm, kdcType, kerberosConfiguration, requestSharedDataContext);
 
-        commandReport = processIdentity(record, evaluatedPrincipal, operationHandler, kerberosConfiguration, requestSharedDataContext);
+    List<KdcSession> sessions = new ArrayList<KdcSession>(sessionCount);
+    sessions.add(new KdcSession(handler, false));
+
+    try {
+      for (int i = 1; i < sessionCount; i++) {
+        sessions.add(processor.openSession());
+      }
+    } catch (KerberosOperationException e) {
+      for (KdcSession session : sessions) {
+        session.close();
       }
+
+      String message = String.format("Failed to process the identities, could not properly open the KDC operation handler: %s",
+          e.getMessage());
+      actionLog.writeStdErr(message);
+      LOG.error(message);
+      throw new AmbariException(message, e);
     }
 
-    return commandReport;
+    ExecutorService executor = null;
+    try {
+      if (sessionCount == 1) {
+        processor.process(sessions.get(0));
+      } else {
+        executor = Executors.newFixedThreadPool(sessionCount,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ambari-kerberos-identity-%d").build());
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(sessionCount);
+        for (final KdcSession session : sessions) {
+          futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              if (unitOfWork != null) {
+                unitOfWork.begin();
+              }
+              try {
+                processor.process(session);
+                return null;
+              } finally {
+                if (unitOfWork != null) {
+                  unitOfWork.end();
+                }
+              }
+            }
+          }));
+        }
+
+        for (Future<Void> future : futures) {
+          future.get();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AmbariException("Interrupted while processing the identities", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AmbariException) {
+        throw (AmbariException) e.getCause();
+      }
+      throw new AmbariException(String.format("Failed to process the identities: %s", e.getCause().getMessage()),
+          e.getCause());
+    } finally {
+      processor.stop();
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+
+      // the handler of the first session is closed by the caller, unless it was replaced
+      for (KdcSession session : sessions) {
+        session.close();
+      }
+    }
+
+    String message = String.format("Processed %d principals in %d ms using %d KDC sessions",
+        processor.getProcessedCount(), System.currentTimeMillis() - startTime, sessionCount);
+    actionLog.writeStdOut(message);
+    LOG.info(message);
+
+    return processor.getFailure();
+  }
+
+  /**
+   * Replaces the shared principal-to-password and principal-to-key_number maps with concurrent
+   * maps holding the same entries, unless they are concurrent already.
+   *
+   * @param requestSharedDataContext a Map to be used a shared data among all ServerActions related
+   *                                 to a given request
+   */
+  private static void ensureConcurrentSharedData(Map<String, Object> requestSharedDataContext) {
+    if (requestSharedDataContext != null) {
+      for (String key : new String[]{PRINCIPAL_PASSWORD_MAP, PRINCIPAL_KEY_NUMBER_MAP}) {
+        Object map = requestSharedDataContext.get(key);
+
+        if (!(map instanceof ConcurrentMap)) {
+          ConcurrentMap<Object, Object> concurrentMap = new ConcurrentHashMap<Object, Object>();
+          if (map != null) {
+            concurrentMap.putAll((Map<?, ?>) map);
+          }
+          requestSharedDataContext.put(key, concurrentMap);
+        }
+      }
+    }
+  }
+
+  /**
+   * A KerberosOperationHandler used by one thread processing identities.
+   */
+  private static class KdcSession {
+    private KerberosOperationHandler handler;
+
+    /**
+     * true if the handler was opened by and is closed by this session
+     */
+    private boolean owned;
+
+    private KdcSession(KerberosOperationHandler handler, boolean owned) {
+      this.handler = handler;
+      this.owned = owned;
+    }
+
+    /**
+     * Closes the handler if it was opened by this session, ignoring failures.
+     */
+    private void close() {
+      if (owned) {
+        owned = false;
+        try {
+          handler.close();
+        } catch (KerberosOperationException e) {
+          // Ignore this...
+        }
+      }
+    }
+  }
+
+  /**
+   * Hands out the principals to process to the KDC sessions, retries failed principals and
+   * reports the progress.
+   */
+  private class PrincipalProcessor {
+    private final Iterator<Map.Entry<String, List<Map<String, String>>>> principals;
+    private final int principalCount;
+    private final int progressInterval;
+    private final AtomicInteger processedCount = new AtomicInteger();
+    private final AtomicReference<CommandReport> failure = new AtomicReference<CommandReport>();
+    private volatile boolean stopped = false;
+
+    private final PrincipalKeyCredential administratorCredential;
+    private final String defaultRealm;
+    private final KDCType kdcType;
+    private final Map<String, String> kerberosConfiguration;
+    private final Map<String, Object> requestSharedDataContext;
+    private final int retries;
+
+    private PrincipalProcessor(Map<String, List<Map<String, String>>> principalRecords,
+                               PrincipalKeyCredential administratorCredential, String defaultRealm,
+                               KDCType kdcType, Map<String, String> kerberosConfiguration,
+                               Map<String, Object> requestSharedDataContext) {
+      principals = principalRecords.entrySet().iterator();
+      principalCount = principalRecords.size();
+      progressInterval = Math.max(1, principalCount / 10);
+
+      this.administratorCredential = administratorCredential;
+      this.defaultRealm = defaultRealm;
+      this.kdcType = kdcType;
+      this.kerberosConfiguration = kerberosConfiguration;
+      this.requestSharedDataContext = requestSharedDataContext;
+      retries = configuration.getKerberosOperationPrincipalRetries();
+    }
+
+    /**
+     * Opens a new KDC session.
+     *
+     * @return the opened session
+     * @throws KerberosOperationException if the handler could not be opened
+     */
+    private KdcSession openSession() throws KerberosOperationException {
+      KerberosOperationHandler handler = kerberosOperationHandlerFactory.getKerberosOperationHandler(kdcType);
+      handler.open(administratorCredential, defaultRealm, kerberosConfiguration);
+      return new KdcSession(handler, true);
+    }
+
+    /**
+     * Gets the next principal to process.
+     *
+     * @return the principal and its records; or null when all principals were handed out or the
+     *         processing was stopped
+     */
+    private synchronized Map.Entry<String, List<Map<String, String>>> next() {
+      return (stopped || !principals.hasNext()) ? null : principals.next();
+    }
+
+    /**
+     * Processes principals on the given session until none are left or the processing is stopped.
+     *
+     * @param session the KDC session to use
+     * @throws AmbariException if an error occurs while processing an identity record
+     */
+    private void process(KdcSession session) throws AmbariException {
+      Map.Entry<String, List<Map<String, String>>> principal;
+
+      while ((principal = next()) != null) {
+        CommandReport commandReport;
+        try {
+          commandReport = processPrincipal(principal.getKey(), principal.getValue(), session);
+        } catch (AmbariException | RuntimeException e) {
+          // no other session needs to carry on
+          stop();
+          throw e;
+        }
+
+        if (commandReport != null) {
+          if (failure.compareAndSet(null, commandReport)) {
+            stop();
+          }
+          return;
+        }
+
+        int processed = processedCount.incrementAndGet();
+        if ((processed % progressInterval == 0) || (processed == principalCount)) {
+          String message = String.format("Processed %d of %d principals", processed, principalCount);
+          actionLog.writeStdOut(message);
+          LOG.info(message);
+        }
+      }
+    }
+
+    /**
+     * Processes the records of a principal in order. A record which fails is retried on a new
+     * session after {@link Configuration#getKerberosOperationRetryTimeout()} seconds, up to
+     * {@link Configuration#getKerberosOperationPrincipalRetries()} times.
+     *
+     * @param evaluatedPrincipal the principal
+     * @param records            the identity records of the principal
+     * @param session            the KDC session to use, its handler is replaced on retries
+     * @return a CommandReport, indicating an error condition; or null, indicating a success condition
+     * @throws AmbariException if an error occurs while processing an identity record
+     */
+    private CommandReport processPrincipal(String evaluatedPrincipal, List<Map<String, String>> records,
+                                           KdcSession session) throws AmbariException {
+      int attempt = 0;
+
+      for (int i = 0; i < records.size(); ) {
+        CommandReport commandReport = processIdentity(records.get(i), evaluatedPrincipal, session.handler,
+            kerberosConfiguration, requestSharedDataContext);
+
+        if (commandReport == null) {
+          i++;
+        } else if ((attempt++ == retries) || stopped) {
+          return commandReport;
+        } else {
+          int retryTimeout = configuration.getKerberosOperationRetryTimeout();
+          String message = String.format("Failed to process %s, retrying on a new KDC session after a wait of %d seconds (%d of %d)",
+              evaluatedPrincipal, retryTimeout, attempt, retries);
+          actionLog.writeStdOut(message);
+          LOG.warn(message);
+
+          try {
+            Thread.sleep(1000L * retryTimeout);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmbariException("Interrupted while processing the identities", e);
+          }
+
+          session.close();
+          try {
+            KdcSession renewed = openSession();
+            session.handler = renewed.handler;
+            session.owned = true;
+          } catch (KerberosOperationException e) {
+            message = String.format("Failed to process %s, could not properly open the KDC operation handler: %s",
+                evaluatedPrincipal, e.getMessage());
+            actionLog.writeStdErr(message);
+            LOG.error(message);
+            return commandReport;
+          }
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Stops handing out principals.
+     */
+    private void stop() {
+      stopped = true;
+    }
+
+    private int getProcessedCount() {
+      return processedCount.get();
+    }
+
+    private CommandReport getFailure() {
+      return failure.get();
+    }
   }
 }
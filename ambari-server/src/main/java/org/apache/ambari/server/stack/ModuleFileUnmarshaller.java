@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -61,7 +63,12 @@ public class ModuleFileUnmarshaller {
    * Map of class to JAXB context
    */
   private static final Map<Class<?>, JAXBContext> jaxbContexts = new HashMap<>();
-  private static final Map<String, Schema> jaxbSchemas = new HashMap<>();
+
+  /**
+   * Map of XSD name to schema. Stack directories are unmarshalled
+   * concurrently, so schemas may be added from several threads.
+   */
+  private static final ConcurrentMap<String, Schema> jaxbSchemas = new ConcurrentHashMap<>();
 
 
   /**
@@ -98,11 +105,17 @@ public class ModuleFileUnmarshaller {
 
     XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
 
+    String xsdName;
     FileReader reader = new FileReader(file);
-    XMLStreamReader xmlReader = xmlFactory.createXMLStreamReader(reader);
+    try {
+      XMLStreamReader xmlReader = xmlFactory.createXMLStreamReader(reader);
 
-    xmlReader.nextTag();
-    String xsdName = xmlReader.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "noNamespaceSchemaLocation");
+      xmlReader.nextTag();
+      xsdName = xmlReader.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "noNamespaceSchemaLocation");
+      xmlReader.close();
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
 
     InputStream xsdStream = null;
 
@@ -120,9 +133,9 @@ public class ModuleFileUnmarshaller {
           SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
           Schema schema = factory.newSchema(new StreamSource(xsdStream));
 
-          u.setSchema(schema);
-
-          jaxbSchemas.put(xsdName, schema);
+          // another thread may have parsed the same schema in the meantime
+          Schema existing = jaxbSchemas.putIfAbsent(xsdName, schema);
+          u.setSchema(null == existing ? schema : existing);
         } else if (logXsd) {
           LOG.info("Schema '" + xsdName + "' for " + file.getAbsolutePath() + " was not found, ignoring");
         }
@@ -19,11 +19,18 @@
 package org.apache.ambari.server.stack;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 import javax.xml.XMLConstants;
@@ -182,12 +189,102 @@ public class StackManager {
     populateDB(stackDao, extensionDao);
   }
 
+  /**
+   * Parse the common service, stack and extension directories. Every service
+   * version, stack version and extension version directory is unmarshalled
+   * on a fork join pool; all of them are submitted before any result is
+   * collected so that the three roots are parsed concurrently. Modules are
+   * only resolved afterwards, on the calling thread.
+   *
+   * @param stackRoot           the stack root directory to parse
+   * @param commonServicesRoot  the common services root directory to parse
+   * @param extensionRoot       the extension root directory to parse
+   * @throws AmbariException if unable to parse the directories
+   */
   protected void parseDirectories(File stackRoot, File commonServicesRoot, File extensionRoot) throws AmbariException {
-    commonServiceModules = parseCommonServicesDirectory(commonServicesRoot);
-    stackModules = parseStackDirectory(stackRoot);
-    LOG.info("About to parse extension directories");
-    extensionModules = parseExtensionDirectory(extensionRoot);
+    long startTime = System.currentTimeMillis();
+    ForkJoinPool pool = new ForkJoinPool(getParseParallelism());
+    try {
+      List<Future<Map<String, ServiceModule>>> commonServiceTasks =
+          submitCommonServicesDirectory(pool, commonServicesRoot);
+      Map<String, Future<StackModule>> stackTasks = submitStackDirectory(pool, stackRoot);
+      LOG.info("About to parse extension directories");
+      Map<String, Future<ExtensionModule>> extensionTasks = submitExtensionDirectory(pool, extensionRoot);
+
+      commonServiceModules = new HashMap<String, ServiceModule>();
+      for (Future<Map<String, ServiceModule>> task : commonServiceTasks) {
+        commonServiceModules.putAll(getParseResult(task));
+      }
+
+      stackModules = new HashMap<String, StackModule>();
+      for (Map.Entry<String, Future<StackModule>> task : stackTasks.entrySet()) {
+        StackModule stackModule = getParseResult(task.getValue());
+        stackModules.put(task.getKey(), stackModule);
+        stackMap.put(task.getKey(), stackModule.getModuleInfo());
+      }
+
+      if (stackMap.isEmpty()) {
+        throw new AmbariException("Unable to find stack definitions under " +
+            "stackRoot = " + stackRoot.getAbsolutePath());
+      }
+
+      extensionModules = new HashMap<String, ExtensionModule>();
+      for (Map.Entry<String, Future<ExtensionModule>> task : extensionTasks.entrySet()) {
+        ExtensionModule extensionModule = getParseResult(task.getValue());
+        extensionModules.put(task.getKey(), extensionModule);
+        extensionMap.put(task.getKey(), extensionModule.getModuleInfo());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    LOG.info("Parsed {} stacks, {} common services and {} extensions in {} ms",
+        stackModules.size(), commonServiceModules.size(), extensionModules.size(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Gets the number of threads used to unmarshal stack definition directories.
+   *
+   * @return the parallelism of the parse pool
+   */
+  protected int getParseParallelism() {
+    return Runtime.getRuntime().availableProcessors();
   }
+
+  /**
+   * Waits for a directory parsed on the parse pool.
+   *
+   * @param task  the parse task
+   * @return the result of the task
+   * @throws AmbariException if the directory could not be parsed
+   */
+  private static <T> T getParseResult(Future<T> task) throws AmbariException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AmbariException("Interrupted while parsing stack definitions", e);
+    } catch (ExecutionException e) {
+      // the pool wraps checked exceptions thrown by the callables
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof AmbariException) {
+          throw (AmbariException) cause;
+        }
+      }
+
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+
+      throw new AmbariException("Unable to parse stack definitions", e.getCause());
+    }
+  }
+
   private void populateDB(StackDAO stackDao, ExtensionDAO extensionDao) throws AmbariException {
     // for every stack read in, ensure that we have a database entry for it;
     // don't put try/catch logic around this since a failure here will
@@ -488,14 +585,17 @@ public class StackManager {
   }
 
   /**
-   * Parse the specified common services root directory
+   * Submit the service version directories of the specified common services
+   * root directory for parsing.
    *
+   * @param pool                the pool to parse on
    * @param commonServicesRoot  the common services root directory to parse
-   * @return map of common service id which contains name and version to common service module.
-   * @throws AmbariException if unable to parse all common services
+   * @return the tasks which return the common service modules of each
+   *         directory keyed by common service id, in directory order
    */
-  private Map<String, ServiceModule> parseCommonServicesDirectory(File commonServicesRoot) throws AmbariException {
-    Map<String, ServiceModule> commonServiceModules = new HashMap<String, ServiceModule>();
+  private List<Future<Map<String, ServiceModule>>> submitCommonServicesDirectory(
+      ExecutorService pool, File commonServicesRoot) {
+    List<Future<Map<String, ServiceModule>>> tasks = new ArrayList<Future<Map<String, ServiceModule>>>();
 
     if(commonServicesRoot != null) {
       File[] commonServiceFiles = commonServicesRoot.listFiles(AmbariMetaInfo.FILENAME_FILTER);
@@ -503,67 +603,85 @@ public class StackManager {
         if (commonService.isFile()) {
           continue;
         }
-        for (File serviceFolder : commonService.listFiles(AmbariMetaInfo.FILENAME_FILTER)) {
-          String serviceName = serviceFolder.getParentFile().getName();
-          String serviceVersion = serviceFolder.getName();
-          ServiceDirectory serviceDirectory = new CommonServiceDirectory(serviceFolder.getPath());
-          ServiceMetainfoXml metaInfoXml = serviceDirectory.getMetaInfoFile();
-          if (metaInfoXml != null) {
-            if (metaInfoXml.isValid()) {
-              for (ServiceInfo serviceInfo : metaInfoXml.getServices()) {
-                ServiceModule serviceModule = new ServiceModule(stackContext, serviceInfo, serviceDirectory, true);
-
-                String commonServiceKey = serviceInfo.getName() + StackManager.PATH_DELIMITER + serviceInfo.getVersion();
-                commonServiceModules.put(commonServiceKey, serviceModule);
-              }
-            } else {
-              ServiceModule serviceModule = new ServiceModule(stackContext, new ServiceInfo(), serviceDirectory, true);
-              serviceModule.setValid(false);
-              serviceModule.addErrors(metaInfoXml.getErrors());
-              commonServiceModules.put(metaInfoXml.getSchemaVersion(), serviceModule);
-              metaInfoXml.setSchemaVersion(null);
+        for (final File serviceFolder : commonService.listFiles(AmbariMetaInfo.FILENAME_FILTER)) {
+          tasks.add(pool.submit(new Callable<Map<String, ServiceModule>>() {
+            @Override
+            public Map<String, ServiceModule> call() throws AmbariException {
+              return parseCommonServiceDirectory(serviceFolder);
             }
-          }
+          }));
+        }
+      }
+    }
+    return tasks;
+  }
+
+  /**
+   * Parse a service version directory of the common services root directory.
+   *
+   * @param serviceFolder  the service version directory
+   * @return map of common service id which contains name and version to common service module.
+   * @throws AmbariException if unable to parse the directory
+   */
+  private Map<String, ServiceModule> parseCommonServiceDirectory(File serviceFolder) throws AmbariException {
+    Map<String, ServiceModule> commonServiceModules = new LinkedHashMap<String, ServiceModule>();
+
+    ServiceDirectory serviceDirectory = new CommonServiceDirectory(serviceFolder.getPath());
+    ServiceMetainfoXml metaInfoXml = serviceDirectory.getMetaInfoFile();
+    if (metaInfoXml != null) {
+      if (metaInfoXml.isValid()) {
+        for (ServiceInfo serviceInfo : metaInfoXml.getServices()) {
+          ServiceModule serviceModule = new ServiceModule(stackContext, serviceInfo, serviceDirectory, true);
+
+          String commonServiceKey = serviceInfo.getName() + StackManager.PATH_DELIMITER + serviceInfo.getVersion();
+          commonServiceModules.put(commonServiceKey, serviceModule);
         }
+      } else {
+        ServiceModule serviceModule = new ServiceModule(stackContext, new ServiceInfo(), serviceDirectory, true);
+        serviceModule.setValid(false);
+        serviceModule.addErrors(metaInfoXml.getErrors());
+        commonServiceModules.put(metaInfoXml.getSchemaVersion(), serviceModule);
+        metaInfoXml.setSchemaVersion(null);
       }
     }
     return commonServiceModules;
   }
 
   /**
-   * Parse the specified stack root directory
+   * Submit the stack version directories of the specified stack root
+   * directory for parsing.
    *
+   * @param pool       the pool to parse on
    * @param stackRoot  the stack root directory to parse
-   * @return map of stack id which contains name and version to stack module.
-   * @throws AmbariException if unable to parse all stacks
+   * @return the tasks which return the stack module of each directory, keyed
+   *         by stack id which contains name and version.
    */
-  private Map<String, StackModule> parseStackDirectory(File stackRoot) throws AmbariException {
-    Map<String, StackModule> stackModules = new HashMap<String, StackModule>();
+  private Map<String, Future<StackModule>> submitStackDirectory(ExecutorService pool, File stackRoot) {
+    Map<String, Future<StackModule>> tasks = new LinkedHashMap<String, Future<StackModule>>();
 
     File[] stackFiles = stackRoot.listFiles(AmbariMetaInfo.FILENAME_FILTER);
     for (File stack : stackFiles) {
       if (stack.isFile()) {
         continue;
       }
-      for (File stackFolder : stack.listFiles(AmbariMetaInfo.FILENAME_FILTER)) {
+      for (final File stackFolder : stack.listFiles(AmbariMetaInfo.FILENAME_FILTER)) {
         if (stackFolder.isFile()) {
           continue;
         }
         String stackName = stackFolder.getParentFile().getName();
         String stackVersion = stackFolder.getName();
 
-        StackModule stackModule = new StackModule(new StackDirectory(stackFolder.getPath()), stackContext);
         String stackKey = stackName + StackManager.PATH_DELIMITER + stackVersion;
-        stackModules.put(stackKey, stackModule);
-        stackMap.put(stackKey, stackModule.getModuleInfo());
+        tasks.put(stackKey, pool.submit(new Callable<StackModule>() {
+          @Override
+          public StackModule call() throws AmbariException {
+            return new StackModule(new StackDirectory(stackFolder.getPath()), stackContext);
+          }
+        }));
       }
     }
 
-    if (stackMap.isEmpty()) {
-      throw new AmbariException("Unable to find stack definitions under " +
-          "stackRoot = " + stackRoot.getAbsolutePath());
-    }
-    return stackModules;
+    return tasks;
   }
 
   public void linkStackToExtension(StackInfo stack, ExtensionInfo extension) throws AmbariException {
@@ -573,40 +691,41 @@ public class StackManager {
   }
 
   /**
-   * Parse the specified extension root directory
+   * Submit the extension version directories of the specified extension root
+   * directory for parsing.
    *
+   * @param pool           the pool to parse on
    * @param extensionRoot  the extension root directory to parse
-   * @return map of extension id which contains name and version to extension module.
-   * @throws AmbariException if unable to parse all extensions
+   * @return the tasks which return the extension module of each directory,
+   *         keyed by extension id which contains name and version.
    */
-  private Map<String, ExtensionModule> parseExtensionDirectory(File extensionRoot) throws AmbariException {
-    Map<String, ExtensionModule> extensionModules = new HashMap<String, ExtensionModule>();
+  private Map<String, Future<ExtensionModule>> submitExtensionDirectory(ExecutorService pool, File extensionRoot) {
+    Map<String, Future<ExtensionModule>> tasks = new LinkedHashMap<String, Future<ExtensionModule>>();
     if (extensionRoot == null || !extensionRoot.exists())
-      return extensionModules;
+      return tasks;
 
     File[] extensionFiles = extensionRoot.listFiles(AmbariMetaInfo.FILENAME_FILTER);
     for (File extensionNameFolder : extensionFiles) {
       if (extensionNameFolder.isFile()) {
         continue;
       }
-      for (File extensionVersionFolder : extensionNameFolder.listFiles(AmbariMetaInfo.FILENAME_FILTER)) {
+      for (final File extensionVersionFolder : extensionNameFolder.listFiles(AmbariMetaInfo.FILENAME_FILTER)) {
         if (extensionVersionFolder.isFile()) {
           continue;
         }
         String extensionName = extensionNameFolder.getName();
         String extensionVersion = extensionVersionFolder.getName();
 
-        ExtensionModule extensionModule = new ExtensionModule(new ExtensionDirectory(extensionVersionFolder.getPath()), stackContext);
         String extensionKey = extensionName + StackManager.PATH_DELIMITER + extensionVersion;
-        extensionModules.put(extensionKey, extensionModule);
-        extensionMap.put(extensionKey, extensionModule.getModuleInfo());
+        tasks.put(extensionKey, pool.submit(new Callable<ExtensionModule>() {
+          @Override
+          public ExtensionModule call() throws AmbariException {
+            return new ExtensionModule(new ExtensionDirectory(extensionVersionFolder.getPath()), stackContext);
+          }
+        }));
       }
     }
 
-    if (stackMap.isEmpty()) {
-      throw new AmbariException("Unable to find extension definitions under " +
-          "extensionRoot = " + extensionRoot.getAbsolutePath());
-    }
-    return extensionModules;
+    return tasks;
   }
 }
@@ -17,13 +17,12 @@
  */
 package org.apache.ambari.server.state.alert;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,6 +48,7 @@ import org.apache.ambari.server.state.Service;
 import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.ServiceComponentHost;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +61,12 @@ import com.google.inject.Singleton;
  * list of {@link AlertDefinitionEntity}s. It is used in order to represent the
  * state of a group of definitions by using
  * {@link AlertDefinitionEntity#getHash()}
+ * <p/>
+ * The hash of a host is the XOR of the MD5 digests of the UUIDs of its
+ * definitions, so that it can be updated one definition at a time. The
+ * definitions of each cluster are indexed by service and component, which
+ * allows the hash of a host to be calculated without querying the database and
+ * a changed definition to be applied only to the hosts that it affects.
  */
 @Singleton
 public class AlertDefinitionHash {
@@ -116,11 +122,11 @@ public class AlertDefinitionHash {
   private ReentrantLock m_actionQueueLock = new ReentrantLock();
 
   /**
-   * The hashes for all hosts for any cluster. The key is the hostname and the
-   * value is a map between cluster name and hash.
+   * The definition index and cached host hashes of every cluster, keyed by
+   * cluster name.
    */
-  private ConcurrentMap<String, ConcurrentMap<String, String>> m_hashes =
-      new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+  private ConcurrentMap<String, ClusterIndex> m_indexes =
+      new ConcurrentHashMap<String, ClusterIndex>();
 
   /**
    * Gets a unique hash value reprssenting all of the alert definitions that
@@ -139,47 +145,92 @@ public class AlertDefinitionHash {
    * @return the unique hash or {@value #NULL_MD5_HASH} if none.
    */
   public String getHash(String clusterName, String hostName) {
-    ConcurrentMap<String, String> clusterMapping = m_hashes.get(hostName);
-    if (null == clusterMapping) {
-      clusterMapping = new ConcurrentHashMap<String, String>();
-      ConcurrentMap<String, String> temp = m_hashes.putIfAbsent(hostName, clusterMapping);
-      if (temp != null) {
-        clusterMapping = temp;
+    ClusterIndex index = m_indexes.get(clusterName);
+    if (null != index) {
+      String hash = index.getHash(hostName);
+      if (null != hash) {
+        return hash;
       }
     }
 
-    String hash = clusterMapping.get(hostName);
-    if (null != hash) {
-      return hash;
+    Cluster cluster = null;
+    try {
+      cluster = m_clusters.get().getCluster(clusterName);
+    } catch (ClusterNotFoundException clusterNotFound) {
+      LOG.warn("Unable to get alert definitions for the missing cluster {}",
+          clusterName);
+    } catch (AmbariException ambariException) {
+      LOG.error("Unable to get alert definitions", ambariException);
+    }
+
+    if (null == cluster) {
+      return NULL_MD5_HASH;
+    }
+
+    if (null == index) {
+      index = new ClusterIndex(cluster.getClusterId());
+      ClusterIndex temp = m_indexes.putIfAbsent(clusterName, index);
+      if (temp != null) {
+        index = temp;
+      }
     }
 
-    hash = hash(clusterName, hostName);
-    clusterMapping.put(clusterName, hash);
+    // read the components of the host before locking the index since this
+    // acquires cluster locks
+    Set<String> components = new HashSet<String>();
+    Set<String> masterServices = new HashSet<String>();
 
-    return hash;
+    List<ServiceComponentHost> serviceComponents = cluster.getServiceComponentHosts(hostName);
+    if (null != serviceComponents && !serviceComponents.isEmpty()) {
+      for (ServiceComponentHost serviceComponent : serviceComponents) {
+        components.add(getComponentKey(serviceComponent.getServiceName(),
+            serviceComponent.getServiceComponentName()));
+      }
+
+      // for every service, get the master components and see if the host
+      // is a master
+      for (Entry<String, Service> entry : cluster.getServices().entrySet()) {
+        Service service = entry.getValue();
+        Map<String, ServiceComponent> serviceComponentMap = service.getServiceComponents();
+        for (Entry<String, ServiceComponent> component : serviceComponentMap.entrySet()) {
+          if (component.getValue().isMasterComponent()) {
+            Map<String, ServiceComponentHost> hosts = component.getValue().getServiceComponentHosts();
+
+            if (hosts.containsKey(hostName)) {
+              masterServices.add(service.getName());
+            }
+          }
+        }
+      }
+    }
+
+    return index.addHost(hostName, components, masterServices);
   }
 
   /**
    * Invalidate all cached hashes causing subsequent lookups to recalculate.
+   * This also discards the definitions indexed for each cluster.
    */
   public void invalidateAll() {
-    m_hashes.clear();
+    m_indexes.clear();
   }
 
   /**
    * Invalidates the cached hash for the specified agent host across all
-   * clusters.
+   * clusters. This should be called when the components of the host change.
    *
    * @param hostName
    *          the host to invalidate the cache for (not {@code null}).
    */
   public void invalidate(String hostName) {
-    m_hashes.remove(hostName);
+    for (ClusterIndex index : m_indexes.values()) {
+      index.removeHost(hostName);
+    }
   }
 
   /**
    * Invalidates the cached hash for the specified agent host in the specified
-   * cluster.
+   * cluster. This should be called when the components of the host change.
    *
    * @param clusterName
    *          the name of the cluster (not {@code null}).
@@ -187,9 +238,9 @@ public class AlertDefinitionHash {
    *          the host to invalidate the cache for (not {@code null}).
    */
   public void invalidate(String clusterName, String hostName) {
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
-    if (null != clusterMapping) {
-      clusterMapping.remove(clusterName);
+    ClusterIndex index = m_indexes.get(clusterName);
+    if (null != index) {
+      index.removeHost(hostName);
     }
   }
 
@@ -206,12 +257,12 @@ public class AlertDefinitionHash {
       return false;
     }
 
-    Map<String, String> clusterMapping = m_hashes.get(hostName);
-    if (null == clusterMapping) {
+    ClusterIndex index = m_indexes.get(clusterName);
+    if (null == index) {
       return false;
     }
 
-    return clusterMapping.containsKey(clusterName);
+    return index.hasHost(hostName);
   }
 
   /**
@@ -252,6 +303,9 @@ public class AlertDefinitionHash {
    * Invalidate the hashes of any host that would be affected by the specified
    * definition. If the definition is an {@link SourceType#AGGREGATE}, this will
    * return an empty set since aggregates do not affect hosts.
+   * <p/>
+   * The definition is read back from the database so that cached hashes are
+   * updated with its current state, or have it removed if it was deleted.
    *
    * @param definition
    *          the definition to use to find the hosts to invlidate (not
@@ -260,6 +314,15 @@ public class AlertDefinitionHash {
    *         {@code null}).
    */
   public Set<String> invalidateHosts(AlertDefinitionEntity definition) {
+    AlertDefinitionEntity current = m_definitionDao.findById(
+        definition.getDefinitionId());
+
+    if (null == current) {
+      removeDefinition(definition.getClusterId(), definition.getDefinitionId());
+    } else {
+      updateDefinition(current.getClusterId(), new DefinitionDigest(current));
+    }
+
     return invalidateHosts(definition.getClusterId(),
         definition.getSourceType(),
         definition.getDefinitionName(), definition.getServiceName(),
@@ -270,6 +333,10 @@ public class AlertDefinitionHash {
    * Invalidate the hashes of any host that would be affected by the specified
    * definition. If the definition is an {@link SourceType#AGGREGATE}, this will
    * return an empty set since aggregates do not affect hosts.
+   * <p/>
+   * Cached hashes are not changed by this method; they are kept up to date by
+   * {@link #updateDefinition(AlertDefinition)} and
+   * {@link #removeDefinition(long, long)}.
    *
    * @param definition
    *          the definition to use to find the hosts to invlidate (not
@@ -306,13 +373,8 @@ public class AlertDefinitionHash {
       String definitionServiceName, String definitionComponentName) {
 
     Cluster cluster = null;
-    String clusterName = null;
     try {
       cluster = m_clusters.get().getClusterById(clusterId);
-      if (null != cluster) {
-        clusterName = cluster.getClusterName();
-      }
-
       if (null == cluster) {
         LOG.warn("Unable to lookup cluster with ID {}", clusterId);
       }
@@ -327,16 +389,88 @@ public class AlertDefinitionHash {
     // determine which hosts in the cluster would be affected by a change
     // to the specified definition; pass in the definition source type
     // to check for AGGREGATE
-    Set<String> affectedHosts = getAssociatedHosts(cluster,
-        definitionSourceType, definitionName,
+    return getAssociatedHosts(cluster, definitionSourceType, definitionName,
         definitionServiceName, definitionComponentName);
+  }
+
+  /**
+   * Updates the cached hashes of the hosts that run the specified definition,
+   * or that ran a previous version of it, to reflect its current state. Only
+   * clusters whose definitions have already been indexed are updated; others
+   * read the definition from the database when they are first hashed.
+   *
+   * @param definition
+   *          the created or changed definition (not {@code null}).
+   */
+  public void updateDefinition(AlertDefinition definition) {
+    updateDefinition(definition.getClusterId(), new DefinitionDigest(definition));
+  }
 
-    // invalidate all returned hosts
-    for (String hostName : affectedHosts) {
-      invalidate(clusterName, hostName);
+  /**
+   * Removes the specified definition from the cached hashes of the hosts that
+   * ran it.
+   *
+   * @param clusterId
+   *          the ID of the cluster of the definition.
+   * @param definitionId
+   *          the ID of the removed definition.
+   */
+  public void removeDefinition(long clusterId, long definitionId) {
+    for (ClusterIndex index : m_indexes.values()) {
+      if (index.m_clusterId == clusterId) {
+        index.update(definitionId, null);
+      }
     }
+  }
 
-    return affectedHosts;
+  /**
+   * Removes a deleted definition from the cached hashes and invalidates the
+   * hosts that ran it. Unlike {@link #invalidateHosts(AlertDefinitionEntity)},
+   * the definition is not read back from the database, where it may still be
+   * visible until the delete is committed.
+   *
+   * @param definition
+   *          the deleted definition (not {@code null}).
+   * @return the hosts that were invalidated, or an empty set (never
+   *         {@code null}).
+   */
+  public Set<String> removeDefinition(AlertDefinitionEntity definition) {
+    removeDefinition(definition.getClusterId(), definition.getDefinitionId());
+
+    return invalidateHosts(definition.getClusterId(),
+        definition.getSourceType(),
+        definition.getDefinitionName(), definition.getServiceName(),
+        definition.getComponentName());
+  }
+
+  /**
+   * Removes a deleted definition from the cached hashes and invalidates the
+   * hosts that ran it, without reading the definition back from the database.
+   *
+   * @param definition
+   *          the deleted definition (not {@code null}).
+   * @return the hosts that were invalidated, or an empty set (never
+   *         {@code null}).
+   */
+  public Set<String> removeDefinition(AlertDefinition definition) {
+    removeDefinition(definition.getClusterId(), definition.getDefinitionId());
+    return invalidateHosts(definition);
+  }
+
+  /**
+   * Applies the specified definition to the index of its cluster.
+   *
+   * @param clusterId
+   *          the ID of the cluster of the definition.
+   * @param definition
+   *          the current state of the definition (not {@code null}).
+   */
+  private void updateDefinition(long clusterId, DefinitionDigest definition) {
+    for (ClusterIndex index : m_indexes.values()) {
+      if (index.m_clusterId == clusterId) {
+        index.update(definition.m_definitionId, definition);
+      }
+    }
   }
 
   /**
@@ -557,59 +691,6 @@ public class AlertDefinitionHash {
     }
   }
 
-  /**
-   * Calculates a unique hash value representing all of the alert definitions
-   * that should be scheduled to run on a given host. Alerts of type
-   * {@link SourceType#AGGREGATE} are not included in the hash since they are
-   * not run on the agents.
-   *
-   * @param clusterName
-   *          the cluster name (not {@code null}).
-   * @param hostName
-   *          the host name (not {@code null}).
-   * @return the unique hash or {@value #NULL_MD5_HASH} if none.
-   */
-  private String hash(String clusterName, String hostName) {
-    Set<AlertDefinitionEntity> definitions = getAlertDefinitionEntities(
-        clusterName,
-        hostName);
-
-    // no definitions found for this host, don't bother hashing
-    if( null == definitions || definitions.size() == 0 ) {
-      return NULL_MD5_HASH;
-    }
-
-    // strip out all AGGREGATE types
-    Iterator<AlertDefinitionEntity> iterator = definitions.iterator();
-    while (iterator.hasNext()) {
-      if (SourceType.AGGREGATE.equals(iterator.next().getSourceType())) {
-        iterator.remove();
-      }
-    }
-
-    // build the UUIDs
-    List<String> uuids = new ArrayList<String>(definitions.size());
-    for (AlertDefinitionEntity definition : definitions) {
-      uuids.add(definition.getHash());
-    }
-
-    // sort the UUIDs so that the digest is created with bytes in the same order
-    Collections.sort(uuids);
-
-    try {
-      MessageDigest digest = MessageDigest.getInstance("MD5");
-      for (String uuid : uuids) {
-        digest.update(uuid.getBytes());
-      }
-
-      byte[] hashBytes = digest.digest();
-      return Hex.encodeHexString(hashBytes);
-    } catch (NoSuchAlgorithmException nsae) {
-      LOG.warn("Unable to calculate MD5 alert definition hash", nsae);
-      return NULL_MD5_HASH;
-    }
-  }
-
   /**
    * Gets the alert definition entities for the specified host. This will include the
    * following types of alert definitions:
@@ -692,4 +773,412 @@ public class AlertDefinitionHash {
 
     return definitions;
   }
+
+  /**
+   * Gets the key of a service component in the definition and host indexes.
+   *
+   * @param serviceName
+   *          the service name.
+   * @param componentName
+   *          the component name.
+   * @return the key.
+   */
+  private static String getComponentKey(String serviceName, String componentName) {
+    return serviceName + '/' + componentName;
+  }
+
+  /**
+   * Adds a value to the set mapped to the specified key.
+   */
+  private static <K, V> void addToIndex(Map<K, Set<V>> index, K key, V value) {
+    Set<V> values = index.get(key);
+    if (null == values) {
+      values = new HashSet<V>();
+      index.put(key, values);
+    }
+
+    values.add(value);
+  }
+
+  /**
+   * Removes a value from the set mapped to the specified key.
+   */
+  private static <K, V> void removeFromIndex(Map<K, Set<V>> index, K key, V value) {
+    Set<V> values = index.get(key);
+    if (null != values) {
+      values.remove(value);
+      if (values.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+
+  /**
+   * The alert definitions of a cluster, indexed by where they run, and the
+   * cached definitions of the hosts of the cluster. Hosts are also indexed by
+   * their components so that the hosts affected by a definition can be found
+   * without visiting every host.
+   * <p/>
+   * Definitions are read from the database when the first host is added.
+   * Changes to definitions made before that are ignored since they will be
+   * read along with the others.
+   */
+  private final class ClusterIndex {
+    /**
+     * The ID of the cluster.
+     */
+    private final long m_clusterId;
+
+    /**
+     * Whether the definitions of the cluster have been read.
+     */
+    private boolean m_loaded = false;
+
+    /**
+     * All definitions that run on agents, keyed by definition ID.
+     */
+    private final Map<Long, DefinitionDigest> m_definitions = new HashMap<Long, DefinitionDigest>();
+
+    /**
+     * The IDs of the definitions bound to a component, keyed by component.
+     */
+    private final Map<String, Set<Long>> m_componentDefinitions = new HashMap<String, Set<Long>>();
+
+    /**
+     * The IDs of the service scoped definitions which run on the masters of a
+     * service, keyed by service.
+     */
+    private final Map<String, Set<Long>> m_masterDefinitions = new HashMap<String, Set<Long>>();
+
+    /**
+     * The IDs of the definitions which run on every host.
+     */
+    private final Set<Long> m_agentDefinitions = new HashSet<Long>();
+
+    /**
+     * The definitions of every hashed host, keyed by host name.
+     */
+    private final Map<String, HostDefinitions> m_hosts = new HashMap<String, HostDefinitions>();
+
+    /**
+     * The hashed hosts which have a component, keyed by component.
+     */
+    private final Map<String, Set<String>> m_componentHosts = new HashMap<String, Set<String>>();
+
+    /**
+     * The hashed hosts which run a master of a service, keyed by service.
+     */
+    private final Map<String, Set<String>> m_masterHosts = new HashMap<String, Set<String>>();
+
+    private ClusterIndex(long clusterId) {
+      m_clusterId = clusterId;
+    }
+
+    /**
+     * @return the cached hash of the host, or {@code null} if none.
+     */
+    private synchronized String getHash(String hostName) {
+      HostDefinitions host = m_hosts.get(hostName);
+      return null == host ? null : host.getHash();
+    }
+
+    private synchronized boolean hasHost(String hostName) {
+      return m_hosts.containsKey(hostName);
+    }
+
+    /**
+     * Collects the definitions of a host from the index.
+     *
+     * @param hostName
+     *          the host name.
+     * @param components
+     *          the component keys of the components on the host.
+     * @param masterServices
+     *          the services that the host is a master of.
+     * @return the hash of the host.
+     */
+    private synchronized String addHost(String hostName, Set<String> components,
+        Set<String> masterServices) {
+      HostDefinitions host = m_hosts.get(hostName);
+      if (null != host) {
+        return host.getHash();
+      }
+
+      load();
+
+      host = new HostDefinitions(components, masterServices);
+      for (String component : components) {
+        addDefinitions(host, m_componentDefinitions.get(component));
+        addToIndex(m_componentHosts, component, hostName);
+      }
+
+      for (String service : masterServices) {
+        addDefinitions(host, m_masterDefinitions.get(service));
+        addToIndex(m_masterHosts, service, hostName);
+      }
+
+      addDefinitions(host, m_agentDefinitions);
+      m_hosts.put(hostName, host);
+
+      return host.getHash();
+    }
+
+    private void addDefinitions(HostDefinitions host, Set<Long> definitionIds) {
+      if (null != definitionIds) {
+        for (Long definitionId : definitionIds) {
+          host.add(m_definitions.get(definitionId));
+        }
+      }
+    }
+
+    private synchronized void removeHost(String hostName) {
+      HostDefinitions host = m_hosts.remove(hostName);
+      if (null == host) {
+        return;
+      }
+
+      for (String component : host.m_components) {
+        removeFromIndex(m_componentHosts, component, hostName);
+      }
+
+      for (String service : host.m_masterServices) {
+        removeFromIndex(m_masterHosts, service, hostName);
+      }
+    }
+
+    /**
+     * Replaces a definition in the index and in the hashes of the hosts that
+     * ran its previous version or run its new one.
+     *
+     * @param definitionId
+     *          the ID of the definition.
+     * @param definition
+     *          the current state of the definition, or {@code null} if it was
+     *          removed.
+     */
+    private synchronized void update(long definitionId, DefinitionDigest definition) {
+      if (!m_loaded) {
+        return;
+      }
+
+      if (null != definition && SourceType.AGGREGATE == definition.m_sourceType) {
+        definition = null;
+      }
+
+      Set<String> affectedHosts = new HashSet<String>();
+
+      DefinitionDigest previous = m_definitions.remove(definitionId);
+      if (null != previous) {
+        unindex(previous);
+        affectedHosts.addAll(getHosts(previous));
+      }
+
+      if (null != definition) {
+        m_definitions.put(definitionId, definition);
+        index(definition);
+        affectedHosts.addAll(getHosts(definition));
+      }
+
+      for (String hostName : affectedHosts) {
+        HostDefinitions host = m_hosts.get(hostName);
+        if (null != previous) {
+          host.remove(previous);
+        }
+
+        if (null != definition && host.runs(definition)) {
+          host.add(definition);
+        }
+      }
+    }
+
+    private void load() {
+      if (m_loaded) {
+        return;
+      }
+
+      List<AlertDefinitionEntity> entities = m_definitionDao.findAll(m_clusterId);
+      if (null != entities) {
+        for (AlertDefinitionEntity entity : entities) {
+          if (SourceType.AGGREGATE != entity.getSourceType()) {
+            DefinitionDigest definition = new DefinitionDigest(entity);
+            m_definitions.put(definition.m_definitionId, definition);
+            index(definition);
+          }
+        }
+      }
+
+      m_loaded = true;
+    }
+
+    private void index(DefinitionDigest definition) {
+      if (definition.m_agentScoped) {
+        m_agentDefinitions.add(definition.m_definitionId);
+      } else if (null != definition.m_componentKey) {
+        addToIndex(m_componentDefinitions, definition.m_componentKey,
+            definition.m_definitionId);
+      } else if (null != definition.m_masterService) {
+        addToIndex(m_masterDefinitions, definition.m_masterService,
+            definition.m_definitionId);
+      }
+    }
+
+    private void unindex(DefinitionDigest definition) {
+      if (definition.m_agentScoped) {
+        m_agentDefinitions.remove(definition.m_definitionId);
+      } else if (null != definition.m_componentKey) {
+        removeFromIndex(m_componentDefinitions, definition.m_componentKey,
+            definition.m_definitionId);
+      } else if (null != definition.m_masterService) {
+        removeFromIndex(m_masterDefinitions, definition.m_masterService,
+            definition.m_definitionId);
+      }
+    }
+
+    /**
+     * @return the hashed hosts which run the definition (never {@code null}).
+     */
+    private Collection<String> getHosts(DefinitionDigest definition) {
+      Collection<String> hosts = null;
+      if (definition.m_agentScoped) {
+        hosts = m_hosts.keySet();
+      } else if (null != definition.m_componentKey) {
+        hosts = m_componentHosts.get(definition.m_componentKey);
+      } else if (null != definition.m_masterService) {
+        hosts = m_masterHosts.get(definition.m_masterService);
+      }
+
+      if (null == hosts) {
+        return Collections.emptySet();
+      }
+
+      return hosts;
+    }
+  }
+
+  /**
+   * The definitions that run on a host and the XOR of their digests.
+   */
+  private static final class HostDefinitions {
+    /**
+     * The component keys of the components on the host.
+     */
+    private final Set<String> m_components;
+
+    /**
+     * The services that the host is a master of.
+     */
+    private final Set<String> m_masterServices;
+
+    private final Set<Long> m_definitionIds = new HashSet<Long>();
+    private long m_high = 0;
+    private long m_low = 0;
+
+    private HostDefinitions(Set<String> components, Set<String> masterServices) {
+      m_components = components;
+      m_masterServices = masterServices;
+    }
+
+    private boolean runs(DefinitionDigest definition) {
+      if (definition.m_agentScoped) {
+        return true;
+      }
+
+      if (null != definition.m_componentKey) {
+        return m_components.contains(definition.m_componentKey);
+      }
+
+      return null != definition.m_masterService
+          && m_masterServices.contains(definition.m_masterService);
+    }
+
+    private void add(DefinitionDigest definition) {
+      if (m_definitionIds.add(definition.m_definitionId)) {
+        m_high ^= definition.m_high;
+        m_low ^= definition.m_low;
+      }
+    }
+
+    private void remove(DefinitionDigest definition) {
+      if (m_definitionIds.remove(definition.m_definitionId)) {
+        m_high ^= definition.m_high;
+        m_low ^= definition.m_low;
+      }
+    }
+
+    private String getHash() {
+      if (m_definitionIds.isEmpty()) {
+        return NULL_MD5_HASH;
+      }
+
+      byte[] hashBytes = ByteBuffer.allocate(16).putLong(m_high).putLong(m_low).array();
+      return Hex.encodeHexString(hashBytes);
+    }
+  }
+
+  /**
+   * Where a definition runs and the MD5 digest of its UUID.
+   */
+  private static final class DefinitionDigest {
+    private final long m_definitionId;
+    private final SourceType m_sourceType;
+
+    /**
+     * Whether the definition runs on every host.
+     */
+    private final boolean m_agentScoped;
+
+    /**
+     * The component that the definition is bound to, if any.
+     */
+    private final String m_componentKey;
+
+    /**
+     * The service whose masters run the definition, if it is a service scoped
+     * definition without a component.
+     */
+    private final String m_masterService;
+
+    private final long m_high;
+    private final long m_low;
+
+    private DefinitionDigest(AlertDefinitionEntity entity) {
+      this(entity.getDefinitionId(), entity.getSourceType(),
+          entity.getServiceName(), entity.getComponentName(),
+          entity.getScope(), entity.getHash());
+    }
+
+    private DefinitionDigest(AlertDefinition definition) {
+      this(definition.getDefinitionId(),
+          null == definition.getSource() ? null : definition.getSource().getType(),
+          definition.getServiceName(), definition.getComponentName(),
+          definition.getScope(), definition.getUuid());
+    }
+
+    private DefinitionDigest(long definitionId, SourceType sourceType,
+        String serviceName, String componentName, Scope scope, String uuid) {
+      m_definitionId = definitionId;
+      m_sourceType = sourceType;
+
+      // mirror the lookups that getAlertDefinitionEntities(String, String)
+      // performs for a host
+      m_agentScoped = Services.AMBARI.name().equals(serviceName)
+          && Components.AMBARI_AGENT.name().equals(componentName);
+
+      if (!m_agentScoped && null != componentName) {
+        m_componentKey = getComponentKey(serviceName, componentName);
+      } else {
+        m_componentKey = null;
+      }
+
+      if (!m_agentScoped && null == componentName && Scope.SERVICE == scope) {
+        m_masterService = serviceName;
+      } else {
+        m_masterService = null;
+      }
+
+      ByteBuffer digest = ByteBuffer.wrap(DigestUtils.md5(null == uuid ? "" : uuid));
+      m_high = digest.getLong();
+      m_low = digest.getLong();
+    }
+  }
 }
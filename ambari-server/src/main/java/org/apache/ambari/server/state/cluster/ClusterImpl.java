@@ -37,6 +37,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
@@ -207,6 +208,33 @@ public class ClusterImpl implements Cluster {
 
   private final ReadWriteLock clusterGlobalLock;
 
+  /**
+   * Guards the cluster config mappings and service config versions. Config
+   * changes only take this stripe so that they do not serialize against
+   * heartbeat driven host component updates which take the
+   * {@link #clusterGlobalLock}. Operations which need both always acquire the
+   * {@link #clusterGlobalLock} first.
+   */
+  private final ReadWriteLock clusterConfigLock;
+
+  /**
+   * An immutable snapshot of the cluster config mappings which desired config
+   * lookups read without locking, or {@code null} if it must be rebuilt from
+   * the {@link ClusterEntity}. It is discarded whenever a mapping changes.
+   */
+  private volatile List<DesiredConfigMapping> configMappings;
+
+  /**
+   * Guards publishing and discarding {@link #configMappings} so that a
+   * snapshot built before a change is never published after it.
+   */
+  private final Object configMappingsMonitor = new Object();
+
+  /**
+   * Incremented every time {@link #configMappings} is discarded.
+   */
+  private long configMappingsVersion;
+
   // This is a lock for operations that do not need to be cluster global
   private final Lock hostTransitionStateWriteLock;
 
@@ -324,6 +352,7 @@ public class ClusterImpl implements Cluster {
     injector.injectMembers(this);
 
     clusterGlobalLock = lockFactory.newReadWriteLock("clusterGlobalLock");
+    clusterConfigLock = lockFactory.newReadWriteLock("clusterConfigLock");
     hostTransitionStateWriteLock = lockFactory.newLock("hostTransitionStateLock");
 
     loadStackVersion();
@@ -1849,50 +1878,39 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Map<String, Config> getConfigsByType(String configType) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)) {
-        return null;
-      }
-
-      return Collections.unmodifiableMap(allConfigs.get(configType));
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    // allConfigs is a concurrent map, so configs can be read without locking
+    Map<String, Config> configs = allConfigs.get(configType);
+    if (null == configs) {
+      return null;
     }
+
+    return Collections.unmodifiableMap(configs);
   }
 
   @Override
   public Config getConfig(String configType, String versionTag) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)
-          || !allConfigs.get(configType).containsKey(versionTag)) {
-        return null;
-      }
-      return allConfigs.get(configType).get(versionTag);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    Map<String, Config> configs = allConfigs.get(configType);
+    if (null == configs) {
+      return null;
     }
+
+    return configs.get(versionTag);
   }
 
   @Override
   public Config getConfigByVersion(String configType, Long configVersion) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)) {
-        return null;
-      }
+    Map<String, Config> configs = allConfigs.get(configType);
+    if (null == configs) {
+      return null;
+    }
 
-      for (Map.Entry<String, Config> entry : allConfigs.get(configType).entrySet()) {
-        if (entry.getValue().getVersion().equals(configVersion)) {
-          return entry.getValue();
-        }
+    for (Map.Entry<String, Config> entry : configs.entrySet()) {
+      if (entry.getValue().getVersion().equals(configVersion)) {
+        return entry.getValue();
       }
-
-      return null;
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+
+    return null;
   }
 
   @Override
@@ -1901,32 +1919,39 @@ public class ClusterImpl implements Cluster {
       throw new IllegalArgumentException("Config type cannot be empty");
     }
 
-    clusterGlobalLock.writeLock().lock();
-    try {
-      if (!allConfigs.containsKey(config.getType())) {
-        allConfigs.put(config.getType(), new ConcurrentHashMap<String, Config>());
-      }
+    getConfigsForType(config.getType()).put(config.getTag(), config);
+  }
 
-      allConfigs.get(config.getType()).put(config.getTag(), config);
-    } finally {
-      clusterGlobalLock.writeLock().unlock();
+  /**
+   * Gets the {@link #allConfigs} entry for the given type, creating it if it
+   * doesn't exist yet.
+   *
+   * @param configType
+   *          the config type
+   * @return the map of version tag to config for the type (never {@code null})
+   */
+  private ConcurrentMap<String, Config> getConfigsForType(String configType) {
+    ConcurrentMap<String, Config> configs = allConfigs.get(configType);
+    if (null == configs) {
+      configs = new ConcurrentHashMap<>();
+      ConcurrentMap<String, Config> existing = allConfigs.putIfAbsent(configType, configs);
+      if (null != existing) {
+        configs = existing;
+      }
     }
+
+    return configs;
   }
 
   @Override
   public Collection<Config> getAllConfigs() {
-    clusterGlobalLock.readLock().lock();
-    try {
-      List<Config> list = new ArrayList<Config>();
-      for (Entry<String, ConcurrentMap<String, Config>> entry : allConfigs.entrySet()) {
-        for (Config config : entry.getValue().values()) {
-          list.add(config);
-        }
+    List<Config> list = new ArrayList<Config>();
+    for (Entry<String, ConcurrentMap<String, Config>> entry : allConfigs.entrySet()) {
+      for (Config config : entry.getValue().values()) {
+        list.add(config);
       }
-      return Collections.unmodifiableList(list);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+    return Collections.unmodifiableList(list);
   }
 
   @Override
@@ -1964,10 +1989,13 @@ public class ClusterImpl implements Cluster {
   @Transactional
   public void refresh() {
     clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       ClusterEntity clusterEntity = getClusterEntity();
       clusterDAO.refresh(clusterEntity);
     } finally {
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
       clusterGlobalLock.writeLock().unlock();
     }
   }
@@ -2032,7 +2060,14 @@ public class ClusterImpl implements Cluster {
   private void deleteService(Service service) throws AmbariException {
     final String serviceName = service.getName();
 
-    service.delete();
+    // deleting a service deselects its config mappings
+    clusterConfigLock.writeLock().lock();
+    try {
+      service.delete();
+    } finally {
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
+    }
 
     serviceComponentHosts.remove(serviceName);
 
@@ -2068,12 +2103,15 @@ public class ClusterImpl implements Cluster {
   @Transactional
   public void delete() throws AmbariException {
     clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       refresh();
       deleteAllServices();
       removeEntities();
       allConfigs.clear();
     } finally {
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
       clusterGlobalLock.writeLock().unlock();
     }
   }
@@ -2099,7 +2137,7 @@ public class ClusterImpl implements Cluster {
       throw new NullPointerException("User must be specified.");
     }
 
-    clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       if (configs == null) {
         return null;
@@ -2127,7 +2165,8 @@ public class ClusterImpl implements Cluster {
 
       return serviceConfigVersionResponse;
     } finally {
-      clusterGlobalLock.writeLock().unlock();
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
     }
   }
 
@@ -2162,76 +2201,125 @@ public class ClusterImpl implements Cluster {
    * @return a map of type-to-configuration information.
    */
   private Map<String, Set<DesiredConfig>> getDesiredConfigs(boolean allVersions) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      Map<String, Set<DesiredConfig>> map = new HashMap<>();
-      Collection<String> types = new HashSet<>();
-      Collection<ClusterConfigMappingEntity> entities = getClusterEntity().getConfigMappingEntities();
+    Map<String, Set<DesiredConfig>> map = new HashMap<>();
+    Collection<String> types = new HashSet<>();
+
+    for (DesiredConfigMapping e : getConfigMappings()) {
+      if (allVersions || e.selected) {
+        DesiredConfig c = new DesiredConfig();
+        c.setServiceName(null);
+        c.setTag(e.tag);
+        c.setUser(e.user);
+
+        Map<String, Config> configMap = allConfigs.get(e.type);
+        if (null == configMap) {
+          LOG.error("Config inconsistency exists:" +
+              " unknown configType=" + e.type);
+          continue;
+        }
 
-      for (ClusterConfigMappingEntity e : entities) {
-        if (allVersions || e.isSelected() > 0) {
-          DesiredConfig c = new DesiredConfig();
-          c.setServiceName(null);
-          c.setTag(e.getTag());
-          c.setUser(e.getUser());
-          if(!allConfigs.containsKey(e.getType())) {
-            LOG.error("Config inconsistency exists:" +
-                " unknown configType=" + e.getType());
-            continue;
-          }
+        Config config = configMap.get(e.tag);
+        if (null == config) {
+          LOG.debug("Config inconsistency exists for typeName=" +
+                  e.type +
+                  ", unknown versionTag=" + e.tag);
+          continue;
+        }
 
-          Map<String, Config> configMap = allConfigs.get(e.getType());
-          if(!configMap.containsKey(e.getTag())) {
-            LOG.debug("Config inconsistency exists for typeName=" +
-                    e.getType() +
-                    ", unknown versionTag=" + e.getTag());
-            continue;
-          }
+        c.setVersion(config.getVersion());
+
+        Set<DesiredConfig> configs = map.get(e.type);
+        if (configs == null) {
+          configs = new HashSet<>();
+        }
+
+        configs.add(c);
+
+        map.put(e.type, configs);
+        types.add(e.type);
+      }
+    }
 
-          Config config = configMap.get(e.getTag());
-          c.setVersion(config.getVersion());
+    // TODO AMBARI-10679, need efficient caching from hostId to hostName...
+    Map<Long, String> hostIdToName = new HashMap<Long, String>();
 
-          Set<DesiredConfig> configs = map.get(e.getType());
-          if (configs == null) {
-            configs = new HashSet<>();
+    if (!map.isEmpty()) {
+      Map<String, List<HostConfigMapping>> hostMappingsByType =
+        hostConfigMappingDAO.findSelectedHostsByTypes(clusterId, types);
+
+      for (Entry<String, Set<DesiredConfig>> entry : map.entrySet()) {
+        List<DesiredConfig.HostOverride> hostOverrides = new ArrayList<DesiredConfig.HostOverride>();
+        for (HostConfigMapping mappingEntity : hostMappingsByType.get(entry.getKey())) {
+
+          if (!hostIdToName.containsKey(mappingEntity.getHostId())) {
+            HostEntity hostEntity = hostDAO.findById(mappingEntity.getHostId());
+            hostIdToName.put(mappingEntity.getHostId(), hostEntity.getHostName());
           }
 
-          configs.add(c);
+          hostOverrides.add(new DesiredConfig.HostOverride(
+              hostIdToName.get(mappingEntity.getHostId()), mappingEntity.getVersion()));
+        }
 
-          map.put(e.getType(), configs);
-          types.add(e.getType());
+        for (DesiredConfig c: entry.getValue()) {
+          c.setHostOverrides(hostOverrides);
         }
       }
+    }
 
-      // TODO AMBARI-10679, need efficient caching from hostId to hostName...
-      Map<Long, String> hostIdToName = new HashMap<Long, String>();
+    return map;
+  }
 
-      if (!map.isEmpty()) {
-        Map<String, List<HostConfigMapping>> hostMappingsByType =
-          hostConfigMappingDAO.findSelectedHostsByTypes(clusterId, types);
+  /**
+   * Gets the snapshot of the cluster config mappings, rebuilding it from the
+   * {@link ClusterEntity} if a mapping changed since it was last built.
+   *
+   * @return the config mappings of this cluster (never {@code null})
+   */
+  private List<DesiredConfigMapping> getConfigMappings() {
+    List<DesiredConfigMapping> mappings = configMappings;
+    if (null != mappings) {
+      return mappings;
+    }
 
-        for (Entry<String, Set<DesiredConfig>> entry : map.entrySet()) {
-          List<DesiredConfig.HostOverride> hostOverrides = new ArrayList<DesiredConfig.HostOverride>();
-          for (HostConfigMapping mappingEntity : hostMappingsByType.get(entry.getKey())) {
+    clusterConfigLock.readLock().lock();
+    try {
+      long version;
+      synchronized (configMappingsMonitor) {
+        version = configMappingsVersion;
+      }
 
-            if (!hostIdToName.containsKey(mappingEntity.getHostId())) {
-              HostEntity hostEntity = hostDAO.findById(mappingEntity.getHostId());
-              hostIdToName.put(mappingEntity.getHostId(), hostEntity.getHostName());
-            }
+      Collection<ClusterConfigMappingEntity> entities = getClusterEntity().getConfigMappingEntities();
+      List<DesiredConfigMapping> snapshot = new ArrayList<>(entities.size());
+      for (ClusterConfigMappingEntity entity : entities) {
+        snapshot.add(new DesiredConfigMapping(entity));
+      }
 
-            hostOverrides.add(new DesiredConfig.HostOverride(
-                hostIdToName.get(mappingEntity.getHostId()), mappingEntity.getVersion()));
-          }
+      mappings = Collections.unmodifiableList(snapshot);
 
-          for (DesiredConfig c: entry.getValue()) {
-            c.setHostOverrides(hostOverrides);
-          }
+      // a thread in the middle of changing the mappings must not publish what
+      // it sees since the change may still be rolled back
+      boolean changing = ((ReentrantReadWriteLock.WriteLock) clusterConfigLock.writeLock()).isHeldByCurrentThread();
+      synchronized (configMappingsMonitor) {
+        if (!changing && version == configMappingsVersion) {
+          configMappings = mappings;
         }
       }
 
-      return map;
+      return mappings;
     } finally {
-      clusterGlobalLock.readLock().unlock();
+      clusterConfigLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Discards the snapshot of the cluster config mappings. This must be invoked
+   * after any of the {@link ClusterConfigMappingEntity}s of this cluster has
+   * been added, removed or selected.
+   */
+  private void invalidateConfigMappings() {
+    synchronized (configMappingsMonitor) {
+      configMappingsVersion++;
+      configMappings = null;
     }
   }
 
@@ -2244,7 +2332,7 @@ public class ClusterImpl implements Cluster {
     // Create next service config version
     ServiceConfigEntity serviceConfigEntity = new ServiceConfigEntity();
 
-    clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       ClusterEntity clusterEntity = getClusterEntity();
       // set config group
@@ -2281,7 +2369,7 @@ public class ClusterImpl implements Cluster {
         serviceConfigEntity = serviceConfigDAO.merge(serviceConfigEntity);
       }
     } finally {
-      clusterGlobalLock.writeLock().unlock();
+      clusterConfigLock.writeLock().unlock();
     }
 
     configChangeLog.info("Cluster '{}' changed by: '{}'; service_name='{}' config_group='{}' config_group_id='{}' " +
@@ -2339,19 +2427,20 @@ public class ClusterImpl implements Cluster {
       throw new NullPointerException("User must be specified.");
     }
 
-    clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       ServiceConfigVersionResponse serviceConfigVersionResponse = applyServiceConfigVersion(
           serviceName, version, user, note);
       return serviceConfigVersionResponse;
     } finally {
-      clusterGlobalLock.writeLock().unlock();
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
     }
   }
 
   @Override
   public Map<String, Collection<ServiceConfigVersionResponse>> getActiveServiceConfigVersions() {
-    clusterGlobalLock.readLock().lock();
+    clusterConfigLock.readLock().lock();
     try {
       Map<String, Collection<ServiceConfigVersionResponse>> map = new HashMap<String, Collection<ServiceConfigVersionResponse>>();
 
@@ -2365,13 +2454,13 @@ public class ClusterImpl implements Cluster {
       }
       return map;
     } finally {
-      clusterGlobalLock.readLock().unlock();
+      clusterConfigLock.readLock().unlock();
     }
   }
 
   @Override
   public List<ServiceConfigVersionResponse> getServiceConfigVersions() {
-    clusterGlobalLock.readLock().lock();
+    clusterConfigLock.readLock().lock();
     try {
       List<ServiceConfigVersionResponse> serviceConfigVersionResponses = new ArrayList<ServiceConfigVersionResponse>();
 
@@ -2424,7 +2513,7 @@ public class ClusterImpl implements Cluster {
 
       return serviceConfigVersionResponses;
     } finally {
-      clusterGlobalLock.readLock().unlock();
+      clusterConfigLock.readLock().unlock();
     }
   }
 
@@ -2456,7 +2545,7 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public List<ServiceConfigVersionResponse> getActiveServiceConfigVersionResponse(String serviceName) {
-    clusterGlobalLock.readLock().lock();
+    clusterConfigLock.readLock().lock();
     try {
       List<ServiceConfigEntity> activeServiceConfigVersionEntities = new ArrayList<ServiceConfigEntity>();
       List<ServiceConfigVersionResponse> activeServiceConfigVersionResponses = new ArrayList<ServiceConfigVersionResponse>();
@@ -2468,7 +2557,7 @@ public class ClusterImpl implements Cluster {
       }
       return activeServiceConfigVersionResponses;
     } finally {
-      clusterGlobalLock.readLock().unlock();
+      clusterConfigLock.readLock().unlock();
     }
   }
 
@@ -2546,6 +2635,8 @@ public class ClusterImpl implements Cluster {
         clusterDAO.mergeConfigMapping(entity);
       }
 
+      invalidateConfigMappings();
+
       for (ClusterConfigEntity configEntity : serviceConfigEntity.getClusterConfigEntities()) {
         selectConfig(configEntity.getType(), configEntity.getTag(), user);
       }
@@ -2623,6 +2714,8 @@ public class ClusterImpl implements Cluster {
 
     clusterEntity.getConfigMappingEntities().add(entity);
     clusterDAO.merge(clusterEntity);
+
+    invalidateConfigMappings();
   }
 
   @Transactional
@@ -3078,6 +3171,7 @@ public class ClusterImpl implements Cluster {
   @Transactional
   public void applyLatestConfigurations(StackId stackId) {
     clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
 
     try {
       ClusterEntity clusterEntity = getClusterEntity();
@@ -3116,6 +3210,8 @@ public class ClusterImpl implements Cluster {
 
       cacheConfigurations();
     } finally {
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
       clusterGlobalLock.writeLock().unlock();
     }
 
@@ -3280,6 +3376,8 @@ public class ClusterImpl implements Cluster {
 
     clusterEntity.setConfigMappingEntities(configMappingEntities);
     clusterEntity = clusterDAO.merge(clusterEntity);
+
+    invalidateConfigMappings();
   }
 
   /**
@@ -3288,36 +3386,53 @@ public class ClusterImpl implements Cluster {
   @Override
   public void removeConfigurations(StackId stackId) {
     clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       removeAllConfigsForStack(stackId);
       cacheConfigurations();
     } finally {
+      invalidateConfigMappings();
+      clusterConfigLock.writeLock().unlock();
       clusterGlobalLock.writeLock().unlock();
     }
   }
 
   /**
    * Caches all of the {@link ClusterConfigEntity}s in {@link #allConfigs}.
+   * Since configurations are read without locking, the new configurations are
+   * added before the stale ones are removed instead of clearing the cache.
    */
   private void cacheConfigurations() {
     clusterGlobalLock.writeLock().lock();
+    clusterConfigLock.writeLock().lock();
     try {
       ClusterEntity clusterEntity = getClusterEntity();
-      allConfigs.clear();
-
-      if (!clusterEntity.getClusterConfigEntities().isEmpty()) {
-        for (ClusterConfigEntity entity : clusterEntity.getClusterConfigEntities()) {
+      Map<String, Set<String>> tagsByType = new HashMap<>();
 
-          if (!allConfigs.containsKey(entity.getType())) {
-            allConfigs.put(entity.getType(), new ConcurrentHashMap<String, Config>());
-          }
+      for (ClusterConfigEntity entity : clusterEntity.getClusterConfigEntities()) {
+        Config config = configFactory.createExisting(this, entity);
+        getConfigsForType(entity.getType()).put(entity.getTag(), config);
 
-          Config config = configFactory.createExisting(this, entity);
+        Set<String> tags = tagsByType.get(entity.getType());
+        if (null == tags) {
+          tags = new HashSet<>();
+          tagsByType.put(entity.getType(), tags);
+        }
+        tags.add(entity.getTag());
+      }
 
-          allConfigs.get(entity.getType()).put(entity.getTag(), config);
+      Iterator<Entry<String, ConcurrentMap<String, Config>>> iterator = allConfigs.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<String, ConcurrentMap<String, Config>> entry = iterator.next();
+        Set<String> tags = tagsByType.get(entry.getKey());
+        if (null == tags) {
+          iterator.remove();
+        } else {
+          entry.getValue().keySet().retainAll(tags);
         }
       }
     } finally {
+      clusterConfigLock.writeLock().unlock();
       clusterGlobalLock.writeLock().unlock();
     }
   }
@@ -3473,4 +3588,22 @@ public class ClusterImpl implements Cluster {
 
     m_clusterPropertyCache.clear();
   }
+
+  /**
+   * An immutable copy of a {@link ClusterConfigMappingEntity} which is safe to
+   * share between threads without holding the {@link #clusterConfigLock}.
+   */
+  private static final class DesiredConfigMapping {
+    private final String type;
+    private final String tag;
+    private final String user;
+    private final boolean selected;
+
+    private DesiredConfigMapping(ClusterConfigMappingEntity entity) {
+      type = entity.getType();
+      tag = entity.getTag();
+      user = entity.getUser();
+      selected = entity.isSelected() > 0;
+    }
+  }
 }
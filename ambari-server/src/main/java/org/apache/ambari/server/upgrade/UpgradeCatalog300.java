@@ -19,10 +19,13 @@ package org.apache.ambari.server.upgrade;
 
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.controller.AmbariManagementController;
+import org.apache.ambari.server.orm.DBAccessor.DBColumnInfo;
 import org.apache.ambari.server.orm.dao.DaoUtils;
 import org.apache.ambari.server.state.Cluster;
 import org.apache.ambari.server.state.Clusters;
@@ -41,6 +44,9 @@ public class UpgradeCatalog300 extends AbstractUpgradeCatalog {
    */
   private static final Logger LOG = LoggerFactory.getLogger(UpgradeCatalog300.class);
 
+  protected static final String EXECUTION_COMMAND_PART_TABLE = "execution_command_part";
+  protected static final String STAGE_TABLE = "stage";
+
   @Inject
   DaoUtils daoUtils;
 
@@ -83,6 +89,7 @@ public class UpgradeCatalog300 extends AbstractUpgradeCatalog {
    */
   @Override
   protected void executeDDLUpdates() throws AmbariException, SQLException {
+    createExecutionCommandPartTable();
   }
 
   /**
@@ -101,6 +108,26 @@ public class UpgradeCatalog300 extends AbstractUpgradeCatalog {
     showHcatDeletedUserMessage();
   }
 
+  /**
+   * Creates the table holding the parts which the execution commands of a
+   * stage share, such as configurations and cluster host info.
+   *
+   * @throws SQLException
+   */
+  protected void createExecutionCommandPartTable() throws SQLException {
+    LOG.info("Creating {} table", EXECUTION_COMMAND_PART_TABLE);
+
+    List<DBColumnInfo> columns = new ArrayList<>();
+    columns.add(new DBColumnInfo("request_id", Long.class, null, null, false));
+    columns.add(new DBColumnInfo("stage_id", Long.class, null, null, false));
+    columns.add(new DBColumnInfo("part_hash", String.class, 64, null, false));
+    columns.add(new DBColumnInfo("content", byte[].class, null, null, true));
+    dbAccessor.createTable(EXECUTION_COMMAND_PART_TABLE, columns, "request_id", "stage_id", "part_hash");
+
+    dbAccessor.addFKConstraint(EXECUTION_COMMAND_PART_TABLE, "FK_ec_part_stage",
+        new String[] { "stage_id", "request_id" }, STAGE_TABLE, new String[] { "stage_id", "request_id" }, false);
+  }
+
   protected void showHcatDeletedUserMessage() {
     AmbariManagementController ambariManagementController = injector.getInstance(AmbariManagementController.class);
     Clusters clusters = ambariManagementController.getClusters();
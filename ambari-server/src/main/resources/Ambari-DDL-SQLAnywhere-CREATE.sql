@@ -394,6 +394,14 @@ CREATE TABLE role_success_criteria (
   CONSTRAINT PK_role_success_criteria PRIMARY KEY (role, request_id, stage_id),
   CONSTRAINT role_success_criteria_stage_id FOREIGN KEY (stage_id, request_id) REFERENCES stage (stage_id, request_id));
 
+CREATE TABLE execution_command_part (
+  request_id NUMERIC(19) NOT NULL,
+  stage_id NUMERIC(19) NOT NULL,
+  part_hash VARCHAR(64) NOT NULL,
+  content IMAGE,
+  CONSTRAINT PK_execution_command_part PRIMARY KEY (request_id, stage_id, part_hash),
+  CONSTRAINT FK_ec_part_stage FOREIGN KEY (stage_id, request_id) REFERENCES stage (stage_id, request_id));
+
 CREATE TABLE requestresourcefilter (
   filter_id NUMERIC(19) NOT NULL,
   request_id NUMERIC(19) NOT NULL,
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.actionmanager;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.utils.StageUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * Tests {@link ActiveStagesModel}.
+ */
+public class ActiveStagesModelTest {
+
+  private static final long RELOAD_INTERVAL = 60000L;
+  private static final String HOST = "c6401.ambari.apache.org";
+
+  private Injector injector;
+  private ActionDBAccessor db;
+
+  @Before
+  public void setup() throws Exception {
+    injector = Guice.createInjector(new InMemoryDefaultTestModule());
+    injector.getInstance(GuiceJpaInitializer.class);
+    injector.getInstance(StageUtils.class);
+
+    db = createMock(ActionDBAccessor.class);
+  }
+
+  @After
+  public void teardown() {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  /**
+   * Nothing is read from the database when nothing changed since the initial
+   * load.
+   */
+  @Test
+  public void testNoReloadWithoutEvents() throws Exception {
+    Stage stage = createStage(1L, 1L, 100L, HostRoleStatus.QUEUED);
+
+    expect(db.getCommandsInProgressCount()).andReturn(1).once();
+    expect(db.getStagesInProgress()).andReturn(Collections.singletonList(stage)).once();
+    replay(db);
+
+    ActiveStagesModel model = new ActiveStagesModel(db);
+    Assert.assertEquals(Collections.singletonList(stage), model.getStagesInProgress(RELOAD_INTERVAL));
+    Assert.assertEquals(Collections.singletonList(stage), model.getStagesInProgress(RELOAD_INTERVAL));
+    Assert.assertEquals(Collections.singletonList(stage), model.getStagesInProgress(RELOAD_INTERVAL));
+
+    verify(db);
+    Assert.assertEquals(1L, model.getFullReloadCount());
+    Assert.assertEquals(0L, model.getRequestReloadCount());
+  }
+
+  /**
+   * A report which completes a stage reloads only its request, picking up the
+   * next stage.
+   */
+  @Test
+  public void testCompletedStageReloadsRequest() throws Exception {
+    Stage first = createStage(1L, 1L, 100L, HostRoleStatus.IN_PROGRESS);
+    Stage second = createStage(1L, 2L, 101L, HostRoleStatus.PENDING);
+    Stage other = createStage(2L, 1L, 200L, HostRoleStatus.IN_PROGRESS);
+
+    expect(db.getCommandsInProgressCount()).andReturn(3).once();
+    expect(db.getStagesInProgress()).andReturn(Arrays.asList(first, second, other)).once();
+    replay(db);
+
+    ActiveStagesModel model = new ActiveStagesModel(db);
+    Assert.assertEquals(Arrays.asList(first, second, other), model.getStagesInProgress(RELOAD_INTERVAL));
+    verify(db);
+
+    // the second stage is reloaded with a fresh instance
+    Stage reloaded = createStage(1L, 2L, 101L, HostRoleStatus.PENDING);
+    reset(db);
+    expect(db.getStagesInProgressForRequest(1L)).andReturn(Collections.singletonList(reloaded)).once();
+    replay(db);
+
+    model.commandReported(1L, 1L, 100L, HostRoleStatus.COMPLETED);
+    Assert.assertEquals(Arrays.asList(reloaded, other), model.getStagesInProgress(RELOAD_INTERVAL));
+    Assert.assertEquals(Arrays.asList(reloaded, other), model.getStagesInProgress(RELOAD_INTERVAL));
+    verify(db);
+
+    Assert.assertEquals(1L, model.getRequestReloadCount());
+  }
+
+  /**
+   * A reported status which is not committed yet is re-applied to the
+   * reloaded stage until the database reflects it.
+   */
+  @Test
+  public void testUncommittedReportIsReapplied() throws Exception {
+    Stage first = createStage(1L, 1L, 100L, HostRoleStatus.IN_PROGRESS);
+
+    expect(db.getCommandsInProgressCount()).andReturn(1).once();
+    expect(db.getStagesInProgress()).andReturn(Collections.singletonList(first)).once();
+    replay(db);
+
+    ActiveStagesModel model = new ActiveStagesModel(db);
+    model.getStagesInProgress(RELOAD_INTERVAL);
+    verify(db);
+
+    Stage stale = createStage(1L, 1L, 100L, HostRoleStatus.IN_PROGRESS);
+    reset(db);
+    expect(db.getStagesInProgressForRequest(1L)).andReturn(Collections.singletonList(stale)).once();
+    expect(db.getStagesInProgressForRequest(1L)).andReturn(new ArrayList<Stage>()).once();
+    replay(db);
+
+    model.commandReported(1L, 1L, 100L, HostRoleStatus.FAILED);
+
+    List<Stage> stages = model.getStagesInProgress(RELOAD_INTERVAL);
+    Assert.assertEquals(Collections.singletonList(stale), stages);
+    Assert.assertEquals(HostRoleStatus.FAILED, stale.getHostRoleCommand(100L).getStatus());
+
+    // the request is polled until the stage is no longer in progress
+    Assert.assertTrue(model.getStagesInProgress(RELOAD_INTERVAL).isEmpty());
+    Assert.assertTrue(model.getStagesInProgress(RELOAD_INTERVAL).isEmpty());
+    verify(db);
+  }
+
+  /**
+   * A created request is loaded once it is visible in the database.
+   */
+  @Test
+  public void testCreatedRequestLoadedWhenCommitted() throws Exception {
+    expect(db.getCommandsInProgressCount()).andReturn(0).once();
+    replay(db);
+
+    ActiveStagesModel model = new ActiveStagesModel(db);
+    Assert.assertTrue(model.getStagesInProgress(RELOAD_INTERVAL).isEmpty());
+    verify(db);
+
+    Stage stage = createStage(5L, 1L, 500L, HostRoleStatus.PENDING);
+    reset(db);
+    expect(db.getStagesInProgressForRequest(5L)).andReturn(new ArrayList<Stage>()).once();
+    expect(db.getStagesInProgressForRequest(5L)).andReturn(Collections.singletonList(stage)).once();
+    replay(db);
+
+    model.requestCreated(5L);
+    Assert.assertTrue(model.getStagesInProgress(RELOAD_INTERVAL).isEmpty());
+    Assert.assertEquals(Collections.singletonList(stage), model.getStagesInProgress(RELOAD_INTERVAL));
+    Assert.assertEquals(Collections.singletonList(stage), model.getStagesInProgress(RELOAD_INTERVAL));
+    verify(db);
+  }
+
+  /**
+   * Invalidating the model forces a full reload.
+   */
+  @Test
+  public void testInvalidate() throws Exception {
+    expect(db.getCommandsInProgressCount()).andReturn(0).times(2);
+    replay(db);
+
+    ActiveStagesModel model = new ActiveStagesModel(db);
+    model.getStagesInProgress(RELOAD_INTERVAL);
+    model.getStagesInProgress(RELOAD_INTERVAL);
+    model.invalidate(false);
+    model.getStagesInProgress(RELOAD_INTERVAL);
+
+    verify(db);
+    Assert.assertEquals(2L, model.getFullReloadCount());
+  }
+
+  private Stage createStage(long requestId, long stageId, long taskId, HostRoleStatus status) {
+    Stage stage = StageUtils.getATestStage(requestId, stageId, HOST, "{}", "{}", "{}");
+    HostRoleCommand command = stage.getHostRoleCommand(HOST, "NAMENODE");
+    command.setTaskId(taskId);
+    command.setStatus(status);
+    return stage;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.actionmanager;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.orm.OrmTestHelper;
+import org.apache.ambari.server.orm.dao.RequestDAO;
+import org.apache.ambari.server.orm.dao.StageDAO;
+import org.apache.ambari.server.orm.entities.RequestEntity;
+import org.apache.ambari.server.orm.entities.StageEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * Tests storing execution commands through {@link ExecutionCommandStorage}.
+ */
+public class ExecutionCommandStorageTest {
+  private static final Logger LOG = LoggerFactory.getLogger(ExecutionCommandStorageTest.class);
+
+  private static final int HOSTS = 500;
+  private static final int PROPERTIES = 400;
+
+  private Injector injector;
+  private ExecutionCommandStorage storage;
+  private StageEntity stageEntity;
+
+  @Before
+  public void setup() throws Exception {
+    injector = Guice.createInjector(new InMemoryDefaultTestModule());
+    injector.getInstance(GuiceJpaInitializer.class);
+
+    storage = injector.getInstance(ExecutionCommandStorage.class);
+
+    Long clusterId = injector.getInstance(OrmTestHelper.class).createCluster();
+
+    RequestEntity requestEntity = new RequestEntity();
+    requestEntity.setClusterId(clusterId);
+    requestEntity.setRequestId(1L);
+    injector.getInstance(RequestDAO.class).create(requestEntity);
+
+    stageEntity = new StageEntity();
+    stageEntity.setClusterId(clusterId);
+    stageEntity.setRequestId(1L);
+    stageEntity.setStageId(1L);
+    stageEntity.setRequest(requestEntity);
+    injector.getInstance(StageDAO.class).create(stageEntity);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  @Test
+  public void testLegacyCommand() throws Exception {
+    String json = createCommand(0).toString();
+
+    Assert.assertFalse(ExecutionCommandStorage.isCompressed(json.getBytes()));
+    Assert.assertEquals(json, storage.toJson(json.getBytes()));
+  }
+
+  @Test
+  public void testSmallCommand() throws Exception {
+    JsonObject command = new JsonObject();
+    command.addProperty("hostname", "host1");
+    command.add("configurations", new JsonObject());
+
+    byte[] stored = storage.toStoredCommand(stageEntity, command.toString(), new HashSet<String>());
+
+    Assert.assertTrue(ExecutionCommandStorage.isCompressed(stored));
+    Assert.assertEquals(command, new JsonParser().parse(storage.toJson(stored)));
+    Assert.assertEquals(0L, countParts());
+  }
+
+  @Test
+  public void testSharedPartsStoredOncePerStage() throws Exception {
+    Set<String> storedPartHashes = new HashSet<>();
+    byte[][] stored = new byte[HOSTS][];
+
+    long rawSize = 0;
+    long storedSize = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < HOSTS; i++) {
+      String json = createCommand(i).toString();
+      stored[i] = storage.toStoredCommand(stageEntity, json, storedPartHashes);
+      rawSize += json.length();
+      storedSize += stored[i].length;
+    }
+    long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+    // configurations, clusterHostInfo and hostLevelParams are large enough to be shared
+    Assert.assertEquals(3, storedPartHashes.size());
+    Assert.assertEquals(3L, countParts());
+
+    storedSize += getPartsSize();
+    LOG.info("Stored {} commands of {} bytes in {} bytes ({}%) at {} commands/s", HOSTS, rawSize, storedSize,
+        storedSize * 100 / rawSize, HOSTS * 1000L / elapsed);
+    Assert.assertTrue(storedSize * 10 < rawSize);
+
+    // a new storage has to read the parts from the database
+    injector.getInstance(EntityManager.class).clear();
+    ExecutionCommandStorage reader = new ExecutionCommandStorage();
+    injector.injectMembers(reader);
+
+    JsonParser parser = new JsonParser();
+    for (int i = 0; i < HOSTS; i++) {
+      Assert.assertEquals(createCommand(i), parser.parse(reader.toJson(stored[i])));
+    }
+
+    // the wrapper reassembles the command lazily
+    ExecutionCommandWrapper wrapper = injector.getInstance(ExecutionCommandWrapperFactory.class)
+        .createFromStoredCommand(stored[7]);
+    Assert.assertEquals(createCommand(7), parser.parse(wrapper.getJson()));
+  }
+
+  /**
+   * Creates a command resembling the commands of a large rolling upgrade
+   * stage, which only differ in their host.
+   */
+  private JsonObject createCommand(int host) {
+    JsonObject hdfsSite = new JsonObject();
+    for (int i = 0; i < PROPERTIES; i++) {
+      hdfsSite.addProperty("dfs.property." + i, "/hadoop/hdfs/value/" + i);
+    }
+    JsonObject configurations = new JsonObject();
+    configurations.add("hdfs-site", hdfsSite);
+
+    JsonArray allHosts = new JsonArray();
+    for (int i = 0; i < HOSTS; i++) {
+      allHosts.add(new JsonParser().parse("\"c6401-" + i + ".ambari.apache.org\""));
+    }
+    JsonObject clusterHostInfo = new JsonObject();
+    clusterHostInfo.add("all_hosts", allHosts);
+
+    JsonObject hostLevelParams = new JsonObject();
+    for (int i = 0; i < 40; i++) {
+      hostLevelParams.addProperty("param_" + i, "http://repo.ambari.apache.org/HDP/centos6/2.x/" + i);
+    }
+
+    JsonObject command = new JsonObject();
+    command.addProperty("clusterName", OrmTestHelper.CLUSTER_NAME);
+    command.addProperty("hostname", "host" + host);
+    command.addProperty("role", "DATANODE");
+    command.addProperty("taskId", host + 1);
+    command.add("configurations", configurations);
+    command.add("clusterHostInfo", clusterHostInfo);
+    command.add("hostLevelParams", hostLevelParams);
+    return command;
+  }
+
+  private long countParts() {
+    return injector.getInstance(EntityManager.class).createQuery(
+        "SELECT COUNT(part) FROM ExecutionCommandPartEntity part", Long.class).getSingleResult();
+  }
+
+  private long getPartsSize() {
+    long size = 0;
+    for (byte[] content : injector.getInstance(EntityManager.class).createQuery(
+        "SELECT part.content FROM ExecutionCommandPartEntity part", byte[].class).getResultList()) {
+      size += content.length;
+    }
+    return size;
+  }
+}
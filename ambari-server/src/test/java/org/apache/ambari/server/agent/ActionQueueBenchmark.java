@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.agent;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.agent.AgentCommand.AgentCommandType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link ActionQueue} under the contention of a running cluster:
+ * the action scheduler and the heartbeat monitor queue commands while the
+ * heartbeat handlers drain the queues of their hosts and the scheduler
+ * removes aborted commands by id.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main ActionQueueBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ActionQueueBenchmark {
+
+  @Param({"100", "1000"})
+  public int hosts;
+
+  private ActionQueue actionQueue;
+  private String[] hostnames;
+
+  @Setup
+  public void setup() {
+    actionQueue = new ActionQueue();
+    hostnames = new String[hosts];
+    for (int i = 0; i < hosts; i++) {
+      hostnames[i] = "c6401-" + i + ".ambari.apache.org";
+    }
+  }
+
+  private String randomHost() {
+    return hostnames[ThreadLocalRandom.current().nextInt(hosts)];
+  }
+
+  @Benchmark
+  @Group("cluster")
+  @GroupThreads(2)
+  public void scheduleExecutionCommand() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    ExecutionCommand command = new ExecutionCommand();
+    command.setRequestAndStage(random.nextInt(10), random.nextInt(100));
+    actionQueue.enqueue(randomHost(), command);
+  }
+
+  @Benchmark
+  @Group("cluster")
+  @GroupThreads(2)
+  public void queueStatusCommand() {
+    actionQueue.enqueue(randomHost(), new StatusCommand());
+  }
+
+  @Benchmark
+  @Group("cluster")
+  @GroupThreads(1)
+  public AgentCommand abortCommand() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return actionQueue.dequeue(randomHost(), random.nextInt(10) + "-" + random.nextInt(100));
+  }
+
+  @Benchmark
+  @Group("cluster")
+  @GroupThreads(1)
+  public List<AgentCommand> removeAlertCommands() {
+    return actionQueue.dequeue(randomHost(), AgentCommandType.ALERT_EXECUTION_COMMAND);
+  }
+
+  @Benchmark
+  @Group("cluster")
+  @GroupThreads(4)
+  public List<AgentCommand> sendCommands() {
+    return actionQueue.dequeueAll(randomHost());
+  }
+}
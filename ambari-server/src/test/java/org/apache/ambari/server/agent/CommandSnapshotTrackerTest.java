@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.agent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * Tests {@link CommandSnapshotTracker}.
+ */
+public class CommandSnapshotTrackerTest {
+  private static final Logger LOG = LoggerFactory.getLogger(CommandSnapshotTrackerTest.class);
+
+  private static final int HOSTS = 500;
+  private static final int CONFIG_TYPES = 20;
+  private static final int PROPERTIES = 50;
+  private static final int COMPONENTS_PER_HOST = 4;
+
+  @Test
+  public void testHostWithoutSnapshots() throws Exception {
+    CommandSnapshotTracker tracker = new CommandSnapshotTracker();
+    tracker.register("h1", false);
+
+    ExecutionCommand command = createCommand("h1", 1, "hdfs-site");
+    Assert.assertSame(command, tracker.getDelta("h1", 1, command));
+  }
+
+  @Test
+  public void testDelta() throws Exception {
+    CommandSnapshotTracker tracker = new CommandSnapshotTracker();
+    tracker.register("h1", true);
+
+    ExecutionCommand command = createCommand("h1", 1, "hdfs-site");
+    ExecutionCommand delta = tracker.getDelta("h1", 1, command);
+    Assert.assertEquals(CONFIG_TYPES, delta.getConfigurations().size());
+    Assert.assertNotNull(delta.getClusterHostInfo());
+    Assert.assertEquals(CONFIG_TYPES * 2 + 1, delta.getSnapshotHashes().size());
+
+    // nothing is left out before the response is acknowledged
+    tracker.acknowledge("h1", 0);
+    delta = tracker.getDelta("h1", 2, createCommand("h1", 2, "hdfs-site"));
+    Assert.assertEquals(CONFIG_TYPES, delta.getConfigurations().size());
+
+    // only the changed type is sent after the agent received response 2
+    tracker.acknowledge("h1", 2);
+    command = createCommand("h1", 3, "hdfs-site");
+    command.getConfigurations().get("hdfs-site").put("changed", "true");
+    delta = tracker.getDelta("h1", 3, command);
+    Assert.assertEquals(1, delta.getConfigurations().size());
+    Assert.assertTrue(delta.getConfigurations().containsKey("hdfs-site"));
+    Assert.assertTrue(delta.getConfigurationAttributes().isEmpty());
+    Assert.assertNull(delta.getClusterHostInfo());
+    Assert.assertEquals(CONFIG_TYPES * 2 + 1, delta.getSnapshotHashes().size());
+
+    // the command kept by the server is unchanged
+    Assert.assertEquals(CONFIG_TYPES, command.getConfigurations().size());
+    Assert.assertNotNull(command.getClusterHostInfo());
+    Assert.assertNull(command.getSnapshotHashes());
+
+    // registration starts over
+    tracker.register("h1", true);
+    delta = tracker.getDelta("h1", 1, createCommand("h1", 4, "hdfs-site"));
+    Assert.assertEquals(CONFIG_TYPES, delta.getConfigurations().size());
+  }
+
+  @Test
+  public void testVersionsOfTypeInOneResponse() throws Exception {
+    CommandSnapshotTracker tracker = new CommandSnapshotTracker();
+    tracker.register("h1", true);
+
+    tracker.getDelta("h1", 1, createCommand("h1", 1, "hdfs-site"));
+    tracker.acknowledge("h1", 1);
+
+    // the first command of the response carries a new version of hdfs-site
+    ExecutionCommand command = createCommand("h1", 2, "hdfs-site");
+    command.getConfigurations().get("hdfs-site").put("changed", "true");
+    ExecutionCommand delta = tracker.getDelta("h1", 2, command);
+    Assert.assertEquals(1, delta.getConfigurations().size());
+    Assert.assertTrue(delta.getConfigurations().containsKey("hdfs-site"));
+
+    // the second one needs the acknowledged version, which the agent no
+    // longer has once it received the first
+    delta = tracker.getDelta("h1", 2, createCommand("h1", 3, "hdfs-site"));
+    Assert.assertEquals(1, delta.getConfigurations().size());
+    Assert.assertTrue(delta.getConfigurations().containsKey("hdfs-site"));
+
+    // the third one has the version the agent received last
+    delta = tracker.getDelta("h1", 2, createCommand("h1", 4, "hdfs-site"));
+    Assert.assertTrue(delta.getConfigurations().isEmpty());
+
+    // the agent keeps the last version sent in the response
+    tracker.acknowledge("h1", 2);
+    delta = tracker.getDelta("h1", 3, createCommand("h1", 5, "hdfs-site"));
+    Assert.assertTrue(delta.getConfigurations().isEmpty());
+  }
+
+  @Test
+  public void testHashIgnoresMapOrder() throws Exception {
+    Map<String, Set<String>> first = new HashMap<>();
+    Map<String, Set<String>> second = new TreeMap<>();
+    for (int i = 0; i < 100; i++) {
+      first.put("key" + i, new TreeSet<>(Arrays.asList("a" + i, "b" + i)));
+      second.put("key" + (99 - i), new TreeSet<>(Arrays.asList("b" + (99 - i), "a" + (99 - i))));
+    }
+    Assert.assertEquals(CommandSnapshotTracker.hash(first), CommandSnapshotTracker.hash(second));
+
+    second.get("key1").add("c");
+    Assert.assertFalse(CommandSnapshotTracker.hash(first).equals(CommandSnapshotTracker.hash(second)));
+  }
+
+  @Test
+  public void testHashKeepsCollectionOrder() throws Exception {
+    Set<String> first = new LinkedHashSet<>(Arrays.asList("h1", "h2", "h3"));
+    Set<String> second = new LinkedHashSet<>(Arrays.asList("h3", "h2", "h1"));
+    Assert.assertFalse(CommandSnapshotTracker.hash(Collections.singletonMap("all_hosts", first)).equals(
+        CommandSnapshotTracker.hash(Collections.singletonMap("all_hosts", second))));
+
+    Assert.assertEquals(CommandSnapshotTracker.hash(first),
+        CommandSnapshotTracker.hash(Arrays.asList("h1", "h2", "h3")));
+  }
+
+  /**
+   * Restarts the components of a 500 host cluster, one heartbeat per
+   * component, and compares the size and serialization time of the heartbeat
+   * responses with and without snapshots.
+   */
+  @Test
+  public void testRestartBenchmark() throws Exception {
+    long[] full = runRestart(false);
+    long[] deltas = runRestart(true);
+
+    LOG.info("Full commands: {} responses, {} bytes per response, {} us serialization per response",
+        full[0], full[1] / full[0], full[2] / 1000 / full[0]);
+    LOG.info("Command deltas: {} responses, {} bytes per response, {} us serialization and delta per response",
+        deltas[0], deltas[1] / deltas[0], deltas[2] / 1000 / deltas[0]);
+
+    Assert.assertEquals(full[0], deltas[0]);
+    Assert.assertTrue(deltas[1] * 2 < full[1]);
+  }
+
+  /**
+   * @return the number of responses, their total bytes and the total time
+   *         spent on them in nanoseconds
+   */
+  private long[] runRestart(boolean snapshots) {
+    CommandSnapshotTracker tracker = new CommandSnapshotTracker();
+    Gson gson = new Gson();
+
+    long responses = 0;
+    long bytes = 0;
+    long nanos = 0;
+
+    for (int host = 0; host < HOSTS; host++) {
+      tracker.register("host" + host, snapshots);
+    }
+
+    for (int component = 0; component < COMPONENTS_PER_HOST; component++) {
+      for (int host = 0; host < HOSTS; host++) {
+        String hostname = "host" + host;
+        long responseId = component + 1;
+        ExecutionCommand command = createCommand(hostname, component, "component" + component + "-site");
+
+        long start = System.nanoTime();
+        tracker.acknowledge(hostname, responseId - 1);
+        HeartBeatResponse response = new HeartBeatResponse();
+        response.setResponseId(responseId);
+        response.addExecutionCommand(tracker.getDelta(hostname, responseId, command));
+        String json = gson.toJson(response);
+        nanos += System.nanoTime() - start;
+
+        responses++;
+        bytes += json.length();
+      }
+    }
+
+    return new long[] { responses, bytes, nanos };
+  }
+
+  /**
+   * Creates a command with the configurations and cluster host info of a large
+   * cluster. The configuration type of the component differs between
+   * components.
+   */
+  private ExecutionCommand createCommand(String hostname, int taskId, String componentType) {
+    Map<String, Map<String, String>> configurations = new TreeMap<>();
+    Map<String, Map<String, Map<String, String>>> configurationAttributes = new TreeMap<>();
+    for (int type = 0; type < CONFIG_TYPES; type++) {
+      String configType = type == 0 ? componentType : "type" + type + "-site";
+
+      Map<String, String> properties = new HashMap<>();
+      for (int i = 0; i < PROPERTIES; i++) {
+        properties.put(configType + ".property." + i, "/var/lib/" + configType + "/value/" + i);
+      }
+      configurations.put(configType, properties);
+
+      Map<String, Map<String, String>> attributes = new HashMap<>();
+      attributes.put("final", new HashMap<String, String>());
+      attributes.get("final").put(configType + ".property.0", "true");
+      configurationAttributes.put(configType, attributes);
+    }
+
+    Map<String, Set<String>> clusterHostInfo = new TreeMap<>();
+    Set<String> allHosts = new TreeSet<>();
+    for (int i = 0; i < HOSTS; i++) {
+      allHosts.add("c6401-" + i + ".ambari.apache.org");
+    }
+    clusterHostInfo.put("all_hosts", allHosts);
+    clusterHostInfo.put("datanode_hosts", new TreeSet<>(Arrays.asList("0-" + (HOSTS - 1))));
+
+    ExecutionCommand command = new ExecutionCommand();
+    command.setHostname(hostname);
+    command.setTaskId(taskId);
+    command.setRequestAndStage(1, taskId);
+    command.setRole("DATANODE");
+    command.setConfigurations(configurations);
+    command.setConfigurationAttributes(configurationAttributes);
+    command.setClusterHostInfo(clusterHostInfo);
+    return command;
+  }
+}
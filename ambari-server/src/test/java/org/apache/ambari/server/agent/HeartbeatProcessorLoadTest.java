@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import static org.apache.ambari.server.agent.DummyHeartbeatConstants.DATANODE;
+import static org.apache.ambari.server.agent.DummyHeartbeatConstants.DummyCluster;
+import static org.apache.ambari.server.agent.DummyHeartbeatConstants.DummyHostStatus;
+import static org.apache.ambari.server.agent.DummyHeartbeatConstants.DummyStackId;
+import static org.apache.ambari.server.agent.DummyHeartbeatConstants.HDFS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ambari.server.actionmanager.ActionManager;
+import org.apache.ambari.server.actionmanager.ActionManagerTestHelper;
+import org.apache.ambari.server.audit.AuditLogger;
+import org.apache.ambari.server.metrics.system.impl.HeartbeatProcessorMetricsSource;
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.SecurityState;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponentHost;
+import org.apache.ambari.server.state.State;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * Simulates a number of agents sending heartbeats concurrently and measures
+ * the sustained rate at which the {@link HeartbeatProcessor} pipeline drains
+ * them.
+ */
+public class HeartbeatProcessorLoadTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HeartbeatProcessorLoadTest.class);
+
+  private static final int HOSTS = 50;
+  private static final int HEARTBEATS_PER_HOST = 20;
+  private static final long TIMEOUT = 120000L;
+
+  private Injector injector;
+
+  @Inject
+  private Clusters clusters;
+
+  @Inject
+  private HeartbeatTestHelper heartbeatTestHelper;
+
+  @Inject
+  private ActionManagerTestHelper actionManagerTestHelper;
+
+  @Before
+  public void setup() throws Exception {
+    InMemoryDefaultTestModule module = HeartbeatTestHelper.getTestModule();
+    injector = Guice.createInjector(module);
+    injector.getInstance(GuiceJpaInitializer.class);
+    injector.injectMembers(this);
+    EasyMock.replay(injector.getInstance(AuditLogger.class));
+  }
+
+  @After
+  public void teardown() throws Exception {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  @Test
+  public void testSustainedHeartbeatRate() throws Exception {
+    final List<String> hostNames = new ArrayList<>(HOSTS);
+    for (int i = 0; i < HOSTS; i++) {
+      hostNames.add("load-host-" + i);
+    }
+
+    Set<String> hosts = new LinkedHashSet<>(hostNames);
+    Cluster cluster = heartbeatTestHelper.getDummyCluster(DummyCluster, DummyStackId,
+        new HashMap<String, String>(), hosts);
+    Service hdfs = cluster.addService(HDFS);
+    hdfs.addServiceComponent(DATANODE);
+    for (String hostName : hostNames) {
+      hdfs.getServiceComponent(DATANODE).addServiceComponentHost(hostName).setState(State.INSTALLED);
+    }
+
+    ActionManager am = actionManagerTestHelper.getMockActionManager();
+    EasyMock.replay(am);
+
+    HeartBeatHandler handler = heartbeatTestHelper.getHeartBeatHandler(am, new ActionQueue());
+    final HeartbeatProcessor processor = handler.getHeartbeatProcessor();
+    processor.setDelay(0);
+
+    Meter processed = HeartbeatProcessorMetricsSource.getRegistry().meter(
+        HeartbeatProcessor.METRIC_PROCESSED);
+    long processedBefore = processed.getCount();
+    long total = (long) HOSTS * HEARTBEATS_PER_HOST;
+
+    processor.startAsync().awaitRunning();
+    long start = System.currentTimeMillis();
+
+    // every simulated agent sends its heartbeats sequentially, as a real agent does
+    ExecutorService agents = Executors.newFixedThreadPool(10);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (final String hostName : hostNames) {
+      futures.add(agents.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int responseId = 0; responseId < HEARTBEATS_PER_HOST; responseId++) {
+            processor.addHeartbeat(createHeartbeat(hostName, responseId));
+          }
+          return null;
+        }
+      }));
+    }
+
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    agents.shutdown();
+
+    while (processed.getCount() - processedBefore < total
+        && System.currentTimeMillis() - start < TIMEOUT) {
+      Thread.sleep(10);
+    }
+
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    processor.stopAsync().awaitTerminated();
+
+    LOG.info("Processed {} heartbeats from {} hosts in {} ms ({} heartbeats/sec)", total, HOSTS,
+        elapsed, total * 1000 / elapsed);
+
+    Assert.assertEquals(total, processed.getCount() - processedBefore);
+    Assert.assertEquals(0, processor.getQueueDepth());
+
+    for (String hostName : hostNames) {
+      ServiceComponentHost sch = clusters.getCluster(DummyCluster).getService(HDFS).getServiceComponent(
+          DATANODE).getServiceComponentHost(hostName);
+      Assert.assertEquals(State.STARTED, sch.getState());
+    }
+  }
+
+  @Test
+  public void testHostOrderKeptAcrossThreads() throws Exception {
+    ActionManager am = actionManagerTestHelper.getMockActionManager();
+    EasyMock.replay(am);
+
+    final List<String> hostNames = new ArrayList<>(HOSTS);
+    final Map<String, List<Long>> responseIds = new HashMap<>();
+    for (int i = 0; i < HOSTS; i++) {
+      hostNames.add("order-host-" + i);
+      responseIds.put(hostNames.get(i), Collections.synchronizedList(new ArrayList<Long>()));
+    }
+
+    // records the heartbeats in the order the workers process them
+    final CountDownLatch processed = new CountDownLatch(HOSTS * HEARTBEATS_PER_HOST);
+    final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final HeartbeatProcessor processor = new HeartbeatProcessor(clusters, am,
+        EasyMock.createNiceMock(HeartbeatMonitor.class), injector) {
+      @Override
+      void processHeartbeatBatch(List<HeartBeat> batch) {
+        threads.add(Thread.currentThread().getName());
+        for (HeartBeat heartbeat : batch) {
+          responseIds.get(heartbeat.getHostname()).add(heartbeat.getResponseId());
+          processed.countDown();
+        }
+      }
+    };
+    processor.setDelay(0);
+    processor.startAsync().awaitRunning();
+
+    ExecutorService agents = Executors.newFixedThreadPool(10);
+    for (final String hostName : hostNames) {
+      agents.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int responseId = 0; responseId < HEARTBEATS_PER_HOST; responseId++) {
+            processor.addHeartbeat(createHeartbeat(hostName, responseId));
+          }
+          return null;
+        }
+      });
+    }
+    agents.shutdown();
+
+    Assert.assertTrue(processed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    processor.stopAsync().awaitTerminated();
+
+    Assert.assertTrue(threads.size() > 1);
+    for (String hostName : hostNames) {
+      List<Long> expected = new ArrayList<>();
+      for (long responseId = 0; responseId < HEARTBEATS_PER_HOST; responseId++) {
+        expected.add(responseId);
+      }
+      Assert.assertEquals(hostName, expected, responseIds.get(hostName));
+    }
+  }
+
+  private HeartBeat createHeartbeat(String hostName, int responseId) {
+    HeartBeat heartbeat = new HeartBeat();
+    heartbeat.setResponseId(responseId);
+    heartbeat.setTimestamp(System.currentTimeMillis());
+    heartbeat.setHostname(hostName);
+    heartbeat.setNodeStatus(new HostStatus(HostStatus.Status.HEALTHY, DummyHostStatus));
+    heartbeat.setReports(new ArrayList<CommandReport>());
+
+    ComponentStatus componentStatus = new ComponentStatus();
+    componentStatus.setClusterName(DummyCluster);
+    componentStatus.setServiceName(HDFS);
+    componentStatus.setComponentName(DATANODE);
+    componentStatus.setMessage(DummyHostStatus);
+    componentStatus.setStatus(State.STARTED.name());
+    componentStatus.setSecurityState(SecurityState.UNSECURED.name());
+
+    List<ComponentStatus> componentStatuses = new ArrayList<>();
+    componentStatuses.add(componentStatus);
+    heartbeat.setComponentStatus(componentStatuses);
+    return heartbeat;
+  }
+}
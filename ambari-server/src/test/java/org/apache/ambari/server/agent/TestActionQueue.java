@@ -20,6 +20,7 @@ package org.apache.ambari.server.agent;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -379,4 +380,82 @@ public class TestActionQueue {
     assertEquals(4, queue.size(c6401));
     assertEquals(3, queue.size(c6402));
   }
+
+  @Test
+  public void testDequeueCommandId() throws Exception {
+    ActionQueue queue = new ActionQueue();
+    String c6401 = "c6401.ambari.apache.org";
+
+    queue.enqueue(c6401, createExecutionCommand(1, 1, 1));
+    queue.enqueue(c6401, new StatusCommand());
+    queue.enqueue(c6401, createExecutionCommand(1, 2, 2));
+    queue.enqueue(c6401, createExecutionCommand(1, 2, 3));
+
+    assertNull(queue.dequeue(c6401, "1-3"));
+    assertNull(queue.dequeue("c6402.ambari.apache.org", "1-2"));
+
+    // commands sharing an id are removed in the order they were queued
+    assertEquals(2L, ((ExecutionCommand) queue.dequeue(c6401, "1-2")).getTaskId());
+    assertEquals(3, queue.size(c6401));
+    assertEquals(3L, ((ExecutionCommand) queue.dequeue(c6401, "1-2")).getTaskId());
+    assertNull(queue.dequeue(c6401, "1-2"));
+    assertEquals(2, queue.size(c6401));
+
+    // removed commands are not returned again
+    List<AgentCommand> commands = queue.dequeueAll(c6401);
+    assertEquals(2, commands.size());
+    assertEquals(1L, ((ExecutionCommand) commands.get(0)).getTaskId());
+    assertTrue(commands.get(1) instanceof StatusCommand);
+    assertEquals(0, queue.size(c6401));
+    assertNull(queue.dequeue(c6401, "1-1"));
+  }
+
+  @Test
+  public void testDequeueInQueueOrder() throws Exception {
+    ActionQueue queue = new ActionQueue();
+    String c6401 = "c6401.ambari.apache.org";
+
+    queue.enqueue(c6401, new StatusCommand());
+    queue.enqueue(c6401, createExecutionCommand(1, 1, 1));
+    queue.enqueue(c6401, new CancelCommand());
+    queue.enqueue(c6401, new StatusCommand());
+
+    assertTrue(queue.dequeue(c6401) instanceof StatusCommand);
+    assertTrue(queue.dequeue(c6401) instanceof ExecutionCommand);
+
+    queue.enqueue(c6401, createExecutionCommand(1, 2, 2));
+
+    List<AgentCommand> commands = queue.dequeueAll(c6401);
+    assertEquals(3, commands.size());
+    assertTrue(commands.get(0) instanceof CancelCommand);
+    assertTrue(commands.get(1) instanceof StatusCommand);
+    assertTrue(commands.get(2) instanceof ExecutionCommand);
+    assertNull(queue.dequeue(c6401));
+  }
+
+  @Test
+  public void testStatusCommandsBounded() throws Exception {
+    ActionQueue queue = new ActionQueue();
+    String c6401 = "c6401.ambari.apache.org";
+
+    queue.enqueue(c6401, createExecutionCommand(1, 1, 1));
+    for (int i = 0; i < ActionQueue.MAX_STATUS_COMMANDS + 10; i++) {
+      StatusCommand command = new StatusCommand();
+      command.setComponentName("component" + i);
+      queue.enqueue(c6401, command);
+    }
+
+    // the oldest status commands are dropped, execution commands are kept
+    assertEquals(ActionQueue.MAX_STATUS_COMMANDS + 1, queue.size(c6401));
+    List<AgentCommand> commands = queue.dequeueAll(c6401);
+    assertTrue(commands.get(0) instanceof ExecutionCommand);
+    assertEquals("component10", ((StatusCommand) commands.get(1)).getComponentName());
+  }
+
+  private ExecutionCommand createExecutionCommand(long requestId, long stageId, long taskId) {
+    ExecutionCommand command = new ExecutionCommand();
+    command.setRequestAndStage(requestId, stageId);
+    command.setTaskId(taskId);
+    return command;
+  }
 }
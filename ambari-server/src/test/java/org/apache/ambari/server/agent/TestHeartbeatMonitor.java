@@ -606,4 +606,93 @@ public class TestHeartbeatMonitor {
     cmds = hm.generateStatusCommands(hostname2);
     assertTrue("HeartbeatMonitor should not generate StatusCommands for host2 because it has no services", cmds.isEmpty());
   }
+
+  /**
+   * Runs the monitor over a cluster of 50 hosts with 10 components each, and
+   * reports the pass time per host to estimate the pass time of a 5,000 host
+   * cluster with 50,000 components.
+   */
+  @Test
+  public void testMonitorPassTime() throws Exception {
+    int hostCount = 50;
+    StackId stackId = new StackId("HDP-0.1");
+    Clusters clusters = injector.getInstance(Clusters.class);
+    clusters.addCluster(clusterName, stackId);
+    Cluster cluster = clusters.getCluster(clusterName);
+    helper.getOrCreateRepositoryVersion(stackId, stackId.getStackVersion());
+    cluster.createClusterVersion(stackId, stackId.getStackVersion(), "admin",
+        RepositoryVersionState.INSTALLING);
+
+    Set<String> hostNames = new HashSet<String>();
+    for (int i = 0; i < hostCount; i++) {
+      String hostname = "host" + i;
+      clusters.addHost(hostname);
+      setOsFamily(clusters.getHost(hostname), "redhat", "6.3");
+      hostNames.add(hostname);
+    }
+    clusters.mapHostsToCluster(hostNames, clusterName);
+
+    ConfigFactory configFactory = injector.getInstance(ConfigFactory.class);
+    Config config = configFactory.createNew(cluster, "hadoop-env", "version1",
+        new HashMap<String,String>() {{ put("a", "b"); }}, new HashMap<String, Map<String,String>>());
+    cluster.addDesiredConfig("_test", Collections.singleton(config));
+
+    Map<String, String[]> components = new HashMap<String, String[]>();
+    components.put("HDFS", new String[] { "NAMENODE", "SECONDARY_NAMENODE", "DATANODE", "DATANODE1",
+        "DATANODE2", "HDFS_CLIENT" });
+    components.put("MAPREDUCE", new String[] { "JOBTRACKER", "TASKTRACKER", "MAPREDUCE_CLIENT" });
+    components.put("PIG", new String[] { "PIG" });
+
+    int componentsPerHost = 0;
+    for (Map.Entry<String, String[]> entry : components.entrySet()) {
+      Service service = cluster.addService(entry.getKey());
+      for (String componentName : entry.getValue()) {
+        ServiceComponent component = service.addServiceComponent(componentName);
+        for (String hostname : hostNames) {
+          component.addServiceComponentHost(hostname).setState(State.INSTALLED);
+        }
+        componentsPerHost++;
+      }
+    }
+
+    long now = System.currentTimeMillis();
+    for (String hostname : hostNames) {
+      clusters.getHost(hostname).setLastHeartbeatTime(now);
+    }
+
+    ActionQueue aq = new ActionQueue();
+    ActionManager am = mock(ActionManager.class);
+    HeartbeatMonitor hm = new HeartbeatMonitor(clusters, aq, am, 60000, injector);
+
+    // the first pass fills the caches
+    hm.doWork();
+    for (String hostname : hostNames) {
+      assertEquals(componentsPerHost, aq.dequeueAll(hostname).size());
+    }
+
+    long start = System.nanoTime();
+    hm.doWork();
+    long passTime = (System.nanoTime() - start) / 1000;
+    LOG.info("Checked {} hosts with {} components in {} ms, estimated {} ms for 5000 hosts",
+        hostCount, hostCount * componentsPerHost, passTime / 1000, passTime * 5000 / hostCount / 1000);
+
+    for (String hostname : hostNames) {
+      assertEquals(HostState.INIT, clusters.getHost(hostname).getState());
+      List<AgentCommand> commands = aq.dequeueAll(hostname);
+      assertEquals(componentsPerHost, commands.size());
+      assertEquals("b", ((StatusCommand) commands.get(0)).getConfigurations().get("hadoop-env").get("a"));
+    }
+
+    // a new desired configuration is sent with the next pass
+    config = configFactory.createNew(cluster, "hadoop-env", "version2",
+        new HashMap<String,String>() {{ put("a", "c"); }}, new HashMap<String, Map<String,String>>());
+    cluster.addDesiredConfig("_test", Collections.singleton(config));
+
+    hm.doWork();
+    for (String hostname : hostNames) {
+      for (AgentCommand command : aq.dequeueAll(hostname)) {
+        assertEquals("c", ((StatusCommand) command).getConfigurations().get("hadoop-env").get("a"));
+      }
+    }
+  }
 }
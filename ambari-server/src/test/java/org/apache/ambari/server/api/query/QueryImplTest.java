@@ -34,11 +34,16 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -54,6 +59,7 @@ import org.apache.ambari.server.api.resources.SubResourceDefinition;
 import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.util.TreeNode;
 import org.apache.ambari.server.api.util.TreeNodeImpl;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.internal.ClusterControllerImpl;
 import org.apache.ambari.server.controller.internal.ClusterControllerImplTest;
 import org.apache.ambari.server.controller.internal.PageRequestImpl;
@@ -493,6 +499,43 @@ public class QueryImplTest {
     Assert.assertEquals(Resource.Type.StackArtifact, artifactNode.getObject().getType());
   }
 
+  @Test
+  public void testExecute__Stack_instance_specifiedSubResources_parallel() throws Exception {
+    String sequential = renderTree(executeStackQuery(createClusterController(0L)));
+
+    initSubResourceExecutor(true);
+    try {
+      String parallel = renderTree(executeStackQuery(createClusterController(0L)));
+      Assert.assertEquals(sequential, parallel);
+
+      // the ordering is deterministic
+      Assert.assertEquals(parallel, renderTree(executeStackQuery(createClusterController(0L))));
+    } finally {
+      initSubResourceExecutor(false);
+    }
+  }
+
+  /**
+   * A nested stack query, as used to render the stack versions and
+   * repositories, returns the same result in parallel as sequentially when
+   * every provider call takes some time, so that sub-resource queries
+   * complete out of order.
+   */
+  @Test
+  public void testExecute_nestedQuerySlowProviders_parallel() throws Exception {
+    long delay = 20L;
+
+    String sequential = renderTree(executeStackQuery(createClusterController(delay)));
+
+    initSubResourceExecutor(true);
+    try {
+      String parallel = renderTree(executeStackQuery(createClusterController(delay)));
+      Assert.assertEquals(sequential, parallel);
+    } finally {
+      initSubResourceExecutor(false);
+    }
+  }
+
   @Test
   public void testExecute_StackVersionPageResourcePredicate()
     throws NoSuchParentResourceException, UnsupportedPropertyException,
@@ -1080,6 +1123,66 @@ public class QueryImplTest {
 
   }
 
+  private static Result executeStackQuery(ClusterController clusterController) throws Exception {
+    Map<Resource.Type, String> mapIds = new HashMap<Resource.Type, String>();
+    mapIds.put(Resource.Type.Stack, "HDP");
+
+    QueryImpl instance = new TestQuery(mapIds, new StackResourceDefinition(), clusterController);
+
+    instance.addProperty("versions/*", null);
+    instance.addProperty("versions/operating_systems/*", null);
+    instance.addProperty("versions/operating_systems/repositories/*", null);
+
+    return instance.execute();
+  }
+
+  private static void initSubResourceExecutor(boolean parallel) {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.API_QUERY_SUBRESOURCES_PARALLEL_ENABLED.getKey(), Boolean.toString(parallel));
+    properties.setProperty(Configuration.API_QUERY_SUBRESOURCES_THREADPOOL_SIZE.getKey(), "4");
+    QueryImpl.init(new Configuration(properties), null);
+  }
+
+  /**
+   * Create a cluster controller which takes the given time for every query.
+   */
+  private static ClusterController createClusterController(final long delay) {
+    final ClusterController clusterController =
+        new ClusterControllerImpl(new ClusterControllerImplTest.TestProviderModule());
+
+    return (ClusterController) Proxy.newProxyInstance(ClusterController.class.getClassLoader(),
+        new Class<?>[]{ClusterController.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (delay > 0 && method.getName().equals("getResources")) {
+              Thread.sleep(delay);
+            }
+            try {
+              return method.invoke(clusterController, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+  }
+
+  private static String renderTree(Result result) {
+    StringBuilder sb = new StringBuilder();
+    renderNode(result.getResultTree(), sb, "");
+    return sb.toString();
+  }
+
+  private static void renderNode(TreeNode<Resource> node, StringBuilder sb, String indent) {
+    sb.append(indent).append(node.getName());
+    if (node.getObject() != null) {
+      sb.append(' ').append(node.getObject().getPropertiesMap());
+    }
+    sb.append('\n');
+    for (TreeNode<Resource> child : node.getChildren()) {
+      renderNode(child, sb, indent + "  ");
+    }
+  }
+
   public static class TestQuery extends QueryImpl {
     public TestQuery(Map<Resource.Type, String> mapIds, ResourceDefinition resourceDefinition) {
       super(mapIds, resourceDefinition, new ClusterControllerImpl(new ClusterControllerImplTest.TestProviderModule()));
@@ -23,10 +23,15 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.ambari.server.api.services.DeleteResultMetadata;
@@ -34,15 +39,20 @@ import org.apache.ambari.server.api.services.Result;
 import org.apache.ambari.server.api.services.ResultImpl;
 import org.apache.ambari.server.api.services.ResultStatus;
 import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.security.authorization.AuthorizationException;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * JSONSerializer unit tests
  */
 public class JsonSerializerTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(JsonSerializerTest.class);
+
   @Test
   public void testSerialize() throws Exception {
     UriInfo uriInfo = createMock(UriInfo.class);
@@ -244,5 +254,124 @@ public class JsonSerializerTest {
     String  json = new JsonSerializer().serialize(result).toString().replace("\r", "");
     assertEquals(expected, json);
   }
-  
+
+  @Test
+  public void testStreamingMatchesBuffered() throws Exception {
+    String expected = new JsonSerializer().serialize(createHostsResult(50)).toString();
+
+    Object streamed = new JsonSerializer(true).serialize(createHostsResult(50));
+    assertTrue(streamed instanceof StreamingOutput);
+
+    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+    ((StreamingOutput) streamed).write(bytesOut);
+
+    assertEquals(expected, bytesOut.toString("UTF-8"));
+    assertEquals(expected, new JsonSerializer(true).serialize(createHostsResult(50)).toString());
+  }
+
+  @Test
+  public void testStreamingError() throws Exception {
+    Result result = new ResultImpl(new ResultStatus(ResultStatus.STATUS.NOT_FOUND, "not found"));
+
+    Object o = new JsonSerializer(true).serialize(result);
+    assertTrue(o instanceof String);
+    assertEquals(new JsonSerializer().serialize(result), o);
+  }
+
+  /**
+   * Compares time to first byte and peak heap usage while serializing a large
+   * host listing with and without streaming.
+   */
+  @Test
+  public void testStreamingLargeHostListing() throws Exception {
+    int hosts = 3000;
+
+    // buffered: nothing reaches the client until the whole document is rendered
+    Result result = createHostsResult(hosts);
+    ProbeOutputStream buffered = new ProbeOutputStream(null);
+    long start = System.nanoTime();
+    byte[] bytes = new JsonSerializer().serialize(result).toString().getBytes("UTF-8");
+    buffered.write(bytes);
+    long bufferedFirstByte = buffered.firstWrite - start;
+    long bufferedTotal = System.nanoTime() - start;
+
+    // streaming: resources are written, and released, one at a time
+    result = createHostsResult(hosts);
+    TreeNode<Resource> items = result.getResultTree().getChild("items");
+    ProbeOutputStream streamed = new ProbeOutputStream(items);
+    start = System.nanoTime();
+    ((StreamingOutput) new JsonSerializer(true).serialize(result)).write(streamed);
+    long streamedFirstByte = streamed.firstWrite - start;
+    long streamedTotal = System.nanoTime() - start;
+
+    LOG.info("Buffered {} hosts: first byte after {} ms, done after {} ms, peak heap {} MB",
+        hosts, bufferedFirstByte / 1000000, bufferedTotal / 1000000, buffered.peakHeap >> 20);
+    LOG.info("Streamed {} hosts: first byte after {} ms, done after {} ms, peak heap {} MB",
+        hosts, streamedFirstByte / 1000000, streamedTotal / 1000000, streamed.peakHeap >> 20);
+
+    assertEquals(bytes.length, streamed.count);
+
+    // the first bytes were sent while most of the hosts were still to be written
+    assertTrue(streamed.childrenAtFirstWrite > hosts / 2);
+    assertTrue(items.getChildren().isEmpty());
+  }
+
+  private Result createHostsResult(int hosts) {
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> items = result.getResultTree().addChild(null, "items");
+
+    for (int i = 0; i < hosts; i++) {
+      String hostName = "c6401-" + i + ".ambari.apache.org";
+      Resource resource = new ResourceImpl(Resource.Type.Host);
+      resource.setProperty("Hosts/host_name", hostName);
+      resource.setProperty("Hosts/cluster_name", "c1");
+      resource.setProperty("Hosts/cpu_count", 8);
+      resource.setProperty("Hosts/total_mem", 65536000L);
+      resource.setProperty("Hosts/host_state", "HEALTHY");
+      resource.setProperty("Hosts/os_type", "centos6");
+      for (int j = 0; j < 10; j++) {
+        resource.setProperty("metrics/disk/disk_" + j, 1000.0 * j);
+        resource.setProperty("metrics/cpu/cpu_" + j, 0.5 * j);
+      }
+
+      TreeNode<Resource> node = items.addChild(resource, "Host:" + i);
+      node.setProperty("href", "http://localhost:8080/api/v1/clusters/c1/hosts/" + hostName);
+    }
+
+    return result;
+  }
+
+  /**
+   * Counts the bytes written to it and records when the first byte arrived,
+   * how many resources were still to be written at that point and the
+   * highest heap usage observed while writing.
+   */
+  private static class ProbeOutputStream extends OutputStream {
+    private final TreeNode<Resource> items;
+    private final Runtime runtime = Runtime.getRuntime();
+    private long firstWrite;
+    private int childrenAtFirstWrite;
+    private long count;
+    private long peakHeap;
+
+    private ProbeOutputStream(TreeNode<Resource> items) {
+      this.items = items;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (count == 0) {
+        firstWrite = System.nanoTime();
+        childrenAtFirstWrite = items == null ? 0 : items.getChildren().size();
+      }
+      count += len;
+      peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+    }
+  }
 }
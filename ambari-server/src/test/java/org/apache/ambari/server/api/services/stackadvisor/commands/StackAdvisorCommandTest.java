@@ -37,8 +37,18 @@ import java.util.Iterator;
 import java.util.Map;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
+import org.apache.ambari.server.api.resources.ResourceInstance;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.api.services.BaseService;
+import org.apache.ambari.server.api.services.Request;
+import org.apache.ambari.server.api.services.Result;
+import org.apache.ambari.server.api.services.ResultImpl;
+import org.apache.ambari.server.api.services.ResultStatus;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorException;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorRequest;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorRequest.StackAdvisorRequestBuilder;
@@ -46,6 +56,9 @@ import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorRequestExc
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorResponse;
 import org.apache.ambari.server.api.services.stackadvisor.StackAdvisorRunner;
 import org.apache.ambari.server.api.services.stackadvisor.commands.StackAdvisorCommand.StackAdvisorData;
+import org.apache.ambari.server.api.util.TreeNode;
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.commons.io.FileUtils;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.annotate.JsonProperty;
@@ -189,6 +202,32 @@ public class StackAdvisorCommandTest {
     assertEquals(requestId, result.getId());
   }
 
+  @Test
+  public void testHostsAndServicesInformationWithStreamingEnabled() throws Exception {
+    BaseService.init(null, true);
+    try {
+      File recommendationsDir = temp.newFolder("recommendationDir");
+      StackAdvisorRunner saRunner = mock(StackAdvisorRunner.class);
+      AmbariMetaInfo metaInfo = mock(AmbariMetaInfo.class);
+      StackAdvisorCommand<TestResource> command = new LocalRequestStackAdvisorCommand(
+          recommendationsDir, "1w", "echo", 1, saRunner, metaInfo);
+
+      StackAdvisorRequest request = StackAdvisorRequestBuilder.forStack("stackName", "stackVersion")
+          .forHosts(Arrays.asList("host1"))
+          .forServices(Arrays.asList("HDFS"))
+          .build();
+
+      String hostsJSON = command.getHostsInformation(request);
+      assertEquals("host1",
+          command.mapper.readTree(hostsJSON).get("items").get(0).get("Hosts").get("host_name").asText());
+
+      String servicesJSON = command.getServicesInformation(request);
+      assertNotNull(command.mapper.readTree(servicesJSON).get("items"));
+    } finally {
+      BaseService.init(null, false);
+    }
+  }
+
   @Test
   public void testPopulateStackHierarchy() throws Exception {
     File file = mock(File.class);
@@ -291,6 +330,37 @@ public class StackAdvisorCommandTest {
     }
   }
 
+  /**
+   * Serializes the result of a local request as the real request handling
+   * does, with the result serializer of the command.
+   */
+  class LocalRequestStackAdvisorCommand extends TestStackAdvisorCommand {
+    public LocalRequestStackAdvisorCommand(File recommendationsDir, String recommendationsArtifactsLifetime,
+        String stackAdvisorScript, int requestId, StackAdvisorRunner saRunner, AmbariMetaInfo metaInfo) {
+      super(recommendationsDir, recommendationsArtifactsLifetime, stackAdvisorScript, requestId, saRunner, metaInfo);
+    }
+
+    @Override
+    protected ResourceInstance createResource(Resource.Type type, Map<Resource.Type, String> mapIds) {
+      return mock(ResourceInstance.class);
+    }
+
+    @Override
+    protected Response handleRequest(HttpHeaders headers, String body, UriInfo uriInfo,
+        Request.Type requestType, MediaType mediaType, ResourceInstance resource) {
+      Result result = new ResultImpl(true);
+      result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+      TreeNode<Resource> items = result.getResultTree().addChild(null, "items");
+
+      Resource host = new ResourceImpl(Resource.Type.Host);
+      host.setProperty("Hosts/host_name", "host1");
+      items.addChild(host, "Host:0");
+
+      return Response.status(result.getStatus().getStatusCode())
+          .entity(getResultSerializer().serialize(result)).build();
+    }
+  }
+
   public static class TestResource extends StackAdvisorResponse {
     @JsonProperty
     private String type;
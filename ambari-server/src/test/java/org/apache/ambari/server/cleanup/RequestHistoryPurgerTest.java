@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.cleanup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.orm.DBAccessor;
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.orm.OrmTestHelper;
+import org.apache.ambari.server.orm.dao.RequestDAO;
+import org.apache.ambari.server.orm.dao.UpgradeDAO;
+import org.apache.ambari.server.orm.entities.UpgradeEntity;
+import org.apache.ambari.server.state.stack.upgrade.UpgradeType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+/**
+ * Tests purging request history through {@link RequestDAO#cleanup} on a
+ * generated history in the embedded database.
+ */
+public class RequestHistoryPurgerTest {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestHistoryPurgerTest.class);
+
+  private static final int REQUESTS = 1000;
+  private static final int STAGES_PER_REQUEST = 4;
+  private static final int TASKS_PER_STAGE = 10;
+
+  private static final long OLD_END_TIME = 1000000L;
+  private static final long RECENT_END_TIME = 3000000L;
+  private static final long CLEANUP_DATE = 2000000L;
+
+  private Injector injector;
+  private Connection connection;
+  private long clusterId;
+
+  @Before
+  public void setup() throws Exception {
+    InMemoryDefaultTestModule module = new InMemoryDefaultTestModule();
+    module.getProperties().setProperty(Configuration.DB_CLEANUP_REQUEST_BATCH_SIZE.getKey(), "50");
+    module.getProperties().setProperty(Configuration.DB_CLEANUP_REQUEST_TASK_BATCH_SIZE.getKey(), "64");
+    module.getProperties().setProperty(Configuration.DB_CLEANUP_REQUEST_BATCH_PAUSE.getKey(), "0");
+
+    injector = Guice.createInjector(module);
+    injector.getInstance(GuiceJpaInitializer.class);
+
+    clusterId = injector.getInstance(OrmTestHelper.class).createCluster();
+    connection = injector.getInstance(DBAccessor.class).getConnection();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  @Test
+  public void testCleanup() throws Exception {
+    long start = System.currentTimeMillis();
+    long generatedRows = generateHistory();
+    LOG.info("Generated {} rows of request history in {} ms", generatedRows,
+        System.currentTimeMillis() - start);
+
+    // an upgrade keeps its request
+    UpgradeEntity upgrade = new UpgradeEntity();
+    upgrade.setClusterId(clusterId);
+    upgrade.setRequestId(1L);
+    upgrade.setFromVersion("");
+    upgrade.setToVersion("");
+    upgrade.setUpgradeType(UpgradeType.ROLLING);
+    upgrade.setUpgradePackage("test-upgrade");
+    injector.getInstance(UpgradeDAO.class).create(upgrade);
+
+    RequestDAO requestDAO = injector.getInstance(RequestDAO.class);
+    Assert.assertNotNull(requestDAO.findByPK(2L));
+
+    start = System.currentTimeMillis();
+    long affectedRows = requestDAO.cleanup(new TimeBasedCleanupPolicy(OrmTestHelper.CLUSTER_NAME, CLEANUP_DATE));
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    LOG.info("Purged {} rows in {} ms ({} rows/s)", affectedRows, elapsed, affectedRows * 1000 / elapsed);
+
+    // requests 1 to 500 ended before the cleanup date, except for every tenth
+    // request which is still running and the request of the upgrade
+    long purgedRequests = REQUESTS / 2 - REQUESTS / 20 - 1;
+    long remainingRequests = REQUESTS - purgedRequests;
+    long tasksPerRequest = STAGES_PER_REQUEST * TASKS_PER_STAGE;
+
+    Assert.assertEquals(purgedRequests * (1 + STAGES_PER_REQUEST * 2 + tasksPerRequest * 2), affectedRows);
+    Assert.assertEquals(remainingRequests, count("request"));
+    Assert.assertEquals(remainingRequests * STAGES_PER_REQUEST, count("stage"));
+    Assert.assertEquals(remainingRequests * STAGES_PER_REQUEST, count("role_success_criteria"));
+    Assert.assertEquals(remainingRequests * tasksPerRequest, count("host_role_command"));
+    Assert.assertEquals(remainingRequests * tasksPerRequest, count("execution_command"));
+
+    Assert.assertNotNull(requestDAO.findByPK(1L));
+    Assert.assertNull(requestDAO.findByPK(2L));
+    Assert.assertNotNull(requestDAO.findByPK(10L));
+    Assert.assertNotNull(requestDAO.findByPK(501L));
+    Assert.assertEquals(0, count("host_role_command WHERE request_id = 2"));
+    Assert.assertEquals(tasksPerRequest, count("host_role_command WHERE request_id = 1"));
+
+    // nothing is left to purge
+    Assert.assertEquals(0, requestDAO.cleanup(new TimeBasedCleanupPolicy(OrmTestHelper.CLUSTER_NAME, CLEANUP_DATE)));
+  }
+
+  /**
+   * Inserts requests with their stages, role success criteria, tasks and
+   * execution commands. The first half of the requests ended before the
+   * cleanup date, every tenth request has not ended.
+   *
+   * @return the number of inserted rows
+   */
+  private long generateHistory() throws Exception {
+    PreparedStatement request = connection.prepareStatement(
+        "INSERT INTO request (request_id, cluster_id, request_context, status, create_time, start_time, " +
+        "end_time, exclusive_execution) VALUES (?, ?, 'Generated', ?, 0, 0, ?, 0)");
+    PreparedStatement stage = connection.prepareStatement(
+        "INSERT INTO stage (stage_id, request_id, cluster_id, skippable, supports_auto_skip_failure, log_info, " +
+        "request_context, cluster_host_info, command_execution_type) VALUES (?, ?, ?, 0, 0, '', '', ?, 'STAGE')");
+    PreparedStatement criteria = connection.prepareStatement(
+        "INSERT INTO role_success_criteria (role, request_id, stage_id, success_factor) VALUES ('DATANODE', ?, ?, 1)");
+    PreparedStatement task = connection.prepareStatement(
+        "INSERT INTO host_role_command (task_id, request_id, stage_id, role, event, exitcode, status, " +
+        "start_time, original_start_time, end_time, last_attempt_time, attempt_count, retry_allowed, " +
+        "auto_skip_on_failure) VALUES (?, ?, ?, 'DATANODE', '', 0, ?, 0, 0, ?, 0, 1, 0, 0)");
+    PreparedStatement command = connection.prepareStatement(
+        "INSERT INTO execution_command (task_id, command) VALUES (?, ?)");
+
+    byte[] payload = new byte[256];
+    long taskId = 1;
+    long rows = 0;
+
+    connection.setAutoCommit(false);
+    try {
+      for (long requestId = 1; requestId <= REQUESTS; requestId++) {
+        long endTime = requestId % 10 == 0 ? -1L : requestId <= REQUESTS / 2 ? OLD_END_TIME : RECENT_END_TIME;
+        String status = (endTime < 0 ? HostRoleStatus.IN_PROGRESS : HostRoleStatus.COMPLETED).name();
+
+        request.setLong(1, requestId);
+        request.setLong(2, clusterId);
+        request.setString(3, status);
+        request.setLong(4, endTime);
+        request.executeUpdate();
+        rows++;
+
+        for (long stageId = 1; stageId <= STAGES_PER_REQUEST; stageId++) {
+          stage.setLong(1, stageId);
+          stage.setLong(2, requestId);
+          stage.setLong(3, clusterId);
+          stage.setBytes(4, payload);
+          stage.addBatch();
+
+          criteria.setLong(1, requestId);
+          criteria.setLong(2, stageId);
+          criteria.addBatch();
+          rows += 2;
+
+          for (int i = 0; i < TASKS_PER_STAGE; i++, taskId++) {
+            task.setLong(1, taskId);
+            task.setLong(2, requestId);
+            task.setLong(3, stageId);
+            task.setString(4, status);
+            task.setLong(5, endTime);
+            task.addBatch();
+
+            command.setLong(1, taskId);
+            command.setBytes(2, payload);
+            command.addBatch();
+            rows += 2;
+          }
+        }
+
+        // parents are written before the rows referencing them
+        stage.executeBatch();
+        criteria.executeBatch();
+        task.executeBatch();
+        command.executeBatch();
+      }
+      connection.commit();
+    } finally {
+      connection.setAutoCommit(true);
+      request.close();
+      stage.close();
+      criteria.close();
+      task.close();
+      command.close();
+    }
+
+    return rows;
+  }
+
+  private long count(String tableAndCondition) throws Exception {
+    Statement statement = connection.createStatement();
+    try {
+      ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + tableAndCondition);
+      rs.next();
+      return rs.getLong(1);
+    } finally {
+      statement.close();
+    }
+  }
+}
@@ -68,6 +68,7 @@ import org.apache.ambari.server.StackAccessException;
 import org.apache.ambari.server.actionmanager.ActionDBAccessor;
 import org.apache.ambari.server.actionmanager.ActionManager;
 import org.apache.ambari.server.actionmanager.ActionType;
+import org.apache.ambari.server.actionmanager.ExecutionCommandStorage;
 import org.apache.ambari.server.actionmanager.ExecutionCommandWrapper;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
@@ -4793,7 +4794,8 @@ public class AmbariManagementControllerTest {
 
     Gson gson = new Gson();
     ExecutionCommand executionCommand = gson.fromJson(new StringReader(
-        new String(commandEntity.getCommand())), ExecutionCommand.class);
+        injector.getInstance(ExecutionCommandStorage.class).toJson(commandEntity.getCommand())),
+        ExecutionCommand.class);
 
     assertFalse(executionCommand.getConfigurationTags().isEmpty());
     assertTrue(executionCommand.getConfigurations() == null || executionCommand.getConfigurations().isEmpty());
@@ -793,11 +793,16 @@ public class AlertDefinitionResourceProviderTest {
     dao.create(capture(entityCapture));
     expectLastCall();
 
-    // deleting a single definition should invalidate hosts of the definition
     expect(
         definitionHash.invalidateHosts(EasyMock.anyObject(AlertDefinitionEntity.class))).andReturn(
         new HashSet<String>()).atLeastOnce();
 
+    // deleting a single definition should remove it from the hash and
+    // invalidate hosts of the definition
+    expect(
+        definitionHash.removeDefinition(EasyMock.anyObject(AlertDefinitionEntity.class))).andReturn(
+        new HashSet<String>()).once();
+
     replay(amc, clusters, cluster, dao, definitionHash);
 
     SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -836,7 +841,7 @@ public class AlertDefinitionResourceProviderTest {
     AlertDefinitionEntity entity1 = entityCapture.getValue();
     Assert.assertEquals(Long.valueOf(1), entity1.getDefinitionId());
 
-    verify(amc, clusters, cluster, dao);
+    verify(amc, clusters, cluster, dao, definitionHash);
   }
 
   /**
@@ -18,11 +18,17 @@
 
 package org.apache.ambari.server.controller.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.controller.utilities.PropertyHelper;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import junit.framework.Assert;
 
@@ -31,6 +37,22 @@ import junit.framework.Assert;
  */
 public class ResourceImplTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ResourceImplTest.class);
+
+  private static final int HOSTS = 5000;
+
+  private static final String[] HOST_COMPONENT_PROPERTY_IDS = {
+      "HostRoles/cluster_name", "HostRoles/host_name", "HostRoles/service_name",
+      "HostRoles/component_name", "HostRoles/state", "HostRoles/desired_state",
+      "HostRoles/stack_id", "HostRoles/desired_stack_id", "HostRoles/version",
+      "HostRoles/maintenance_state", "HostRoles/upgrade_state", "HostRoles/stale_configs",
+      "HostRoles/reload_configs", "HostRoles/public_host_name", "HostRoles/desired_admin_state",
+      "metrics/cpu/cpu_user", "metrics/cpu/cpu_system", "metrics/memory/mem_free",
+      "metrics/jvm/memHeapUsedM", "metrics/jvm/threadsRunnable"};
+
+  private static final String[] COMPONENTS = {
+      "DATANODE", "NODEMANAGER", "HBASE_REGIONSERVER", "METRICS_MONITOR"};
+
   @Test
   public void testGetType() {
     Resource resource = new ResourceImpl(Resource.Type.Cluster);
@@ -184,5 +206,132 @@ public class ResourceImplTest {
     Assert.assertTrue(resource1.equals(resource2));
     Assert.assertTrue(resource2.equals(resource1));
   }
-}
 
+  @Test
+  public void testOrderingWithUnorderedInserts() {
+    Resource resource = new ResourceImpl(Resource.Type.HostComponent);
+
+    List<String> propertyIds = new ArrayList<String>();
+    Collections.addAll(propertyIds, HOST_COMPONENT_PROPERTY_IDS);
+    Collections.shuffle(propertyIds);
+
+    for (String propertyId : propertyIds) {
+      resource.setProperty(propertyId, propertyId);
+    }
+
+    Map<String, Map<String, Object>> expected = new TreeMap<String, Map<String, Object>>();
+    for (String propertyId : HOST_COMPONENT_PROPERTY_IDS) {
+      String category = PropertyHelper.getPropertyCategory(propertyId);
+      Map<String, Object> properties = expected.get(category);
+      if (properties == null) {
+        properties = new TreeMap<String, Object>();
+        expected.put(category, properties);
+      }
+      properties.put(PropertyHelper.getPropertyName(propertyId), propertyId);
+    }
+
+    Assert.assertEquals(expected, resource.getPropertiesMap());
+    Assert.assertEquals(new ArrayList<String>(expected.keySet()),
+        new ArrayList<String>(resource.getPropertiesMap().keySet()));
+    for (Map.Entry<String, Map<String, Object>> entry : expected.entrySet()) {
+      Assert.assertEquals(new ArrayList<String>(entry.getValue().keySet()),
+          new ArrayList<String>(resource.getPropertiesMap().get(entry.getKey()).keySet()));
+    }
+  }
+
+  /**
+   * Compares the memory footprint and the time to populate and read the
+   * resources of a 5,000 host HostComponent query against resources backed by
+   * synchronized tree maps, as they used to be.
+   */
+  @Test
+  public void testHostComponentQueryFootprint() {
+    // warm up
+    populateLegacy(HOSTS / 10);
+    populate(HOSTS / 10);
+
+    long legacyHeap = usedHeap();
+    long start = System.nanoTime();
+    List<Map<String, Map<String, Object>>> legacy = populateLegacy(HOSTS);
+    long legacyTime = System.nanoTime() - start;
+    legacyHeap = usedHeap() - legacyHeap;
+
+    long heap = usedHeap();
+    start = System.nanoTime();
+    List<Resource> resources = populate(HOSTS);
+    long time = System.nanoTime() - start;
+    heap = usedHeap() - heap;
+
+    LOG.info("{} host components: synchronized tree maps took {} ms and ~{} KB, " +
+        "resources took {} ms and ~{} KB", resources.size(), legacyTime / 1000000,
+        legacyHeap / 1024, time / 1000000, heap / 1024);
+
+    Assert.assertEquals(legacy.size(), resources.size());
+    for (int i = 0; i < resources.size(); i++) {
+      Assert.assertEquals(legacy.get(i), resources.get(i).getPropertiesMap());
+    }
+  }
+
+  private static List<Resource> populate(int hosts) {
+    List<Resource> resources = new ArrayList<Resource>(hosts * COMPONENTS.length);
+    for (int host = 0; host < hosts; host++) {
+      for (String component : COMPONENTS) {
+        Resource resource = new ResourceImpl(Resource.Type.HostComponent);
+        for (int i = 0; i < HOST_COMPONENT_PROPERTY_IDS.length; i++) {
+          resource.setProperty(HOST_COMPONENT_PROPERTY_IDS[i], getValue(host, component, i));
+        }
+        for (String propertyId : HOST_COMPONENT_PROPERTY_IDS) {
+          Assert.assertNotNull(resource.getPropertyValue(propertyId));
+        }
+        resources.add(resource);
+      }
+    }
+    return resources;
+  }
+
+  private static List<Map<String, Map<String, Object>>> populateLegacy(int hosts) {
+    List<Map<String, Map<String, Object>>> resources =
+        new ArrayList<Map<String, Map<String, Object>>>(hosts * COMPONENTS.length);
+    for (int host = 0; host < hosts; host++) {
+      for (String component : COMPONENTS) {
+        Map<String, Map<String, Object>> resource =
+            Collections.synchronizedMap(new TreeMap<String, Map<String, Object>>());
+        for (int i = 0; i < HOST_COMPONENT_PROPERTY_IDS.length; i++) {
+          String propertyId = HOST_COMPONENT_PROPERTY_IDS[i];
+          String category = PropertyHelper.getPropertyCategory(propertyId);
+          Map<String, Object> properties = resource.get(category);
+          if (properties == null) {
+            properties = Collections.synchronizedMap(new TreeMap<String, Object>());
+            resource.put(category, properties);
+          }
+          properties.put(PropertyHelper.getPropertyName(propertyId), getValue(host, component, i));
+        }
+        for (String propertyId : HOST_COMPONENT_PROPERTY_IDS) {
+          Map<String, Object> properties = resource.get(PropertyHelper.getPropertyCategory(propertyId));
+          Assert.assertNotNull(properties.get(PropertyHelper.getPropertyName(propertyId)));
+        }
+        resources.add(resource);
+      }
+    }
+    return resources;
+  }
+
+  private static Object getValue(int host, String component, int index) {
+    switch (index) {
+      case 1:
+        return "c6401-" + host + ".ambari.apache.org";
+      case 3:
+        return component;
+      default:
+        return index;
+    }
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.controller.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link SortedArrayMap}.
+ */
+public class SortedArrayMapTest {
+
+  @Test
+  public void testPutGetRemove() {
+    Map<String, Object> map = new SortedArrayMap<Object>();
+    Assert.assertTrue(map.isEmpty());
+
+    Assert.assertNull(map.put("b", 1));
+    Assert.assertNull(map.put("a", 2));
+    Assert.assertNull(map.put("c", null));
+    Assert.assertEquals(1, map.put("b", 3));
+
+    Assert.assertEquals(3, map.size());
+    Assert.assertEquals(2, map.get("a"));
+    Assert.assertEquals(3, map.get("b"));
+    Assert.assertNull(map.get("c"));
+    Assert.assertTrue(map.containsKey("c"));
+    Assert.assertFalse(map.containsKey("d"));
+    Assert.assertFalse(map.containsKey(1));
+
+    Assert.assertEquals(2, map.remove("a"));
+    Assert.assertNull(map.remove("a"));
+    Assert.assertEquals(2, map.size());
+
+    map.clear();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.get("b"));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullKey() {
+    new SortedArrayMap<Object>().put(null, 1);
+  }
+
+  @Test
+  public void testSameAsTreeMap() {
+    Map<String, Integer> map = new SortedArrayMap<Integer>();
+    Map<String, Integer> expected = new TreeMap<String, Integer>();
+    Random random = new Random(7L);
+
+    for (int i = 0; i < 1000; i++) {
+      String key = "key" + random.nextInt(200);
+      if (random.nextInt(4) == 0) {
+        Assert.assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        Assert.assertEquals(expected.put(key, i), map.put(key, i));
+      }
+    }
+
+    Assert.assertEquals(expected, map);
+    Assert.assertEquals(map, expected);
+    Assert.assertEquals(expected.hashCode(), map.hashCode());
+    Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(map.keySet()));
+    Assert.assertEquals(expected.toString(), map.toString());
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    Map<String, Object> map = new SortedArrayMap<Object>();
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      keys.add("k" + i);
+    }
+    Collections.shuffle(keys, new Random(7L));
+    for (String key : keys) {
+      map.put(key, key);
+    }
+
+    Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Object> entry = iterator.next();
+      if (Integer.parseInt(entry.getKey().substring(1)) % 2 == 0) {
+        iterator.remove();
+      } else {
+        entry.setValue("odd");
+      }
+    }
+
+    Assert.assertEquals(5, map.size());
+    Assert.assertEquals("[k1, k3, k5, k7, k9]", map.keySet().toString());
+    Assert.assertEquals("odd", map.get("k5"));
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testConcurrentModification() {
+    Map<String, Object> map = new SortedArrayMap<Object>();
+    map.put("a", 1);
+    map.put("b", 2);
+
+    for (String key : map.keySet()) {
+      map.put(key + key, 3);
+    }
+  }
+}
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.ambari.server.actionmanager.ActionManager;
+import org.apache.ambari.server.actionmanager.ExecutionCommandStorage;
 import org.apache.ambari.server.actionmanager.ExecutionCommandWrapper;
 import org.apache.ambari.server.actionmanager.ExecutionCommandWrapperFactory;
 import org.apache.ambari.server.agent.ExecutionCommand;
@@ -298,7 +299,7 @@ public class UpgradeResourceProviderHDP22Test {
 
     List<ExecutionCommandEntity> currentExecutionCommands = injector.getInstance(ExecutionCommandDAO.class).findAll();
     for (ExecutionCommandEntity ece : currentExecutionCommands) {
-      String executionCommandJson = new String(ece.getCommand());
+      String executionCommandJson = injector.getInstance(ExecutionCommandStorage.class).toJson(ece.getCommand());
       Map<String, Object> commandMap = gson.<Map<String, Object>> fromJson(executionCommandJson, Map.class);
 
       // ensure that the latest tag is being used - this is absolutely required
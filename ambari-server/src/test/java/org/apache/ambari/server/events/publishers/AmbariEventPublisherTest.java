@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.events.HostRegisteredEvent;
+import org.apache.ambari.server.events.ServiceComponentInstalledEvent;
+import org.apache.ambari.server.metrics.system.impl.AmbariEventMetricsSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.Hashing;
+
+/**
+ * Tests {@link AmbariEventPublisher}.
+ */
+public class AmbariEventPublisherTest {
+  private static final Logger LOG = LoggerFactory.getLogger(AmbariEventPublisherTest.class);
+
+  private static final int HOSTS = 500;
+  private static final int EVENTS = 100000;
+  private static final long TIMEOUT = 120000L;
+
+  @Test
+  public void testEventsOfHostDeliveredInOrder() throws Exception {
+    AmbariEventPublisher publisher = createPublisher(4);
+    OrderListener listener = new OrderListener(10000);
+    publisher.register(listener);
+
+    publishComponentEvents(publisher, 100, 10000);
+
+    Assert.assertTrue(listener.m_latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(0, listener.m_outOfOrder.get());
+  }
+
+  @Test
+  public void testBlockedHostDoesNotDelayOtherHosts() throws Exception {
+    AmbariEventPublisher publisher = createPublisher(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch delivered = new CountDownLatch(1);
+
+    publisher.register(new Object() {
+      @Subscribe
+      @AllowConcurrentEvents
+      public void onEvent(HostRegisteredEvent event) throws InterruptedException {
+        if (event.getHostName().equals("blocked")) {
+          release.await();
+        } else {
+          delivered.countDown();
+        }
+      }
+    });
+
+    // find a host which is delivered on the other thread
+    String other = "other";
+    while (("blocked".hashCode() & Integer.MAX_VALUE) % 2 == (other.hashCode() & Integer.MAX_VALUE) % 2) {
+      other = other + "0";
+    }
+
+    publisher.publish(new HostRegisteredEvent("blocked"));
+    publisher.publish(new HostRegisteredEvent(other));
+
+    try {
+      Assert.assertTrue(delivered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testListenerNotConcurrentAcrossPartitions() throws Exception {
+    AmbariEventPublisher publisher = createPublisher(4);
+    SerialListener listener = new SerialListener(2000);
+    publisher.register(listener);
+
+    for (int i = 0; i < 1000; i++) {
+      publisher.publish(new HostRegisteredEvent("host" + (i % 100)));
+      publisher.publish(new ServiceComponentInstalledEvent(1L, "HDP", "2.5", "HDFS",
+          "COMPONENT-" + i, "other" + (i % 100), false));
+    }
+
+    Assert.assertTrue(listener.m_latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(1, listener.m_maxRunning.get());
+  }
+
+  @Test
+  public void testListenerMetrics() throws Exception {
+    AmbariEventPublisher publisher = createPublisher(2);
+    OrderListener listener = new OrderListener(100);
+    publisher.register(listener);
+
+    MetricRegistry registry = AmbariEventMetricsSource.getRegistry();
+    long handled = registry.timer("ambari-event-bus.OrderListener.latency").getCount();
+
+    publishComponentEvents(publisher, 10, 100);
+
+    Assert.assertTrue(listener.m_latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    // the latency is recorded after the listener returned
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (registry.timer("ambari-event-bus.OrderListener.latency").getCount() < handled + 100
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(handled + 100, registry.timer("ambari-event-bus.OrderListener.latency").getCount());
+    Assert.assertEquals(0, registry.counter("ambari-event-bus.OrderListener.pending").getCount());
+  }
+
+  /**
+   * Publishes a burst of 100k host component events, as a bulk install of a
+   * large cluster does, and compares the time it takes to deliver them to a
+   * set of listeners on a single thread and on the default number of threads.
+   */
+  @Test
+  public void testBurstDrainTime() throws Exception {
+    long serial = drain(1);
+    long partitioned = drain(Configuration.SERVER_EVENTS_THREADS.getDefaultValue());
+
+    LOG.info("Delivered {} events of {} hosts in {} ms on 1 thread and in {} ms on {} threads", EVENTS, HOSTS,
+        serial, partitioned, Configuration.SERVER_EVENTS_THREADS.getDefaultValue());
+  }
+
+  /**
+   * @return the time in milliseconds from publishing the first event until
+   *         every listener handled the last one
+   */
+  private long drain(int threads) throws Exception {
+    AmbariEventPublisher publisher = createPublisher(threads);
+    OrderListener order = new OrderListener(EVENTS);
+    WorkListener work = new WorkListener(EVENTS);
+    ConcurrentWorkListener concurrentWork = new ConcurrentWorkListener(EVENTS);
+    publisher.register(order);
+    publisher.register(work);
+    publisher.register(concurrentWork);
+
+    long start = System.currentTimeMillis();
+    publishComponentEvents(publisher, HOSTS, EVENTS);
+
+    Assert.assertTrue(order.m_latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(work.m_latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(concurrentWork.m_latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    long elapsed = System.currentTimeMillis() - start;
+
+    Assert.assertEquals(0, order.m_outOfOrder.get());
+    return elapsed;
+  }
+
+  private AmbariEventPublisher createPublisher(int threads) {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.SERVER_EVENTS_THREADS.getKey(), String.valueOf(threads));
+    return new AmbariEventPublisher(new Configuration(properties));
+  }
+
+  private void publishComponentEvents(AmbariEventPublisher publisher, int hosts, int events) {
+    for (int i = 0; i < events; i++) {
+      publisher.publish(new ServiceComponentInstalledEvent(1L, "HDP", "2.5", "HDFS",
+          "COMPONENT-" + (i / hosts), "host" + (i % hosts), false));
+    }
+  }
+
+  /**
+   * Checks that the components of each host are installed in order.
+   */
+  public static class OrderListener {
+    private final CountDownLatch m_latch;
+    private final AtomicInteger m_outOfOrder = new AtomicInteger();
+    private final Map<String, Integer> m_lastComponent = new ConcurrentHashMap<>();
+
+    public OrderListener(int events) {
+      m_latch = new CountDownLatch(events);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(ServiceComponentInstalledEvent event) {
+      int component = Integer.parseInt(event.getComponentName().substring("COMPONENT-".length()));
+      Integer last = m_lastComponent.put(event.getHostName(), component);
+      if (null != last && last > component) {
+        m_outOfOrder.incrementAndGet();
+      }
+      m_latch.countDown();
+    }
+  }
+
+  /**
+   * Records how many of its subscriber methods, none of which allow concurrent
+   * events, run at the same time.
+   */
+  public static class SerialListener {
+    private final CountDownLatch m_latch;
+    private final AtomicInteger m_running = new AtomicInteger();
+    private final AtomicInteger m_maxRunning = new AtomicInteger();
+
+    public SerialListener(int events) {
+      m_latch = new CountDownLatch(events);
+    }
+
+    @Subscribe
+    public void onEvent(HostRegisteredEvent event) throws InterruptedException {
+      handle();
+    }
+
+    @Subscribe
+    public void onEvent(ServiceComponentInstalledEvent event) throws InterruptedException {
+      handle();
+    }
+
+    private void handle() throws InterruptedException {
+      int running = m_running.incrementAndGet();
+      int max;
+      while (running > (max = m_maxRunning.get()) && !m_maxRunning.compareAndSet(max, running)) {
+        // retry
+      }
+
+      Thread.sleep(0, 100000);
+      m_running.decrementAndGet();
+      m_latch.countDown();
+    }
+  }
+
+  /**
+   * A listener doing some work for every event, one event at a time.
+   */
+  public static class WorkListener {
+    private final CountDownLatch m_latch;
+    private volatile String m_lastHash;
+
+    public WorkListener(int events) {
+      m_latch = new CountDownLatch(events);
+    }
+
+    @Subscribe
+    public void onEvent(ServiceComponentInstalledEvent event) {
+      m_lastHash = hash(event);
+      m_latch.countDown();
+    }
+  }
+
+  /**
+   * A listener doing some work for every event, which is safe to be called
+   * concurrently.
+   */
+  public static class ConcurrentWorkListener {
+    private final CountDownLatch m_latch;
+    private volatile String m_lastHash;
+
+    public ConcurrentWorkListener(int events) {
+      m_latch = new CountDownLatch(events);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onEvent(ServiceComponentInstalledEvent event) {
+      m_lastHash = hash(event);
+      m_latch.countDown();
+    }
+  }
+
+  private static String hash(ServiceComponentInstalledEvent event) {
+    return Hashing.sha256().hashUnencodedChars(event.toString()).toString();
+  }
+}
@@ -92,4 +92,39 @@ public class LockFactoryTest extends EasyMockSupport {
     verifyAll();
   }
 
+  @Test
+  public void aggregatesLockStatisticsByLabel() {
+    Configuration config = createNiceMock(Configuration.class);
+    expect(config.isServerLocksProfilingEnabled()).andReturn(true);
+    replayAll();
+
+    LockFactory factory = new LockFactory(config);
+    ReadWriteLock lock = factory.newReadWriteLock("testLock");
+    lock.readLock().lock();
+    lock.readLock().unlock();
+    lock.writeLock().lock();
+    lock.writeLock().unlock();
+
+    Assert.assertTrue(factory.isProfilingEnabled());
+    Assert.assertEquals(Long.valueOf(2L), factory.getLockCounts().get("testLock"));
+    Assert.assertTrue(factory.getTimeSpentWaitingForLocks().containsKey("testLock"));
+
+    verifyAll();
+  }
+
+  @Test
+  public void noLockStatisticsIfProfilingIsDisabled() {
+    Configuration config = createNiceMock(Configuration.class);
+    expect(config.isServerLocksProfilingEnabled()).andReturn(false);
+    replayAll();
+
+    LockFactory factory = new LockFactory(config);
+    factory.newReadWriteLock("testLock").readLock().lock();
+
+    Assert.assertTrue(factory.getLockCounts().isEmpty());
+    Assert.assertTrue(factory.getTimeSpentWaitingForLocks().isEmpty());
+
+    verifyAll();
+  }
+
 }
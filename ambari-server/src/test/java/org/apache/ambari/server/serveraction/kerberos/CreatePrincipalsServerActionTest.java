@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.serveraction.kerberos;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ambari.server.actionmanager.HostRoleCommand;
+import org.apache.ambari.server.actionmanager.HostRoleStatus;
+import org.apache.ambari.server.agent.CommandReport;
+import org.apache.ambari.server.agent.ExecutionCommand;
+import org.apache.ambari.server.audit.AuditLogger;
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.controller.KerberosHelper;
+import org.apache.ambari.server.orm.dao.KerberosPrincipalDAO;
+import org.apache.ambari.server.orm.dao.KerberosPrincipalHostDAO;
+import org.apache.ambari.server.security.credential.PrincipalKeyCredential;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.stack.OsFamily;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Tests {@link CreatePrincipalsServerAction} against a stub KDC which answers
+ * every request after a fixed latency.
+ */
+public class CreatePrincipalsServerActionTest {
+  private static final Logger LOG = LoggerFactory.getLogger(CreatePrincipalsServerActionTest.class);
+
+  private static final int HOSTS = 300;
+  private static final String[] HOST_PRINCIPALS = {"nn/_HOST@_REALM", "dn/_HOST@_REALM", "HTTP/_HOST@_REALM"};
+  private static final String[] SHARED_PRINCIPALS = {"hdfs@_REALM", "ambari-qa@_REALM"};
+  private static final int PRINCIPALS = HOSTS * HOST_PRINCIPALS.length + SHARED_PRINCIPALS.length;
+  private static final long KDC_LATENCY = 2L;
+
+  private File temporaryDirectory;
+  private final Map<String, String> commandParams = new HashMap<String, String>();
+
+  /**
+   * Number of KDC calls per principal
+   */
+  private final ConcurrentMap<String, AtomicInteger> kdcCalls = new ConcurrentHashMap<String, AtomicInteger>();
+  private final AtomicInteger openedSessions = new AtomicInteger();
+
+  /**
+   * Principals whose first creation fails with a KDC connection error
+   */
+  private final ConcurrentMap<String, Boolean> failOnce = new ConcurrentHashMap<String, Boolean>();
+
+  @Before
+  public void setUp() throws Exception {
+    temporaryDirectory = File.createTempFile("ambari_ut_", ".d");
+    Assert.assertTrue(temporaryDirectory.delete());
+    Assert.assertTrue(temporaryDirectory.mkdirs());
+
+    // every host has its own service principals, the user principals are shared by all hosts
+    KerberosIdentityDataFileWriter writer =
+        new KerberosIdentityDataFileWriter(new File(temporaryDirectory, KerberosIdentityDataFileWriter.DATA_FILE_NAME));
+    for (int i = 0; i < HOSTS; i++) {
+      String hostName = "host" + i + ".example.com";
+      for (String principal : HOST_PRINCIPALS) {
+        writer.writeRecord(hostName, "HDFS", "DATANODE", principal, "service", "/etc/security/keytabs/service.keytab",
+            "hdfs", "r", "hadoop", "", "false");
+      }
+      for (String principal : SHARED_PRINCIPALS) {
+        writer.writeRecord(hostName, "HDFS", "DATANODE", principal, "user", "/etc/security/keytabs/user.keytab",
+            "hdfs", "r", "hadoop", "r", "true");
+      }
+    }
+    writer.close();
+
+    commandParams.put(KerberosServerAction.DATA_DIRECTORY, temporaryDirectory.getAbsolutePath());
+    commandParams.put(KerberosServerAction.DEFAULT_REALM, "EXAMPLE.COM");
+    commandParams.put(KerberosServerAction.KDC_TYPE, KDCType.MIT_KDC.toString());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (temporaryDirectory != null) {
+      new File(temporaryDirectory, KerberosIdentityDataFileWriter.DATA_FILE_NAME).delete();
+      temporaryDirectory.delete();
+    }
+  }
+
+  /**
+   * Principals per second created on one and on several KDC sessions.
+   */
+  @Test
+  public void testCreatePrincipalsThroughput() throws Exception {
+    long sequentialTime = createPrincipals(1, 0);
+    kdcCalls.clear();
+    openedSessions.set(0);
+    long concurrentTime = createPrincipals(8, 0);
+
+    LOG.info("Created {} principals at {} principals/s on 1 KDC session and at {} principals/s on 8 KDC sessions",
+        PRINCIPALS, PRINCIPALS * 1000L / Math.max(1L, sequentialTime), PRINCIPALS * 1000L / Math.max(1L, concurrentTime));
+  }
+
+  @Test
+  public void testRetryOnNewSession() throws Exception {
+    failOnce.put("hdfs@EXAMPLE.COM", Boolean.TRUE);
+    failOnce.put("nn/host7.example.com@EXAMPLE.COM", Boolean.TRUE);
+
+    createPrincipals(4, 1);
+
+    // each failure opens a new session
+    Assert.assertEquals(6, openedSessions.get());
+    Assert.assertEquals(2, kdcCalls.get("hdfs@EXAMPLE.COM").get());
+  }
+
+  @Test
+  public void testFailureWithoutRetries() throws Exception {
+    failOnce.put("hdfs@EXAMPLE.COM", Boolean.TRUE);
+
+    ConcurrentMap<String, Object> sharedMap = new ConcurrentHashMap<String, Object>();
+    CommandReport report = createAction(4, 0).execute(sharedMap);
+
+    Assert.assertEquals(HostRoleStatus.FAILED.toString(), report.getStatus());
+    Assert.assertFalse(KerberosServerAction.getPrincipalPasswordMap(sharedMap).containsKey("hdfs@EXAMPLE.COM"));
+  }
+
+  /**
+   * Runs the action and verifies that every principal was created once.
+   *
+   * @return the elapsed time in milliseconds
+   */
+  private long createPrincipals(int threads, int retries) throws Exception {
+    CreatePrincipalsServerAction action = createAction(threads, retries);
+    ConcurrentMap<String, Object> sharedMap = new ConcurrentHashMap<String, Object>();
+
+    long start = System.currentTimeMillis();
+    CommandReport report = action.execute(sharedMap);
+    long elapsed = System.currentTimeMillis() - start;
+
+    Assert.assertEquals(HostRoleStatus.COMPLETED.toString(), report.getStatus());
+    Assert.assertEquals(PRINCIPALS, kdcCalls.size());
+    Assert.assertEquals(PRINCIPALS, KerberosServerAction.getPrincipalPasswordMap(sharedMap).size());
+    Assert.assertEquals(PRINCIPALS, KerberosServerAction.getPrincipalKeyNumberMap(sharedMap).size());
+    for (Map.Entry<String, AtomicInteger> entry : kdcCalls.entrySet()) {
+      if (!failOnce.containsKey(entry.getKey())) {
+        Assert.assertEquals(entry.getKey(), 1, entry.getValue().get());
+      }
+    }
+    return elapsed;
+  }
+
+  private CreatePrincipalsServerAction createAction(int threads, int retries) throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.KERBEROS_OPERATION_THREADS.getKey(), String.valueOf(threads));
+    properties.setProperty(Configuration.KERBEROS_OPERATION_PRINCIPAL_RETRIES.getKey(), String.valueOf(retries));
+    properties.setProperty(Configuration.KERBEROS_OPERATION_RETRY_TIMEOUT.getKey(), "0");
+    final Configuration configuration = new Configuration(properties);
+
+    final Clusters clusters = mock(Clusters.class);
+    when(clusters.getCluster(anyString())).thenReturn(mock(Cluster.class));
+
+    final KerberosHelper kerberosHelper = createNiceMock(KerberosHelper.class);
+    expect(kerberosHelper.getKDCAdministratorCredentials(EasyMock.anyObject(String.class)))
+        .andReturn(new PrincipalKeyCredential("admin/admin", "password"))
+        .anyTimes();
+    final KerberosPrincipalDAO kerberosPrincipalDAO = createNiceMock(KerberosPrincipalDAO.class);
+    final KerberosPrincipalHostDAO kerberosPrincipalHostDAO = createNiceMock(KerberosPrincipalHostDAO.class);
+    replay(kerberosHelper, kerberosPrincipalDAO, kerberosPrincipalHostDAO);
+
+    Injector injector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(KerberosHelper.class).toInstance(kerberosHelper);
+        bind(KerberosPrincipalDAO.class).toInstance(kerberosPrincipalDAO);
+        bind(KerberosPrincipalHostDAO.class).toInstance(kerberosPrincipalHostDAO);
+        bind(KerberosOperationHandlerFactory.class).toInstance(new KerberosOperationHandlerFactory() {
+          @Override
+          public KerberosOperationHandler getKerberosOperationHandler(KDCType kdcType) {
+            return new StubKerberosOperationHandler();
+          }
+        });
+        bind(Configuration.class).toInstance(configuration);
+        bind(Clusters.class).toInstance(clusters);
+        bind(OsFamily.class).toInstance(createNiceMock(OsFamily.class));
+        bind(AuditLogger.class).toInstance(createNiceMock(AuditLogger.class));
+      }
+    });
+
+    ExecutionCommand executionCommand = mock(ExecutionCommand.class);
+    when(executionCommand.getCommandParams()).thenReturn(commandParams);
+    when(executionCommand.getClusterName()).thenReturn("c1");
+
+    CreatePrincipalsServerAction action = injector.getInstance(CreatePrincipalsServerAction.class);
+    action.setExecutionCommand(executionCommand);
+    action.setHostRoleCommand(mock(HostRoleCommand.class));
+    return action;
+  }
+
+  /**
+   * KDC which takes {@link #KDC_LATENCY} ms to answer.
+   */
+  private class StubKerberosOperationHandler extends KerberosOperationHandler {
+
+    @Override
+    public void open(PrincipalKeyCredential administratorCredential, String defaultRealm,
+                     Map<String, String> kerberosConfiguration) throws KerberosOperationException {
+      openedSessions.incrementAndGet();
+      setOpen(true);
+    }
+
+    @Override
+    public void close() throws KerberosOperationException {
+      setOpen(false);
+    }
+
+    @Override
+    public boolean principalExists(String principal) throws KerberosOperationException {
+      return kdcCalls.containsKey(principal);
+    }
+
+    @Override
+    public Integer createPrincipal(String principal, String password, boolean service)
+        throws KerberosOperationException {
+      if (!isOpen()) {
+        throw new KerberosOperationException("The handler is closed");
+      }
+
+      AtomicInteger calls = kdcCalls.putIfAbsent(principal, new AtomicInteger(1));
+      int call = (calls == null) ? 1 : calls.incrementAndGet();
+
+      try {
+        Thread.sleep(KDC_LATENCY);
+      } catch (InterruptedException e) {
+        throw new KerberosOperationException("Interrupted", e);
+      }
+
+      if ((call == 1) && failOnce.containsKey(principal)) {
+        throw new KerberosKDCConnectionException("Cannot contact any KDC");
+      }
+      return 1;
+    }
+
+    @Override
+    public Integer setPrincipalPassword(String principal, String password) throws KerberosOperationException {
+      return createPrincipal(principal, password, true);
+    }
+
+    @Override
+    public boolean removePrincipal(String principal) throws KerberosOperationException {
+      return kdcCalls.remove(principal) != null;
+    }
+  }
+}
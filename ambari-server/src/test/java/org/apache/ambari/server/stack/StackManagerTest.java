@@ -65,6 +65,8 @@ import org.apache.commons.lang.StringUtils;
 import org.easymock.EasyMock;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import com.google.gson.Gson;
@@ -75,6 +77,8 @@ import com.google.gson.reflect.TypeToken;
  */
 public class StackManagerTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(StackManagerTest.class);
+
   private static StackManager stackManager;
   private static MetainfoDAO metaInfoDao;
   private static ActionMetadata actionMetadata;
@@ -977,4 +981,65 @@ public class StackManagerTest {
     assertTrue(logsearchLogfeederRoleCommand + " should be dependent of " + infraSolrRoleCommand, logsearchLogfeederBlockers.contains(infraSolrRoleCommand));
     assertTrue(logsearchLogfeederRoleCommand + " should be dependent of " + logsearchServerRoleCommand, logsearchLogfeederBlockers.contains(logsearchServerRoleCommand));
   }
+
+  /**
+   * Load time of the stacks shipped with the server, parsing the stack
+   * directories on one thread and on the default parse pool.
+   */
+  @Test
+  public void testParallelParse() throws Exception {
+    URL rootDirectoryURL = StackManagerTest.class.getResource("/");
+    Assert.notNull(rootDirectoryURL);
+
+    File resourcesDirectory = new File(new File(rootDirectoryURL.getFile()).getParentFile().getParentFile(), "src/main/resources");
+
+    File stackRoot = new File(resourcesDirectory, "stacks");
+    File commonServices = new File(resourcesDirectory, "common-services");
+
+    MetainfoDAO metaInfoDao = createNiceMock(MetainfoDAO.class);
+    StackDAO stackDao = createNiceMock(StackDAO.class);
+    ExtensionDAO extensionDao = createNiceMock(ExtensionDAO.class);
+    ExtensionLinkDAO linkDao = createNiceMock(ExtensionLinkDAO.class);
+    ActionMetadata actionMetadata = createNiceMock(ActionMetadata.class);
+    Configuration config = createNiceMock(Configuration.class);
+
+    expect(config.getSharedResourcesDirPath()).andReturn(
+        ClassLoader.getSystemClassLoader().getResource("").getPath()).anyTimes();
+
+    List<ExtensionLinkEntity> list = Collections.emptyList();
+    expect(
+        linkDao.findByStack(EasyMock.anyObject(String.class),
+            EasyMock.anyObject(String.class))).andReturn(list).anyTimes();
+
+    replay(config, metaInfoDao, stackDao, extensionDao, linkDao, actionMetadata);
+
+    OsFamily osFamily = new OsFamily(config);
+
+    long start = System.currentTimeMillis();
+    StackManager sequential = new StackManager(stackRoot, commonServices, null,
+        osFamily, false, metaInfoDao, actionMetadata, stackDao, extensionDao, linkDao) {
+      @Override
+      protected int getParseParallelism() {
+        return 1;
+      }
+    };
+    long sequentialTime = System.currentTimeMillis() - start;
+
+    start = System.currentTimeMillis();
+    StackManager parallel = new StackManager(stackRoot, commonServices, null,
+        osFamily, false, metaInfoDao, actionMetadata, stackDao, extensionDao, linkDao);
+    long parallelTime = System.currentTimeMillis() - start;
+
+    LOG.info("Loaded {} stacks in {} ms on one thread and in {} ms on {} threads",
+        parallel.getStacks().size(), sequentialTime, parallelTime,
+        Runtime.getRuntime().availableProcessors());
+
+    assertEquals(sequential.getStacks().size(), parallel.getStacks().size());
+    for (StackInfo stack : sequential.getStacks()) {
+      StackInfo parallelStack = parallel.getStack(stack.getName(), stack.getVersion());
+      assertNotNull(parallelStack);
+      assertEquals(stack.getServices().size(), parallelStack.getServices().size());
+      assertEquals(stack.isValid(), parallelStack.isValid());
+    }
+  }
 }
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ambari.server.agent.ActionQueue;
 import org.apache.ambari.server.agent.AlertDefinitionCommand;
@@ -46,15 +47,19 @@ import org.apache.ambari.server.state.Service;
 import org.apache.ambari.server.state.ServiceComponent;
 import org.apache.ambari.server.state.ServiceComponentHost;
 import org.apache.ambari.server.state.alert.AlertDefinition;
+import org.apache.ambari.server.state.alert.AlertDefinitionFactory;
 import org.apache.ambari.server.state.alert.AlertDefinitionHash;
 import org.apache.ambari.server.state.alert.Scope;
 import org.apache.ambari.server.state.alert.SourceType;
 import org.apache.commons.codec.binary.Hex;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.Binder;
 import com.google.inject.Guice;
@@ -70,6 +75,8 @@ import junit.framework.TestCase;
 @Category({ category.AlertTest.class})
 public class AlertDefinitionHashTest extends TestCase {
 
+  private static final Logger LOG = LoggerFactory.getLogger(AlertDefinitionHashTest.class);
+
   private AlertDefinitionHash m_hash;
   private Clusters m_mockClusters;
   private Cluster m_mockCluster;
@@ -202,6 +209,28 @@ public class AlertDefinitionHashTest extends TestCase {
     EasyMock.expect(m_mockDao.findAgentScoped(EasyMock.anyInt())).andReturn(
         m_agentDefinitions).anyTimes();
 
+    EasyMock.expect(m_mockDao.findAll(EasyMock.anyLong())).andAnswer(
+        new IAnswer<List<AlertDefinitionEntity>>() {
+          @Override
+          public List<AlertDefinitionEntity> answer() throws Throwable {
+            return getAllDefinitions();
+          }
+        }).anyTimes();
+
+    EasyMock.expect(m_mockDao.findById(EasyMock.anyLong())).andAnswer(
+        new IAnswer<AlertDefinitionEntity>() {
+          @Override
+          public AlertDefinitionEntity answer() throws Throwable {
+            Long definitionId = (Long) EasyMock.getCurrentArguments()[0];
+            for (AlertDefinitionEntity definition : getAllDefinitions()) {
+              if (definitionId.equals(definition.getDefinitionId())) {
+                return definition;
+              }
+            }
+            return null;
+          }
+        }).anyTimes();
+
     EasyMock.replay(m_mockClusters, m_mockCluster, m_mockDao);
     m_hash = m_injector.getInstance(AlertDefinitionHash.class);
 
@@ -221,6 +250,14 @@ public class AlertDefinitionHashTest extends TestCase {
     super.tearDown();
   }
 
+  private List<AlertDefinitionEntity> getAllDefinitions() {
+    List<AlertDefinitionEntity> definitions = new ArrayList<AlertDefinitionEntity>();
+    definitions.add(m_hdfsService);
+    definitions.add(m_hdfsHost);
+    definitions.addAll(m_agentDefinitions);
+    return definitions;
+  }
+
   /**
    * Test method for {@link org.apache.ambari.server.state.alert.AlertDefinitionHash#getHash(java.lang.String, java.lang.String)}.
    */
@@ -307,11 +344,95 @@ public class AlertDefinitionHashTest extends TestCase {
     assertNotNull(hash);
     assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
 
+    // the cached hash is updated in place
+    m_hdfsHost.setHash(UUID.randomUUID().toString());
     Set<String> invalidatedHosts = m_hash.invalidateHosts(m_hdfsHost);
-    assertFalse(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+    assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+    assertNotNull(invalidatedHosts);
+    assertEquals(1, invalidatedHosts.size());
+    assertTrue(invalidatedHosts.contains(HOSTNAME));
+
+    String newHash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertFalse(hash.equals(newHash));
+
+    m_hash.invalidateAll();
+    assertEquals(newHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+  }
+
+  /**
+   * Tests that definitions which are added, changed and removed are applied to
+   * the cached hash without reading the definitions again.
+   */
+  @Test
+  public void testUpdateAndRemoveDefinition() throws Exception {
+    AlertDefinitionFactory factory = m_injector.getInstance(AlertDefinitionFactory.class);
+    String hash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+
+    AlertDefinitionEntity agentScoped = new AlertDefinitionEntity();
+    agentScoped.setDefinitionId(4L);
+    agentScoped.setClusterId(1L);
+    agentScoped.setHash(UUID.randomUUID().toString());
+    agentScoped.setServiceName("AMBARI");
+    agentScoped.setComponentName("AMBARI_AGENT");
+    agentScoped.setScope(Scope.HOST);
+    agentScoped.setScheduleInterval(1);
+    agentScoped.setSourceType(SourceType.SCRIPT);
+    agentScoped.setSource("{\"type\" : \"SCRIPT\"}");
+
+    m_hash.updateDefinition(factory.coerce(agentScoped));
+    String addedHash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertFalse(hash.equals(addedHash));
+
+    // the same change applied twice has no further effect
+    m_hash.updateDefinition(factory.coerce(agentScoped));
+    assertEquals(addedHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+
+    // the hash matches one calculated from scratch
+    m_agentDefinitions.add(agentScoped);
+    m_hash.invalidateAll();
+    assertEquals(addedHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+
+    // aggregates are not run by agents
+    agentScoped.setSourceType(SourceType.AGGREGATE);
+    agentScoped.setSource("{\"type\" : \"AGGREGATE\"}");
+    m_hash.updateDefinition(factory.coerce(agentScoped));
+    assertEquals(hash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+
+    m_hash.removeDefinition(1L, m_hdfsHost.getDefinitionId());
+    m_hash.removeDefinition(1L, m_hdfsService.getDefinitionId());
+    m_hash.removeDefinition(1L, m_agentDefinitions.get(0).getDefinitionId());
+    assertEquals(AlertDefinitionHash.NULL_MD5_HASH,
+        m_hash.getHash(CLUSTERNAME, HOSTNAME));
+  }
+
+  /**
+   * Tests that a deleted definition is removed from the cached hash even while
+   * the database still returns it.
+   */
+  @Test
+  public void testRemoveDeletedDefinition() throws Exception {
+    String hash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+
+    // the DAO mock still finds the definition, as it would before the delete
+    // is committed
+    Set<String> invalidatedHosts = m_hash.removeDefinition(m_hdfsHost);
     assertNotNull(invalidatedHosts);
     assertEquals(1, invalidatedHosts.size());
     assertTrue(invalidatedHosts.contains(HOSTNAME));
+    assertTrue(m_hash.isHashCached(CLUSTERNAME, HOSTNAME));
+
+    String removedHash = m_hash.getHash(CLUSTERNAME, HOSTNAME);
+    assertFalse(hash.equals(removedHash));
+
+    // removing it again has no further effect
+    m_hash.removeDefinition(m_hdfsHost);
+    assertEquals(removedHash, m_hash.getHash(CLUSTERNAME, HOSTNAME));
+
+    // once the others are removed nothing is left in the index
+    m_hash.removeDefinition(m_hdfsService);
+    m_hash.removeDefinition(m_agentDefinitions.get(0));
+    assertEquals(AlertDefinitionHash.NULL_MD5_HASH,
+        m_hash.getHash(CLUSTERNAME, HOSTNAME));
   }
 
   /**
@@ -361,19 +482,183 @@ public class AlertDefinitionHashTest extends TestCase {
       uuids.add(entity.getHash());
     }
 
-    Collections.sort(uuids);
-
-    MessageDigest digest = MessageDigest.getInstance("MD5");
+    byte[] hashBytes = new byte[16];
     for (String uuid : uuids) {
-      digest.update(uuid.getBytes());
+      byte[] digest = MessageDigest.getInstance("MD5").digest(uuid.getBytes());
+      for (int i = 0; i < hashBytes.length; i++) {
+        hashBytes[i] ^= digest[i];
+      }
     }
 
-    byte[] hashBytes = digest.digest();
     String expected = Hex.encodeHexString(hashBytes);
 
     assertEquals(expected, m_hash.getHash(CLUSTERNAME, HOSTNAME));
   }
 
+  /**
+   * Compares hashing every host of a 3,000 host cluster with 500 definitions,
+   * as happened after every definition change, against updating the cached
+   * hashes as each of the definitions changes.
+   */
+  @Test
+  public void testInvalidationCost() throws Exception {
+    final int hostCount = 3000;
+    final int serviceCount = 20;
+    final int componentCount = 5;
+    final int definitionCount = 500;
+
+    EasyMock.reset(m_mockClusters, m_mockCluster, m_mockDao);
+
+    List<String> hostNames = new ArrayList<String>();
+    Map<String, Host> clusterHosts = new HashMap<String, Host>();
+    final Map<String, List<ServiceComponentHost>> hostComponents = new HashMap<String, List<ServiceComponentHost>>();
+    for (int h = 0; h < hostCount; h++) {
+      String hostName = "c" + h + ".ambari.apache.org";
+      hostNames.add(hostName);
+      clusterHosts.put(hostName, null);
+      hostComponents.put(hostName, new ArrayList<ServiceComponentHost>());
+    }
+
+    // the master of each service runs on a single host, each host runs the
+    // slaves of three services
+    Map<String, Service> services = new HashMap<String, Service>();
+    for (int s = 0; s < serviceCount; s++) {
+      String serviceName = "SERVICE" + s;
+      Map<String, ServiceComponent> serviceComponents = new HashMap<String, ServiceComponent>();
+
+      for (int c = 0; c < componentCount; c++) {
+        String componentName = serviceName + "_COMPONENT" + c;
+        boolean master = c == 0;
+
+        ServiceComponentHost sch = EasyMock.createNiceMock(ServiceComponentHost.class);
+        expect(sch.getServiceName()).andReturn(serviceName).anyTimes();
+        expect(sch.getServiceComponentName()).andReturn(componentName).anyTimes();
+        EasyMock.replay(sch);
+
+        Map<String, ServiceComponentHost> componentHosts = new HashMap<String, ServiceComponentHost>();
+        for (int h = 0; h < hostCount; h++) {
+          boolean runs = master ? h == s : (h + serviceCount - s) % serviceCount < 3;
+          if (runs) {
+            componentHosts.put(hostNames.get(h), sch);
+            hostComponents.get(hostNames.get(h)).add(sch);
+          }
+        }
+
+        ServiceComponent component = EasyMock.createNiceMock(ServiceComponent.class);
+        expect(component.isMasterComponent()).andReturn(master).anyTimes();
+        expect(component.getServiceComponentHosts()).andReturn(componentHosts).anyTimes();
+        EasyMock.replay(component);
+        serviceComponents.put(componentName, component);
+      }
+
+      Service service = EasyMock.createNiceMock(Service.class);
+      expect(service.getName()).andReturn(serviceName).anyTimes();
+      expect(service.getServiceComponents()).andReturn(serviceComponents).anyTimes();
+      EasyMock.replay(service);
+      services.put(serviceName, service);
+    }
+
+    // agent, service master and component definitions
+    final List<AlertDefinitionEntity> definitions = new ArrayList<AlertDefinitionEntity>();
+    final Map<Long, AlertDefinitionEntity> definitionsById = new HashMap<Long, AlertDefinitionEntity>();
+    for (int i = 0; i < definitionCount; i++) {
+      AlertDefinitionEntity definition = new AlertDefinitionEntity();
+      definition.setDefinitionId(Long.valueOf(i));
+      definition.setClusterId(1L);
+      definition.setHash(UUID.randomUUID().toString());
+      definition.setScheduleInterval(1);
+
+      if (i < serviceCount) {
+        definition.setServiceName("AMBARI");
+        definition.setComponentName("AMBARI_AGENT");
+        definition.setScope(Scope.HOST);
+      } else if (i < serviceCount * 3) {
+        definition.setServiceName("SERVICE" + (i % serviceCount));
+        definition.setScope(Scope.SERVICE);
+      } else {
+        String serviceName = "SERVICE" + (i % serviceCount);
+        definition.setServiceName(serviceName);
+        definition.setComponentName(serviceName + "_COMPONENT" + (i / serviceCount) % componentCount);
+        definition.setScope(Scope.HOST);
+      }
+
+      definitions.add(definition);
+      definitionsById.put(definition.getDefinitionId(), definition);
+    }
+
+    final AtomicInteger findAllCount = new AtomicInteger();
+
+    expect(m_mockClusters.getCluster((String) anyObject())).andReturn(m_mockCluster).anyTimes();
+    expect(m_mockClusters.getClusterById(EasyMock.anyLong())).andReturn(m_mockCluster).anyTimes();
+    expect(m_mockClusters.getHostsForCluster(CLUSTERNAME)).andReturn(clusterHosts).anyTimes();
+
+    expect(m_mockCluster.getClusterId()).andReturn(Long.valueOf(1)).anyTimes();
+    expect(m_mockCluster.getClusterName()).andReturn(CLUSTERNAME).anyTimes();
+    expect(m_mockCluster.getServices()).andReturn(services).anyTimes();
+    expect(m_mockCluster.getServiceComponentHosts(EasyMock.anyObject(String.class))).andAnswer(
+        new IAnswer<List<ServiceComponentHost>>() {
+          @Override
+          public List<ServiceComponentHost> answer() throws Throwable {
+            return hostComponents.get(EasyMock.getCurrentArguments()[0]);
+          }
+        }).anyTimes();
+
+    expect(m_mockDao.findAll(EasyMock.anyLong())).andAnswer(
+        new IAnswer<List<AlertDefinitionEntity>>() {
+          @Override
+          public List<AlertDefinitionEntity> answer() throws Throwable {
+            findAllCount.incrementAndGet();
+            return definitions;
+          }
+        }).anyTimes();
+
+    expect(m_mockDao.findById(EasyMock.anyLong())).andAnswer(
+        new IAnswer<AlertDefinitionEntity>() {
+          @Override
+          public AlertDefinitionEntity answer() throws Throwable {
+            return definitionsById.get(EasyMock.getCurrentArguments()[0]);
+          }
+        }).anyTimes();
+
+    EasyMock.replay(m_mockClusters, m_mockCluster, m_mockDao);
+
+    // hash every host
+    long start = System.nanoTime();
+    for (String hostName : hostNames) {
+      m_hash.getHash(CLUSTERNAME, hostName);
+    }
+    long rehashTime = System.nanoTime() - start;
+
+    // change every definition in turn
+    int affectedHosts = 0;
+    start = System.nanoTime();
+    for (AlertDefinitionEntity definition : definitions) {
+      definition.setHash(UUID.randomUUID().toString());
+      affectedHosts += m_hash.invalidateHosts(definition).size();
+    }
+    long updateTime = System.nanoTime() - start;
+
+    LOG.info("{} definitions x {} hosts: hashing every host took {} ms, " +
+        "updating the hashes of {} affected hosts of each definition took {} us per definition",
+        definitionCount, hostCount, rehashTime / 1000000,
+        affectedHosts / definitionCount, updateTime / definitionCount / 1000);
+
+    // the definitions were only read to build the index
+    assertEquals(1, findAllCount.get());
+
+    // the updated hashes are the same as hashes calculated from scratch
+    Map<String, String> hashes = new HashMap<String, String>();
+    for (String hostName : hostNames) {
+      assertTrue(m_hash.isHashCached(CLUSTERNAME, hostName));
+      hashes.put(hostName, m_hash.getHash(CLUSTERNAME, hostName));
+    }
+
+    m_hash.invalidateAll();
+    for (String hostName : hostNames) {
+      assertEquals(hashes.get(hostName), m_hash.getHash(CLUSTERNAME, hostName));
+    }
+  }
+
   @Test
   public void testActionQueueInvalidation() throws Exception{
     ActionQueue actionQueue = m_injector.getInstance(ActionQueue.class);
@@ -20,12 +20,14 @@ package org.apache.ambari.server.state.alerts;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.RootServiceResponseFactory.Components;
 import org.apache.ambari.server.controller.RootServiceResponseFactory.Services;
 import org.apache.ambari.server.events.AlertReceivedEvent;
@@ -57,6 +59,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -68,6 +72,7 @@ import com.google.inject.persist.UnitOfWork;
  */
 @Category({ category.AlertTest.class})
 public class AlertReceivedListenerTest {
+  private static final Logger LOG = LoggerFactory.getLogger(AlertReceivedListenerTest.class);
 
   private static final String ALERT_DEFINITION = "alert_definition_";
   private static final String HOST1 = "h1";
@@ -930,4 +935,107 @@ public class AlertReceivedListenerTest {
 
     assertEquals(1, m_dao.findCurrent().size());
   }
+
+  /**
+   * Tests that only the latest result of an alert received multiple times is
+   * processed.
+   */
+  @Test
+  public void testLatestResultOfAlertKept() {
+    Alert critical = createAmbariServerAlert(ALERT_DEFINITION + "1", HOST1, AlertState.CRITICAL, 2L);
+    Alert ok = createAmbariServerAlert(ALERT_DEFINITION + "1", HOST1, AlertState.OK, 1L);
+
+    AlertReceivedListener listener = m_injector.getInstance(AlertReceivedListener.class);
+    listener.onAlertEvent(new AlertReceivedEvent(Arrays.asList(critical, ok)));
+
+    List<AlertCurrentEntity> allCurrent = m_dao.findCurrent();
+    assertEquals(1, allCurrent.size());
+    assertEquals(AlertState.CRITICAL, allCurrent.get(0).getAlertHistory().getAlertState());
+    assertEquals(1, m_dao.findAll().size());
+  }
+
+  /**
+   * Tests that alerts of many events are processed in batches when batching
+   * is enabled.
+   */
+  @Test
+  public void testBatchedAlerts() throws Exception {
+    Configuration configuration = m_injector.getInstance(Configuration.class);
+    configuration.setProperty(Configuration.ALERTS_RECEIVED_BATCH_SIZE.getKey(), "100");
+    configuration.setProperty(Configuration.ALERTS_RECEIVED_BATCH_INTERVAL.getKey(), "100");
+
+    AlertReceivedListener listener = m_injector.getInstance(AlertReceivedListener.class);
+    for (int i = 0; i < 5; i++) {
+      listener.onAlertEvent(new AlertReceivedEvent(m_cluster.getClusterId(),
+          createAmbariServerAlert(ALERT_DEFINITION + i, HOST1, AlertState.OK, 1L)));
+    }
+
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (m_dao.findCurrent().size() < 5 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(5, m_dao.findCurrent().size());
+  }
+
+  /**
+   * Measures the rate at which alerts of many hosts are processed, once as
+   * one event per heartbeat and once as a single batch.
+   */
+  @Test
+  public void testAlertThroughput() throws Exception {
+    int hosts = 200;
+    AlertReceivedListener listener = m_injector.getInstance(AlertReceivedListener.class);
+
+    // create the current alerts
+    processPerHost(listener, hosts, AlertState.OK, 1L);
+    assertEquals(hosts * 5, m_dao.findCurrent().size());
+
+    long start = System.currentTimeMillis();
+    processPerHost(listener, hosts, AlertState.WARNING, 2L);
+    long perHeartbeat = Math.max(1L, System.currentTimeMillis() - start);
+
+    List<Alert> batch = new ArrayList<>();
+    for (int host = 0; host < hosts; host++) {
+      for (int i = 0; i < 5; i++) {
+        batch.add(createAmbariServerAlert(ALERT_DEFINITION + i, "host-" + host, AlertState.CRITICAL, 3L));
+      }
+    }
+
+    start = System.currentTimeMillis();
+    listener.onAlertEvent(new AlertReceivedEvent(batch));
+    long batched = Math.max(1L, System.currentTimeMillis() - start);
+
+    LOG.info("Processed {} alert state changes at {} alerts/s as heartbeats and at {} alerts/s as a batch",
+        batch.size(), batch.size() * 1000L / perHeartbeat, batch.size() * 1000L / batched);
+
+    for (AlertCurrentEntity current : m_dao.findCurrent()) {
+      assertEquals(AlertState.CRITICAL, current.getAlertHistory().getAlertState());
+    }
+    assertEquals(hosts * 5 * 3, m_dao.findAll().size());
+  }
+
+  private void processPerHost(AlertReceivedListener listener, int hosts, AlertState state,
+      long timestamp) {
+    for (int host = 0; host < hosts; host++) {
+      List<Alert> alerts = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        alerts.add(createAmbariServerAlert(ALERT_DEFINITION + i, "host-" + host, state, timestamp));
+      }
+      listener.onAlertEvent(new AlertReceivedEvent(alerts));
+    }
+  }
+
+  private Alert createAmbariServerAlert(String definitionName, String hostName, AlertState state,
+      long timestamp) {
+    String serviceName = Services.AMBARI.name();
+    String componentName = Components.AMBARI_SERVER.name();
+
+    Alert alert = new Alert(definitionName, null, serviceName, componentName, hostName, state);
+    alert.setCluster(m_cluster.getClusterName());
+    alert.setLabel(ALERT_LABEL);
+    alert.setText(serviceName + " " + componentName + " is " + state);
+    alert.setTimestamp(timestamp);
+    return alert;
+  }
 }
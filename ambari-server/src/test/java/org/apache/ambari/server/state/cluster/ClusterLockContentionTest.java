@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.events.listeners.upgrade.HostVersionOutOfSyncListener;
+import org.apache.ambari.server.logging.LockFactory;
+import org.apache.ambari.server.orm.GuiceJpaInitializer;
+import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
+import org.apache.ambari.server.orm.OrmTestHelper;
+import org.apache.ambari.server.state.Cluster;
+import org.apache.ambari.server.state.Clusters;
+import org.apache.ambari.server.state.Config;
+import org.apache.ambari.server.state.ConfigFactory;
+import org.apache.ambari.server.state.DesiredConfig;
+import org.apache.ambari.server.state.Host;
+import org.apache.ambari.server.state.RepositoryVersionState;
+import org.apache.ambari.server.state.Service;
+import org.apache.ambari.server.state.ServiceComponent;
+import org.apache.ambari.server.state.ServiceComponentHost;
+import org.apache.ambari.server.state.ServiceComponentHostEvent;
+import org.apache.ambari.server.state.ServiceComponentHostFactory;
+import org.apache.ambari.server.state.StackId;
+import org.apache.ambari.server.state.State;
+import org.apache.ambari.server.state.svccomphost.ServiceComponentHostStartedEvent;
+import org.apache.ambari.server.state.svccomphost.ServiceComponentHostStoppedEvent;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.persist.PersistService;
+import com.google.inject.util.Modules;
+
+/**
+ * Measures contention on the {@link ClusterImpl} locks while heartbeat driven
+ * host component updates, REST style reads and config changes run
+ * concurrently. Lock profiling is enabled so that the time spent waiting for
+ * each lock is reported by the {@link LockFactory}.
+ */
+public class ClusterLockContentionTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClusterLockContentionTest.class);
+
+  private static final int NUMBER_OF_HOSTS = 20;
+  private static final int HEARTBEAT_THREADS = 4;
+  private static final int READER_THREADS = 4;
+  private static final int ITERATIONS = 100;
+  private static final int CONFIG_UPDATES = 20;
+
+  private static final String CONFIG_TYPE = "test-type1";
+
+  @Inject
+  private Clusters clusters;
+
+  @Inject
+  private ConfigFactory configFactory;
+
+  @Inject
+  private ServiceComponentHostFactory serviceComponentHostFactory;
+
+  @Inject
+  private LockFactory lockFactory;
+
+  @Inject
+  private OrmTestHelper helper;
+
+  private Injector injector;
+  private Cluster cluster;
+  private final StackId stackId = new StackId("HDP-0.1");
+  private final List<String> hostNames = new ArrayList<String>(NUMBER_OF_HOSTS);
+
+  @Before
+  public void setup() throws Exception {
+    InMemoryDefaultTestModule module = new InMemoryDefaultTestModule();
+    module.getProperties().setProperty(Configuration.SERVER_LOCKS_PROFILING.getKey(), "true");
+
+    injector = Guice.createInjector(Modules.override(module).with(new MockModule()));
+    injector.getInstance(GuiceJpaInitializer.class);
+    injector.injectMembers(this);
+
+    clusters.addCluster("c1", stackId);
+    cluster = clusters.getCluster("c1");
+    helper.getOrCreateRepositoryVersion(stackId, stackId.getStackVersion());
+    cluster.createClusterVersion(stackId, stackId.getStackVersion(), "admin",
+        RepositoryVersionState.INSTALLING);
+
+    Config config = configFactory.createNew(cluster, CONFIG_TYPE, "version0",
+        new HashMap<String, String>(), new HashMap<String, Map<String, String>>());
+    cluster.addDesiredConfig("admin", Collections.singleton(config));
+
+    Service service = cluster.addService("HDFS");
+    ServiceComponent dataNode = service.addServiceComponent("DATANODE");
+    dataNode.setDesiredState(State.INSTALLED);
+
+    for (int i = 0; i < NUMBER_OF_HOSTS; i++) {
+      String hostName = "c64-" + i;
+      hostNames.add(hostName);
+
+      clusters.addHost(hostName);
+      Host host = clusters.getHost(hostName);
+      Map<String, String> hostAttributes = new HashMap<String, String>();
+      hostAttributes.put("os_family", "redhat");
+      hostAttributes.put("os_release_version", "6.4");
+      host.setHostAttributes(hostAttributes);
+      clusters.mapHostToCluster(hostName, "c1");
+
+      ServiceComponentHost sch = serviceComponentHostFactory.createNew(dataNode, hostName);
+      dataNode.addServiceComponentHost(sch);
+      sch.setDesiredState(State.INSTALLED);
+      sch.setState(State.INSTALLED);
+      sch.setDesiredStackVersion(stackId);
+      sch.setStackVersion(stackId);
+    }
+  }
+
+  @After
+  public void teardown() {
+    injector.getInstance(PersistService.class).stop();
+  }
+
+  /**
+   * The hot read paths must not touch the cluster global lock.
+   */
+  @Test
+  public void testHotReadPathsTakeNoGlobalLock() throws Exception {
+    long before = getLockCount("clusterGlobalLock");
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      readCluster();
+    }
+
+    Assert.assertEquals(before, getLockCount("clusterGlobalLock"));
+  }
+
+  /**
+   * Runs heartbeat processing, REST reads and config changes concurrently and
+   * reports the time spent waiting for each lock.
+   */
+  @Test
+  public void testContention() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(HEARTBEAT_THREADS + READER_THREADS + 1);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    final AtomicLong events = new AtomicLong();
+    final AtomicLong reads = new AtomicLong();
+
+    long start = System.currentTimeMillis();
+
+    for (int i = 0; i < HEARTBEAT_THREADS; i++) {
+      final List<String> partition = new ArrayList<String>();
+      for (int j = i; j < hostNames.size(); j += HEARTBEAT_THREADS) {
+        partition.add(hostNames.get(j));
+      }
+
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            ListMultimap<String, ServiceComponentHostEvent> eventMap = ArrayListMultimap.create();
+            for (String hostName : partition) {
+              long now = System.currentTimeMillis();
+              ServiceComponentHostEvent event = iteration % 2 == 0
+                  ? new ServiceComponentHostStartedEvent("DATANODE", hostName, now)
+                  : new ServiceComponentHostStoppedEvent("DATANODE", hostName, now);
+              eventMap.put("HDFS", event);
+            }
+
+            Map<ServiceComponentHostEvent, String> failed = cluster.processServiceComponentHostEvents(eventMap);
+            Assert.assertTrue(failed.toString(), failed.isEmpty());
+            events.addAndGet(eventMap.size());
+          }
+          return null;
+        }
+      }));
+    }
+
+    for (int i = 0; i < READER_THREADS; i++) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            readCluster();
+            reads.incrementAndGet();
+          }
+          return null;
+        }
+      }));
+    }
+
+    futures.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        for (int i = 1; i <= CONFIG_UPDATES; i++) {
+          Config config = configFactory.createNew(cluster, CONFIG_TYPE, "version" + i,
+              new HashMap<String, String>(), new HashMap<String, Map<String, String>>());
+          cluster.addDesiredConfig("admin", Collections.singleton(config));
+        }
+        return null;
+      }
+    }));
+
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+    LOG.info("Processed {} host component events and {} reads in {} ms", events.get(), reads.get(), elapsed);
+    for (Map.Entry<String, Long> entry : lockFactory.getTimeSpentWaitingForLocks().entrySet()) {
+      LOG.info("Lock {} waited {} ms in total, taken {} times", entry.getKey(), entry.getValue(),
+          lockFactory.getLockCounts().get(entry.getKey()));
+    }
+
+    Assert.assertEquals((long) NUMBER_OF_HOSTS * ITERATIONS, events.get());
+    Assert.assertEquals("version" + CONFIG_UPDATES, cluster.getDesiredConfigs().get(CONFIG_TYPE).getTag());
+    Assert.assertEquals("version" + CONFIG_UPDATES, cluster.getDesiredConfigByType(CONFIG_TYPE).getTag());
+
+    // an even number of iterations leaves every component stopped
+    for (String hostName : hostNames) {
+      for (ServiceComponentHost sch : cluster.getServiceComponentHosts(hostName)) {
+        Assert.assertEquals(State.INSTALLED, sch.getState());
+      }
+    }
+  }
+
+  /**
+   * Exercises the read paths used by the REST API.
+   */
+  private void readCluster() throws Exception {
+    Assert.assertEquals(1, cluster.getServices().size());
+    for (String hostName : hostNames) {
+      Assert.assertEquals(1, cluster.getServiceComponentHosts(hostName).size());
+    }
+
+    Map<String, DesiredConfig> desiredConfigs = cluster.getDesiredConfigs();
+    Assert.assertTrue(desiredConfigs.containsKey(CONFIG_TYPE));
+    Assert.assertNotNull(cluster.getDesiredConfigByType(CONFIG_TYPE));
+    Assert.assertNotNull(cluster.getConfigsByType(CONFIG_TYPE));
+  }
+
+  private long getLockCount(String label) {
+    Long count = lockFactory.getLockCounts().get(label);
+    return count == null ? 0L : count;
+  }
+
+  /**
+   * Mocks out the listener which would otherwise dominate the time spent
+   * processing host component events.
+   */
+  private class MockModule implements Module {
+    @Override
+    public void configure(Binder binder) {
+      binder.bind(HostVersionOutOfSyncListener.class).toInstance(
+          EasyMock.createNiceMock(HostVersionOutOfSyncListener.class));
+    }
+  }
+}
@@ -27,6 +27,23 @@ import org.junit.Test;
 
 public class UpgradeCatalog300Test {
 
+  @Test
+  public void testExecuteDDLUpdates() throws Exception {
+    Method createExecutionCommandPartTable = UpgradeCatalog300.class.getDeclaredMethod("createExecutionCommandPartTable");
+
+    UpgradeCatalog300 upgradeCatalog300 = createMockBuilder(UpgradeCatalog300.class)
+        .addMockedMethod(createExecutionCommandPartTable)
+        .createMock();
+
+    upgradeCatalog300.createExecutionCommandPartTable();
+
+    replay(upgradeCatalog300);
+
+    upgradeCatalog300.executeDDLUpdates();
+
+    verify(upgradeCatalog300);
+  }
+
   @Test
   public void testExecuteDMLUpdates() throws Exception {
     Method addNewConfigurationsFromXml = AbstractUpgradeCatalog.class.getDeclaredMethod("addNewConfigurationsFromXml");